@@ -51,8 +51,9 @@ public class ANTLRv4ExternalAnnotator extends ExternalAnnotator<PsiFile, List<Gr
 			}
 		}
 
-		final ANTLRv4PluginController controller = ANTLRv4PluginController.getInstance(file.getProject());
-		if ( controller!=null && !ApplicationManager.getApplication().isUnitTestMode() ) {
+		// only refresh a preview that exists; never create the tool windows from here
+		final ANTLRv4PluginController controller = ANTLRv4PluginController.getInstanceIfCreated(file.getProject());
+		if ( controller!=null && controller.isInitialized() && !ApplicationManager.getApplication().isUnitTestMode() ) {
 			controller.getPreviewPanel().autoRefreshPreview(file.getVirtualFile());
 		}
 	}
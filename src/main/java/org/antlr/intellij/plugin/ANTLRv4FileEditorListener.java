@@ -0,0 +1,43 @@
+package org.antlr.intellij.plugin;
+
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.fileEditor.FileEditorManagerEvent;
+import com.intellij.openapi.fileEditor.FileEditorManagerListener;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+
+/** Installed by {@link ANTLRv4StartupActivity} for every project. Only brings
+ *  up the {@link ANTLRv4PluginController} (and with it our tool windows) once
+ *  a grammar is shown; events for other files are forwarded only if the
+ *  controller already exists.
+ */
+public class ANTLRv4FileEditorListener implements FileEditorManagerListener {
+	private final Project project;
+
+	public ANTLRv4FileEditorListener(Project project) {
+		this.project = project;
+	}
+
+	@Override
+	public void selectionChanged(@NotNull FileEditorManagerEvent event) {
+		ANTLRv4PluginController controller = isGrammarFile(event.getNewFile()) ?
+			ANTLRv4PluginController.getInstance(project) :
+			ANTLRv4PluginController.getInstanceIfCreated(project);
+		if ( controller!=null && !controller.projectIsClosed ) {
+			controller.currentEditorFileChangedEvent(event.getOldFile(), event.getNewFile());
+		}
+	}
+
+	@Override
+	public void fileClosed(@NotNull FileEditorManager source, @NotNull VirtualFile file) {
+		ANTLRv4PluginController controller = ANTLRv4PluginController.getInstanceIfCreated(project);
+		if ( controller!=null && !controller.projectIsClosed ) {
+			controller.editorFileClosedEvent(file);
+		}
+	}
+
+	private static boolean isGrammarFile(VirtualFile file) {
+		return file!=null && file.getName().endsWith(".g4");
+	}
+}
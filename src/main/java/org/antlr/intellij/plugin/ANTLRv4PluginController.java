@@ -5,8 +5,9 @@ import com.intellij.execution.filters.TextConsoleBuilderFactory;
 import com.intellij.execution.ui.ConsoleView;
 import com.intellij.ide.plugins.IdeaPluginDescriptor;
 import com.intellij.ide.plugins.PluginManager;
+import com.intellij.openapi.Disposable;
 import com.intellij.openapi.application.ApplicationManager;
-import com.intellij.openapi.components.ProjectComponent;
+import com.intellij.openapi.components.ServiceManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.Editor;
@@ -34,11 +35,16 @@ import com.intellij.openapi.wm.ToolWindowAnchor;
 import com.intellij.openapi.wm.ToolWindowManager;
 import com.intellij.ui.content.Content;
 import com.intellij.ui.content.ContentFactory;
-import com.intellij.util.messages.MessageBusConnection;
+import org.antlr.intellij.plugin.metrics.Counter;
+import org.antlr.intellij.plugin.metrics.Metrics;
+import org.antlr.intellij.plugin.metrics.MetricsPanel;
+import org.antlr.intellij.plugin.metrics.Timer;
 import org.antlr.intellij.plugin.parsing.ParsingUtils;
+import org.antlr.intellij.plugin.parsing.PreviewTimings;
 import org.antlr.intellij.plugin.parsing.RunANTLROnGrammarFile;
 import org.antlr.intellij.plugin.preview.PreviewPanel;
 import org.antlr.intellij.plugin.preview.PreviewState;
+import org.antlr.intellij.plugin.preview.PreviewStateCache;
 import org.antlr.intellij.plugin.profiler.ProfilerPanel;
 import org.antlr.v4.parse.ANTLRParser;
 import org.antlr.v4.tool.Grammar;
@@ -47,9 +53,6 @@ import org.jetbrains.annotations.NotNull;
 
 import javax.swing.*;
 import java.io.File;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
 
 /** This object is the controller for the ANTLR plug-in. It receives
  *  events and can send them on to its contained components. For example,
@@ -62,15 +65,27 @@ import java.util.Map;
  *  This controller also manages the cache of grammar/editor combinations
  *  needed for the preview window. Updates must be made atomically so that
  *  the grammars and editors are consistently associated with the same window.
+ *
+ *  The controller is a project service so it only exists once something asks
+ *  for it. Tool windows, their contents and our listeners are only created
+ *  when the first grammar is shown (or the console/preview is asked for), so
+ *  projects without grammars pay nothing; see {@link ANTLRv4StartupActivity}.
  */
-public class ANTLRv4PluginController implements ProjectComponent {
+public class ANTLRv4PluginController implements Disposable {
 	public static final String PLUGIN_ID = "org.antlr.intellij.plugin";
 
 	public static final Key<GrammarEditorMouseAdapter> EDITOR_MOUSE_LISTENER_KEY = Key.create("EDITOR_MOUSE_LISTENER_KEY");
+	private static final Key<ANTLRv4PluginController> CONTROLLER_KEY = Key.create("ANTLR_PLUGIN_CONTROLLER_KEY");
 	public static final Logger LOG = Logger.getInstance("ANTLRv4PluginController");
 
 	public static final String PREVIEW_WINDOW_ID = "ANTLR Preview";
 	public static final String CONSOLE_WINDOW_ID = "Tool Output";
+	public static final String METRICS_WINDOW_ID = "ANTLR Metrics";
+
+	private static final Timer PREVIEW_PARSE_TIMER =
+		Metrics.timer("preview.parse", "Parsing the preview input, lexing included");
+	private static final Counter PREVIEW_PARSE_ABORTED =
+		Metrics.counter("preview.parse.aborted", "Preview parses aborted by a newer edit or the user; not in preview.parse");
 
 	public boolean projectIsClosed = false;
 
@@ -78,18 +93,24 @@ public class ANTLRv4PluginController implements ProjectComponent {
 	public ConsoleView console;
 	public ToolWindow consoleWindow;
 
-	public Map<String, PreviewState> grammarToPreviewState =
-		Collections.synchronizedMap(new HashMap<String, PreviewState>());
+	public PreviewStateCache grammarToPreviewState = new PreviewStateCache();
 	public ToolWindow previewWindow;	// same for all grammar editor
 	public PreviewPanel previewPanel;	// same for all grammar editor
+	public ToolWindow metricsWindow;
+	private MetricsPanel metricsPanel;
 
 	public MyVirtualFileAdapter myVirtualFileAdapter = new MyVirtualFileAdapter();
-	public MyFileEditorManagerAdapter myFileEditorManagerAdapter = new MyFileEditorManagerAdapter();
+
+	/** Set on the EDT once tool windows and listeners exist; read from any thread */
+	private volatile boolean initialized = false;
+	/** Set on the EDT when initialization starts, so it isn't reentered */
+	private boolean initializing = false;
 
 	private ProgressIndicator parsingProgressIndicator;
 
 	public ANTLRv4PluginController(Project project) {
 		this.project = project;
+		project.putUserData(CONTROLLER_KEY, this);
 	}
 
 	public static ANTLRv4PluginController getInstance(Project project) {
@@ -97,28 +118,53 @@ public class ANTLRv4PluginController implements ProjectComponent {
 			LOG.error("getInstance: project is null");
 			return null;
 		}
-		ANTLRv4PluginController pc = project.getComponent(ANTLRv4PluginController.class);
+		ANTLRv4PluginController pc = ServiceManager.getService(project, ANTLRv4PluginController.class);
 		if ( pc==null ) {
-			LOG.error("getInstance: getComponent() for "+project.getName()+" returns null");
+			LOG.error("getInstance: getService() for "+project.getName()+" returns null");
 		}
 		return pc;
 	}
 
-	@Override
-	public void initComponent() {
+	/** Like {@link #getInstance(Project)} but doesn't create the controller;
+	 *  null if no grammar has been touched in this project yet.
+	 */
+	public static ANTLRv4PluginController getInstanceIfCreated(Project project) {
+		if ( project==null || project.isDisposed() ) {
+			return null;
+		}
+		return project.getUserData(CONTROLLER_KEY);
 	}
 
-	@Override
-	public void projectOpened() {
+	/** Create tool windows and install listeners the first time we need them.
+	 *  Safe to call from any thread; the work itself happens on the EDT, so
+	 *  a background thread only waits for the EDT the first time and must not
+	 *  hold a read action then (see {@link #isInitialized()}).
+	 */
+	public void ensureInitialized() {
+		if ( initialized || projectIsClosed ) return;
+		if ( !ApplicationManager.getApplication().isDispatchThread() ) {
+			ApplicationManager.getApplication().invokeAndWait(this::ensureInitialized);
+			return;
+		}
+		if ( initializing ) return;
+		initializing = true;
+
 		IdeaPluginDescriptor plugin = PluginManager.getPlugin(PluginId.getId(PLUGIN_ID));
 		String version = "unknown";
 		if ( plugin!=null ) {
 			version = plugin.getVersion();
 		}
 		LOG.info("ANTLR 4 Plugin version "+version+", Java version "+ SystemInfo.JAVA_VERSION);
-		// make sure the tool windows are created early
 		createToolWindows();
 		installListeners();
+		initialized = true;
+	}
+
+	/** Whether the tool windows exist; callers that merely want to update
+	 *  them, like the annotator, check this instead of creating them.
+	 */
+	public boolean isInitialized() {
+		return initialized;
 	}
 
 	public void createToolWindows() {
@@ -146,78 +192,64 @@ public class ANTLRv4PluginController implements ProjectComponent {
 		consoleWindow = toolWindowManager.registerToolWindow(CONSOLE_WINDOW_ID, true, ToolWindowAnchor.BOTTOM);
 		consoleWindow.getContentManager().addContent(content);
 		consoleWindow.setIcon(Icons.getToolWindow());
+
+		metricsPanel = new MetricsPanel();
+		content = contentFactory.createContent(metricsPanel, "", false);
+		content.setCloseable(false);
+
+		metricsWindow = toolWindowManager.registerToolWindow(METRICS_WINDOW_ID, true, ToolWindowAnchor.BOTTOM);
+		metricsWindow.getContentManager().addContent(content);
+		metricsWindow.setIcon(Icons.getToolWindow());
 	}
 
+	/** Called when the project closes; nothing to undo if no grammar was ever shown */
 	@Override
-	public void projectClosed() {
-		LOG.info("projectClosed " + project.getName());
-		//synchronized ( shutdownLock ) { // They should be called from EDT only so no lock
+	public void dispose() {
+		LOG.info("dispose " + project.getName());
+		// They should be called from EDT only so no lock
 		projectIsClosed = true;
-		uninstallListeners();
+		project.putUserData(CONTROLLER_KEY, null);
 
-		console.dispose();
+		if ( initialized ) {
+			// listeners were registered with this as parent disposable and are gone now
+			console.dispose();
+			metricsPanel.dispose();
 
-		for (PreviewState it : grammarToPreviewState.values()) {
-			previewPanel.inputPanel.releaseEditor(it);
+			for (PreviewState it : grammarToPreviewState.values()) {
+				previewPanel.inputPanel.releaseEditor(it);
+			}
 		}
 
 		previewPanel = null;
 		previewWindow = null;
 		consoleWindow = null;
+		metricsWindow = null;
+		metricsPanel = null;
 		project = null;
 		grammarToPreviewState = null;
 	}
 
-	// seems that intellij can kill and reload a project w/o user knowing.
-	// a ptr was left around that pointed at a disposed project. led to
-	// problem in switchGrammar. Probably was a listener still attached and trigger
-	// editor listeners released in editorReleased() events.
-	public void uninstallListeners() {
-		VirtualFileManager.getInstance().removeVirtualFileListener(myVirtualFileAdapter);
-
-		if ( !project.isDisposed() ) {
-			MessageBusConnection msgBus = project.getMessageBus().connect(project);
-			msgBus.disconnect();
-		}
-	}
-
-	@Override
-	public void disposeComponent() {
-	}
-
-	@NotNull
-	@Override
-	public String getComponentName() {
-		return "antlr.ProjectComponent";
-	}
-
 	// ------------------------------
 
 	public void installListeners() {
 		LOG.info("installListeners "+project.getName());
 		// Listen for .g4 file saves
-		VirtualFileManager.getInstance().addVirtualFileListener(myVirtualFileAdapter);
+		VirtualFileManager.getInstance().addVirtualFileListener(myVirtualFileAdapter, this);
 
-		// Listen for editor window changes
-		MessageBusConnection msgBus = project.getMessageBus().connect(project);
-		msgBus.subscribe(
-			FileEditorManagerListener.FILE_EDITOR_MANAGER,
-			myFileEditorManagerAdapter
-		);
+		// Editor window changes come in through ANTLRv4FileEditorListener, installed at startup
 
 		EditorFactory factory = EditorFactory.getInstance();
+		// grammar editors opened before we got here missed editorCreated()
+		for (Editor editor : factory.getAllEditors()) {
+			if ( editor.getProject()==project ) {
+				addGrammarEditorMouseListener(editor);
+			}
+		}
 		factory.addEditorFactoryListener(
 			new EditorFactoryAdapter() {
 				@Override
 				public void editorCreated(@NotNull EditorFactoryEvent event) {
-					final Editor editor = event.getEditor();
-					final Document doc = editor.getDocument();
-					VirtualFile vfile = FileDocumentManager.getInstance().getFile(doc);
-					if ( vfile!=null && vfile.getName().endsWith(".g4") ) {
-						GrammarEditorMouseAdapter listener = new GrammarEditorMouseAdapter();
-						editor.putUserData(EDITOR_MOUSE_LISTENER_KEY, listener);
-						editor.addEditorMouseListener(listener);
-					}
+					addGrammarEditorMouseListener(event.getEditor());
 				}
 
 				@Override
@@ -232,10 +264,23 @@ public class ANTLRv4PluginController implements ProjectComponent {
 						editor.putUserData(EDITOR_MOUSE_LISTENER_KEY, null);
 					}
 				}
-			}
+			},
+			this
 		);
 	}
 
+	private void addGrammarEditorMouseListener(Editor editor) {
+		final Document doc = editor.getDocument();
+		VirtualFile vfile = FileDocumentManager.getInstance().getFile(doc);
+		if ( vfile!=null && vfile.getName().endsWith(".g4") &&
+			 editor.getUserData(EDITOR_MOUSE_LISTENER_KEY)==null )
+		{
+			GrammarEditorMouseAdapter listener = new GrammarEditorMouseAdapter();
+			editor.putUserData(EDITOR_MOUSE_LISTENER_KEY, listener);
+			editor.addEditorMouseListener(listener);
+		}
+	}
+
 	/** The test ANTLR rule action triggers this event. This can occur
 	 *  only occur when the current editor the showing a grammar, because
 	 *  that is the only time that the action is enabled. We will see
@@ -281,6 +326,8 @@ public class ANTLRv4PluginController implements ProjectComponent {
 			return;
 		}
 
+		ensureInitialized(); // first grammar shown in this project
+
 		// When switching from a lexer grammar, update its objects in case the grammar was modified.
 		// The updated objects might be needed later by another dependant grammar.
 		if ( oldFile != null && oldFile.getName().endsWith(".g4")) {
@@ -294,6 +341,7 @@ public class ANTLRv4PluginController implements ProjectComponent {
 		if ( previewPanel!=null ) {
 			previewPanel.grammarFileChanged(oldFile, newFile);
 		}
+		grammarToPreviewState.trim(previewState); // the grammar we left is inactive now
 	}
 
 	public void mouseEnteredGrammarEditorEvent(VirtualFile vfile, EditorMouseEvent e) {
@@ -323,7 +371,9 @@ public class ANTLRv4PluginController implements ProjectComponent {
 		previewState.g = null; // wack old ref to the Grammar for text in editor
 		previewState.lg = null;
 
-		previewPanel.closeGrammar(vfile);
+		if ( previewPanel!=null ) {
+			previewPanel.closeGrammar(vfile);
+		}
 
 		grammarToPreviewState.remove(grammarFileName);
 
@@ -335,7 +385,9 @@ public class ANTLRv4PluginController implements ProjectComponent {
 		if (previewPanel != null) {
 			previewPanel.setEnabled(false);
 		}
-		previewWindow.hide(null);
+		if ( previewWindow!=null ) {
+			previewWindow.hide(null);
+		}
 	}
 
 	/** Make sure to run after updating grammars in previewState */
@@ -395,7 +447,7 @@ public class ANTLRv4PluginController implements ProjectComponent {
 	public PreviewState getAssociatedParserIfLexer(String grammarFileName) {
 		for (PreviewState s : grammarToPreviewState.values()) {
 			if ( s!=null && s.lg!=null &&
-					(sameFile(grammarFileName, s.lg.fileName)||s.lg==ParsingUtils.BAD_LEXER_GRAMMAR) )
+					(sameFile(grammarFileName, s.lg.fileName)||ParsingUtils.isBadLexerGrammar(s.lg)) )
 			{
 				// s has a lexer with same filename, see if there is a parser grammar
 				// (not a combined grammar)
@@ -422,6 +474,11 @@ public class ANTLRv4PluginController implements ProjectComponent {
 	}
 
 	public void parseText(final VirtualFile grammarFile, String inputText) {
+		parseText(grammarFile, inputText, new PreviewTimings());
+	}
+
+	/** Parse inputText in the background, adding the time of the stages to timings */
+	public void parseText(final VirtualFile grammarFile, String inputText, final PreviewTimings timings) {
 		// Wipes out the console and also any error annotations
 		previewPanel.inputPanel.clearParseErrors();
 
@@ -437,10 +494,22 @@ public class ANTLRv4PluginController implements ProjectComponent {
 
 					previewState.parsingResult = ParsingUtils.parseText(
 							previewState.g, previewState.lg, previewState.startRuleName,
-							grammarFile, inputText, project
+							grammarFile, inputText, project, timings
 					);
+					long duration = System.nanoTime() - start;
+					// a canceled parse throws out of parseText; aborted ones are only counted
+					if ( !indicator.isCanceled() ) {
+						PREVIEW_PARSE_TIMER.record(duration);
+					}
+					if ( previewState.parsingResult!=null ) {
+						// walk the tree here, not on the EDT
+						timings.time(PreviewTimings.Stage.PROFILING, previewState.parsingResult::getRetainedSize);
+					}
 
-					return () -> previewPanel.onParsingCompleted(previewState, System.nanoTime() - start);
+					return () -> {
+						previewPanel.onParsingCompleted(previewState, duration);
+						trimInactivePreviewStates();
+					};
 				},
 				() -> previewPanel.notifySlowParsing(),
 				ProgressWindow.DEFAULT_PROGRESS_DIALOG_POSTPONE_TIME_MILLIS,
@@ -448,8 +517,24 @@ public class ANTLRv4PluginController implements ProjectComponent {
 		);
 	}
 
+	/** Release parse results of grammars not previewed. A parse that
+	 *  completes after the user switched grammars already missed the trim
+	 *  on the switch, so keep the state of the grammar shown now, not the
+	 *  one that was parsed.
+	 */
+	private void trimInactivePreviewStates() {
+		VirtualFile currentGrammarFile = getCurrentGrammarFile();
+		if ( grammarToPreviewState==null || currentGrammarFile==null ) {
+			return;
+		}
+		grammarToPreviewState.trim(grammarToPreviewState.get(currentGrammarFile.getPath()));
+	}
+
 	public void abortCurrentParsing() {
 		if ( parsingProgressIndicator!=null ) {
+			if ( parsingProgressIndicator.isRunning() ) {
+				PREVIEW_PARSE_ABORTED.increment();
+			}
 			parsingProgressIndicator.cancel();
 			parsingProgressIndicator = null;
 			previewPanel.onParsingCancelled();
@@ -457,14 +542,17 @@ public class ANTLRv4PluginController implements ProjectComponent {
 	}
 
 	public PreviewPanel getPreviewPanel() {
+		ensureInitialized();
 		return previewPanel;
 	}
 
 	public ConsoleView getConsole() {
+		ensureInitialized();
 		return console;
 	}
 
 	public ToolWindow getConsoleWindow() {
+		ensureInitialized();
 		return consoleWindow;
 	}
 
@@ -480,23 +568,15 @@ public class ANTLRv4PluginController implements ProjectComponent {
 	}
 
 	public ToolWindow getPreviewWindow() {
+		ensureInitialized();
 		return previewWindow;
 	}
 
 	public @NotNull PreviewState getPreviewState(VirtualFile grammarFile) {
 		// make sure only one thread tries to add a preview state object for a given file
 		String grammarFileName = grammarFile.getPath();
-		// Have we seen this grammar before?
-		PreviewState stateForCurrentGrammar = grammarToPreviewState.get(grammarFileName);
-		if ( stateForCurrentGrammar!=null ) {
-			return stateForCurrentGrammar; // seen this before
-		}
-
-		// not seen, must create state
-		stateForCurrentGrammar = new PreviewState(project, grammarFile);
-		grammarToPreviewState.put(grammarFileName, stateForCurrentGrammar);
-
-		return stateForCurrentGrammar;
+		// Have we seen this grammar before? If not, must create state
+		return grammarToPreviewState.computeIfAbsent(grammarFileName, name -> new PreviewState(project, grammarFile));
 	}
 
 	public Editor getEditor(VirtualFile vfile) {
@@ -587,16 +667,4 @@ public class ANTLRv4PluginController implements ProjectComponent {
 		}
 	}
 
-	private class MyFileEditorManagerAdapter extends FileEditorManagerAdapter {
-		@Override
-		public void selectionChanged(FileEditorManagerEvent event) {
-			if ( !projectIsClosed ) currentEditorFileChangedEvent(event.getOldFile(), event.getNewFile());
-		}
-
-		@Override
-		public void fileClosed(FileEditorManager source, VirtualFile file) {
-			if ( !projectIsClosed ) editorFileClosedEvent(file);
-		}
-	}
-
 }
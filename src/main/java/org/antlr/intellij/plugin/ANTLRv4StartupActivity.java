@@ -0,0 +1,34 @@
+package org.antlr.intellij.plugin;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.fileEditor.FileEditorManagerListener;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.startup.StartupActivity;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.antlr.intellij.plugin.metrics.MetricsJmxExporter;
+import org.jetbrains.annotations.NotNull;
+
+/** All the plugin does when a project opens: export its metrics, which
+ *  the editor features record from the start, and listen for editor
+ *  changes. Everything else waits until a grammar shows up.
+ */
+public class ANTLRv4StartupActivity implements StartupActivity {
+	@Override
+	public void runActivity(@NotNull Project project) {
+		MetricsJmxExporter.getInstance(); // once per IDE; later calls return the same service
+
+		project.getMessageBus().connect(project).subscribe(
+			FileEditorManagerListener.FILE_EDITOR_MANAGER,
+			new ANTLRv4FileEditorListener(project)
+		);
+
+		// a grammar editor restored with the project may have been selected before we listened
+		ApplicationManager.getApplication().invokeLater(() -> {
+			if ( project.isDisposed() ) return;
+			VirtualFile grammarFile = ANTLRv4PluginController.getCurrentGrammarFile(project);
+			if ( grammarFile!=null ) {
+				ANTLRv4PluginController.getInstance(project).currentEditorFileChangedEvent(null, grammarFile);
+			}
+		});
+	}
+}
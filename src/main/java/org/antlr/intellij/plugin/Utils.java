@@ -2,6 +2,11 @@ package org.antlr.intellij.plugin;
 
 import com.intellij.util.containers.Predicate;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -15,4 +20,33 @@ public class Utils {
 		}
 		return filtered;
 	}
+
+	public interface FileContentWriter {
+		void write(File f) throws IOException;
+	}
+
+	/** Write f aside and move it into place so readers never see half a file
+	 *  and a failed write leaves the old f (and no temp file) behind. Falls
+	 *  back to a plain move where the file system can't move atomically.
+	 */
+	public static void writeAtomically(File f, FileContentWriter writer) throws IOException {
+		File tmp = File.createTempFile(f.getName(), ".tmp", f.getParentFile());
+		boolean moved = false;
+		try {
+			writer.write(tmp);
+			try {
+				Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException amnse) {
+				Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			moved = true;
+		}
+		finally {
+			if ( !moved ) {
+				//noinspection ResultOfMethodCallIgnored
+				tmp.delete();
+			}
+		}
+	}
 }
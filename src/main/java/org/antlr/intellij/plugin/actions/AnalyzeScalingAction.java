@@ -0,0 +1,127 @@
+package org.antlr.intellij.plugin.actions;
+
+import com.intellij.notification.Notification;
+import com.intellij.notification.NotificationType;
+import com.intellij.notification.Notifications;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.fileChooser.FileChooser;
+import com.intellij.openapi.fileChooser.FileChooserDescriptorFactory;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.DumbAware;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.antlr.intellij.plugin.ANTLRv4PluginController;
+import org.antlr.intellij.plugin.parsing.ParsingUtils;
+import org.antlr.intellij.plugin.parsing.RunANTLROnGrammarFile;
+import org.antlr.intellij.plugin.preview.PreviewState;
+import org.antlr.intellij.plugin.profiler.ScalingAnalysis;
+import org.antlr.v4.tool.Grammar;
+import org.antlr.v4.tool.LexerGrammar;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+/** Parse the preview input, or a file, at growing sizes from the grammar's
+ *  preview start rule and show how the parse scales; see {@link ScalingAnalysis}.
+ */
+public class AnalyzeScalingAction extends AnAction implements DumbAware {
+	public static final Logger LOG = Logger.getInstance("ANTLR AnalyzeScalingAction");
+
+	/** 1x to 16x, or 1/16 to all of the input */
+	private static final int SIZES = 5;
+
+	@Override
+	public void update(AnActionEvent e) {
+		MyActionUtils.selectedFileIsGrammar(e);
+	}
+
+	@Override
+	public void actionPerformed(final AnActionEvent e) {
+		final Project project = e.getProject();
+		if ( project==null ) {
+			LOG.error("actionPerformed no project for "+e);
+			return; // whoa!
+		}
+		final VirtualFile grammarFile = MyActionUtils.getGrammarFileFromEvent(e);
+		LOG.info("actionPerformed "+(grammarFile==null ? "NONE" : grammarFile));
+		if ( grammarFile==null ) return;
+
+		final ANTLRv4PluginController controller = ANTLRv4PluginController.getInstance(project);
+		final PreviewState previewState = controller.getPreviewState(grammarFile);
+		final Grammar g = ParsingUtils.isBadParserGrammar(previewState.g) ? null : previewState.g;
+		final LexerGrammar lg = ParsingUtils.isBadLexerGrammar(previewState.lg) ? null : previewState.lg;
+		final String startRuleName = previewState.startRuleName;
+		final String title = "can't analyze how "+grammarFile.getName()+" scales";
+		if ( g==null || lg==null ) {
+			notify(project, title, "grammar has errors or has not been loaded yet", NotificationType.WARNING);
+			return;
+		}
+		if ( startRuleName==null || g.getRule(startRuleName)==null ) {
+			notify(project, title, "choose a start rule in the ANTLR preview first", NotificationType.WARNING);
+			return;
+		}
+
+		int source = Messages.showDialog(project, "Parse which input at growing sizes?", "Analyze Grammar Scaling",
+										 new String[] {"Preview Input", "Input File...", "Cancel"}, 0,
+										 Messages.getQuestionIcon());
+		final String text;
+		if ( source==0 ) {
+			Editor inputEditor = previewState.getInputEditor();
+			text = inputEditor!=null ? inputEditor.getDocument().getText() : "";
+		}
+		else if ( source==1 ) {
+			VirtualFile file = FileChooser.chooseFile(FileChooserDescriptorFactory.createSingleFileNoJarsDescriptor(),
+													  project, grammarFile.getParent());
+			if ( file==null ) return;
+			try {
+				text = VfsUtilCore.loadText(file);
+			}
+			catch (IOException ex) {
+				notify(project, "can't read "+file.getPresentableUrl(), String.valueOf(ex.getMessage()), NotificationType.WARNING);
+				return;
+			}
+		}
+		else {
+			return;
+		}
+		if ( text.trim().isEmpty() ) {
+			notify(project, title, "the input is empty", NotificationType.WARNING);
+			return;
+		}
+
+		int choice = Messages.showDialog(project,
+										 "Replicate the input 1x to "+(1 << (SIZES-1))+"x, or parse prefixes of it "+
+										 "from 1/"+(1 << (SIZES-1))+" to all of it?",
+										 "Analyze Grammar Scaling", new String[] {"Replicate", "Prefixes", "Cancel"}, 0,
+										 Messages.getQuestionIcon());
+		if ( choice!=0 && choice!=1 ) return;
+		final ScalingAnalysis.Method method = choice==0 ? ScalingAnalysis.Method.REPLICATE : ScalingAnalysis.Method.PREFIX;
+
+		controller.getPreviewWindow().show(null);
+		ProgressManager.getInstance().run(new Task.Backgroundable(project, "Analyzing how "+g.name+" scales", true) {
+			@Override
+			public void run(@NotNull ProgressIndicator indicator) {
+				indicator.setText("Parsing "+g.name+" input at "+SIZES+" sizes");
+				indicator.setIndeterminate(false);
+				final ScalingAnalysis analysis = ScalingAnalysis.compute(g, lg, startRuleName, text, method, SIZES, indicator);
+				ApplicationManager.getApplication().invokeLater(() -> {
+					if ( controller.getPreviewPanel()!=null ) {
+						controller.getPreviewPanel().showScalingAnalysis(previewState, analysis);
+					}
+				});
+			}
+		});
+	}
+
+	private static void notify(Project project, String title, String content, NotificationType type) {
+		Notifications.Bus.notify(new Notification(RunANTLROnGrammarFile.groupDisplayId, title, content, type), project);
+	}
+}
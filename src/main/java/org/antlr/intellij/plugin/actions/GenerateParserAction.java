@@ -77,6 +77,9 @@ public class GenerateParserAction extends AnAction implements DumbAware {
 			// refresh from disk to see new files
 			Set<File> generatedFiles = new HashSet<>();
 			generatedFiles.add(new File(gen.getOutputDirName()));
+			for (String targetOutputDir : RunANTLROnGrammarFile.getAdditionalTargetOutputDirs(project, grammarFile).values()) {
+				generatedFiles.add(new File(targetOutputDir));
+			}
 			LocalFileSystem.getInstance().refreshIoFiles(generatedFiles, true, true, null);
 			// pop up a notification
 			Notification notification =
@@ -9,6 +9,7 @@ import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.editor.LogicalPosition;
 import com.intellij.openapi.editor.ScrollType;
 import com.intellij.openapi.editor.ScrollingModel;
+import com.intellij.openapi.editor.ex.MarkupModelEx;
 import com.intellij.openapi.editor.markup.MarkupModel;
 import com.intellij.openapi.editor.markup.RangeHighlighter;
 import com.intellij.openapi.util.Condition;
@@ -77,6 +78,16 @@ public class MyActionUtils {
 		MarkupModel markupModel = editor.getMarkupModel();
 		// collect all highlighters and combine to make a single tool tip
 		List<RangeHighlighter> highlightersAtOffset = new ArrayList<RangeHighlighter>();
+		if ( markupModel instanceof MarkupModelEx ) {
+			// ask the highlighter interval tree rather than walking every highlighter
+			((MarkupModelEx) markupModel).processRangeHighlightersOverlappingWith(offset, offset+1, r -> {
+				if ( offset>=r.getStartOffset() && offset<r.getEndOffset() ) {
+					highlightersAtOffset.add(r);
+				}
+				return true;
+			});
+			return highlightersAtOffset;
+		}
 		for (RangeHighlighter r : markupModel.getAllHighlighters()) {
 			int a = r.getStartOffset();
 			int b = r.getEndOffset();
@@ -0,0 +1,125 @@
+package org.antlr.intellij.plugin.actions;
+
+import com.intellij.ide.util.PropertiesComponent;
+import com.intellij.notification.Notification;
+import com.intellij.notification.NotificationType;
+import com.intellij.notification.Notifications;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.fileChooser.FileChooser;
+import com.intellij.openapi.fileChooser.FileChooserDescriptorFactory;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.DumbAware;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.antlr.intellij.plugin.ANTLRv4PluginController;
+import org.antlr.intellij.plugin.parsing.ParsingUtils;
+import org.antlr.intellij.plugin.parsing.RunANTLROnGrammarFile;
+import org.antlr.intellij.plugin.preview.PreviewState;
+import org.antlr.intellij.plugin.profiler.CorpusProfile;
+import org.antlr.v4.tool.Grammar;
+import org.antlr.v4.tool.LexerGrammar;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/** Profile the grammar's preview start rule over a directory of input
+ *  files instead of the one preview input; see {@link CorpusProfile}.
+ */
+public class ProfileCorpusAction extends AnAction implements DumbAware {
+	public static final Logger LOG = Logger.getInstance("ANTLR ProfileCorpusAction");
+
+	private static final String LAST_DIR_KEY = "antlr.corpus.dir";
+	private static final String LAST_GLOB_KEY = "antlr.corpus.glob";
+
+	@Override
+	public void update(AnActionEvent e) {
+		MyActionUtils.selectedFileIsGrammar(e);
+	}
+
+	@Override
+	public void actionPerformed(final AnActionEvent e) {
+		final Project project = e.getProject();
+		if ( project==null ) {
+			LOG.error("actionPerformed no project for "+e);
+			return; // whoa!
+		}
+		final VirtualFile grammarFile = MyActionUtils.getGrammarFileFromEvent(e);
+		LOG.info("actionPerformed "+(grammarFile==null ? "NONE" : grammarFile));
+		if ( grammarFile==null ) return;
+
+		final ANTLRv4PluginController controller = ANTLRv4PluginController.getInstance(project);
+		final PreviewState previewState = controller.getPreviewState(grammarFile);
+		final Grammar g = ParsingUtils.isBadParserGrammar(previewState.g) ? null : previewState.g;
+		final LexerGrammar lg = ParsingUtils.isBadLexerGrammar(previewState.lg) ? null : previewState.lg;
+		final String startRuleName = previewState.startRuleName;
+		if ( g==null || lg==null ) {
+			notify(project, "can't profile "+grammarFile.getName()+" on a corpus",
+				   "grammar has errors or has not been loaded yet", NotificationType.WARNING);
+			return;
+		}
+		if ( startRuleName==null || g.getRule(startRuleName)==null ) {
+			notify(project, "can't profile "+grammarFile.getName()+" on a corpus",
+				   "choose a start rule in the ANTLR preview first", NotificationType.WARNING);
+			return;
+		}
+
+		PropertiesComponent properties = PropertiesComponent.getInstance(project);
+		String lastDir = properties.getValue(LAST_DIR_KEY);
+		VirtualFile toSelect = lastDir!=null ? LocalFileSystem.getInstance().findFileByPath(lastDir) : null;
+		VirtualFile dir = FileChooser.chooseFile(FileChooserDescriptorFactory.createSingleFolderDescriptor(), project,
+												 toSelect!=null ? toSelect : grammarFile.getParent());
+		if ( dir==null ) return;
+		final String glob = Messages.showInputDialog(project,
+													 "Parse the files below "+dir.getPresentableUrl()+" whose relative path matches glob:",
+													 "Profile Grammar on Corpus", null,
+													 properties.getValue(LAST_GLOB_KEY, "**"), null);
+		if ( glob==null || glob.trim().isEmpty() ) return;
+		properties.setValue(LAST_DIR_KEY, dir.getPath());
+		properties.setValue(LAST_GLOB_KEY, glob.trim());
+		final File corpusDir = new File(dir.getPath());
+
+		controller.getPreviewWindow().show(null);
+		ProgressManager.getInstance().run(new Task.Backgroundable(project, "Profiling "+g.name+" on corpus", true) {
+			@Override
+			public void run(@NotNull ProgressIndicator indicator) {
+				indicator.setText("Finding files matching "+glob.trim());
+				List<File> files;
+				try {
+					files = CorpusProfile.findFiles(corpusDir, glob.trim());
+				}
+				catch (IOException | RuntimeException ex) { // bad glob or unreadable dir
+					ProfileCorpusAction.notify(project, "can't list corpus files in "+corpusDir, String.valueOf(ex.getMessage()),
+											   NotificationType.WARNING);
+					return;
+				}
+				if ( files.isEmpty() ) {
+					ProfileCorpusAction.notify(project, "no corpus files", "no file below "+corpusDir+" matches "+glob.trim(),
+											   NotificationType.INFORMATION);
+					return;
+				}
+				indicator.setText("Profiling "+g.name+" on "+files.size()+" files");
+				indicator.setIndeterminate(false);
+				int threads = Math.max(1, Runtime.getRuntime().availableProcessors()-1);
+				final CorpusProfile profile = CorpusProfile.compute(g, lg, startRuleName, files, threads, indicator);
+				ApplicationManager.getApplication().invokeLater(() -> {
+					if ( controller.getPreviewPanel()!=null ) {
+						controller.getPreviewPanel().showCorpusProfile(previewState, profile);
+					}
+				});
+			}
+		});
+	}
+
+	private static void notify(Project project, String title, String content, NotificationType type) {
+		Notifications.Bus.notify(new Notification(RunANTLROnGrammarFile.groupDisplayId, title, content, type), project);
+	}
+}
@@ -0,0 +1,88 @@
+package org.antlr.intellij.plugin.actions;
+
+import com.intellij.notification.Notification;
+import com.intellij.notification.NotificationType;
+import com.intellij.notification.Notifications;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.DumbAware;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.antlr.intellij.plugin.ANTLRv4PluginController;
+import org.antlr.intellij.plugin.parsing.ParsingUtils;
+import org.antlr.intellij.plugin.parsing.RunANTLROnGrammarFile;
+import org.antlr.intellij.plugin.preview.PreviewState;
+import org.antlr.intellij.plugin.profiler.ParserFootprint;
+import org.antlr.v4.tool.Grammar;
+import org.antlr.v4.tool.LexerGrammar;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+
+/** Report how big the recognizers generated for a grammar are and what they
+ *  cost at startup (ATN deserialization, first parse with a cold DFA).
+ *  Sizes of generated files come from the output dir of the last
+ *  "Generate ANTLR Recognizer" run; the timings use the current preview input.
+ *  Also shows an estimate of the memory the preview keeps for the grammar.
+ */
+public class ShowParserFootprintAction extends AnAction implements DumbAware {
+	public static final Logger LOG = Logger.getInstance("ANTLR ShowParserFootprintAction");
+
+	@Override
+	public void update(AnActionEvent e) {
+		MyActionUtils.selectedFileIsGrammar(e);
+	}
+
+	@Override
+	public void actionPerformed(final AnActionEvent e) {
+		final Project project = e.getProject();
+		if ( project==null ) {
+			LOG.error("actionPerformed no project for "+e);
+			return; // whoa!
+		}
+		final VirtualFile grammarFile = MyActionUtils.getGrammarFileFromEvent(e);
+		LOG.info("actionPerformed "+(grammarFile==null ? "NONE" : grammarFile));
+		if ( grammarFile==null ) return;
+
+		final ANTLRv4PluginController controller = ANTLRv4PluginController.getInstance(project);
+		PreviewState previewState = controller.getPreviewState(grammarFile);
+		final Grammar g = ParsingUtils.isBadParserGrammar(previewState.g) ? null : previewState.g;
+		final LexerGrammar lg = ParsingUtils.isBadLexerGrammar(previewState.lg) ? null : previewState.lg;
+		if ( g==null && lg==null ) {
+			Notification notification =
+				new Notification(RunANTLROnGrammarFile.groupDisplayId,
+								 "can't compute footprint of " + grammarFile.getName(),
+								 "grammar has errors or has not been loaded yet",
+								 NotificationType.WARNING);
+			Notifications.Bus.notify(notification, project);
+			return;
+		}
+
+		Editor inputEditor = previewState.getInputEditor();
+		final String inputText = inputEditor!=null ? inputEditor.getDocument().getText() : null;
+		final String startRuleName = previewState.startRuleName;
+		final long previewRetainedSize = previewState.getRetainedSize();
+		final File outputDir = new File(RunANTLROnGrammarFile.getOutputDirName(project, grammarFile));
+
+		controller.getPreviewWindow().show(null);
+		ProgressManager.getInstance().run(new Task.Backgroundable(project, "Measuring parser footprint", false) {
+			@Override
+			public void run(@NotNull ProgressIndicator indicator) {
+				indicator.setIndeterminate(true);
+				final ParserFootprint footprint = ParserFootprint.compute(g, lg, inputText, startRuleName, outputDir);
+				footprint.add("Preview retained (estimate)", previewRetainedSize, "bytes");
+				ApplicationManager.getApplication().invokeLater(() -> {
+					if ( controller.getPreviewPanel()!=null ) {
+						controller.getPreviewPanel().showFootprint(grammarFile, footprint);
+					}
+				});
+			}
+		});
+	}
+}
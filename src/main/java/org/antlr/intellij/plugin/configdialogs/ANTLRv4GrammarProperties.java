@@ -10,6 +10,8 @@ import org.antlr.intellij.plugin.parsing.CaseChangingStrategy;
 import org.antlr.intellij.plugin.parsing.RunANTLROnGrammarFile;
 
 import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import static org.apache.commons.lang.StringUtils.isNotBlank;
 
@@ -47,6 +49,14 @@ public class ANTLRv4GrammarProperties implements Cloneable {
     @Property
     String language;
 
+    /**
+     * Extra target languages generated from the same grammar analysis, as a
+     * comma-separated list of {@code language[=outputDir]} entries, e.g.
+     * {@code Python3=gen/python, Go}.
+     */
+    @Property
+    String additionalTargets;
+
     @Property
     boolean generateListener = true;
 
@@ -68,6 +78,7 @@ public class ANTLRv4GrammarProperties implements Cloneable {
         this.encoding = source.encoding;
         this.pkg = source.pkg;
         this.language = source.language;
+        this.additionalTargets = source.additionalTargets;
         this.generateListener = source.generateListener;
         this.generateVisitor = source.generateVisitor;
         this.caseChangingStrategy = source.caseChangingStrategy;
@@ -97,6 +108,36 @@ public class ANTLRv4GrammarProperties implements Cloneable {
         return language;
     }
 
+    public String getAdditionalTargets() {
+        return additionalTargets;
+    }
+
+    /**
+     * Parses {@link #additionalTargets} into a map from target language to the
+     * output dir configured for it, in declaration order. The output dir is
+     * empty if none was given for that language.
+     */
+    public Map<String, String> getAdditionalTargetOutputDirs() {
+        Map<String, String> targets = new LinkedHashMap<>();
+        if ( additionalTargets==null ) {
+            return targets;
+        }
+        for (String target : additionalTargets.split(",")) {
+            String language = target;
+            String dir = "";
+            int eq = target.indexOf('=');
+            if ( eq>=0 ) {
+                language = target.substring(0, eq);
+                dir = target.substring(eq+1).trim();
+            }
+            language = language.trim();
+            if ( !language.isEmpty() ) {
+                targets.put(language, dir);
+            }
+        }
+        return targets;
+    }
+
     public boolean shouldGenerateParseTreeListener() {
         return generateListener;
     }
@@ -111,7 +152,25 @@ public class ANTLRv4GrammarProperties implements Cloneable {
 
     public String resolveOutputDirName(Project project, VirtualFile contentRoot, String package_) {
         String outputDirName = outputDir.isEmpty() ? RunANTLROnGrammarFile.OUTPUT_DIR_NAME : outputDir;
+        return resolveOutputDirName(project, contentRoot, package_, outputDirName);
+    }
+
+    /**
+     * Resolve the output dir for one of the {@link #getAdditionalTargetOutputDirs() additional targets}.
+     * Without an explicit dir, code goes to a subdirectory named after the language
+     * inside the regular output dir.
+     */
+    public String resolveTargetOutputDirName(Project project, VirtualFile contentRoot, String package_,
+                                             String language, String targetOutputDir) {
+        String outputDirName = targetOutputDir;
+        if ( outputDirName==null || outputDirName.isEmpty() ) {
+            String baseDir = outputDir.isEmpty() ? RunANTLROnGrammarFile.OUTPUT_DIR_NAME : outputDir;
+            outputDirName = baseDir + File.separator + language;
+        }
+        return resolveOutputDirName(project, contentRoot, package_, outputDirName);
+    }
 
+    private static String resolveOutputDirName(Project project, VirtualFile contentRoot, String package_, String outputDirName) {
         outputDirName = PathMacroManager.getInstance(project).expandPath(outputDirName);
 
         File f = new File(outputDirName);
@@ -120,6 +120,7 @@ public class ANTLRv4GrammarPropertiesStore {
 		defaultSettings.encoding = "";
 		defaultSettings.pkg = "";
 		defaultSettings.language = "";
+		defaultSettings.additionalTargets = "";
 		defaultSettings.generateListener = true;
 		defaultSettings.generateVisitor = true;
 		defaultSettings.caseChangingStrategy = CaseChangingStrategy.LEAVE_AS_IS;
@@ -31,6 +31,7 @@ public class ConfigANTLRPerGrammar extends DialogWrapper {
 	private JTextField fileEncodingField;
 	protected JCheckBox autoGenerateParsersCheckBox;
 	protected JTextField languageField;
+	protected JTextField additionalTargetsField;
 	private JComboBox<CaseChangingStrategy> caseTransformation;
 
 	private ConfigANTLRPerGrammar(final Project project) {
@@ -76,6 +77,7 @@ public class ConfigANTLRPerGrammar extends DialogWrapper {
 		fileEncodingField.setText(grammarProperties.getEncoding());
 		packageField.setText(grammarProperties.getPackage());
 		languageField.setText(grammarProperties.getLanguage());
+		additionalTargetsField.setText(grammarProperties.getAdditionalTargets());
 		caseTransformation.setSelectedItem(grammarProperties.getCaseChangingStrategy());
 		generateParseTreeListenerCheckBox.setSelected(grammarProperties.shouldGenerateParseTreeListener());
 		generateParseTreeVisitorCheckBox.setSelected(grammarProperties.shouldGenerateParseTreeVisitor());
@@ -90,6 +92,7 @@ public class ConfigANTLRPerGrammar extends DialogWrapper {
 		grammarProperties.encoding = getFileEncodingText();
 		grammarProperties.pkg = getPackageFieldText();
 		grammarProperties.language = getLanguageText();
+		grammarProperties.additionalTargets = getAdditionalTargetsText();
 		grammarProperties.caseChangingStrategy = getCaseChangingStrategy();
 		grammarProperties.generateListener = generateParseTreeListenerCheckBox.isSelected();
 		grammarProperties.generateVisitor = generateParseTreeVisitorCheckBox.isSelected();
@@ -101,6 +104,7 @@ public class ConfigANTLRPerGrammar extends DialogWrapper {
 				|| !Objects.equals(originalProperties.getEncoding(), getFileEncodingText())
 				|| !Objects.equals(originalProperties.getPackage(), getPackageFieldText())
 				|| !Objects.equals(originalProperties.getLanguage(), getLanguageText())
+				|| !Objects.equals(originalProperties.getAdditionalTargets(), getAdditionalTargetsText())
 				|| !Objects.equals(originalProperties.caseChangingStrategy, getCaseChangingStrategy());
 	}
 
@@ -108,6 +112,10 @@ public class ConfigANTLRPerGrammar extends DialogWrapper {
 		return languageField.getText();
 	}
 
+	String getAdditionalTargetsText() {
+		return additionalTargetsField.getText();
+	}
+
 	String getPackageFieldText() {
 		return packageField.getText();
 	}
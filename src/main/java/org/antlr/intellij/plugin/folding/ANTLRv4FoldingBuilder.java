@@ -17,6 +17,8 @@ import org.antlr.intellij.adaptor.lexer.RuleIElementType;
 import org.antlr.intellij.adaptor.lexer.TokenIElementType;
 import org.antlr.intellij.plugin.ANTLRv4FileRoot;
 import org.antlr.intellij.plugin.ANTLRv4TokenTypes;
+import org.antlr.intellij.plugin.metrics.Metrics;
+import org.antlr.intellij.plugin.metrics.Timer;
 import org.antlr.intellij.plugin.parser.ANTLRv4Lexer;
 import org.antlr.intellij.plugin.parser.ANTLRv4Parser;
 import org.antlr.intellij.plugin.psi.*;
@@ -53,6 +55,9 @@ public class ANTLRv4FoldingBuilder extends CustomFoldingBuilder {
             ANTLRv4TokenTypes.getRuleElementType(ANTLRv4Parser.RULE_ruleBlock)
     );
 
+    private static final Timer BUILD_TIMER =
+            Metrics.timer("folding.build", "Building the fold regions of a grammar");
+
 
     @Override
     protected void buildLanguageFoldRegions(@NotNull List<FoldingDescriptor> descriptors,
@@ -61,19 +66,25 @@ public class ANTLRv4FoldingBuilder extends CustomFoldingBuilder {
                                             boolean quick) {
         if (!(root instanceof ANTLRv4FileRoot)) return;
 
-        addRuleRefFoldingDescriptors(descriptors, root);
+        long start = System.nanoTime();
+        try {
+            addRuleRefFoldingDescriptors(descriptors, root);
 
-        addActionFoldingDescriptors(descriptors, root);
+            addActionFoldingDescriptors(descriptors, root);
 
-        addHeaderFoldingDescriptor(descriptors, root, document);
+            addHeaderFoldingDescriptor(descriptors, root, document);
 
-        addCommentDescriptors(descriptors, root);
+            addCommentDescriptors(descriptors, root);
 
-        addOptionsFoldingDescriptor(descriptors, root);
+            addOptionsFoldingDescriptor(descriptors, root);
 
-        addTokensFoldingDescriptor(descriptors, root);
+            addTokensFoldingDescriptor(descriptors, root);
 
-        addModeFoldingDescriptors(descriptors, root);
+            addModeFoldingDescriptors(descriptors, root);
+        }
+        finally {
+            BUILD_TIMER.record(System.nanoTime()-start);
+        }
     }
 
     private static void addTokensFoldingDescriptor(List<FoldingDescriptor> descriptors, PsiElement root) {
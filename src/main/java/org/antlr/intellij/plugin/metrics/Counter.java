@@ -0,0 +1,30 @@
+package org.antlr.intellij.plugin.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** Counts events; cheap enough to bump from any thread on every call */
+public class Counter extends Metric implements CounterMXBean {
+	private final LongAdder count = new LongAdder();
+
+	Counter(String name, String description) {
+		super(name, description);
+	}
+
+	public void increment() {
+		count.increment();
+	}
+
+	public void add(long n) {
+		count.add(n);
+	}
+
+	@Override
+	public long getCount() {
+		return count.sum();
+	}
+
+	@Override
+	public void reset() {
+		count.reset();
+	}
+}
@@ -0,0 +1,12 @@
+package org.antlr.intellij.plugin.metrics;
+
+/** JMX view of a {@link Counter} */
+public interface CounterMXBean {
+	String getName();
+
+	String getDescription();
+
+	long getCount();
+
+	void reset();
+}
@@ -0,0 +1,23 @@
+package org.antlr.intellij.plugin.metrics;
+
+/** A named measurement kept by {@link Metrics} */
+public abstract class Metric {
+	protected final String name;
+	protected final String description;
+
+	protected Metric(String name, String description) {
+		this.name = name;
+		this.description = description;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	/** Start counting from zero again */
+	public abstract void reset();
+}
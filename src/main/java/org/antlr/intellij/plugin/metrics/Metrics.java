@@ -0,0 +1,71 @@
+package org.antlr.intellij.plugin.metrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/** The plugin's counters and timers around the operations that can slow
+ *  the IDE down, so they can be looked at on a developer's machine without
+ *  attaching a profiler: in the ANTLR Metrics tool window and over JMX
+ *  (see {@link MetricsJmxExporter}).
+ *
+ *  Like loggers, metrics are looked up by name once and kept in a static
+ *  field: {@code Metrics.timer("grammar.load", "...")}. Asking for a name
+ *  again returns the same metric.
+ */
+public class Metrics {
+	private static final Map<String, Metric> metrics = new ConcurrentHashMap<>();
+	private static final List<Consumer<Metric>> listeners = new CopyOnWriteArrayList<>();
+
+	private Metrics() {
+	}
+
+	public static Timer timer(String name, String description) {
+		return get(name, Timer.class, () -> new Timer(name, description));
+	}
+
+	public static Counter counter(String name, String description) {
+		return get(name, Counter.class, () -> new Counter(name, description));
+	}
+
+	private static <M extends Metric> M get(String name, Class<M> type, Supplier<M> create) {
+		Metric[] created = new Metric[1];
+		Metric metric = metrics.computeIfAbsent(name, n -> created[0] = create.get());
+		if ( !type.isInstance(metric) ) {
+			throw new IllegalArgumentException("metric "+name+" is a "+metric.getClass().getSimpleName());
+		}
+		if ( created[0]!=null ) {
+			for (Consumer<Metric> listener : listeners) {
+				listener.accept(created[0]);
+			}
+		}
+		return type.cast(metric);
+	}
+
+	/** All metrics by name */
+	public static List<Metric> getAll() {
+		List<Metric> all = new ArrayList<>(metrics.values());
+		all.sort(Comparator.comparing(Metric::getName));
+		return all;
+	}
+
+	public static void resetAll() {
+		for (Metric m : metrics.values()) {
+			m.reset();
+		}
+	}
+
+	/** Tell listener about the metrics created from now on */
+	public static void addListener(Consumer<Metric> listener) {
+		listeners.add(listener);
+	}
+
+	public static void removeListener(Consumer<Metric> listener) {
+		listeners.remove(listener);
+	}
+}
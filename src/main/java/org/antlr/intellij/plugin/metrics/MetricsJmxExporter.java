@@ -0,0 +1,72 @@
+package org.antlr.intellij.plugin.metrics;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/** Registers every {@link Metrics} metric as an MXBean on the platform
+ *  MBean server, under {@value #DOMAIN}, for as long as the plugin is
+ *  loaded; look for them with JConsole or VisualVM. Metrics created later
+ *  are registered as they show up.
+ */
+public class MetricsJmxExporter implements Disposable {
+	public static final Logger LOG = Logger.getInstance("ANTLR MetricsJmxExporter");
+
+	public static final String DOMAIN = "org.antlr.intellij.plugin";
+
+	private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+	private final List<ObjectName> registered = new ArrayList<>();
+	private final Consumer<Metric> listener = this::register;
+
+	public MetricsJmxExporter() {
+		Metrics.addListener(listener);
+		for (Metric m : Metrics.getAll()) {
+			register(m);
+		}
+	}
+
+	public static MetricsJmxExporter getInstance() {
+		return ServiceManager.getService(MetricsJmxExporter.class);
+	}
+
+	private synchronized void register(Metric m) {
+		try {
+			ObjectName name = getObjectName(m);
+			if ( !server.isRegistered(name) ) {
+				server.registerMBean(m, name);
+				registered.add(name);
+			}
+		}
+		catch (JMException e) {
+			LOG.warn("can't export metric "+m.getName()+" over JMX", e);
+		}
+	}
+
+	public static ObjectName getObjectName(Metric m) throws MalformedObjectNameException {
+		String type = m instanceof Timer ? "Timer" : "Counter";
+		return new ObjectName(DOMAIN+":type="+type+",name="+ObjectName.quote(m.getName()));
+	}
+
+	@Override
+	public synchronized void dispose() {
+		Metrics.removeListener(listener);
+		for (ObjectName name : registered) {
+			try {
+				server.unregisterMBean(name);
+			}
+			catch (JMException e) {
+				LOG.warn("can't unregister "+name, e);
+			}
+		}
+		registered.clear();
+	}
+}
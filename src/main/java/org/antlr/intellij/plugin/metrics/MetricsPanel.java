@@ -0,0 +1,129 @@
+package org.antlr.intellij.plugin.metrics;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.ui.components.JBLabel;
+import com.intellij.ui.components.JBScrollPane;
+import com.intellij.ui.table.JBTable;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.TableRowSorter;
+import java.awt.*;
+import java.awt.event.MouseEvent;
+import java.util.List;
+
+/** Content of the ANTLR Metrics tool window: every {@link Metrics} metric,
+ *  refreshed every second while the window is showing.
+ */
+public class MetricsPanel extends JPanel implements Disposable {
+	private static final int REFRESH_MS = 1000;
+
+	private final MetricTableModel model = new MetricTableModel();
+	private final javax.swing.Timer refreshTimer = new javax.swing.Timer(REFRESH_MS, e -> refresh());
+
+	public MetricsPanel() {
+		super(new BorderLayout());
+		JPanel toolbar = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		JButton resetButton = new JButton("Reset");
+		resetButton.addActionListener(e -> {
+			Metrics.resetAll();
+			refresh();
+		});
+		toolbar.add(resetButton);
+		toolbar.add(new JBLabel("Times in ms; also exported over JMX under "+MetricsJmxExporter.DOMAIN));
+		add(toolbar, BorderLayout.NORTH);
+
+		JBTable table = new JBTable(model) {
+			@Override
+			public String getToolTipText(MouseEvent e) {
+				int row = rowAtPoint(e.getPoint());
+				if ( row<0 ) return null;
+				return model.metrics.get(convertRowIndexToModel(row)).getDescription();
+			}
+		};
+		table.setRowSorter(new TableRowSorter<AbstractTableModel>(model));
+		add(new JBScrollPane(table), BorderLayout.CENTER);
+
+		refreshTimer.start();
+	}
+
+	private void refresh() {
+		if ( !isShowing() ) return;
+		List<Metric> all = Metrics.getAll();
+		if ( all.size()!=model.metrics.size() ) {
+			model.metrics = all;
+			model.fireTableDataChanged();
+		}
+		else if ( !all.isEmpty() ) {
+			model.fireTableRowsUpdated(0, all.size()-1);
+		}
+	}
+
+	@Override
+	public void dispose() {
+		refreshTimer.stop();
+	}
+
+	static class MetricTableModel extends AbstractTableModel {
+		private static final String[] columnNames = {
+			"Metric", "Count", "Total", "Mean", "50%", "90%", "99%", "Max"
+		};
+		private static final Class<?>[] columnClasses = {
+			String.class, Long.class, Double.class, Double.class, Double.class, Double.class, Double.class, Double.class
+		};
+
+		List<Metric> metrics = Metrics.getAll();
+
+		@Override
+		public String getColumnName(int column) {
+			return columnNames[column];
+		}
+
+		@Override
+		public Class<?> getColumnClass(int columnIndex) {
+			return columnClasses[columnIndex];
+		}
+
+		@Override
+		public int getColumnCount() {
+			return columnNames.length;
+		}
+
+		@Override
+		public int getRowCount() {
+			return metrics.size();
+		}
+
+		@Override
+		public Object getValueAt(int row, int col) {
+			Metric metric = metrics.get(row);
+			if ( col==0 ) return metric.getName();
+			if ( metric instanceof Counter ) {
+				return col==1 ? ((Counter) metric).getCount() : null;
+			}
+			Timer timer = (Timer) metric;
+			switch (col) {
+				case 1 :
+					return timer.getCount();
+				case 2 :
+					return round(timer.getTotalMillis());
+				case 3 :
+					return round(timer.getMeanMillis());
+				case 4 :
+					return round(timer.getP50Millis());
+				case 5 :
+					return round(timer.getP90Millis());
+				case 6 :
+					return round(timer.getP99Millis());
+				case 7 :
+					return round(timer.getMaxMillis());
+			}
+			return "";
+		}
+
+		/** Microsecond precision */
+		private static double round(double ms) {
+			return Math.round(ms*1000)/1000.0;
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package org.antlr.intellij.plugin.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Durations of an operation in ns: count, total, max and a histogram
+ *  for percentiles. The histogram has 8 buckets per power of two, so a
+ *  percentile is off by at most 1/8 of its value, in a fixed 4 KB however
+ *  many times were recorded. Recording is lock free, to be done as
+ *
+ *  <pre>
+ *  long start = System.nanoTime();
+ *  try { ... }
+ *  finally { TIMER.record(System.nanoTime()-start); }
+ *  </pre>
+ */
+public class Timer extends Metric implements TimerMXBean {
+	static final int SUB_BUCKET_BITS = 3;
+	static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	static final int BUCKETS = (64-SUB_BUCKET_BITS+1)*SUB_BUCKETS;
+
+	private final LongAdder count = new LongAdder();
+	private final LongAdder total = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+	Timer(String name, String description) {
+		super(name, description);
+	}
+
+	public void record(long nanos) {
+		if ( nanos<0 ) nanos = 0;
+		count.increment();
+		total.add(nanos);
+		max.accumulateAndGet(nanos, Math::max);
+		buckets.incrementAndGet(bucket(nanos));
+	}
+
+	/** Values below SUB_BUCKETS get a bucket each; above, each power of two
+	 *  is split into SUB_BUCKETS by the bits after the highest one.
+	 */
+	static int bucket(long value) {
+		if ( value<SUB_BUCKETS ) return (int) value;
+		int exponent = 63-Long.numberOfLeadingZeros(value); // >= SUB_BUCKET_BITS
+		int sub = (int) (value >>> (exponent-SUB_BUCKET_BITS)) & (SUB_BUCKETS-1);
+		return (exponent-SUB_BUCKET_BITS+1)*SUB_BUCKETS+sub;
+	}
+
+	/** Largest value that falls in bucket */
+	static long bucketUpperBound(int bucket) {
+		if ( bucket<SUB_BUCKETS ) return bucket;
+		int exponent = bucket/SUB_BUCKETS+SUB_BUCKET_BITS-1;
+		long sub = bucket%SUB_BUCKETS;
+		int shift = exponent-SUB_BUCKET_BITS;
+		long bound = ((SUB_BUCKETS+sub+1) << shift)-1;
+		return bound>=0 ? bound : Long.MAX_VALUE; // the top bucket overflows
+	}
+
+	/** Time in ns below which fraction (0..1] of the recorded times are; 0 if none */
+	public long getPercentile(double fraction) {
+		long n = 0;
+		for (int i = 0; i<BUCKETS; i++) {
+			n += buckets.get(i);
+		}
+		if ( n==0 ) return 0;
+		long rank = Math.max(1, (long) Math.ceil(fraction*n));
+		long seen = 0;
+		for (int i = 0; i<BUCKETS; i++) {
+			seen += buckets.get(i);
+			if ( seen>=rank ) {
+				return Math.min(bucketUpperBound(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	@Override
+	public long getCount() {
+		return count.sum();
+	}
+
+	/** ns */
+	public long getTotal() {
+		return total.sum();
+	}
+
+	/** ns */
+	public long getMax() {
+		return max.get();
+	}
+
+	@Override
+	public double getTotalMillis() {
+		return millis(getTotal());
+	}
+
+	@Override
+	public double getMeanMillis() {
+		long n = getCount();
+		return n>0 ? millis(getTotal())/n : 0;
+	}
+
+	@Override
+	public double getP50Millis() {
+		return millis(getPercentile(0.5));
+	}
+
+	@Override
+	public double getP90Millis() {
+		return millis(getPercentile(0.9));
+	}
+
+	@Override
+	public double getP99Millis() {
+		return millis(getPercentile(0.99));
+	}
+
+	@Override
+	public double getMaxMillis() {
+		return millis(getMax());
+	}
+
+	@Override
+	public void reset() {
+		count.reset();
+		total.reset();
+		max.set(0);
+		for (int i = 0; i<BUCKETS; i++) {
+			buckets.set(i, 0);
+		}
+	}
+
+	private static double millis(long nanos) {
+		return nanos/(1000.0*1000.0);
+	}
+}
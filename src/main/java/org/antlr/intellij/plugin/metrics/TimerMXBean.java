@@ -0,0 +1,24 @@
+package org.antlr.intellij.plugin.metrics;
+
+/** JMX view of a {@link Timer}; times in ms */
+public interface TimerMXBean {
+	String getName();
+
+	String getDescription();
+
+	long getCount();
+
+	double getTotalMillis();
+
+	double getMeanMillis();
+
+	double getP50Millis();
+
+	double getP90Millis();
+
+	double getP99Millis();
+
+	double getMaxMillis();
+
+	void reset();
+}
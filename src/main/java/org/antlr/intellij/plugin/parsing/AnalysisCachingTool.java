@@ -0,0 +1,140 @@
+package org.antlr.intellij.plugin.parsing;
+
+import org.antlr.v4.Tool;
+import org.antlr.v4.analysis.AnalysisPipeline;
+import org.antlr.v4.automata.ATNFactory;
+import org.antlr.v4.automata.LexerATNFactory;
+import org.antlr.v4.automata.ParserATNFactory;
+import org.antlr.v4.codegen.CodeGenerator;
+import org.antlr.v4.semantics.SemanticPipeline;
+import org.antlr.v4.tool.ErrorType;
+import org.antlr.v4.tool.Grammar;
+import org.antlr.v4.tool.LexerGrammar;
+import org.antlr.v4.tool.ast.GrammarAST;
+import org.antlr.v4.tool.ast.GrammarRootAST;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/** A {@link Tool} that takes the ATN of a grammar from a
+ *  {@link GrammarAnalysisCache} instead of rebuilding and analyzing it when
+ *  the grammar hasn't changed. Parsing and the semantic phase still run so
+ *  the resulting {@link Grammar} is complete (rules, ASTs, token tables);
+ *  only ATN construction and analysis are skipped. Code generation always
+ *  goes through the regular tool.
+ *
+ *  Imported grammars are parsed through an {@link ImportedGrammarCache}, if
+ *  given, rather than from scratch by every tool instance.
+ */
+public class AnalysisCachingTool extends Tool {
+	@Nullable
+	private final GrammarAnalysisCache cache;
+	@Nullable
+	private final ImportedGrammarCache importCache;
+
+	/** Imported grammars loaded by this tool, by name; like Tool's own private map */
+	private final Map<String, Grammar> importedGrammars = new HashMap<>();
+
+	public AnalysisCachingTool(@Nullable GrammarAnalysisCache cache) {
+		this(cache, null, null);
+	}
+
+	public AnalysisCachingTool(@Nullable GrammarAnalysisCache cache, String[] args) {
+		this(cache, null, args);
+	}
+
+	public AnalysisCachingTool(@Nullable GrammarAnalysisCache cache,
+							   @Nullable ImportedGrammarCache importCache,
+							   String[] args)
+	{
+		super(args);
+		this.cache = cache;
+		this.importCache = importCache;
+	}
+
+	/** Same as {@link Tool#loadImportedGrammar(Grammar, GrammarAST)} but gets
+	 *  the AST from the shared import cache.
+	 */
+	@Override
+	public Grammar loadImportedGrammar(Grammar g, GrammarAST nameNode) throws IOException {
+		if ( importCache==null ) {
+			return super.loadImportedGrammar(g, nameNode);
+		}
+		String name = nameNode.getText();
+		Grammar imported = importedGrammars.get(name);
+		if ( imported!=null ) return imported;
+
+		g.tool.log("grammar", "load " + name + " from " + g.fileName);
+		File importedFile = null;
+		for (String extension : ALL_GRAMMAR_EXTENSIONS) {
+			importedFile = getImportedGrammarFile(g, name + extension);
+			if ( importedFile!=null ) break;
+		}
+		if ( importedFile==null ) {
+			errMgr.grammarError(ErrorType.CANNOT_FIND_IMPORTED_GRAMMAR, g.fileName, nameNode.getToken(), name);
+			return null;
+		}
+
+		GrammarRootAST root = importCache.getAST(this, importedFile, g.fileName);
+		if ( root==null ) return null;
+
+		imported = createGrammar(root);
+		imported.fileName = importedFile.getAbsolutePath();
+		importedGrammars.put(root.getGrammarName(), imported);
+		return imported;
+	}
+
+	/** Same as {@link Tool#processNonCombinedGrammar(Grammar, boolean)} up to
+	 *  ATN construction, which we skip on a cache hit.
+	 */
+	@Override
+	public void processNonCombinedGrammar(Grammar g, boolean gencode) {
+		if ( cache==null || gencode ) {
+			super.processNonCombinedGrammar(g, gencode);
+			return;
+		}
+		if ( g.ast==null || g.ast.hasErrors ) return;
+
+		boolean ruleFail = checkForRuleIssues(g);
+		if ( ruleFail ) return;
+
+		int prevErrors = errMgr.getNumErrors();
+		SemanticPipeline sem = new SemanticPipeline(g);
+		sem.process();
+
+		String language = g.getOptionString("language");
+		if ( !CodeGenerator.targetExists(language) ) {
+			errMgr.toolError(ErrorType.CANNOT_CREATE_TARGET_GENERATOR, language);
+			return;
+		}
+
+		if ( errMgr.getNumErrors()>prevErrors ) return;
+
+		String key = GrammarAnalysisCache.computeKey(g);
+		GrammarAnalysisCache.Entry entry = cache.load(g, key);
+		if ( entry!=null ) {
+			g.atn = entry.deserializeATN();
+			if ( !g.isLexer() ) {
+				g.stateToGrammarRegionMap = entry.stateToGrammarRegionMap;
+			}
+			return;
+		}
+
+		int prevWarnings = errMgr.warnings;
+		ATNFactory factory;
+		if ( g.isLexer() ) factory = new LexerATNFactory((LexerGrammar)g);
+		else factory = new ParserATNFactory(g);
+		g.atn = factory.createATN();
+
+		AnalysisPipeline anal = new AnalysisPipeline(g);
+		anal.process();
+
+		// messages from the phases we skip on a hit are not cached, so only cache clean grammars
+		if ( errMgr.getNumErrors()==prevErrors && errMgr.warnings==prevWarnings ) {
+			cache.store(g, key);
+		}
+	}
+}
@@ -0,0 +1,407 @@
+package org.antlr.intellij.plugin.parsing;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.Parser;
+import org.antlr.v4.runtime.RuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.WritableToken;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.misc.Pair;
+import org.antlr.v4.runtime.misc.Utils;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeVisitor;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/** The tokens of one input kept as parallel int arrays, one entry per
+ *  token, instead of a {@link org.antlr.v4.runtime.CommonToken} apiece:
+ *  24 bytes a token rather than ~52. All tokens come from the same token
+ *  source and the token index is the entry's position, so neither is stored;
+ *  token text is read from the input when asked for unless the lexer set it.
+ *
+ *  As a list, {@link #get} returns a flyweight {@link TokenView} of an entry,
+ *  made on demand. Views aren't unique: compare tokens with equals() or by
+ *  token index, not ==. {@link TokenNode}s, leaves of a parse tree, refer
+ *  to their entry instead of holding a view.
+ *
+ *  Arrays grow a page at a time so adding never copies what's there and
+ *  huge inputs don't need huge contiguous arrays.
+ */
+public class CompactTokenStore extends AbstractList<Token> implements RandomAccess {
+	private static final int PAGE_SHIFT = 14;
+	private static final int PAGE_SIZE = 1<<PAGE_SHIFT;
+	private static final int PAGE_MASK = PAGE_SIZE-1;
+	private static final int RECENT_VIEWS = 256;
+
+	private final Pair<TokenSource, CharStream> source;
+
+	private int[][] types = new int[0][];
+	private int[][] channels = new int[0][];
+	private int[][] starts = new int[0][];
+	private int[][] stops = new int[0][];
+	private int[][] lines = new int[0][];
+	private int[][] columns = new int[0][];
+	private int size;
+
+	/** token index -> text for the few tokens whose text isn't their input chars */
+	private final Map<Integer, String> texts = new HashMap<>();
+
+	/** Views handed out lately, by token index mod RECENT_VIEWS. The parser
+	 *  asks for the same token over and over (LT(1), rule start, match);
+	 *  reusing its view lets the parse tree share one object per token.
+	 */
+	private final TokenView[] recentViews = new TokenView[RECENT_VIEWS];
+
+	public CompactTokenStore(TokenSource tokenSource) {
+		this.source = new Pair<>(tokenSource, tokenSource.getInputStream());
+	}
+
+	public TokenSource getTokenSource() {
+		return source.a;
+	}
+
+	public CharStream getInputStream() {
+		return source.b;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public Token get(int i) {
+		checkIndex(i);
+		int slot = i%RECENT_VIEWS;
+		TokenView view = recentViews[slot];
+		if ( view==null || view.index!=i ) {
+			view = new TokenView(this, i);
+			recentViews[slot] = view;
+		}
+		return view;
+	}
+
+	/** Append a copy of t; its token index becomes its position here */
+	@Override
+	public boolean add(Token t) {
+		String text = t.getText();
+		if ( text!=null && text.equals(getInputText(t.getType(), t.getStartIndex(), t.getStopIndex())) ) {
+			text = null;
+		}
+		add(t, text);
+		return true;
+	}
+
+	/** Append a copy of t whose text, if not null, was set by the lexer */
+	void add(Token t, String text) {
+		int page = size>>>PAGE_SHIFT;
+		if ( page==types.length ) {
+			addPage();
+		}
+		int i = size&PAGE_MASK;
+		types[page][i] = t.getType();
+		channels[page][i] = t.getChannel();
+		starts[page][i] = t.getStartIndex();
+		stops[page][i] = t.getStopIndex();
+		lines[page][i] = t.getLine();
+		columns[page][i] = t.getCharPositionInLine();
+		if ( text!=null ) {
+			texts.put(size, text);
+		}
+		size++;
+		modCount++;
+	}
+
+	@Override
+	public void clear() {
+		types = channels = starts = stops = lines = columns = new int[0][];
+		texts.clear();
+		Arrays.fill(recentViews, null);
+		size = 0;
+		modCount++;
+	}
+
+	public int getType(int i) {
+		checkIndex(i);
+		return types[i>>>PAGE_SHIFT][i&PAGE_MASK];
+	}
+
+	public int getChannel(int i) {
+		checkIndex(i);
+		return channels[i>>>PAGE_SHIFT][i&PAGE_MASK];
+	}
+
+	public int getStartIndex(int i) {
+		checkIndex(i);
+		return starts[i>>>PAGE_SHIFT][i&PAGE_MASK];
+	}
+
+	public int getStopIndex(int i) {
+		checkIndex(i);
+		return stops[i>>>PAGE_SHIFT][i&PAGE_MASK];
+	}
+
+	public int getLine(int i) {
+		checkIndex(i);
+		return lines[i>>>PAGE_SHIFT][i&PAGE_MASK];
+	}
+
+	public int getCharPositionInLine(int i) {
+		checkIndex(i);
+		return columns[i>>>PAGE_SHIFT][i&PAGE_MASK];
+	}
+
+	public String getText(int i) {
+		String text = texts.get(i);
+		if ( text!=null ) return text;
+		return getInputText(getType(i), getStartIndex(i), getStopIndex(i));
+	}
+
+	/** Same as {@link org.antlr.v4.runtime.CommonToken#getText} for a token without text set */
+	private String getInputText(int type, int start, int stop) {
+		CharStream input = source.b;
+		if ( input==null ) return null;
+		int n = input.size();
+		if ( type!=Token.EOF && start<n && stop<n ) {
+			return input.getText(Interval.of(start, stop));
+		}
+		return "<EOF>";
+	}
+
+	private void addPage() {
+		int n = types.length+1;
+		types = Arrays.copyOf(types, n);
+		channels = Arrays.copyOf(channels, n);
+		starts = Arrays.copyOf(starts, n);
+		stops = Arrays.copyOf(stops, n);
+		lines = Arrays.copyOf(lines, n);
+		columns = Arrays.copyOf(columns, n);
+		types[n-1] = new int[PAGE_SIZE];
+		channels[n-1] = new int[PAGE_SIZE];
+		starts[n-1] = new int[PAGE_SIZE];
+		stops[n-1] = new int[PAGE_SIZE];
+		lines[n-1] = new int[PAGE_SIZE];
+		columns[n-1] = new int[PAGE_SIZE];
+	}
+
+	private void checkIndex(int i) {
+		if ( i<0 || i>=size ) {
+			throw new IndexOutOfBoundsException("token index "+i+" not in 0.."+(size-1));
+		}
+	}
+
+	private void set(int i, int[][] field, int value) {
+		checkIndex(i);
+		field[i>>>PAGE_SHIFT][i&PAGE_MASK] = value;
+	}
+
+	/** A token entry of a store; setters write through to the store */
+	public static final class TokenView implements WritableToken {
+		private final CompactTokenStore store;
+		private final int index;
+
+		TokenView(CompactTokenStore store, int index) {
+			this.store = store;
+			this.index = index;
+		}
+
+		@Override
+		public String getText() {
+			return store.getText(index);
+		}
+
+		@Override
+		public int getType() {
+			return store.getType(index);
+		}
+
+		@Override
+		public int getLine() {
+			return store.getLine(index);
+		}
+
+		@Override
+		public int getCharPositionInLine() {
+			return store.getCharPositionInLine(index);
+		}
+
+		@Override
+		public int getChannel() {
+			return store.getChannel(index);
+		}
+
+		@Override
+		public int getTokenIndex() {
+			return index;
+		}
+
+		@Override
+		public int getStartIndex() {
+			return store.getStartIndex(index);
+		}
+
+		@Override
+		public int getStopIndex() {
+			return store.getStopIndex(index);
+		}
+
+		@Override
+		public TokenSource getTokenSource() {
+			return store.source.a;
+		}
+
+		@Override
+		public CharStream getInputStream() {
+			return store.source.b;
+		}
+
+		@Override
+		public void setText(String text) {
+			store.checkIndex(index);
+			store.texts.put(index, text);
+		}
+
+		@Override
+		public void setType(int ttype) {
+			store.set(index, store.types, ttype);
+		}
+
+		@Override
+		public void setLine(int line) {
+			store.set(index, store.lines, line);
+		}
+
+		@Override
+		public void setCharPositionInLine(int pos) {
+			store.set(index, store.columns, pos);
+		}
+
+		@Override
+		public void setChannel(int channel) {
+			store.set(index, store.channels, channel);
+		}
+
+		/** The index is the token's place in the store; streams replaying the
+		 *  store may (re)set it but not move the token.
+		 */
+		@Override
+		public void setTokenIndex(int index) {
+			if ( index!=this.index ) {
+				throw new UnsupportedOperationException("can't move token "+this.index+" to "+index);
+			}
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if ( this==o ) return true;
+			if ( !(o instanceof TokenView) ) return false;
+			TokenView other = (TokenView)o;
+			return store==other.store && index==other.index;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(store)*31+index;
+		}
+
+		/** Same format as {@link org.antlr.v4.runtime.CommonToken#toString()} */
+		@Override
+		public String toString() {
+			String channelStr = "";
+			int channel = getChannel();
+			if ( channel>0 ) {
+				channelStr = ",channel="+channel;
+			}
+			String txt = getText();
+			if ( txt!=null ) {
+				txt = Utils.escapeWhitespace(txt, false);
+			}
+			else {
+				txt = "<no text>";
+			}
+			return "[@"+index+","+getStartIndex()+":"+getStopIndex()+"='"+txt+"',<"+getType()+">"+channelStr+","+
+				getLine()+":"+getCharPositionInLine()+"]";
+		}
+	}
+
+	/** A parse tree leaf for a token entry of a store; as small as a
+	 *  {@link org.antlr.v4.runtime.tree.TerminalNodeImpl} and needs no token object.
+	 */
+	public static final class TokenNode implements TerminalNode {
+		private final CompactTokenStore store;
+		private final int index;
+		private ParseTree parent;
+
+		public TokenNode(TokenView token) {
+			this.store = token.store;
+			this.index = token.index;
+		}
+
+		@Override
+		public Token getSymbol() {
+			return store.get(index);
+		}
+
+		@Override
+		public ParseTree getParent() {
+			return parent;
+		}
+
+		@Override
+		public void setParent(RuleContext parent) {
+			this.parent = parent;
+		}
+
+		@Override
+		public ParseTree getChild(int i) {
+			return null;
+		}
+
+		@Override
+		public Token getPayload() {
+			return getSymbol();
+		}
+
+		@Override
+		public int getChildCount() {
+			return 0;
+		}
+
+		@Override
+		public Interval getSourceInterval() {
+			return Interval.of(index, index);
+		}
+
+		@Override
+		public <T> T accept(ParseTreeVisitor<? extends T> visitor) {
+			return visitor.visitTerminal(this);
+		}
+
+		@Override
+		public String getText() {
+			return store.getText(index);
+		}
+
+		@Override
+		public String toStringTree(Parser parser) {
+			return toString();
+		}
+
+		@Override
+		public String toStringTree() {
+			return toString();
+		}
+
+		@Override
+		public String toString() {
+			if ( store.getType(index)==Token.EOF ) return "<EOF>";
+			return getText();
+		}
+	}
+}
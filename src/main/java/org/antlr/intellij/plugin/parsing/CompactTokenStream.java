@@ -0,0 +1,199 @@
+package org.antlr.intellij.plugin.parsing;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonToken;
+import org.antlr.v4.runtime.CommonTokenFactory;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenFactory;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.misc.Pair;
+
+/** A {@link CommonTokenStream} whose buffered tokens live in a
+ *  {@link CompactTokenStore} so that previewing inputs with millions of
+ *  tokens doesn't take a token object per token. While we're pulling tokens
+ *  from the lexer it builds them all in one reused token that's copied into
+ *  the store, so lexing doesn't allocate per token either; tokens made
+ *  outside of that, e.g. conjured by error recovery, are ordinary tokens.
+ *
+ *  Tokens from {@link #get} and {@link #LT} are flyweight views on the
+ *  store; see {@link CompactTokenStore} about comparing them. Lookahead and
+ *  channel skipping read the store directly.
+ */
+public class CompactTokenStream extends CommonTokenStream {
+	private final CompactTokenStore store;
+	private final ReusedToken reusedToken;
+	private boolean lexing;
+
+	public CompactTokenStream(TokenSource tokenSource) {
+		super(tokenSource);
+		this.store = new CompactTokenStore(tokenSource);
+		this.tokens = store;
+		this.reusedToken = new ReusedToken();
+		tokenSource.setTokenFactory(new LexingTokenFactory());
+	}
+
+	/** A stream over a store another stream has lexed to EOF, sharing its
+	 *  tokens; e.g. to re-parse some of the input in the background. Nothing
+	 *  is lexed.
+	 */
+	public CompactTokenStream(CompactTokenStore tokens) {
+		super(tokens.getTokenSource());
+		this.store = tokens;
+		this.tokens = tokens;
+		this.reusedToken = null;
+		this.fetchedEOF = true;
+	}
+
+	public CompactTokenStore getStore() {
+		return store;
+	}
+
+	/** The store belongs to its token source */
+	@Override
+	public void setTokenSource(TokenSource tokenSource) {
+		throw new UnsupportedOperationException("can't change the token source of a "+getClass().getSimpleName());
+	}
+
+	@Override
+	protected int fetch(int n) {
+		if ( fetchedEOF ) {
+			return 0;
+		}
+		lexing = true;
+		try {
+			for (int i = 0; i<n; i++) {
+				Token t = tokenSource.nextToken();
+				if ( t==reusedToken ) {
+					store.add(t, reusedToken.getSetText());
+				}
+				else {
+					store.add(t);
+				}
+				if ( t.getType()==Token.EOF ) {
+					fetchedEOF = true;
+					return i+1;
+				}
+			}
+		}
+		finally {
+			lexing = false;
+		}
+		return n;
+	}
+
+	@Override
+	public Token LT(int k) {
+		if ( k<=0 ) {
+			return super.LT(k);
+		}
+		return store.get(lookaheadIndex(k));
+	}
+
+	@Override
+	public int LA(int k) {
+		if ( k<=0 ) {
+			return super.LA(k);
+		}
+		return store.getType(lookaheadIndex(k));
+	}
+
+	/** Index of the k-th on-channel token from the current one; k>0 */
+	private int lookaheadIndex(int k) {
+		lazyInit();
+		int i = p;
+		for (int n = 1; n<k; n++) {
+			// EOF is the last token, so sync fails past it and we stay on it
+			if ( sync(i+1) ) {
+				i = nextTokenOnChannel(i+1, channel);
+			}
+		}
+		return i;
+	}
+
+	@Override
+	protected int nextTokenOnChannel(int i, int channel) {
+		sync(i);
+		if ( i>=size() ) {
+			return size()-1;
+		}
+		while ( store.getChannel(i)!=channel ) {
+			if ( store.getType(i)==Token.EOF ) {
+				return i;
+			}
+			i++;
+			sync(i);
+		}
+		return i;
+	}
+
+	@Override
+	protected int previousTokenOnChannel(int i, int channel) {
+		sync(i);
+		if ( i>=size() ) {
+			return size()-1;
+		}
+		while ( i>=0 ) {
+			if ( store.getType(i)==Token.EOF || store.getChannel(i)==channel ) {
+				return i;
+			}
+			i--;
+		}
+		return i;
+	}
+
+	@Override
+	public int getNumberOfOnChannelTokens() {
+		fill();
+		int n = 0;
+		for (int i = 0; i<store.size(); i++) {
+			if ( store.getChannel(i)==channel ) n++;
+			if ( store.getType(i)==Token.EOF ) break;
+		}
+		return n;
+	}
+
+	/** The token the lexer builds each token in while we fetch; holds it
+	 *  only until we've copied it into the store.
+	 */
+	private static class ReusedToken extends CommonToken {
+		ReusedToken() {
+			super(Token.INVALID_TYPE);
+		}
+
+		void set(Pair<TokenSource, CharStream> source, int type, String text, int channel,
+				 int start, int stop, int line, int charPositionInLine) {
+			this.source = source;
+			this.type = type;
+			this.text = text;
+			this.channel = channel;
+			this.start = start;
+			this.stop = stop;
+			this.line = line;
+			this.charPositionInLine = charPositionInLine;
+			this.index = -1;
+		}
+
+		/** Text set by the lexer, not computed from the input */
+		String getSetText() {
+			return text;
+		}
+	}
+
+	private class LexingTokenFactory implements TokenFactory<CommonToken> {
+		@Override
+		public CommonToken create(Pair<TokenSource, CharStream> source, int type, String text, int channel,
+								  int start, int stop, int line, int charPositionInLine) {
+			if ( !lexing ) {
+				return CommonTokenFactory.DEFAULT.create(source, type, text, channel, start, stop, line, charPositionInLine);
+			}
+			reusedToken.set(source, type, text, channel, start, stop, line, charPositionInLine);
+			return reusedToken;
+		}
+
+		@Override
+		public CommonToken create(int type, String text) {
+			return CommonTokenFactory.DEFAULT.create(type, text);
+		}
+	}
+}
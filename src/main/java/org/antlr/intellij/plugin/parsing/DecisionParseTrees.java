@@ -0,0 +1,350 @@
+package org.antlr.intellij.plugin.parsing;
+
+import com.intellij.openapi.progress.ProgressManager;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.BufferedTokenStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ListTokenSource;
+import org.antlr.v4.runtime.Parser;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.atn.AmbiguityInfo;
+import org.antlr.v4.runtime.atn.DecisionEventInfo;
+import org.antlr.v4.runtime.atn.LookaheadEventInfo;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import org.antlr.v4.runtime.tree.Tree;
+import org.antlr.v4.runtime.tree.Trees;
+import org.antlr.v4.tool.Grammar;
+import org.antlr.v4.tool.GrammarParserInterpreter;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+
+/** The parse trees of every interpretation of a decision event found by the
+ *  profiler: one per ambiguous alternative of an ambiguity, or one per
+ *  alternative of a lookahead decision. Does what
+ *  {@link GrammarParserInterpreter#getAllPossibleParseTrees} and
+ *  {@link GrammarParserInterpreter#getLookaheadParseTrees} do, but instead
+ *  of re-parsing the whole input from the start rule for each alternative
+ *  it re-parses only the rule invocation enclosing the decision phrase,
+ *  reusing the tokens of the preview parse. Forced alternatives fill in
+ *  DFA states the preview never built, so the re-parses predict with their
+ *  own DFA and leave the preview's (which the profiler reports) alone.
+ *
+ *  A rule parsed without its invoking context can predict differently than
+ *  it did within the full parse, so the region is only trusted if forcing
+ *  the alternative the preview parse took reproduces the preview's subtree
+ *  exactly; otherwise we re-parse from the start rule like ANTLR does.
+ *
+ *  Results are cached per decision event. Computing them is meant for a
+ *  background thread and can be cancelled through the progress indicator.
+ */
+public class DecisionParseTrees {
+	/** decision event -> its trees; events are compared by identity */
+	private static final Map<DecisionEventInfo, List<ParserRuleContext>> cache =
+		Collections.synchronizedMap(new WeakHashMap<>());
+
+	private final Grammar g;
+	private final ATN atn;
+	private final PredictionMode predictionMode;
+	private final ParserRuleContext previewTree;
+	private final List<Token> tokens;
+	private final int startRuleIndex;
+
+	/** Snapshot what we need of a preview parse; call on the thread that owns it */
+	public DecisionParseTrees(Grammar g, ParsingResult parsingResult, int startRuleIndex) {
+		Parser parser = parsingResult.parser;
+		this.g = g;
+		this.atn = parser.getATN();
+		this.predictionMode = parser.getInterpreter().getPredictionMode();
+		this.previewTree = parsingResult.tree instanceof ParserRuleContext ? (ParserRuleContext)parsingResult.tree : null;
+		BufferedTokenStream tokenStream = (BufferedTokenStream)parser.getTokenStream();
+		tokenStream.fill();
+		if ( tokenStream instanceof CompactTokenStream ) {
+			this.tokens = ((CompactTokenStream)tokenStream).getStore(); // lexed to EOF; nothing changes it now
+		}
+		else {
+			this.tokens = new ArrayList<>(tokenStream.getTokens());
+		}
+		this.startRuleIndex = startRuleIndex;
+	}
+
+	@Nullable
+	public static List<ParserRuleContext> getCached(DecisionEventInfo info) {
+		return cache.get(info);
+	}
+
+	/** One tree per ambiguous alternative, rooted at the subtree enclosing
+	 *  the ambiguous phrase or at the decision, whichever is higher.
+	 *
+	 *  @throws ParseCancellationException if an alternative doesn't parse
+	 *  the input, as with syntax errors in it
+	 */
+	public List<ParserRuleContext> getAllPossibleParseTrees(AmbiguityInfo info) {
+		List<ParserRuleContext> trees = cache.get(info);
+		if ( trees!=null ) return trees;
+
+		int stopIndex = info.stopIndex;
+		if ( stopIndex>=tokens.size()-1 ) { // if we are pointing at EOF token
+			// EOF is not in tree, so must be 1 less than last non-EOF token
+			stopIndex = tokens.size()-2;
+		}
+
+		PreviewParser parser = createParser();
+		ParserRuleContext region = findRegion(info.decision, info.startIndex, stopIndex);
+		if ( region!=null ) {
+			trees = getAllPossibleParseTrees(parser, info, region, stopIndex);
+		}
+		if ( trees==null ) {
+			trees = getAllPossibleParseTrees(parser, info, null, stopIndex);
+		}
+		cache.put(info, trees);
+		return trees;
+	}
+
+	/** One tree per alternative of the decision, cut off at the first syntax error */
+	public List<ParserRuleContext> getLookaheadParseTrees(LookaheadEventInfo info) {
+		List<ParserRuleContext> trees = cache.get(info);
+		if ( trees!=null ) return trees;
+
+		PreviewParser parser = createParser();
+		ParserRuleContext region = findRegion(info.decision, info.startIndex, info.stopIndex);
+		ParserRuleContext predictedTree = null;
+		if ( region!=null ) {
+			predictedTree = getLookaheadParseTree(parser, info, region, info.predictedAlt);
+			if ( predictedTree==null ) {
+				region = null; // region doesn't parse the way the preview did
+			}
+		}
+		int numAlts = atn.decisionToState.get(info.decision).getNumberOfTransitions();
+		trees = new ArrayList<>(numAlts);
+		for (int alt = 1; alt<=numAlts; alt++) {
+			ProgressManager.checkCanceled();
+			ParserRuleContext tree = null;
+			if ( alt==info.predictedAlt ) {
+				tree = predictedTree;
+			}
+			else if ( region!=null ) {
+				tree = getLookaheadParseTree(parser, info, region, alt);
+			}
+			if ( tree==null ) {
+				tree = getLookaheadParseTree(parser, info, null, alt);
+			}
+			trees.add(tree);
+		}
+		cache.put(info, trees);
+		return trees;
+	}
+
+	/** Trees of all ambiguous alternatives parsing region, or the entire
+	 *  input if region is null; null if region didn't parse like the preview.
+	 */
+	@Nullable
+	private List<ParserRuleContext> getAllPossibleParseTrees(PreviewParser parser,
+															 AmbiguityInfo info,
+															 @Nullable ParserRuleContext region,
+															 int stopIndex) {
+		BitSet alts = info.ambigAlts;
+		int previewAlt = alts.nextSetBit(0); // prediction resolves ambiguities to the min alt
+		List<ParserRuleContext> trees = new ArrayList<>();
+		for (int alt = alts.nextSetBit(0); alt>=0; alt = alts.nextSetBit(alt+1)) {
+			ProgressManager.checkCanceled();
+			ParserRuleContext t;
+			if ( region!=null ) {
+				parser.setErrorHandler(new BailErrorStrategy());
+				try {
+					t = parse(parser, region, info.decision, info.startIndex, alt);
+				}
+				catch (ParseCancellationException pce) {
+					return null;
+				}
+				if ( !parsedLike(parser, t, region, alt==previewAlt) ) return null;
+			}
+			else {
+				parser.setErrorHandler(new BailErrorStrategy()); // like ANTLR, no trees for input with syntax errors
+				t = parse(parser, null, info.decision, info.startIndex, alt);
+			}
+			ParserRuleContext ambigSubTree = Trees.getRootOfSubtreeEnclosingRegion(t, info.startIndex, stopIndex);
+			trees.add(higherOfDecisionRoot(parser, ambigSubTree, region));
+		}
+		return trees;
+	}
+
+	/** Tree of alt parsing region, or the entire input if region is null;
+	 *  null if the region can't tell what alt does with the lookahead.
+	 */
+	@Nullable
+	private ParserRuleContext getLookaheadParseTree(PreviewParser parser,
+													LookaheadEventInfo info,
+													@Nullable ParserRuleContext region,
+													int alt) {
+		GrammarParserInterpreter.BailButConsumeErrorStrategy errorHandler =
+			new GrammarParserInterpreter.BailButConsumeErrorStrategy();
+		parser.setErrorHandler(errorHandler);
+		ParserRuleContext tt = parse(parser, region, info.decision, info.startIndex, alt);
+		int stopTreeAt = info.stopIndex;
+		if ( errorHandler.firstErrorTokenIndex>=0 ) {
+			stopTreeAt = errorHandler.firstErrorTokenIndex; // cut off rest at first error
+		}
+		Interval overallRange = tt.getSourceInterval();
+		if ( region!=null ) {
+			if ( alt==info.predictedAlt ) {
+				if ( errorHandler.firstErrorTokenIndex>=0 || !parsedLike(parser, tt, region, true) ) return null;
+			}
+			else if ( parser.getOverrideDecisionRoot()==null || errorHandler.firstErrorTokenIndex<0 ) {
+				// where this alt fails depends on the rules invoking the region
+				return null;
+			}
+		}
+		if ( stopTreeAt>overallRange.b ) {
+			// If we try to look beyond range of tree, stopTreeAt must be EOF
+			// for which there is no EOF ref in grammar. That means tree
+			// will not have node for stopTreeAt; limit to overallRange.b
+			stopTreeAt = overallRange.b;
+		}
+		ParserRuleContext subtree = Trees.getRootOfSubtreeEnclosingRegion(tt, info.startIndex, stopTreeAt);
+		subtree = higherOfDecisionRoot(parser, subtree, region);
+		Trees.stripChildrenOutOfRange(subtree, parser.getOverrideDecisionRoot(), info.startIndex, stopTreeAt);
+		return subtree;
+	}
+
+	private ParserRuleContext parse(PreviewParser parser, @Nullable ParserRuleContext region,
+									int decision, int startIndex, int alt) {
+		parser.reset();
+		if ( region!=null ) {
+			parser.getInputStream().seek(region.getStart().getTokenIndex());
+		}
+		parser.addDecisionOverride(decision, startIndex, alt);
+		return parser.parse(region!=null ? region.getRuleIndex() : startRuleIndex);
+	}
+
+	/** Did parsing the region reach the overridden decision and, if
+	 *  sameTree, give exactly the subtree the preview parse has?
+	 */
+	private static boolean parsedLike(PreviewParser parser, ParserRuleContext t,
+									  ParserRuleContext region, boolean sameTree) {
+		if ( parser.getOverrideDecisionRoot()==null || parser.getNumberOfSyntaxErrors()>0 ) return false;
+		if ( t.getStop()==null || t.getStop().getTokenIndex()!=region.getStop().getTokenIndex() ) return false;
+		return !sameTree || sameShape(region, t);
+	}
+
+	/** A parser over our copy of the preview tokens that predicts like the
+	 *  preview parse but, as {@code GrammarParserInterpreter.deriveTempParserInterpreter}
+	 *  does, with a fresh DFA of its own: the preview's is read by the
+	 *  profiler on the EDT while we run in the background.
+	 */
+	private PreviewParser createParser() {
+		CommonTokenStream tokenStream;
+		if ( tokens instanceof CompactTokenStore ) {
+			tokenStream = new CompactTokenStream((CompactTokenStore)tokens);
+		}
+		else {
+			tokenStream = new CommonTokenStream(new ListTokenSource(tokens));
+			tokenStream.fill(); // error recovery looks at size()
+		}
+		// ParserInterpreter builds a DFA per ATN decision state and a context cache of its own
+		PreviewParser parser = new PreviewParser(g, atn, tokenStream);
+		parser.getInterpreter().setPredictionMode(predictionMode);
+		parser.removeErrorListeners();
+		return parser;
+	}
+
+	/** The rule invocation in the preview tree to re-parse: the higher of the
+	 *  innermost invocation of the decision's rule at startIndex and the
+	 *  innermost subtree enclosing startIndex..stopIndex. Null if there's
+	 *  no preview tree or the phrase isn't in it.
+	 */
+	@Nullable
+	private ParserRuleContext findRegion(int decision, int startIndex, int stopIndex) {
+		if ( previewTree==null || startIndex<0 || stopIndex<startIndex ) return null;
+		ParserRuleContext enclosing = Trees.getRootOfSubtreeEnclosingRegion(previewTree, startIndex, stopIndex);
+		if ( enclosing==null ) return null;
+
+		int decisionRuleIndex = atn.decisionToState.get(decision).ruleIndex;
+		ParserRuleContext decisionRule = Trees.getRootOfSubtreeEnclosingRegion(previewTree, startIndex, startIndex);
+		while ( decisionRule!=null && decisionRule.getRuleIndex()!=decisionRuleIndex ) {
+			decisionRule = decisionRule.getParent();
+		}
+
+		ParserRuleContext region = enclosing;
+		if ( decisionRule!=null && isAncestorOf(decisionRule, enclosing) ) {
+			region = decisionRule;
+		}
+		// a left-recursive rule nests invocations starting at the same token;
+		// only the outermost is invoked at the precedence parse(ruleIndex) uses
+		while ( region.getParent()!=null &&
+				region.getParent().getRuleIndex()==region.getRuleIndex() &&
+				Objects.equals(region.getParent().getStart(), region.getStart()) ) {
+			region = region.getParent();
+		}
+		if ( region.getStart()==null || region.getStop()==null ||
+			 region.getStop().getTokenIndex()<region.getStart().getTokenIndex() ) {
+			return null;
+		}
+		return region;
+	}
+
+	/** The higher of the overridden decision's subtree and subtree, the
+	 *  subtree enclosing the decision phrase. {@link Trees#isAncestorOf}
+	 *  never takes the root of the parse for an ancestor; keep that for the
+	 *  start rule but the root of a region is an inner node of the full parse.
+	 */
+	private static ParserRuleContext higherOfDecisionRoot(PreviewParser parser,
+														  ParserRuleContext subtree,
+														  @Nullable ParserRuleContext region) {
+		ParserRuleContext decisionRoot = parser.getOverrideDecisionRoot();
+		boolean isRegionRoot = decisionRoot!=null && decisionRoot.getParent()==null;
+		if ( isRegionRoot && region!=null && region.getParent()!=null ) {
+			return isAncestorOf(decisionRoot, subtree) ? decisionRoot : subtree;
+		}
+		return Trees.isAncestorOf(decisionRoot, subtree) ? decisionRoot : subtree;
+	}
+
+	private static boolean isAncestorOf(Tree t, Tree u) {
+		if ( t==null || u==null ) return false;
+		for (Tree p = u.getParent(); p!=null; p = p.getParent()) {
+			if ( p==t ) return true;
+		}
+		return false;
+	}
+
+	/** Same rules, alternatives and tokens, node by node */
+	private static boolean sameShape(Tree a, Tree b) {
+		Deque<Tree> work = new ArrayDeque<>();
+		work.push(a);
+		work.push(b);
+		while ( !work.isEmpty() ) {
+			Tree u = work.pop();
+			Tree t = work.pop();
+			if ( t.getChildCount()!=u.getChildCount() ) return false;
+			if ( t instanceof TerminalNode ) {
+				if ( !(u instanceof TerminalNode) || (t instanceof ErrorNode)!=(u instanceof ErrorNode) ) return false;
+				if ( ((TerminalNode)t).getSymbol().getTokenIndex()!=((TerminalNode)u).getSymbol().getTokenIndex() ) return false;
+			}
+			else if ( t instanceof PreviewInterpreterRuleContext ) {
+				if ( !(u instanceof PreviewInterpreterRuleContext) || !t.equals(u) ) return false;
+			}
+			else {
+				return false;
+			}
+			for (int i = 0; i<t.getChildCount(); i++) {
+				work.push(t.getChild(i));
+				work.push(u.getChild(i));
+			}
+		}
+		return true;
+	}
+}
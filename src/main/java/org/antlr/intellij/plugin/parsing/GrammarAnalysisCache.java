@@ -0,0 +1,247 @@
+package org.antlr.intellij.plugin.parsing;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import org.antlr.intellij.plugin.Utils;
+import org.antlr.v4.Tool;
+import org.antlr.v4.runtime.Vocabulary;
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.atn.ATNDeserializer;
+import org.antlr.v4.runtime.atn.ATNSerializer;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.tool.Grammar;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** On-disk cache of the expensive part of analyzing a grammar: building its
+ *  ATN and running the LL(1)/left-recursion analysis on it. For each grammar
+ *  we keep the serialized ATN, the ATN state to grammar region map used to
+ *  highlight decisions, and the rule/token tables the ATN was built against.
+ *
+ *  There is one file per grammar (per file path, grammar name and type) under
+ *  the IDE's system directory so edits overwrite rather than accumulate entries.
+ *  The file records a hash of the grammar text, its transformed AST, its token
+ *  types and the ANTLR version; an entry is only used if that hash and the
+ *  rule/token tables still match. Only analyses that produced no errors or
+ *  warnings are stored since we don't replay tool messages from the skipped
+ *  phases.
+ *
+ *  See {@link AnalysisCachingTool} for where the cache plugs into the tool.
+ */
+public class GrammarAnalysisCache {
+	public static final Logger LOG = Logger.getInstance("ANTLR GrammarAnalysisCache");
+
+	/** Bump when the layout of cache files changes */
+	private static final int FORMAT_VERSION = 1;
+
+	public static class Entry {
+		public final char[] serializedATN;
+		public final String[] ruleNames;
+		public final String[] tokenNames;
+		public final Map<Integer, Interval> stateToGrammarRegionMap;
+
+		public Entry(char[] serializedATN, String[] ruleNames, String[] tokenNames,
+					 Map<Integer, Interval> stateToGrammarRegionMap)
+		{
+			this.serializedATN = serializedATN;
+			this.ruleNames = ruleNames;
+			this.tokenNames = tokenNames;
+			this.stateToGrammarRegionMap = stateToGrammarRegionMap;
+		}
+
+		public ATN deserializeATN() {
+			return new ATNDeserializer().deserialize(serializedATN);
+		}
+	}
+
+	private final File cacheDir;
+	private int hits;
+	private int misses;
+
+	public GrammarAnalysisCache(Project project) {
+		this(new File(PathManager.getSystemPath(), "antlr4-grammars"+File.separator+project.getLocationHash()));
+	}
+
+	public GrammarAnalysisCache(File cacheDir) {
+		this.cacheDir = cacheDir;
+	}
+
+	public static GrammarAnalysisCache getInstance(Project project) {
+		return ServiceManager.getService(project, GrammarAnalysisCache.class);
+	}
+
+	public synchronized int getHitCount() {
+		return hits;
+	}
+
+	public synchronized int getMissCount() {
+		return misses;
+	}
+
+	/** Compute the key of g once its semantic phase has run (token types are assigned then) */
+	public static String computeKey(Grammar g) {
+		StringBuilder buf = new StringBuilder();
+		buf.append(Tool.VERSION).append('\n');
+		buf.append(FORMAT_VERSION).append('\n');
+		buf.append(g.getTypeString()).append(' ').append(g.name).append('\n');
+		if ( g.tokenStream!=null && g.tokenStream.size()>0 ) {
+			// token indexes in the region map refer to this text, whitespace included
+			buf.append(g.tokenStream.toString(0, g.tokenStream.size()-1)).append('\n');
+		}
+		if ( g.ast!=null ) {
+			// covers imported rules and left-recursion rewrites
+			buf.append(g.ast.toStringTree()).append('\n');
+		}
+		buf.append(new TreeMap<>(g.tokenNameToTypeMap)).append('\n');
+		buf.append(new TreeMap<>(g.stringLiteralToTypeMap)).append('\n');
+		buf.append(new TreeMap<>(g.channelNameToValueMap)).append('\n');
+		return sha256(buf.toString());
+	}
+
+	@Nullable
+	public Entry load(Grammar g, String key) {
+		File f = getCacheFile(g);
+		Entry entry = null;
+		if ( f.isFile() ) {
+			try ( DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f))) ) {
+				entry = read(in, key);
+			}
+			catch (IOException ioe) {
+				LOG.warn("can't read analysis cache "+f, ioe);
+			}
+		}
+		if ( entry!=null &&
+			 (!Arrays.equals(entry.ruleNames, g.getRuleNames()) ||
+			  !Arrays.equals(entry.tokenNames, getTokenNames(g))) )
+		{
+			entry = null; // hash collision or tool quirk; don't trust it
+		}
+		synchronized (this) {
+			if ( entry!=null ) hits++;
+			else misses++;
+		}
+		return entry;
+	}
+
+	/** Record the analysis of g; its ATN must have been built already */
+	public void store(Grammar g, String key) {
+		File f = getCacheFile(g);
+		// region lookups only make sense for parser decisions (and the implicit lexer's AST can't do them)
+		Map<Integer, Interval> stateToGrammarRegionMap =
+			g.isLexer() ? new HashMap<>() : Grammar.getStateToGrammarRegionMap(g.ast, null);
+		Entry entry = new Entry(ATNSerializer.getSerializedAsChars(g.atn),
+								g.getRuleNames(),
+								getTokenNames(g),
+								stateToGrammarRegionMap);
+		try {
+			Files.createDirectories(cacheDir.toPath());
+			// concurrent readers must never see half a file
+			Utils.writeAtomically(f, tmp -> {
+				try ( DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp))) ) {
+					write(out, key, entry);
+				}
+			});
+		}
+		catch (IOException ioe) {
+			LOG.warn("can't write analysis cache "+f, ioe);
+		}
+	}
+
+	private File getCacheFile(Grammar g) {
+		return new File(cacheDir, sha256(g.fileName+"|"+g.name+"|"+g.getTypeString())+".atn");
+	}
+
+	private static void write(DataOutputStream out, String key, Entry entry) throws IOException {
+		out.writeInt(FORMAT_VERSION);
+		out.writeUTF(key);
+		writeStrings(out, entry.ruleNames);
+		writeStrings(out, entry.tokenNames);
+		out.writeInt(entry.serializedATN.length);
+		for (char c : entry.serializedATN) {
+			out.writeChar(c);
+		}
+		out.writeInt(entry.stateToGrammarRegionMap.size());
+		for (Map.Entry<Integer, Interval> e : entry.stateToGrammarRegionMap.entrySet()) {
+			out.writeInt(e.getKey());
+			out.writeInt(e.getValue().a);
+			out.writeInt(e.getValue().b);
+		}
+	}
+
+	@Nullable
+	private static Entry read(DataInputStream in, String key) throws IOException {
+		if ( in.readInt()!=FORMAT_VERSION || !in.readUTF().equals(key) ) {
+			return null; // stale
+		}
+		String[] ruleNames = readStrings(in);
+		String[] tokenNames = readStrings(in);
+		char[] serializedATN = new char[in.readInt()];
+		for (int i = 0; i<serializedATN.length; i++) {
+			serializedATN[i] = in.readChar();
+		}
+		int n = in.readInt();
+		Map<Integer, Interval> stateToGrammarRegionMap = new HashMap<>();
+		for (int i = 0; i<n; i++) {
+			int state = in.readInt();
+			stateToGrammarRegionMap.put(state, Interval.of(in.readInt(), in.readInt()));
+		}
+		return new Entry(serializedATN, ruleNames, tokenNames, stateToGrammarRegionMap);
+	}
+
+	private static void writeStrings(DataOutputStream out, String[] strings) throws IOException {
+		out.writeInt(strings.length);
+		for (String s : strings) {
+			out.writeBoolean(s!=null);
+			if ( s!=null ) out.writeUTF(s);
+		}
+	}
+
+	private static String[] readStrings(DataInputStream in) throws IOException {
+		String[] strings = new String[in.readInt()];
+		for (int i = 0; i<strings.length; i++) {
+			strings[i] = in.readBoolean() ? in.readUTF() : null;
+		}
+		return strings;
+	}
+
+	@NotNull
+	private static String[] getTokenNames(Grammar g) {
+		Vocabulary vocabulary = g.getVocabulary();
+		String[] names = new String[vocabulary.getMaxTokenType()+1];
+		for (int i = 0; i<names.length; i++) {
+			names[i] = vocabulary.getDisplayName(i);
+		}
+		return names;
+	}
+
+	static String sha256(String s) {
+		return sha256(s.getBytes(StandardCharsets.UTF_8));
+	}
+
+	static String sha256(byte[] bytes) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			byte[] hash = digest.digest(bytes);
+			StringBuilder hex = new StringBuilder();
+			for (byte b : hash) {
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		}
+		catch (NoSuchAlgorithmException nsae) {
+			throw new IllegalStateException(nsae); // every JVM has SHA-256
+		}
+	}
+}
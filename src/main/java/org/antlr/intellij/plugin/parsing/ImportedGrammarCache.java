@@ -0,0 +1,157 @@
+package org.antlr.intellij.plugin.parsing;
+
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import org.antlr.runtime.ANTLRStringStream;
+import org.antlr.v4.Tool;
+import org.antlr.v4.tool.ast.GrammarRootAST;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Parsed ASTs of grammars pulled in through {@code import} statements,
+ *  shared by all the {@link Tool}s we create (preview, annotator, footprint)
+ *  so a grammar with a large import tree doesn't reparse it on every keystroke.
+ *
+ *  Entries are keyed by absolute path and checked against the file's time
+ *  stamp and length; when those moved, the content hash decides whether we
+ *  really have to reparse. Only ASTs that parsed without errors are kept, so
+ *  syntax errors in imported grammars are reported by every tool run as before.
+ *
+ *  Callers always get their own copy of the tree: the transform pipeline
+ *  moves imported rules into the importing grammar's AST, so neither the AST
+ *  nor the {@link org.antlr.v4.tool.Grammar} built on it can be shared.
+ */
+public class ImportedGrammarCache {
+	public static final Logger LOG = Logger.getInstance("ANTLR ImportedGrammarCache");
+
+	private static final int MAX_ENTRIES = 256;
+
+	private static class Entry {
+		final long lastModified;
+		final long length;
+		final String encoding;
+		final String contentHash;
+		final GrammarRootAST root;
+
+		Entry(long lastModified, long length, String encoding, String contentHash, GrammarRootAST root) {
+			this.lastModified = lastModified;
+			this.length = length;
+			this.encoding = encoding;
+			this.contentHash = contentHash;
+			this.root = root;
+		}
+
+		boolean isStampOf(File file, String encoding) {
+			return file.lastModified()==lastModified && file.length()==length && sameEncoding(encoding);
+		}
+
+		boolean sameEncoding(String encoding) {
+			return this.encoding==null ? encoding==null : this.encoding.equals(encoding);
+		}
+	}
+
+	private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+			return size()>MAX_ENTRIES;
+		}
+	};
+	private int hits;
+	private int misses;
+
+	public static ImportedGrammarCache getInstance() {
+		return ServiceManager.getService(ImportedGrammarCache.class);
+	}
+
+	public synchronized int getHitCount() {
+		return hits;
+	}
+
+	public synchronized int getMissCount() {
+		return misses;
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/** Return a private copy of the AST of grammar file, parsing it with tool
+	 *  if we haven't seen this content before. Errors are reported against
+	 *  reportingFileName (the importing grammar) like {@link Tool} does.
+	 */
+	@Nullable
+	public GrammarRootAST getAST(Tool tool, File file, String reportingFileName) throws IOException {
+		String path = file.getAbsolutePath();
+		String encoding = tool.grammarEncoding;
+		Entry entry;
+		synchronized (this) {
+			entry = entries.get(path);
+		}
+
+		if ( entry==null || !entry.isStampOf(file, encoding) ) {
+			long lastModified = file.lastModified();
+			long length = file.length();
+			byte[] bytes = Files.readAllBytes(file.toPath());
+			String contentHash = GrammarAnalysisCache.sha256(bytes);
+			if ( entry!=null && entry.sameEncoding(encoding) && entry.contentHash.equals(contentHash) ) {
+				entry = new Entry(lastModified, length, encoding, contentHash, entry.root); // touched, not changed
+			}
+			else {
+				entry = parse(tool, path, bytes, encoding, reportingFileName, lastModified, length, contentHash);
+				synchronized (this) {
+					misses++;
+				}
+				if ( entry==null ) {
+					synchronized (this) {
+						entries.remove(path);
+					}
+					return null;
+				}
+				if ( entry.root.hasErrors ) {
+					return entry.root; // fresh tree nobody else sees; don't keep it
+				}
+				synchronized (this) {
+					entries.put(path, entry);
+				}
+				return copy(tool, entry.root);
+			}
+			synchronized (this) {
+				entries.put(path, entry);
+			}
+		}
+
+		synchronized (this) {
+			hits++;
+		}
+		return copy(tool, entry.root);
+	}
+
+	@Nullable
+	private static Entry parse(Tool tool, String path, byte[] bytes, String encoding, String reportingFileName,
+							   long lastModified, long length, String contentHash)
+		throws IOException
+	{
+		// same decoding as the ANTLRFileStream Tool.loadImportedGrammar() uses
+		String text = encoding!=null ? new String(bytes, encoding) : new String(bytes);
+		ANTLRStringStream in = new ANTLRStringStream(text);
+		in.name = path;
+		int prevErrors = tool.errMgr.getNumErrors();
+		GrammarRootAST root = tool.parse(reportingFileName, in);
+		if ( root==null ) return null;
+		if ( tool.errMgr.getNumErrors()>prevErrors ) {
+			root.hasErrors = true; // e.g., v3 tree grammar; keep reporting it
+		}
+		return new Entry(lastModified, length, encoding, contentHash, root);
+	}
+
+	private static GrammarRootAST copy(Tool tool, GrammarRootAST root) {
+		GrammarRootAST dup = (GrammarRootAST)root.dupTree();
+		dup.cmdLineOptions = tool.grammarOptions;
+		return dup;
+	}
+}
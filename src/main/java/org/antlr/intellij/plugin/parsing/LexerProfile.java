@@ -0,0 +1,130 @@
+package org.antlr.intellij.plugin.parsing;
+
+import org.antlr.v4.runtime.dfa.DFA;
+
+/** Where a lexer spends its time, per lexer rule and per mode, gathered by
+ *  {@link ProfilingLexerATNSimulator} once per token match. A match is
+ *  charged to the rule that won it; matches that fail are counted as errors
+ *  of their mode only. DFA hits are lookahead characters answered by a DFA
+ *  edge computed before, ATN steps are the ones that had to simulate the
+ *  ATN and add to the DFA, so a warm lexer shows mostly hits.
+ */
+public class LexerProfile {
+	private final DFA[] decisionToDFA;
+
+	private final long[] matches;
+	private final long[] time;
+	private final long[] chars;
+	private final long[] dfaHits;
+	private final long[] atnSteps;
+
+	private final long[] modeMatches;
+	private final long[] modeTime;
+	private final long[] modeChars;
+	private final long[] modeDFAHits;
+	private final long[] modeATNSteps;
+	private final long[] modeErrors;
+
+	/** decisionToDFA holds a DFA per mode, mode numbers first */
+	public LexerProfile(int numberOfRules, int numberOfModes, DFA[] decisionToDFA) {
+		this.decisionToDFA = decisionToDFA;
+		matches = new long[numberOfRules];
+		time = new long[numberOfRules];
+		chars = new long[numberOfRules];
+		dfaHits = new long[numberOfRules];
+		atnSteps = new long[numberOfRules];
+		modeMatches = new long[numberOfModes];
+		modeTime = new long[numberOfModes];
+		modeChars = new long[numberOfModes];
+		modeDFAHits = new long[numberOfModes];
+		modeATNSteps = new long[numberOfModes];
+		modeErrors = new long[numberOfModes];
+	}
+
+	/** Record a match in mode by ruleIndex, -1 if it failed */
+	void matched(int mode, int ruleIndex, long elapsed, int numberOfChars, long hits, long steps) {
+		modeTime[mode] += elapsed;
+		modeDFAHits[mode] += hits;
+		modeATNSteps[mode] += steps;
+		if ( ruleIndex<0 ) {
+			modeErrors[mode]++;
+			return;
+		}
+		modeMatches[mode]++;
+		modeChars[mode] += numberOfChars;
+		matches[ruleIndex]++;
+		time[ruleIndex] += elapsed;
+		chars[ruleIndex] += numberOfChars;
+		dfaHits[ruleIndex] += hits;
+		atnSteps[ruleIndex] += steps;
+	}
+
+	public int getNumberOfRules() {
+		return matches.length;
+	}
+
+	public int getNumberOfModes() {
+		return modeMatches.length;
+	}
+
+	public long getMatches(int ruleIndex) {
+		return matches[ruleIndex];
+	}
+
+	public long getTime(int ruleIndex) {
+		return time[ruleIndex];
+	}
+
+	public long getChars(int ruleIndex) {
+		return chars[ruleIndex];
+	}
+
+	public long getDFAHits(int ruleIndex) {
+		return dfaHits[ruleIndex];
+	}
+
+	public long getATNSteps(int ruleIndex) {
+		return atnSteps[ruleIndex];
+	}
+
+	public long getModeMatches(int mode) {
+		return modeMatches[mode];
+	}
+
+	public long getModeTime(int mode) {
+		return modeTime[mode];
+	}
+
+	public long getModeChars(int mode) {
+		return modeChars[mode];
+	}
+
+	public long getModeDFAHits(int mode) {
+		return modeDFAHits[mode];
+	}
+
+	public long getModeATNSteps(int mode) {
+		return modeATNSteps[mode];
+	}
+
+	public long getModeErrors(int mode) {
+		return modeErrors[mode];
+	}
+
+	/** States in the DFA of mode so far */
+	public int getDFAStates(int mode) {
+		return decisionToDFA[mode].states.size();
+	}
+
+	public long getTotalTime() {
+		long t = 0;
+		for (long m : modeTime) t += m;
+		return t;
+	}
+
+	public long getTotalMatches() {
+		long n = 0;
+		for (long m : modeMatches) n += m;
+		return n;
+	}
+}
@@ -0,0 +1,86 @@
+package org.antlr.intellij.plugin.parsing;
+
+import org.antlr.v4.runtime.Parser;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.RuleContext;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.atn.ATNConfigSet;
+import org.antlr.v4.runtime.atn.ATNState;
+import org.antlr.v4.runtime.atn.ProfilingATNSimulator;
+
+/** A profiling simulator that also tracks the ATN configuration sets each
+ *  decision builds while predicting: the biggest one, and how many configs
+ *  all of them held. Big sets are what full-context prediction costs in
+ *  memory, and they end up in the DFA states the decision adds.
+ */
+public class MemoryProfilingATNSimulator extends ProfilingATNSimulator {
+	private final int[] peakConfigSetSize;
+	private final long[] configsComputed;
+
+	// the last prediction, for PredictionHeatMap
+	private int lastStartIndex = -1;
+	private int lastLookahead;
+	private boolean lastFullContext;
+
+	public MemoryProfilingATNSimulator(Parser parser) {
+		super(parser);
+		peakConfigSetSize = new int[numDecisions];
+		configsComputed = new long[numDecisions];
+	}
+
+	@Override
+	public int adaptivePredict(TokenStream input, int decision, ParserRuleContext outerContext) {
+		lastStartIndex = -1;
+		int alt = super.adaptivePredict(input, decision, outerContext);
+		lastStartIndex = _startIndex;
+		lastLookahead = Math.max(0, Math.max(_sllStopIndex, _llStopIndex)-_startIndex+1);
+		lastFullContext = _llStopIndex>=0;
+		return alt;
+	}
+
+	@Override
+	protected ATNConfigSet computeStartState(ATNState p, RuleContext ctx, boolean fullCtx) {
+		return record(super.computeStartState(p, ctx, fullCtx));
+	}
+
+	@Override
+	protected ATNConfigSet computeReachSet(ATNConfigSet closure, int t, boolean fullCtx) {
+		return record(super.computeReachSet(closure, t, fullCtx));
+	}
+
+	private ATNConfigSet record(ATNConfigSet configs) {
+		if ( configs!=null ) {
+			int n = configs.size();
+			configsComputed[currentDecision] += n;
+			if ( n>peakConfigSetSize[currentDecision] ) {
+				peakConfigSetSize[currentDecision] = n;
+			}
+		}
+		return configs;
+	}
+
+	/** Token index where the last prediction started; -1 if it failed */
+	public int getLastStartIndex() {
+		return lastStartIndex;
+	}
+
+	/** Tokens the last prediction looked at */
+	public int getLastLookahead() {
+		return lastLookahead;
+	}
+
+	/** Whether the last prediction fell back to full-context (LL) prediction */
+	public boolean wasLastFullContext() {
+		return lastFullContext;
+	}
+
+	/** Size of the biggest configuration set decision built */
+	public int getPeakConfigSetSize(int decision) {
+		return peakConfigSetSize[decision];
+	}
+
+	/** Configs in all sets decision built, a measure of the garbage prediction made */
+	public long getConfigsComputed(int decision) {
+		return configsComputed[decision];
+	}
+}
@@ -8,10 +8,23 @@ public class ParsingResult {
 	public Parser parser;
 	public ParseTree tree;
 	public SyntaxErrorListener syntaxErrorListener;
+	/** Of the preview update that produced this result, if any */
+	public PreviewTimings timings;
+
+	/** Computed once; walking a big tree isn't free */
+	private volatile long retainedSize = -1;
 
 	public ParsingResult(Parser parser, ParseTree tree, SyntaxErrorListener syntaxErrorListener) {
 		this.parser = parser;
 		this.tree = tree;
 		this.syntaxErrorListener = syntaxErrorListener;
 	}
+
+	/** Estimated bytes kept alive by this result; see {@link RetainedSize} */
+	public long getRetainedSize() {
+		if ( retainedSize<0 ) {
+			retainedSize = RetainedSize.estimate(this);
+		}
+		return retainedSize;
+	}
 }
@@ -12,6 +12,8 @@ import org.antlr.intellij.adaptor.parser.SyntaxErrorListener;
 import org.antlr.intellij.plugin.ANTLRv4PluginController;
 import org.antlr.intellij.plugin.PluginIgnoreMissingTokensFileErrorManager;
 import org.antlr.intellij.plugin.configdialogs.ANTLRv4GrammarProperties;
+import org.antlr.intellij.plugin.metrics.Metrics;
+import org.antlr.intellij.plugin.metrics.Timer;
 import org.antlr.intellij.plugin.parser.ANTLRv4Lexer;
 import org.antlr.intellij.plugin.parser.ANTLRv4Parser;
 import org.antlr.intellij.plugin.preview.PreviewState;
@@ -41,19 +43,57 @@ import java.util.*;
 import static org.antlr.intellij.plugin.configdialogs.ANTLRv4GrammarPropertiesStore.getGrammarProperties;
 
 public class ParsingUtils {
-	public static Grammar BAD_PARSER_GRAMMAR;
-	public static LexerGrammar BAD_LEXER_GRAMMAR;
-
-	static {
-		try {
-			ParsingUtils.BAD_PARSER_GRAMMAR = new Grammar("grammar BAD; a : 'bad' ;");
-			ParsingUtils.BAD_PARSER_GRAMMAR.name = "BAD_PARSER_GRAMMAR";
-			ParsingUtils.BAD_LEXER_GRAMMAR = new LexerGrammar("lexer grammar BADLEXER; A : 'bad' ;");
-			ParsingUtils.BAD_LEXER_GRAMMAR.name = "BAD_LEXER_GRAMMAR";
+	private static final Timer LOAD_GRAMMARS_TIMER =
+		Metrics.timer("grammar.load", "Loading a grammar and its lexer with the ANTLR tool for the preview");
+
+	// Markers for grammars that failed to load. Building them runs the ANTLR
+	// tool, so don't do it until someone actually needs one. Nothing can be
+	// == to a marker that was never built, hence the isBad*() tests don't build them.
+	private static volatile Grammar badParserGrammar;
+	private static volatile LexerGrammar badLexerGrammar;
+
+	public static Grammar getBadParserGrammar() {
+		if ( badParserGrammar==null ) {
+			synchronized (ParsingUtils.class) {
+				if ( badParserGrammar==null ) {
+					try {
+						Grammar g = new Grammar("grammar BAD; a : 'bad' ;");
+						g.name = "BAD_PARSER_GRAMMAR";
+						badParserGrammar = g;
+					}
+					catch (org.antlr.runtime.RecognitionException re) {
+						ANTLRv4PluginController.LOG.error("can't init bad grammar markers");
+					}
+				}
+			}
 		}
-		catch (org.antlr.runtime.RecognitionException re) {
-			ANTLRv4PluginController.LOG.error("can't init bad grammar markers");
+		return badParserGrammar;
+	}
+
+	public static LexerGrammar getBadLexerGrammar() {
+		if ( badLexerGrammar==null ) {
+			synchronized (ParsingUtils.class) {
+				if ( badLexerGrammar==null ) {
+					try {
+						LexerGrammar lg = new LexerGrammar("lexer grammar BADLEXER; A : 'bad' ;");
+						lg.name = "BAD_LEXER_GRAMMAR";
+						badLexerGrammar = lg;
+					}
+					catch (org.antlr.runtime.RecognitionException re) {
+						ANTLRv4PluginController.LOG.error("can't init bad grammar markers");
+					}
+				}
+			}
 		}
+		return badLexerGrammar;
+	}
+
+	public static boolean isBadParserGrammar(Grammar g) {
+		return g!=null && g==badParserGrammar;
+	}
+
+	public static boolean isBadLexerGrammar(Grammar g) {
+		return g!=null && g==badLexerGrammar;
 	}
 
 	public static Token nextRealToken(CommonTokenStream tokens, int i) {
@@ -170,7 +210,7 @@ public class ParsingUtils {
         Collection<ParseTree> tokenNodes = Trees.findAllTokenNodes(tree, token.getType());
         for (ParseTree t : tokenNodes) {
             TerminalNode tnode = (TerminalNode)t;
-            if ( tnode.getPayload() == token ) {
+            if ( tnode.getPayload().equals(token) ) { // tokens may be flyweights
                 return tnode;
             }
         }
@@ -199,16 +239,46 @@ public class ParsingUtils {
 										  final VirtualFile grammarFile,
 										  String inputText,
 										  Project project) {
+		return parseText(g, lg, startRuleName, grammarFile, inputText, project, new PreviewTimings());
+	}
+
+	/** Parse inputText, adding the time of its stages to timings */
+	public static ParsingResult parseText(Grammar g,
+										  LexerGrammar lg,
+										  String startRuleName,
+										  final VirtualFile grammarFile,
+										  String inputText,
+										  Project project,
+										  PreviewTimings timings) {
 		ANTLRv4GrammarProperties grammarProperties = getGrammarProperties(project, grammarFile);
+		long start = System.nanoTime();
 		CharStream input = grammarProperties.getCaseChangingStrategy()
 				.applyTo(CharStreams.fromString(inputText, grammarFile.getPath()));
+		timings.add(PreviewTimings.Stage.CHAR_STREAM, System.nanoTime()-start);
+		start = System.nanoTime();
 		LexerInterpreter lexEngine;
-		lexEngine = lg.createLexerInterpreter(input);
+		lexEngine = lg.createLexerInterpreter(input); // deserializes the lexer ATN every time
+		ProfilingLexerATNSimulator lexerSimulator = new ProfilingLexerATNSimulator(lexEngine);
+		lexEngine.setInterpreter(lexerSimulator);
+		timings.add(PreviewTimings.Stage.LEXING, System.nanoTime()-start);
 		SyntaxErrorListener syntaxErrorListener = new SyntaxErrorListener();
 		lexEngine.removeErrorListeners();
 		lexEngine.addErrorListener(syntaxErrorListener);
-		CommonTokenStream tokens = new TokenStreamSubset(lexEngine);
-		return parseText(g, lg, startRuleName, grammarFile, syntaxErrorListener, tokens, 0);
+		CommonTokenStream tokens = new CompactTokenStream(lexEngine);
+		start = System.nanoTime();
+		try {
+			ParsingResult result = parseText(g, lg, startRuleName, grammarFile, syntaxErrorListener, tokens, 0);
+			if ( result!=null ) {
+				result.timings = timings;
+			}
+			return result;
+		}
+		finally {
+			// tokens are lexed as the parser asks for them
+			long lexTime = lexerSimulator.getProfile().getTotalTime();
+			timings.add(PreviewTimings.Stage.LEXING, lexTime);
+			timings.add(PreviewTimings.Stage.PARSING, System.nanoTime()-start-lexTime);
+		}
 	}
 
 	public static ParsingResult parseText(Grammar g,
@@ -230,7 +300,7 @@ public class ParsingUtils {
 			return null;
 		}
 
-		if ( g==BAD_PARSER_GRAMMAR || lg==BAD_LEXER_GRAMMAR ) {
+		if ( isBadParserGrammar(g) || isBadLexerGrammar(lg) ) {
 			return null;
 		}
 
@@ -257,7 +327,17 @@ public class ParsingUtils {
 	}
 
 	public static Tool createANTLRToolForLoadingGrammars(ANTLRv4GrammarProperties grammarProperties) {
-		Tool antlr = new Tool();
+		return createANTLRToolForLoadingGrammars(grammarProperties, null, null);
+	}
+
+	/** Create a tool that reuses previously analyzed ATNs from cache and
+	 *  parsed imported grammars from importCache, where not null.
+	 */
+	public static Tool createANTLRToolForLoadingGrammars(ANTLRv4GrammarProperties grammarProperties,
+														 @Nullable GrammarAnalysisCache cache,
+														 @Nullable ImportedGrammarCache importCache)
+	{
+		Tool antlr = new AnalysisCachingTool(cache, importCache, null);
 		antlr.errMgr = new PluginIgnoreMissingTokensFileErrorManager(antlr);
 		antlr.errMgr.setFormat("antlr");
 		LoadGrammarsToolListener listener = new LoadGrammarsToolListener(antlr);
@@ -269,8 +349,20 @@ public class ParsingUtils {
 
 	/** Get lexer and parser grammars */
 	public static Grammar[] loadGrammars(VirtualFile grammarFile, Project project) {
+		long start = System.nanoTime();
+		try {
+			return doLoadGrammars(grammarFile, project);
+		}
+		finally {
+			LOAD_GRAMMARS_TIMER.record(System.nanoTime()-start);
+		}
+	}
+
+	private static Grammar[] doLoadGrammars(VirtualFile grammarFile, Project project) {
 		ANTLRv4PluginController.LOG.info("loadGrammars "+grammarFile.getPath()+" "+project.getName());
-		Tool antlr = createANTLRToolForLoadingGrammars(getGrammarProperties(project, grammarFile));
+		Tool antlr = createANTLRToolForLoadingGrammars(getGrammarProperties(project, grammarFile),
+													   GrammarAnalysisCache.getInstance(project),
+													   ImportedGrammarCache.getInstance());
 		LoadGrammarsToolListener listener = (LoadGrammarsToolListener)antlr.getListeners().get(0);
 
 		ConsoleView console = ANTLRv4PluginController.getInstance(project).getConsole();
@@ -288,7 +380,7 @@ public class ParsingUtils {
 				g.importVocab(lg);
 			}
 			else {
-				lg = BAD_LEXER_GRAMMAR;
+				lg = getBadLexerGrammar();
 			}
 		}
 
@@ -312,7 +404,7 @@ public class ParsingUtils {
 			case ANTLRParser.COMBINED :
 				lg = g.getImplicitLexer();
 				if ( lg==null ) {
-					lg = BAD_LEXER_GRAMMAR;
+					lg = getBadLexerGrammar();
 				}
 				ANTLRv4PluginController.LOG.info("loadGrammars combined: "+lg.name+", "+g.name);
 				return new Grammar[] {lg, g};
@@ -364,7 +456,9 @@ public class ParsingUtils {
 	 *     	XLexer given grammar name X
 	 */
 	public static LexerGrammar loadLexerGrammarFor(Grammar g, Project project) {
-		Tool antlr = createANTLRToolForLoadingGrammars(getGrammarProperties(project, g.fileName));
+		Tool antlr = createANTLRToolForLoadingGrammars(getGrammarProperties(project, g.fileName),
+													   GrammarAnalysisCache.getInstance(project),
+													   ImportedGrammarCache.getInstance());
 		LoadGrammarsToolListener listener = (LoadGrammarsToolListener)antlr.getListeners().get(0);
 		LexerGrammar lg = null;
 		VirtualFile lexerGrammarFile;
@@ -0,0 +1,59 @@
+package org.antlr.intellij.plugin.parsing;
+
+import java.util.Arrays;
+
+/** Prediction cost by input position, gathered by {@link PreviewParser}
+ *  while profiling: for each token index, the deepest lookahead, the number
+ *  of full-context (LL) fallbacks and the prediction time (ns) of the
+ *  predictions that started at that token. One int per metric and token in
+ *  a single array, so reading it back while painting an editor neither
+ *  boxes nor chases pointers; time saturates at Integer.MAX_VALUE ns.
+ */
+public class PredictionHeatMap {
+	public enum Metric {LOOKAHEAD, FULL_LL, TIME}
+
+	private static final int METRICS = Metric.values().length;
+
+	private int[] data = new int[METRICS*1024];
+	/** Highest token index set +1 */
+	private int size;
+	private final int[] max = new int[METRICS];
+
+	void reset() {
+		Arrays.fill(data, 0, size*METRICS, 0);
+		Arrays.fill(max, 0);
+		size = 0;
+	}
+
+	void predicted(int tokenIndex, int lookahead, boolean fullContext, long time) {
+		if ( tokenIndex<0 ) return;
+		int i = tokenIndex*METRICS;
+		if ( i+METRICS>data.length ) {
+			data = Arrays.copyOf(data, Math.max(i+METRICS, data.length*2));
+		}
+		size = Math.max(size, tokenIndex+1);
+		set(i, Metric.LOOKAHEAD, Math.max(data[i+Metric.LOOKAHEAD.ordinal()], lookahead));
+		if ( fullContext ) {
+			set(i, Metric.FULL_LL, data[i+Metric.FULL_LL.ordinal()]+1);
+		}
+		set(i, Metric.TIME, (int) Math.min(Integer.MAX_VALUE, data[i+Metric.TIME.ordinal()]+time));
+	}
+
+	private void set(int i, Metric metric, int value) {
+		data[i+metric.ordinal()] = value;
+		max[metric.ordinal()] = Math.max(max[metric.ordinal()], value);
+	}
+
+	public int get(Metric metric, int tokenIndex) {
+		return tokenIndex<size ? data[tokenIndex*METRICS+metric.ordinal()] : 0;
+	}
+
+	public int getMax(Metric metric) {
+		return max[metric.ordinal()];
+	}
+
+	/** Token indexes covered */
+	public int size() {
+		return size;
+	}
+}
@@ -10,37 +10,138 @@ import org.antlr.v4.runtime.atn.ATN;
 import org.antlr.v4.runtime.atn.ATNDeserializer;
 import org.antlr.v4.runtime.atn.ATNSerializer;
 import org.antlr.v4.runtime.atn.ATNState;
+import org.antlr.v4.runtime.atn.DecisionInfo;
 import org.antlr.v4.runtime.atn.DecisionState;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.atn.ProfilingATNSimulator;
+import org.antlr.v4.runtime.tree.TerminalNode;
 import org.antlr.v4.tool.Grammar;
 import org.antlr.v4.tool.GrammarParserInterpreter;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 public class PreviewParser extends GrammarParserInterpreter {
-	/** Map each preview editor token to the grammar ATN state used to match it.
-	 *  Saves us having to create special token subclass and token factory.
+	/** The grammar ATN state used to match each preview editor token, by
+	 *  token index; INVALID_STATE_NUMBER for tokens not matched (hidden,
+	 *  skipped by error recovery). Saves us having to create special token
+	 *  subclass and token factory, and, unlike a map from token to boxed
+	 *  state, costs 4 bytes a token on inputs with millions of them.
 	 */
-	public Map<Token, Integer> inputTokenToStateMap = new HashMap<>();
+	private int[] tokenIndexToState = new int[0];
+	/** Highest token index in tokenIndexToState we set */
+	private int maxMatchedTokenIndex = -1;
 
-	private final LexerWatchdog lexerWatchdog;
+	private LexerWatchdog lexerWatchdog;
+
+	/** Per-rule time and tokens; only while profiling */
+	private RuleProfile ruleProfile;
+	/** Prediction cost per token; only while profiling */
+	private PredictionHeatMap heatMap;
 
 	protected int lastSuccessfulMatchState = ATNState.INVALID_STATE_NUMBER; // not sure about error nodes
 
 	public PreviewParser(Grammar g, ATN atn, TokenStream input) {
-		super(g, atn, input);
-		lexerWatchdog = new LexerWatchdog(input, this);
+		super(g, atn, input); // sets lexerWatchdog, see setTokenStream()
 	}
 
 	public PreviewParser(Grammar g, TokenStream input) {
 		this(g, new ATNDeserializer().deserialize(ATNSerializer.getSerializedAsChars(g.getATN())), input);
 	}
 
+	/** Also called by the Parser constructor */
+	@Override
+	public void setTokenStream(TokenStream input) {
+		super.setTokenStream(input);
+		lexerWatchdog = new LexerWatchdog(input, this); // watch the new input when a parser is reused
+	}
+
 	@Override
 	public void reset() {
 		super.reset();
-		if ( inputTokenToStateMap!=null ) inputTokenToStateMap.clear();
+		if ( tokenIndexToState!=null ) { // reset() is called during super() construction
+			Arrays.fill(tokenIndexToState, 0, maxMatchedTokenIndex+1, ATNState.INVALID_STATE_NUMBER);
+		}
+		maxMatchedTokenIndex = -1;
 		lastSuccessfulMatchState = ATNState.INVALID_STATE_NUMBER;
+		if ( _parentContextStack!=null ) {
+			_parentContextStack.clear(); // left over when a reused parser's last parse was aborted
+		}
+	}
+
+	/** Profiling also times rules, see {@link #getRuleProfile}, and tracks
+	 *  prediction memory, see {@link MemoryProfilingATNSimulator}
+	 */
+	@Override
+	public void setProfile(boolean profile) {
+		if ( profile && !(getInterpreter() instanceof MemoryProfilingATNSimulator) ) {
+			PredictionMode mode = getInterpreter().getPredictionMode();
+			setInterpreter(new MemoryProfilingATNSimulator(this)); // super keeps a profiling simulator
+			getInterpreter().setPredictionMode(mode);
+		}
+		super.setProfile(profile);
+		ruleProfile = profile ? new RuleProfile(getRuleNames().length) : null;
+		heatMap = profile ? new PredictionHeatMap() : null;
+	}
+
+	/** Per-rule stats of the last parse; null unless profiling */
+	public RuleProfile getRuleProfile() {
+		return ruleProfile;
+	}
+
+	/** Prediction cost per token of the last parse; null unless profiling */
+	public PredictionHeatMap getHeatMap() {
+		return heatMap;
+	}
+
+	@Override
+	public ParserRuleContext parse(int startRuleIndex) {
+		if ( ruleProfile==null ) {
+			return super.parse(startRuleIndex);
+		}
+		ruleProfile.reset();
+		heatMap.reset();
+		try {
+			return super.parse(startRuleIndex);
+		}
+		finally {
+			ruleProfile.exitAll();
+		}
+	}
+
+	@Override
+	public void enterRule(ParserRuleContext localctx, int state, int ruleIndex) {
+		super.enterRule(localctx, state, ruleIndex);
+		if ( ruleProfile!=null ) ruleProfile.enterRule(ruleIndex);
+	}
+
+	/** Entry of a left-recursive rule. Its operator loop grows the tree
+	 *  through pushNewRecursionContext() without entering the rule again,
+	 *  so the whole chain is profiled as this one invocation.
+	 */
+	@Override
+	public void enterRecursionRule(ParserRuleContext localctx, int state, int ruleIndex, int precedence) {
+		super.enterRecursionRule(localctx, state, ruleIndex, precedence);
+		if ( ruleProfile!=null ) ruleProfile.enterRule(ruleIndex);
+	}
+
+	@Override
+	public void exitRule() {
+		if ( ruleProfile!=null ) ruleProfile.exitRule();
+		super.exitRule();
+	}
+
+	/** Exit of a left-recursive rule */
+	@Override
+	public void unrollRecursionContexts(ParserRuleContext parentctx) {
+		if ( ruleProfile!=null ) ruleProfile.exitRule();
+		super.unrollRecursionContexts(parentctx);
+	}
+
+	@Override
+	public Token consume() {
+		Token t = super.consume();
+		if ( ruleProfile!=null ) ruleProfile.tokenConsumed();
+		return t;
 	}
 
 	@Override
@@ -48,11 +149,36 @@ public class PreviewParser extends GrammarParserInterpreter {
 		return new PreviewInterpreterRuleContext(parent, invokingStateNumber, ruleIndex);
 	}
 
+	/** Leaves for tokens of a compact store refer to the store rather than hold a token */
+	@Override
+	public TerminalNode createTerminalNode(ParserRuleContext parent, Token t) {
+		if ( t instanceof CompactTokenStore.TokenView ) {
+			return new CompactTokenStore.TokenNode((CompactTokenStore.TokenView)t);
+		}
+		return super.createTerminalNode(parent, t);
+	}
+
 	@Override
 	protected int visitDecisionState(DecisionState p) {
 		ProgressManager.checkCanceled();
 
-		int predictedAlt = super.visitDecisionState(p);
+		int predictedAlt;
+		if ( ruleProfile!=null && p.decision>=0 && getInterpreter() instanceof ProfilingATNSimulator ) {
+			// charge the simulator's own measure of this prediction to the rule stack
+			DecisionInfo decisionInfo = ((ProfilingATNSimulator) getInterpreter()).getDecisionInfo()[p.decision];
+			long before = decisionInfo.timeInPrediction;
+			long invocationsBefore = decisionInfo.invocations;
+			predictedAlt = super.visitDecisionState(p);
+			long time = decisionInfo.timeInPrediction-before;
+			ruleProfile.predicted(time);
+			if ( decisionInfo.invocations>invocationsBefore && getInterpreter() instanceof MemoryProfilingATNSimulator ) {
+				MemoryProfilingATNSimulator interp = (MemoryProfilingATNSimulator) getInterpreter();
+				heatMap.predicted(interp.getLastStartIndex(), interp.getLastLookahead(), interp.wasLastFullContext(), time);
+			}
+		}
+		else {
+			predictedAlt = super.visitDecisionState(p);
+		}
 		if ( p.getNumberOfTransitions()>1 ) {
 //			System.out.println("decision "+p.decision+": "+predictedAlt);
 			if ( p.decision==this.overrideDecision &&
@@ -71,7 +197,7 @@ public class PreviewParser extends GrammarParserInterpreter {
 		//		System.out.println("match ATOM state " + getState() + ": " + _input.LT(1));
 		Token t = super.match(ttype);
 		// track which ATN state matches each token
-		inputTokenToStateMap.put(t, getState());
+		setMatchingState(t, getState());
 		lastSuccessfulMatchState = getState();
 //		CommonToken tokenInGrammar = previewState.stateToGrammarRegionMap.get(getState());
 		return t;
@@ -83,8 +209,28 @@ public class PreviewParser extends GrammarParserInterpreter {
 		lexerWatchdog.checkLexerIsNotStuck();
 
 //		System.out.println("match anything state "+getState());
-		inputTokenToStateMap.put(_input.LT(1), getState());
+		setMatchingState(_input.LT(1), getState());
 		lastSuccessfulMatchState = getState();
 		return super.matchWildcard();
 	}
+
+	/** The ATN state that matched token or INVALID_STATE_NUMBER if none did */
+	public int getMatchingState(Token token) {
+		int i = token.getTokenIndex();
+		if ( i<0 || i>=tokenIndexToState.length ) return ATNState.INVALID_STATE_NUMBER;
+		return tokenIndexToState[i];
+	}
+
+	private void setMatchingState(Token token, int state) {
+		int i = token.getTokenIndex();
+		if ( i<0 ) return; // conjured up by error recovery; not in the input
+		if ( i>=tokenIndexToState.length ) {
+			int oldLength = tokenIndexToState.length;
+			int newLength = Math.max(Math.max(i+1, oldLength*2), _input.size());
+			tokenIndexToState = Arrays.copyOf(tokenIndexToState, newLength);
+			Arrays.fill(tokenIndexToState, oldLength, newLength, ATNState.INVALID_STATE_NUMBER);
+		}
+		tokenIndexToState[i] = state;
+		maxMatchedTokenIndex = Math.max(maxMatchedTokenIndex, i);
+	}
 }
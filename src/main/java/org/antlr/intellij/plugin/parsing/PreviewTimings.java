@@ -0,0 +1,86 @@
+package org.antlr.intellij.plugin.parsing;
+
+import java.util.Arrays;
+
+/** Where the time of one preview update went, from taking the input text
+ *  out of the editor to painting the new parse tree, by stage in ns.
+ *  The first stages run on the parsing thread and are handed over with the
+ *  {@link ParsingResult}; the rest run on the EDT, tree layout and painting
+ *  possibly long after the update itself.
+ *
+ *  Lexing happens on demand while parsing, so the lexing stage is the time
+ *  it took to create the lexer plus the time it spent matching tokens (see
+ *  {@link ProfilingLexerATNSimulator}) and the parsing stage what remains
+ *  of the parse.
+ */
+public class PreviewTimings {
+	public enum Stage {
+		SNAPSHOT("Snapshot", "Copying the input out of the editor document"),
+		CHAR_STREAM("Char stream", "Creating the char stream, case folding included"),
+		LEXING("Lexing", "Creating the lexer and matching tokens"),
+		PARSING("Parsing", "Parsing and building the parse tree, less lexing"),
+		TREE_BUILDING("Tree building", "Building the hierarchy view of the parse tree"),
+		ERROR_HIGHLIGHTING("Error highlighting", "Highlighting syntax errors in the input"),
+		PROFILING("Profiling", "Measuring the parse's memory and filling the profiler"),
+		TREE_LAYOUT("Tree layout", "Laying out the parse tree; in the background for big trees"),
+		PAINTING("Painting", "First paint of the new parse tree; not measured while it is hidden");
+
+		public final String label;
+		public final String description;
+
+		Stage(String label, String description) {
+			this.label = label;
+			this.description = description;
+		}
+	}
+
+	private final long[] times = new long[Stage.values().length];
+	/** Called on the EDT when a stage is measured after the update has been shown */
+	private Runnable listener;
+
+	public PreviewTimings() {
+		Arrays.fill(times, -1);
+	}
+
+	/** Add time ns to stage */
+	public void add(Stage stage, long time) {
+		int i = stage.ordinal();
+		times[i] = Math.max(0, times[i])+Math.max(0, time);
+		if ( listener!=null ) {
+			listener.run();
+		}
+	}
+
+	/** Run work and add its time to stage */
+	public void time(Stage stage, Runnable work) {
+		long start = System.nanoTime();
+		try {
+			work.run();
+		}
+		finally {
+			add(stage, System.nanoTime()-start);
+		}
+	}
+
+	/** Time of stage in ns, -1 if not measured (yet) */
+	public long get(Stage stage) {
+		return times[stage.ordinal()];
+	}
+
+	public boolean isMeasured(Stage stage) {
+		return times[stage.ordinal()]>=0;
+	}
+
+	/** Sum of the stages measured so far */
+	public long getTotal() {
+		long total = 0;
+		for (long t : times) {
+			total += Math.max(0, t);
+		}
+		return total;
+	}
+
+	public void setListener(Runnable listener) {
+		this.listener = listener;
+	}
+}
@@ -0,0 +1,119 @@
+package org.antlr.intellij.plugin.parsing;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.Lexer;
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.atn.ATNConfig;
+import org.antlr.v4.runtime.atn.LexerATNSimulator;
+import org.antlr.v4.runtime.atn.PredictionContextCache;
+import org.antlr.v4.runtime.atn.RuleStopState;
+import org.antlr.v4.runtime.dfa.DFA;
+import org.antlr.v4.runtime.dfa.DFAState;
+
+import java.util.Arrays;
+
+/** A lexer simulator that fills a {@link LexerProfile}, the lexer's
+ *  counterpart of the parser's ProfilingATNSimulator. Install it with
+ *  {@code lexer.setInterpreter(new ProfilingLexerATNSimulator(lexer))}; it
+ *  starts from fresh DFAs, as a new LexerInterpreter does.
+ */
+public class ProfilingLexerATNSimulator extends LexerATNSimulator {
+	private final LexerProfile profile;
+
+	// state of the current match
+	private DFAState acceptState;
+	private long dfaHits;
+	private long atnSteps;
+
+	/** Rule index+1 of each accept state seen, per mode by DFA state number; 0 if not known yet */
+	private final int[][] acceptStateRules;
+
+	public ProfilingLexerATNSimulator(Lexer lexer) {
+		this(lexer, lexer.getATN(), createDFAs(lexer.getATN()));
+	}
+
+	private ProfilingLexerATNSimulator(Lexer lexer, ATN atn, DFA[] decisionToDFA) {
+		super(lexer, atn, decisionToDFA, new PredictionContextCache());
+		profile = new LexerProfile(atn.ruleToStartState.length, atn.modeToStartState.size(), decisionToDFA);
+		acceptStateRules = new int[atn.modeToStartState.size()][];
+		Arrays.fill(acceptStateRules, new int[0]);
+	}
+
+	private static DFA[] createDFAs(ATN atn) {
+		DFA[] dfas = new DFA[atn.getNumberOfDecisions()];
+		for (int i = 0; i<dfas.length; i++) {
+			dfas[i] = new DFA(atn.getDecisionState(i), i);
+		}
+		return dfas;
+	}
+
+	public LexerProfile getProfile() {
+		return profile;
+	}
+
+	@Override
+	public int match(CharStream input, int mode) {
+		int start = input.index();
+		acceptState = null;
+		dfaHits = 0;
+		atnSteps = 0;
+		long startTime = System.nanoTime();
+		try {
+			return super.match(input, mode);
+		}
+		finally {
+			long elapsed = System.nanoTime()-startTime;
+			profile.matched(mode, ruleOf(mode, acceptState), elapsed, input.index()-start, dfaHits, atnSteps);
+		}
+	}
+
+	@Override
+	protected int matchATN(CharStream input) {
+		atnSteps++; // the mode's start state
+		return super.matchATN(input);
+	}
+
+	@Override
+	protected DFAState getExistingTargetState(DFAState s, int t) {
+		DFAState target = super.getExistingTargetState(s, t);
+		if ( target!=null ) {
+			dfaHits++;
+		}
+		return target;
+	}
+
+	@Override
+	protected DFAState computeTargetState(CharStream input, DFAState s, int t) {
+		atnSteps++;
+		return super.computeTargetState(input, s, t);
+	}
+
+	@Override
+	protected void captureSimState(SimState settings, CharStream input, DFAState dfaState) {
+		super.captureSimState(settings, input, dfaState);
+		acceptState = dfaState; // the last one captured is the one accepted
+	}
+
+	/** The rule that an accept state predicts, -1 for none */
+	private int ruleOf(int mode, DFAState s) {
+		if ( s==null ) return -1;
+		int[] rules = acceptStateRules[mode];
+		if ( s.stateNumber<rules.length && rules[s.stateNumber]!=0 ) {
+			return rules[s.stateNumber]-1;
+		}
+		// as LexerATNSimulator.addDFAState picks the prediction of an accept state
+		int ruleIndex = -1;
+		for (ATNConfig c : s.configs) {
+			if ( c.state instanceof RuleStopState ) {
+				ruleIndex = c.state.ruleIndex;
+				break;
+			}
+		}
+		if ( s.stateNumber>=rules.length ) {
+			rules = Arrays.copyOf(rules, Math.max(s.stateNumber+1, rules.length*2));
+			acceptStateRules[mode] = rules;
+		}
+		rules[s.stateNumber] = ruleIndex+1;
+		return ruleIndex;
+	}
+}
@@ -0,0 +1,100 @@
+package org.antlr.intellij.plugin.parsing;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.Parser;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.atn.DecisionInfo;
+import org.antlr.v4.runtime.atn.ParseInfo;
+import org.antlr.v4.runtime.dfa.DFA;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import org.antlr.v4.tool.Grammar;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/** Rough estimates, in bytes, of the heap a parse result or grammar keeps
+ *  alive, from object counts times typical object sizes on a 64-bit VM
+ *  with compressed pointers. Good enough to compare grammars and decide
+ *  what to drop from memory, not an exact measurement.
+ */
+public class RetainedSize {
+	/** A rule context with its children list, start and stop token views */
+	private static final int RULE_NODE = 120;
+	private static final int CHILD_REF = 4;
+	private static final int TERMINAL_NODE = 24;
+	/** A token in a {@link CompactTokenStore} and its matching ATN state in the preview parser */
+	private static final int COMPACT_TOKEN = 28;
+	/** A CommonToken, its list slot and its matching ATN state */
+	private static final int COMMON_TOKEN = 60;
+	private static final int INPUT_CHAR = 2;
+	/** A DFA state with its ATN configurations */
+	private static final int DFA_STATE = 256;
+	/** A profiler decision event (ambiguity, error, ...) */
+	private static final int DECISION_EVENT = 64;
+	private static final int SYNTAX_ERROR = 128;
+	private static final int ATN_STATE = 96;
+
+	public static long estimate(ParsingResult result) {
+		long size = 0;
+		if ( result.tree!=null ) {
+			size += estimateTree(result.tree);
+		}
+		if ( result.syntaxErrorListener!=null ) {
+			size += (long)result.syntaxErrorListener.getSyntaxErrors().size()*SYNTAX_ERROR;
+		}
+		Parser parser = result.parser;
+		if ( parser!=null ) {
+			size += estimateTokens(parser.getInputStream());
+			for (DFA dfa : parser.getInterpreter().decisionToDFA) {
+				size += (long)dfa.states.size()*DFA_STATE;
+			}
+			ParseInfo parseInfo = parser.getParseInfo();
+			if ( parseInfo!=null ) {
+				for (DecisionInfo d : parseInfo.getDecisionInfo()) {
+					int events = d.ambiguities.size()+d.contextSensitivities.size()+
+								 d.errors.size()+d.predicateEvals.size();
+					size += (long)events*DECISION_EVENT;
+				}
+			}
+		}
+		return size;
+	}
+
+	public static long estimate(Grammar g) {
+		if ( g==null || g.atn==null ) return 0;
+		return (long)g.atn.states.size()*ATN_STATE;
+	}
+
+	private static long estimateTokens(TokenStream tokens) {
+		if ( tokens==null ) return 0;
+		long size = 0;
+		TokenSource tokenSource = tokens.getTokenSource();
+		CharStream input = tokenSource!=null ? tokenSource.getInputStream() : null;
+		if ( input!=null ) {
+			size += (long)input.size()*INPUT_CHAR;
+		}
+		int perToken = tokens instanceof CompactTokenStream ? COMPACT_TOKEN : COMMON_TOKEN;
+		return size+(long)tokens.size()*perToken;
+	}
+
+	private static long estimateTree(ParseTree root) {
+		long size = 0;
+		Deque<ParseTree> work = new ArrayDeque<>();
+		work.push(root);
+		while ( !work.isEmpty() ) {
+			ParseTree t = work.pop();
+			if ( t instanceof TerminalNode ) {
+				size += TERMINAL_NODE;
+				continue;
+			}
+			int n = t.getChildCount();
+			size += RULE_NODE+(long)n*CHILD_REF;
+			for (int i = 0; i<n; i++) {
+				work.push(t.getChild(i));
+			}
+		}
+		return size;
+	}
+}
@@ -0,0 +1,229 @@
+package org.antlr.intellij.plugin.parsing;
+
+import java.util.Arrays;
+
+/** Where a parse spends its time and tokens, per rule, gathered by
+ *  {@link PreviewParser} at rule entry and exit. Counters are arrays indexed
+ *  by rule and open invocations sit on an array stack, so profiling costs
+ *  two clock reads per invocation and allocates only when the stack or the
+ *  call tree below outgrow their arrays.
+ *
+ *  Inclusive time and tokens of a rule are those of its outermost
+ *  invocations; counting nested invocations of a recursive rule again would
+ *  add up to more than the whole parse. Own (exclusive) time is the time in
+ *  the rule itself, prediction included, minus the time in rules it invoked;
+ *  own tokens are the ones it matched itself.
+ *
+ *  The same figures are also kept per rule invocation stack, in a call tree
+ *  whose nodes merge all invocations with the same stack; node 0 is the
+ *  root above the start rule. A child node always has a higher number than
+ *  its parent, so totals over subtrees can be summed in one backwards pass.
+ */
+public class RuleProfile {
+	private final long[] invocations;
+	private final long[] time;
+	private final long[] ownTime;
+	private final long[] tokens;
+	private final long[] ownTokens;
+	/** How many invocations of each rule are open */
+	private final int[] open;
+
+	// call tree
+	private int[] nodeRule = new int[256];
+	private int[] nodeParent = new int[256];
+	private int[] nodeFirstChild = new int[256];
+	private int[] nodeNextSibling = new int[256];
+	private long[] nodeOwnTime = new long[256];
+	private long[] nodeOwnTokens = new long[256];
+	private long[] nodePredictionTime = new long[256];
+	private int numberOfNodes;
+
+	// open invocations, innermost last
+	private int[] stackRule = new int[64];
+	private int[] stackNode = new int[64];
+	private long[] stackStartTime = new long[64];
+	private long[] stackChildTime = new long[64];
+	private long[] stackTokens = new long[64];
+	private int depth;
+	private int maxDepth;
+
+	public RuleProfile(int numberOfRules) {
+		invocations = new long[numberOfRules];
+		time = new long[numberOfRules];
+		ownTime = new long[numberOfRules];
+		tokens = new long[numberOfRules];
+		ownTokens = new long[numberOfRules];
+		open = new int[numberOfRules];
+		newNode(-1, -1);
+	}
+
+	public void reset() {
+		Arrays.fill(invocations, 0);
+		Arrays.fill(time, 0);
+		Arrays.fill(ownTime, 0);
+		Arrays.fill(tokens, 0);
+		Arrays.fill(ownTokens, 0);
+		Arrays.fill(open, 0);
+		depth = 0;
+		maxDepth = 0;
+		numberOfNodes = 0;
+		newNode(-1, -1);
+	}
+
+	void enterRule(int ruleIndex) {
+		if ( depth==stackRule.length ) {
+			int n = depth*2;
+			stackRule = Arrays.copyOf(stackRule, n);
+			stackNode = Arrays.copyOf(stackNode, n);
+			stackStartTime = Arrays.copyOf(stackStartTime, n);
+			stackChildTime = Arrays.copyOf(stackChildTime, n);
+			stackTokens = Arrays.copyOf(stackTokens, n);
+		}
+		stackRule[depth] = ruleIndex;
+		stackNode[depth] = childNode(depth>0 ? stackNode[depth-1] : 0, ruleIndex);
+		stackChildTime[depth] = 0;
+		stackTokens[depth] = 0;
+		invocations[ruleIndex]++;
+		open[ruleIndex]++;
+		depth++;
+		maxDepth = Math.max(maxDepth, depth);
+		stackStartTime[depth-1] = System.nanoTime(); // last, so our own work isn't counted
+	}
+
+	void exitRule() {
+		long now = System.nanoTime();
+		if ( depth==0 ) return;
+		depth--;
+		int ruleIndex = stackRule[depth];
+		long elapsed = now-stackStartTime[depth];
+		ownTime[ruleIndex] += elapsed-stackChildTime[depth];
+		nodeOwnTime[stackNode[depth]] += elapsed-stackChildTime[depth];
+		if ( --open[ruleIndex]==0 ) {
+			time[ruleIndex] += elapsed;
+			tokens[ruleIndex] += stackTokens[depth];
+		}
+		if ( depth>0 ) {
+			stackChildTime[depth-1] += elapsed;
+			stackTokens[depth-1] += stackTokens[depth];
+		}
+	}
+
+	/** Close invocations a parse left open, e.g. when it was cancelled */
+	void exitAll() {
+		while ( depth>0 ) {
+			exitRule();
+		}
+	}
+
+	void tokenConsumed() {
+		if ( depth==0 ) return;
+		ownTokens[stackRule[depth-1]]++;
+		nodeOwnTokens[stackNode[depth-1]]++;
+		stackTokens[depth-1]++;
+	}
+
+	/** Time in ns the innermost open invocation spent predicting */
+	void predicted(long time) {
+		if ( depth==0 ) return;
+		nodePredictionTime[stackNode[depth-1]] += time;
+	}
+
+	private int childNode(int parent, int ruleIndex) {
+		for (int n = nodeFirstChild[parent]; n!=0; n = nodeNextSibling[n]) {
+			if ( nodeRule[n]==ruleIndex ) return n;
+		}
+		int n = newNode(parent, ruleIndex);
+		nodeNextSibling[n] = nodeFirstChild[parent];
+		nodeFirstChild[parent] = n;
+		return n;
+	}
+
+	private int newNode(int parent, int ruleIndex) {
+		if ( numberOfNodes==nodeRule.length ) {
+			int n = numberOfNodes*2;
+			nodeRule = Arrays.copyOf(nodeRule, n);
+			nodeParent = Arrays.copyOf(nodeParent, n);
+			nodeFirstChild = Arrays.copyOf(nodeFirstChild, n);
+			nodeNextSibling = Arrays.copyOf(nodeNextSibling, n);
+			nodeOwnTime = Arrays.copyOf(nodeOwnTime, n);
+			nodeOwnTokens = Arrays.copyOf(nodeOwnTokens, n);
+			nodePredictionTime = Arrays.copyOf(nodePredictionTime, n);
+		}
+		int n = numberOfNodes++;
+		nodeRule[n] = ruleIndex;
+		nodeParent[n] = parent;
+		nodeFirstChild[n] = 0;
+		nodeNextSibling[n] = 0;
+		nodeOwnTime[n] = 0;
+		nodeOwnTokens[n] = 0;
+		nodePredictionTime[n] = 0;
+		return n;
+	}
+
+	public int getNumberOfRules() {
+		return invocations.length;
+	}
+
+	public long getInvocations(int ruleIndex) {
+		return invocations[ruleIndex];
+	}
+
+	/** Inclusive time in ns */
+	public long getTime(int ruleIndex) {
+		return time[ruleIndex];
+	}
+
+	/** Exclusive time in ns */
+	public long getOwnTime(int ruleIndex) {
+		return ownTime[ruleIndex];
+	}
+
+	public long getTokens(int ruleIndex) {
+		return tokens[ruleIndex];
+	}
+
+	public long getOwnTokens(int ruleIndex) {
+		return ownTokens[ruleIndex];
+	}
+
+	/** Time in ns spent in all rules, i.e., the profiled parse */
+	public long getTotalTime() {
+		long total = 0;
+		for (long t : ownTime) {
+			total += t;
+		}
+		return total;
+	}
+
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	/** Number of call tree nodes, root included */
+	public int getNumberOfStacks() {
+		return numberOfNodes;
+	}
+
+	/** Rule invoked last in the stack of node; -1 for the root */
+	public int getStackRule(int node) {
+		return nodeRule[node];
+	}
+
+	/** -1 for the root */
+	public int getStackParent(int node) {
+		return nodeParent[node];
+	}
+
+	public long getStackOwnTime(int node) {
+		return nodeOwnTime[node];
+	}
+
+	public long getStackOwnTokens(int node) {
+		return nodeOwnTokens[node];
+	}
+
+	/** Time in ns spent in prediction by this stack's innermost rule */
+	public long getStackPredictionTime(int node) {
+		return nodePredictionTime[node];
+	}
+}
@@ -20,14 +20,19 @@ import org.antlr.intellij.adaptor.lexer.RuleIElementType;
 import org.antlr.intellij.plugin.ANTLRv4PluginController;
 import org.antlr.intellij.plugin.ANTLRv4TokenTypes;
 import org.antlr.intellij.plugin.configdialogs.ANTLRv4GrammarProperties;
+import org.antlr.intellij.plugin.metrics.Metrics;
+import org.antlr.intellij.plugin.metrics.Timer;
 import org.antlr.intellij.plugin.parser.ANTLRv4Parser;
 import org.antlr.intellij.plugin.preview.PreviewState;
 import org.antlr.intellij.plugin.psi.AtAction;
 import org.antlr.intellij.plugin.psi.GrammarSpecNode;
 import org.antlr.v4.Tool;
+import org.antlr.v4.codegen.CodeGenPipeline;
 import org.antlr.v4.codegen.CodeGenerator;
 import org.antlr.v4.runtime.misc.Utils;
+import org.antlr.v4.tool.ErrorType;
 import org.antlr.v4.tool.Grammar;
+import org.antlr.v4.tool.ast.GrammarRootAST;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.stringtemplate.v4.misc.Misc;
@@ -51,6 +56,9 @@ public class RunANTLROnGrammarFile extends Task.Modal {
 	public static final String OUTPUT_DIR_NAME = "gen" ;
 	public static final String groupDisplayId = "ANTLR 4 Parser Generation";
 
+	private static final Timer RUN_TIMER =
+		Metrics.timer("antlr.run", "Generating (or checking whether to generate) the code for a grammar");
+
 	private static final Pattern PACKAGE_DEFINITION_REGEX = Pattern.compile("package\\s+[a-z][a-z0-9_]*(\\.[a-z0-9_]+)+[0-9a-z_];");
 
 	private final VirtualFile grammarFile;
@@ -71,24 +79,30 @@ public class RunANTLROnGrammarFile extends Task.Modal {
 
 	@Override
 	public void run(@NotNull ProgressIndicator indicator) {
-		indicator.setIndeterminate(true);
-		ANTLRv4GrammarProperties grammarProperties = getGrammarProperties(project, grammarFile);
-		boolean autogen = grammarProperties.shouldAutoGenerateParser();
-		if ( forceGeneration || (autogen && isGrammarStale(grammarProperties)) ) {
-			antlr(grammarFile);
-		}
-		else {
-			ANTLRv4PluginController controller = ANTLRv4PluginController.getInstance(project);
-			final PreviewState previewState = controller.getPreviewState(grammarFile);
-			// is lexer file? gen .tokens file no matter what as tokens might have changed;
-			// a parser that feeds off of that file will need to see the changes.
-			if ( previewState.g==null && previewState.lg!=null) {
-				Grammar g = previewState.lg;
-				String language = g.getOptionString(ANTLRv4GrammarProperties.PROP_LANGUAGE);
-				Tool tool = ParsingUtils.createANTLRToolForLoadingGrammars(getGrammarProperties(project, grammarFile));
-				CodeGenerator gen = new CodeGenerator(tool, g, language);
-				gen.writeVocabFile();
+		long start = System.nanoTime();
+		try {
+			indicator.setIndeterminate(true);
+			ANTLRv4GrammarProperties grammarProperties = getGrammarProperties(project, grammarFile);
+			boolean autogen = grammarProperties.shouldAutoGenerateParser();
+			if ( forceGeneration || (autogen && isGrammarStale(grammarProperties)) ) {
+				antlr(grammarFile);
 			}
+			else {
+				ANTLRv4PluginController controller = ANTLRv4PluginController.getInstance(project);
+				final PreviewState previewState = controller.getPreviewState(grammarFile);
+				// is lexer file? gen .tokens file no matter what as tokens might have changed;
+				// a parser that feeds off of that file will need to see the changes.
+				if ( previewState.g==null && previewState.lg!=null) {
+					Grammar g = previewState.lg;
+					String language = g.getOptionString(ANTLRv4GrammarProperties.PROP_LANGUAGE);
+					Tool tool = ParsingUtils.createANTLRToolForLoadingGrammars(getGrammarProperties(project, grammarFile));
+					CodeGenerator gen = new CodeGenerator(tool, g, language);
+					gen.writeVocabFile();
+				}
+			}
+		}
+		finally {
+			RUN_TIMER.record(System.nanoTime()-start);
 		}
 	}
 
@@ -134,10 +148,13 @@ public class RunANTLROnGrammarFile extends Task.Modal {
 		String fullyQualifiedInputFileName = sourcePath+File.separator+vfile.getName();
 		args.add(fullyQualifiedInputFileName); // add grammar file last
 
+		List<String> grammarFileNames = new ArrayList<>();
+		grammarFileNames.add(fullyQualifiedInputFileName);
 		String lexerGrammarFileName = ParsingUtils.getLexerNameFromParserFileName(fullyQualifiedInputFileName);
 		if ( new File(lexerGrammarFileName).exists() ) {
 			// build the lexer too as the grammar surely uses it if it exists
 			args.add(lexerGrammarFileName);
+			grammarFileNames.add(lexerGrammarFileName);
 		}
 
 		LOG.info("args: " + Utils.join(args.iterator(), " "));
@@ -151,8 +168,19 @@ public class RunANTLROnGrammarFile extends Task.Modal {
 		RunANTLRListener listener = new RunANTLRListener(antlr, console);
 		antlr.addListener(listener);
 
+		Map<String,String> additionalTargets = getAdditionalTargetOutputDirs(project, vfile);
+		for (String language : additionalTargets.keySet()) {
+			console.print(timeStamp+": antlr4 additional target "+language+" -> "+additionalTargets.get(language)+"\n",
+						  ConsoleViewContentType.SYSTEM_OUTPUT);
+		}
+
 		try {
-			antlr.processGrammarsOnCommandLine();
+			if ( additionalTargets.isEmpty() ) {
+				antlr.processGrammarsOnCommandLine();
+			}
+			else {
+				processGrammarsForAllTargets(antlr, grammarFileNames, additionalTargets);
+			}
 		}
 		catch (Throwable e) {
 			StringWriter sw = new StringWriter();
@@ -174,6 +202,78 @@ public class RunANTLROnGrammarFile extends Task.Modal {
 		}
 	}
 
+	/** Same as {@link Tool#processGrammarsOnCommandLine()}, but once a grammar has
+	 *  been analyzed and generated for the primary target, reuse that analyzed
+	 *  {@link Grammar} to generate code for each additional target; only the
+	 *  code generator runs again per target.
+	 */
+	private static void processGrammarsForAllTargets(Tool antlr,
+													 List<String> grammarFileNames,
+													 Map<String,String> additionalTargets)
+	{
+		List<GrammarRootAST> sortedGrammars = antlr.sortGrammarByTokenVocab(grammarFileNames);
+		String primaryOutputDir = antlr.outputDirectory;
+		for (GrammarRootAST t : sortedGrammars) {
+			if ( antlr.errMgr.getNumErrors()>0 ) return;
+			Grammar g = antlr.createGrammar(t);
+			g.fileName = t.fileName;
+			antlr.process(g, true);
+			if ( antlr.errMgr.getNumErrors()>0 ) return;
+
+			for (String language : additionalTargets.keySet()) {
+				if ( !CodeGenerator.targetExists(language) ) {
+					antlr.errMgr.toolError(ErrorType.CANNOT_CREATE_TARGET_GENERATOR, language);
+					continue;
+				}
+				antlr.outputDirectory = additionalTargets.get(language);
+				try {
+					generateCodeForTarget(g, language);
+				}
+				finally {
+					antlr.outputDirectory = primaryOutputDir;
+				}
+			}
+		}
+	}
+
+	private static void generateCodeForTarget(Grammar g, String language) {
+		if ( g.implicitLexer!=null ) {
+			generateCodeForTarget(g.implicitLexer, language);
+		}
+		// -Dlanguage=X ends up in cmdLineOptions, which wins over the grammar's own options
+		Map<String,String> savedOptions = g.ast.cmdLineOptions;
+		Map<String,String> targetOptions = new HashMap<>();
+		if ( savedOptions!=null ) {
+			targetOptions.putAll(savedOptions);
+		}
+		targetOptions.put(ANTLRv4GrammarProperties.PROP_LANGUAGE, language);
+		g.ast.cmdLineOptions = targetOptions;
+		try {
+			new CodeGenPipeline(g).process();
+		}
+		finally {
+			g.ast.cmdLineOptions = savedOptions;
+		}
+	}
+
+	/** Map each additional target language to its fully resolved output dir */
+	public static Map<String,String> getAdditionalTargetOutputDirs(Project project, VirtualFile vfile) {
+		ANTLRv4GrammarProperties grammarProperties = getGrammarProperties(project, vfile);
+		Map<String,String> targets = grammarProperties.getAdditionalTargetOutputDirs();
+		if ( targets.isEmpty() ) {
+			return targets;
+		}
+		VirtualFile contentRoot = getContentRoot(project, vfile);
+		String package_ = getANTLRArgs(project, vfile).get("-package");
+		Map<String,String> outputDirs = new LinkedHashMap<>();
+		for (String language : targets.keySet()) {
+			outputDirs.put(language,
+						   grammarProperties.resolveTargetOutputDirName(project, contentRoot, package_,
+																		language, targets.get(language)));
+		}
+		return outputDirs;
+	}
+
 	public static List<String> getANTLRArgsAsList(Project project, VirtualFile vfile) {
 		Map<String,String> argMap = getANTLRArgs(project, vfile);
 		List<String> args = new ArrayList<>();
@@ -272,6 +372,10 @@ public class RunANTLROnGrammarFile extends Task.Modal {
 	}
 
 	public String getOutputDirName() {
+		return getOutputDirName(project, grammarFile);
+	}
+
+	public static String getOutputDirName(Project project, VirtualFile grammarFile) {
 		VirtualFile contentRoot = getContentRoot(project, grammarFile);
 		Map<String,String> argMap = getANTLRArgs(project, grammarFile);
 		String package_ = argMap.get("-package");
@@ -13,19 +13,39 @@ import org.antlr.v4.tool.Rule;
 import org.antlr.v4.tool.ast.AltAST;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
+/** Node text for the parse tree views: rule nodes show their alt label or
+ *  alt number, tokens their type and text. The rule node texts of a grammar
+ *  are computed once, per (rule, outer alt), and shared by every provider on
+ *  that grammar; the text of each node is kept as long as the provider
+ *  (i.e., as long as the tree it's rendering).
+ */
 public class AltLabelTextProvider implements TreeTextProvider {
+	/** grammar -> text of a rule node by rule index and outer alt number */
+	private static final Map<Grammar, String[][]> ruleNodeTexts =
+		Collections.synchronizedMap(new WeakHashMap<>());
+
 	protected final Parser parser;
 	protected final Grammar g;
 
+	private final String[][] ruleTexts;
+	private final List<String> ruleNames;
+	/** Read from the EDT and from background tree layout */
+	private final Map<Tree, String> nodeTexts = new ConcurrentHashMap<>();
+
 	public AltLabelTextProvider(Parser parser, Grammar g) {
 		this.parser = parser;
 		this.g = g;
+		this.ruleTexts = ruleNodeTexts.computeIfAbsent(g, AltLabelTextProvider::computeRuleNodeTexts);
+		this.ruleNames = Arrays.asList(parser.getRuleNames());
 	}
 
-	public String[] getAltLabels(Rule r) {
+	public static String[] getAltLabels(Rule r) {
 		String[] altLabels = null;
 		Map<String, List<Pair<Integer, AltAST>>> altLabelsMap = r.getAltLabels();
 		if ( altLabelsMap!=null ) {
@@ -40,32 +60,56 @@ public class AltLabelTextProvider implements TreeTextProvider {
 		return altLabels;
 	}
 
-	@Override
-	public String getText(Tree node) {
-		if ( node instanceof PreviewInterpreterRuleContext) {
-			PreviewInterpreterRuleContext inode = (PreviewInterpreterRuleContext)node;
-			Rule r = g.getRule(inode.getRuleIndex());
+	/** Text of a node of rule r for each outer alt number, 0..number of alts */
+	private static String[][] computeRuleNodeTexts(Grammar g) {
+		String[][] texts = new String[g.rules.size()][];
+		for (Rule r : g.rules.values()) {
 			String[] altLabels = getAltLabels(r);
 			String name = r.name;
-			int outerAltNum = inode.getOuterAltNum();
-			if ( altLabels!=null ) {
-				if ( outerAltNum>=0 && outerAltNum<altLabels.length ) {
-					return name+":"+altLabels[outerAltNum];
+			int n = r.getOriginalNumberOfAlts() + 1;
+			String[] ruleTexts = new String[n];
+			for (int outerAltNum = 0; outerAltNum<n; outerAltNum++) {
+				if ( altLabels!=null ) {
+					ruleTexts[outerAltNum] = name+":"+altLabels[outerAltNum];
+				}
+				else if ( r.getOriginalNumberOfAlts()>1 ) {
+					ruleTexts[outerAltNum] = name + ":" +outerAltNum;
 				}
 				else {
-					return name;
+					ruleTexts[outerAltNum] = name; // don't display an alternative number if there's only one
 				}
 			}
-			else if ( r.getOriginalNumberOfAlts()>1 ) {
-				return name + ":" +outerAltNum;
-			}
-			else {
-				return name; // don't display an alternative number if there's only one
+			texts[r.index] = ruleTexts;
+		}
+		return texts;
+	}
+
+	@Override
+	public String getText(Tree node) {
+		String text = nodeTexts.get(node);
+		if ( text==null ) {
+			text = computeText(node);
+			nodeTexts.put(node, text);
+		}
+		return text;
+	}
+
+	private String computeText(Tree node) {
+		if ( node instanceof PreviewInterpreterRuleContext) {
+			PreviewInterpreterRuleContext inode = (PreviewInterpreterRuleContext)node;
+			String[] texts = ruleTexts[inode.getRuleIndex()];
+			int outerAltNum = inode.getOuterAltNum();
+			if ( outerAltNum>=0 && outerAltNum<texts.length ) {
+				return texts[outerAltNum];
 			}
+			// alt number we have no text for; label it like the alt numbers we do
+			Rule r = g.getRule(inode.getRuleIndex());
+			boolean showAltNum = r.getAltLabels()==null && r.getOriginalNumberOfAlts()>1;
+			return showAltNum ? r.name+":"+outerAltNum : r.name;
 		} else if (node instanceof TerminalNode) {
 			return getLabelForToken( ((TerminalNode)node).getSymbol() );
 		}
-		return Trees.getNodeText(node, Arrays.asList(parser.getRuleNames()));
+		return Trees.getNodeText(node, ruleNames);
 	}
 
 	private String getLabelForToken(Token token) {
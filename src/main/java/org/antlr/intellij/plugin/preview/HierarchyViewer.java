@@ -11,23 +11,20 @@ import org.antlr.intellij.plugin.Icons;
 import org.antlr.v4.gui.TreeTextProvider;
 import org.antlr.v4.gui.TreeViewer;
 import org.antlr.v4.runtime.ParserRuleContext;
-import org.antlr.v4.runtime.Token;
 import org.antlr.v4.runtime.tree.ParseTree;
 import org.antlr.v4.runtime.tree.TerminalNode;
 import org.antlr.v4.runtime.tree.Tree;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
-import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeCellRenderer;
-import javax.swing.tree.DefaultTreeModel;
-import javax.swing.tree.MutableTreeNode;
 import javax.swing.tree.TreePath;
 import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import static com.intellij.icons.AllIcons.Actions.Find;
 import static com.intellij.icons.AllIcons.General.AutoscrollFromSource;
@@ -39,8 +36,17 @@ class HierarchyViewer extends JPanel {
 	private boolean highlightSource = false;
 	private PreviewPanel previewPanel;
 
-	private JTree myTree = new com.intellij.ui.treeStructure.Tree();
+	private JTree myTree = new com.intellij.ui.treeStructure.Tree() {
+		@Override
+		public String convertValueToText(Object value, boolean selected, boolean expanded,
+										 boolean leaf, int row, boolean hasFocus) {
+			return value instanceof Tree ? getLabel((Tree) value) : super.convertValueToText(value, selected, expanded, leaf, row, hasFocus);
+		}
+	};
+	private ParseTreeModel model = new ParseTreeModel(null);
 	private TreeTextProvider treeTextProvider;
+	/** Labels of the nodes shown so far; computing them can be costly (alt labels) */
+	private final Map<Tree, String> labels = new IdentityHashMap<>();
 
 	HierarchyViewer(Tree tree, PreviewPanel previewPanel) {
 		this.previewPanel = previewPanel;
@@ -103,107 +109,60 @@ class HierarchyViewer extends JPanel {
 		renderer.setClosedIcon(Icons.PARSER_RULE);
 		renderer.setLeafIcon(Icons.LEXER_RULE);
 		myTree.setCellRenderer(renderer);
+		myTree.setLargeModel(true); // rows have a fixed height; don't measure and cache every row
 	}
 
 	public void setTree(Tree tree) {
-		myTree.setModel(new DefaultTreeModel(wrap(tree), false));
+		labels.clear();
+		model = new ParseTreeModel(tree);
+		myTree.setModel(model);
 	}
 
 	public void setRuleNames(List<String> ruleNames) {
-		treeTextProvider = new TreeViewer.DefaultTreeTextProvider(ruleNames);
+		setTreeTextProvider(new TreeViewer.DefaultTreeTextProvider(ruleNames));
 	}
 
 	public void setTreeTextProvider(TreeTextProvider treeTextProvider) {
 		this.treeTextProvider = treeTextProvider;
+		labels.clear();
 	}
 
-	private MutableTreeNode wrap(final Tree tree) {
-		if (tree == null) {
-			return null;
+	private String getLabel(Tree tree) {
+		String label = labels.get(tree);
+		if ( label==null ) {
+			label = treeTextProvider!=null ? treeTextProvider.getText(tree) : String.valueOf(tree);
+			labels.put(tree, label);
 		}
-		DefaultMutableTreeNode root = new DefaultMutableTreeNode(tree) {
-			@Override
-			public String toString() {
-				return treeTextProvider.getText((Tree) getUserObject());
-			}
-
-
-		};
-
-		for (int i = 0; i < tree.getChildCount(); i++) {
-			root.add(wrap(tree.getChild(i)));
-		}
-		return root;
+		return label;
 	}
 
 	public void selectNodeAtOffset(int offset) {
 		if (!scrollFromSource) {
 			return;
 		}
-		DefaultMutableTreeNode root = (DefaultMutableTreeNode) myTree.getModel().getRoot();
+		Tree root = (Tree) model.getRoot();
 		if ( root==null ) {
 			return; // probably because the grammar is not valid
 		}
-		Tree tree = (Tree) root.getUserObject();
 
-		if (tree instanceof ParseTree) {
-			DefaultMutableTreeNode atOffset = getNodeAtOffset(root, offset);
+		if (root instanceof ParseTree) {
+			Tree atOffset = model.getNodeAtOffset(offset);
 
 			if (atOffset != null) {
-				TreePath path = new TreePath(atOffset.getPath());
+				TreePath path = model.getPathTo(atOffset);
 				myTree.getSelectionModel().setSelectionPath(path);
 				myTree.scrollPathToVisible(path);
 			}
 		}
 	}
 
-	@Nullable
-	private DefaultMutableTreeNode getNodeAtOffset(DefaultMutableTreeNode node, int offset) {
-		Tree tree = (Tree) node.getUserObject();
-
-		if (tree instanceof ParserRuleContext) {
-			ParserRuleContext ctx = (ParserRuleContext)tree;
-			if ( inBounds(ctx, offset) ) {
-				for (int i = 0; i < node.getChildCount(); i++) {
-					DefaultMutableTreeNode child = (DefaultMutableTreeNode) node.getChildAt(i);
-					DefaultMutableTreeNode atOffset = getNodeAtOffset(child, offset);
-
-					if (atOffset != null) {
-						return atOffset;
-					}
-				}
-				// None of the children match, so it must be this node
-				return node;
-			}
-		}
-		else if (tree instanceof TerminalNode) {
-			TerminalNode terminal = (TerminalNode) tree;
-
-			if (terminal.getSymbol().getStartIndex() <= offset && terminal.getSymbol().getStopIndex() >= offset) {
-				return node;
-			}
-		}
-
-		return null;
-	}
-
-	private boolean inBounds(ParserRuleContext ctx, int offset) {
-		Token start = ctx.getStart();
-		Token stop = ctx.getStop();
-		if ( start!=null && stop!=null ) {
-			return start.getStartIndex()<=offset && stop.getStopIndex()>=offset;
-		}
-		return false;
-	}
-
 	private void onClick(MouseEvent e) {
 		if (highlightSource) {
 			TreePath path = myTree.getClosestPathForLocation(e.getX(), e.getY());
 			if (path == null) {
 				return;
 			}
-			DefaultMutableTreeNode node = (DefaultMutableTreeNode) path.getLastPathComponent();
-			Tree tree = (Tree) node.getUserObject();
+			Tree tree = (Tree) path.getLastPathComponent();
 
 			int startIndex;
 			int stopIndex;
@@ -0,0 +1,101 @@
+package org.antlr.intellij.plugin.preview;
+
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.markup.MarkupModel;
+import com.intellij.openapi.editor.markup.RangeHighlighter;
+import com.intellij.openapi.util.Key;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/** The highlighters we put into an editor's markup model, by what they show.
+ *  Clearing one kind (e.g., token info on every mouse move) only touches the
+ *  highlighters of that kind instead of scanning all highlighters of the
+ *  editor, which can be many thousands with lots of errors or decision
+ *  events. One registry per markup model, kept as its user data; EDT only.
+ */
+public class HighlighterRegistry {
+	public enum Category {
+		SYNTAX_ERRORS,
+		TOKEN_INFO,
+		/** input phrases of the decision selected in the profiler */
+		DECISION_EVENTS,
+		/** the decision selected in the profiler, in the grammar editor */
+		DECISION_INFO,
+		/** prediction cost of the last parse, see HeatMapOverlay */
+		HEAT_MAP
+	}
+
+	private static final Key<HighlighterRegistry> REGISTRY_KEY = Key.create("ANTLR_HIGHLIGHTER_REGISTRY");
+
+	private final MarkupModel markupModel;
+	private final Map<Category, List<RangeHighlighter>> highlighters = new EnumMap<>(Category.class);
+	private final Map<Category, Integer> clearCounts = new EnumMap<>(Category.class);
+
+	private HighlighterRegistry(MarkupModel markupModel) {
+		this.markupModel = markupModel;
+		for (Category c : Category.values()) {
+			highlighters.put(c, new ArrayList<>());
+			clearCounts.put(c, 0);
+		}
+	}
+
+	public static HighlighterRegistry getInstance(Editor editor) {
+		return getInstance(editor.getMarkupModel());
+	}
+
+	public static HighlighterRegistry getInstance(MarkupModel markupModel) {
+		HighlighterRegistry registry = markupModel.getUserData(REGISTRY_KEY);
+		if ( registry==null ) {
+			registry = new HighlighterRegistry(markupModel);
+			markupModel.putUserData(REGISTRY_KEY, registry);
+		}
+		return registry;
+	}
+
+	public void add(Category category, RangeHighlighter highlighter) {
+		highlighters.get(category).add(highlighter);
+	}
+
+	/** Remove a single highlighter of category from the editor */
+	public void remove(Category category, RangeHighlighter highlighter) {
+		if ( highlighters.get(category).remove(highlighter) && highlighter.isValid() ) {
+			markupModel.removeHighlighter(highlighter);
+		}
+	}
+
+	public int size(Category category) {
+		return highlighters.get(category).size();
+	}
+
+	/** How often category was cleared; lets code that adds highlighters over
+	 *  time (e.g., on scroll) notice someone else wiped them.
+	 */
+	public int getClearCount(Category category) {
+		return clearCounts.get(category);
+	}
+
+	/** Remove the highlighters of category from the editor */
+	public void clear(Category category) {
+		clearCounts.put(category, clearCounts.get(category)+1);
+		List<RangeHighlighter> list = highlighters.get(category);
+		if ( list.isEmpty() ) return;
+		for (RangeHighlighter r : list) {
+			if ( r.isValid() ) {
+				markupModel.removeHighlighter(r);
+			}
+		}
+		list.clear();
+	}
+
+	/** Remove our highlighters and anything else in the markup model */
+	public void clearAll() {
+		markupModel.removeAllHighlighters();
+		for (Category c : Category.values()) {
+			highlighters.get(c).clear();
+			clearCounts.put(c, clearCounts.get(c)+1);
+		}
+	}
+}
@@ -30,6 +30,7 @@ import org.antlr.intellij.plugin.Icons;
 import org.antlr.intellij.plugin.actions.MyActionUtils;
 import org.antlr.intellij.plugin.parsing.ParsingUtils;
 import org.antlr.intellij.plugin.parsing.PreviewParser;
+import org.antlr.intellij.plugin.profiler.DecisionEventHighlights;
 import org.antlr.intellij.plugin.profiler.ProfilerPanel;
 import org.antlr.runtime.CommonToken;
 import org.antlr.v4.runtime.*;
@@ -55,6 +56,8 @@ public class InputPanel {
 	private static final Key<SyntaxError> SYNTAX_ERROR = Key.create("SYNTAX_ERROR");
 	private static final int MAX_STACK_DISPLAY = 30;
 	private static final int MAX_HINT_WIDTH = 110;
+	/** Beyond this many syntax errors, only the first ones are underlined and listed */
+	private static final int MAX_SHOWN_SYNTAX_ERRORS = 500;
 	private static final Logger LOG = Logger.getInstance("ANTLR InputPanel");
 	private static final int TOKEN_INFO_LAYER = HighlighterLayer.SELECTION; // Show token info over errors
 	private static final int ERROR_LAYER = HighlighterLayer.ERROR;
@@ -341,6 +344,7 @@ public class InputPanel {
 		if ( editor==null ) return;
 		editor.removeEditorMouseListener(editorMouseListener);
 		editor.removeEditorMouseMotionListener(editorMouseListener);
+		DecisionEventHighlights.release(editor);
 	}
 
 	public void setStartRuleName(VirtualFile grammarFile, String startRuleName) {
@@ -388,43 +392,43 @@ public class InputPanel {
 		Editor editor = getInputEditor();
 		if ( editor==null ) return;
 
-		MarkupModel markupModel = editor.getMarkupModel();
-		markupModel.removeAllHighlighters();
+		HighlighterRegistry.getInstance(editor).clearAll();
 	}
 
 	/**
 	 * Clear decision stuff but leave syntax errors
 	 */
 	public static void clearDecisionEventHighlighters(Editor editor) {
-		removeHighlighters(editor, ProfilerPanel.DECISION_EVENT_INFO_KEY);
+		HighlighterRegistry.getInstance(editor).clear(HighlighterRegistry.Category.DECISION_EVENTS);
 	}
 
 	/**
 	 * Remove any previous underlining or boxing, but not errors or decision event info
 	 */
 	public static void clearTokenInfoHighlighters(Editor editor) {
-		MarkupModel markupModel = editor.getMarkupModel();
-		for (RangeHighlighter r : markupModel.getAllHighlighters()) {
-			if ( r.getUserData(ProfilerPanel.DECISION_EVENT_INFO_KEY)==null &&
-				r.getUserData(SYNTAX_ERROR)==null ) {
-				markupModel.removeHighlighter(r);
-			}
-		}
+		HighlighterRegistry.getInstance(editor).clear(HighlighterRegistry.Category.TOKEN_INFO);
 	}
 
 	/**
 	 * Display error messages to the console and also add annotations
-	 * to the preview input window.
+	 * to the preview input window. Very long error lists are cut off at
+	 * MAX_SHOWN_SYNTAX_ERRORS with a count of the rest.
 	 */
 	public void showParseErrors(final List<SyntaxError> errors) {
 		if ( errors.size()==0 ) {
 			clearInputEditorHighlighters();
 			return;
 		}
-		for (SyntaxError e : errors) {
+		int n = Math.min(errors.size(), MAX_SHOWN_SYNTAX_ERRORS);
+		StringBuilder msgs = new StringBuilder();
+		for (SyntaxError e : errors.subList(0, n)) {
 			annotateErrorsInPreviewInputEditor(e);
-			displayErrorInParseErrorConsole(e);
+			msgs.append(getErrorDisplayString(e)).append('\n');
 		}
+		if ( errors.size()>n ) {
+			msgs.append(String.format("... %d more syntax errors not shown\n", errors.size()-n));
+		}
+		errorConsole.append(msgs.toString()); // one document change, not one per error
 	}
 
 	/**
@@ -554,13 +558,14 @@ public class InputPanel {
 		attr.setEffectColor(color);
 		attr.setEffectType(effectType);
 		MarkupModel markupModel = editor.getMarkupModel();
-		markupModel.addRangeHighlighter(
+		RangeHighlighter highlighter = markupModel.addRangeHighlighter(
 			sourceInterval.a,
 			sourceInterval.b,
 			InputPanel.TOKEN_INFO_LAYER, // layer
 			attr,
 			HighlighterTargetArea.EXACT_RANGE
 		                               );
+		HighlighterRegistry.getInstance(markupModel).add(HighlighterRegistry.Category.TOKEN_INFO, highlighter);
 
 		if ( hintText.contains("<") ) {
 			hintText = hintText.replaceAll("<", "&lt;");
@@ -578,8 +583,8 @@ public class InputPanel {
 		}
 
 		PreviewParser parser = (PreviewParser) previewState.parsingResult.parser;
-		Integer atnState = parser.inputTokenToStateMap.get(tokenUnderCursor);
-		if ( atnState==null ) { // likely an error token
+		int atnState = parser.getMatchingState(tokenUnderCursor);
+		if ( atnState==ATNState.INVALID_STATE_NUMBER ) { // likely an error token
 			//LOG.error("no ATN state for input token " + tokenUnderCursor);
 			return;
 		}
@@ -672,6 +677,9 @@ public class InputPanel {
 			} else {
 				// error tool tips
 				SyntaxError errorUnderCursor = r.getUserData(SYNTAX_ERROR);
+				if ( errorUnderCursor==null ) {
+					continue; // e.g., error stripe summary of decision events
+				}
 				msg = getErrorDisplayString(errorUnderCursor);
 				if ( msg.length()>MAX_HINT_WIDTH ) {
 					msg = msg.substring(0, MAX_HINT_WIDTH) + "...";
@@ -682,6 +690,9 @@ public class InputPanel {
 			}
 			msgList.add(msg);
 		}
+		if ( msgList.isEmpty() ) {
+			return;
+		}
 		String combinedMsg = Utils.join(msgList.iterator(), "\n");
 		HintManagerImpl hintMgr = (HintManagerImpl) HintManager.getInstance();
 		if ( foundDecisionEvent ) {
@@ -743,17 +754,7 @@ public class InputPanel {
 			                                attr,
 			                                HighlighterTargetArea.EXACT_RANGE);
 		highlighter.putUserData(SYNTAX_ERROR, e);
-	}
-
-
-	public static void removeHighlighters(Editor editor, Key<?> key) {
-		// Remove anything with user data accessible via key
-		MarkupModel markupModel = editor.getMarkupModel();
-		for (RangeHighlighter r : markupModel.getAllHighlighters()) {
-			if ( r.getUserData(key)!=null ) {
-				markupModel.removeHighlighter(r);
-			}
-		}
+		HighlighterRegistry.getInstance(markupModel).add(HighlighterRegistry.Category.SYNTAX_ERRORS, highlighter);
 	}
 
 	public static String getErrorDisplayString(SyntaxError e) {
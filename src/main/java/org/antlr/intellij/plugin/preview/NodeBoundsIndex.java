@@ -0,0 +1,98 @@
+package org.antlr.intellij.plugin.preview;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/** Immutable spatial index over the boxes of a laid out tree so painting and
+ *  hit testing only look at what intersects the clip/point instead of every
+ *  node. Items are packed into buckets of nearby items (sort-tile-recursive:
+ *  vertical slices by x, then runs by y) and a query only scans the items of
+ *  buckets whose bounding box it hits.
+ */
+class NodeBoundsIndex<T> {
+	private static final int BUCKET_SIZE = 64;
+
+	private final Object[] items;
+	private final Rectangle2D.Double[] bounds;
+	/** bucket i holds items[bucketStart[i]] .. items[bucketStart[i+1]-1] */
+	private final int[] bucketStart;
+	private final Rectangle2D.Double[] bucketBounds;
+
+	NodeBoundsIndex(List<T> items, List<Rectangle2D.Double> bounds) {
+		int n = items.size();
+		Integer[] order = new Integer[n];
+		double[] cx = new double[n];
+		double[] cy = new double[n];
+		for (int i = 0; i<n; i++) {
+			order[i] = i;
+			cx[i] = bounds.get(i).getCenterX();
+			cy[i] = bounds.get(i).getCenterY();
+		}
+
+		Arrays.sort(order, Comparator.comparingDouble(i -> cx[i]));
+		int numBuckets = (n+BUCKET_SIZE-1)/BUCKET_SIZE;
+		int numSlices = Math.max(1, (int)Math.ceil(Math.sqrt(numBuckets)));
+		int sliceSize = numSlices*BUCKET_SIZE;
+		for (int start = 0; start<n; start += sliceSize) {
+			Arrays.sort(order, start, Math.min(n, start+sliceSize),
+						Comparator.comparingDouble(i -> cy[i]));
+		}
+
+		this.items = new Object[n];
+		this.bounds = new Rectangle2D.Double[n];
+		for (int i = 0; i<n; i++) {
+			this.items[i] = items.get(order[i]);
+			this.bounds[i] = bounds.get(order[i]);
+		}
+		this.bucketStart = new int[numBuckets+1];
+		this.bucketBounds = new Rectangle2D.Double[numBuckets];
+		for (int b = 0; b<numBuckets; b++) {
+			int start = b*BUCKET_SIZE;
+			int stop = Math.min(n, start+BUCKET_SIZE);
+			bucketStart[b] = start;
+			Rectangle2D.Double r = (Rectangle2D.Double)this.bounds[start].clone();
+			for (int i = start+1; i<stop; i++) {
+				Rectangle2D.union(r, this.bounds[i], r);
+			}
+			bucketBounds[b] = r;
+		}
+		bucketStart[numBuckets] = n;
+	}
+
+	int size() {
+		return items.length;
+	}
+
+	/** All items whose bounds intersect r (or touch it, for zero-width edges) */
+	@SuppressWarnings("unchecked")
+	List<T> query(Rectangle2D r) {
+		List<T> result = new ArrayList<>();
+		for (int b = 0; b<bucketBounds.length; b++) {
+			if ( !overlaps(bucketBounds[b], r) ) continue;
+			for (int i = bucketStart[b]; i<bucketStart[b+1]; i++) {
+				if ( overlaps(bounds[i], r) ) result.add((T)items[i]);
+			}
+		}
+		return result;
+	}
+
+	/** The item whose bounds contain (x,y), or null */
+	@SuppressWarnings("unchecked")
+	T findAt(double x, double y) {
+		for (int b = 0; b<bucketBounds.length; b++) {
+			if ( !bucketBounds[b].contains(x, y) ) continue;
+			for (int i = bucketStart[b]; i<bucketStart[b+1]; i++) {
+				if ( bounds[i].contains(x, y) ) return (T)items[i];
+			}
+		}
+		return null;
+	}
+
+	private static boolean overlaps(Rectangle2D a, Rectangle2D b) {
+		return a.getMinX()<=b.getMaxX() && b.getMinX()<=a.getMaxX() &&
+			   a.getMinY()<=b.getMaxY() && b.getMinY()<=a.getMaxY();
+	}
+}
@@ -7,61 +7,68 @@ import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.fileChooser.FileChooserFactory;
 import com.intellij.openapi.fileChooser.FileSaverDescriptor;
 import com.intellij.openapi.fileChooser.FileSaverDialog;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.SystemInfo;
 import com.intellij.openapi.util.io.FileUtilRt;
 import com.intellij.openapi.util.registry.Registry;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.vfs.VirtualFileWrapper;
-import com.intellij.ui.JBColor;
-import com.intellij.util.ui.UIUtil;
-import org.apache.batik.dom.GenericDOMImplementation;
-import org.apache.batik.svggen.SVGGraphics2D;
-import org.apache.batik.svggen.SVGGraphics2DIOException;
+import org.antlr.v4.gui.TreeTextProvider;
+import org.antlr.v4.runtime.tree.Tree;
 import org.apache.commons.lang.StringUtils;
-import org.w3c.dom.DOMImplementation;
-import org.w3c.dom.Document;
 
 import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.MouseEvent;
-import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Shows a contextual menu when the user right-clicks on the parse tree preview. The menu contains options
- * to export the parse tree to several image formats.
+ * to collapse/expand subtrees and to export the parse tree to several image formats, LISP-style text or JSON.
  */
 class ParseTreeContextualMenu {
 
     static void showPopupMenu(UberTreeViewer parseTreeViewer, MouseEvent event) {
         JPopupMenu menu = new JPopupMenu();
 
+        Tree node = parseTreeViewer.getNodeAt(event.getPoint());
+        if (node != null && node.getChildCount() > 0) {
+            JMenuItem collapse = new JMenuItem(parseTreeViewer.isCollapsed(node) ? "Expand subtree" : "Collapse subtree");
+            collapse.addActionListener(e -> parseTreeViewer.toggleCollapsed(node));
+            menu.add(collapse);
+        }
+        JMenuItem expandAll = new JMenuItem("Expand all");
+        expandAll.addActionListener(e -> parseTreeViewer.expandAll());
+        menu.add(expandAll);
+        menu.addSeparator();
+
         menu.add(createExportMenuItem(parseTreeViewer, "Export to image (white background)", false));
         menu.add(createExportMenuItem(parseTreeViewer, "Export to image (transparent background)", true));
+        menu.add(createTextExportMenuItem(parseTreeViewer, "Export to text (LISP-style)", "txt"));
+        menu.add(createTextExportMenuItem(parseTreeViewer, "Export to JSON", "json"));
 
         menu.show(parseTreeViewer, event.getX(), event.getY());
     }
 
     private static JMenuItem createExportMenuItem(UberTreeViewer parseTreeViewer, String label, boolean useTransparentBackground) {
         JMenuItem item = new JMenuItem(label);
-        boolean isMacNativSaveDialog = SystemInfo.isMac && Registry.is("ide.mac.native.save.dialog");
+        item.setEnabled(parseTreeViewer.hasTree());
 
         item.addActionListener(event -> {
             String[] extensions = useTransparentBackground ? new String[]{"png", "svg"} : new String[]{"png", "jpg", "svg"};
-            FileSaverDescriptor descriptor = new FileSaverDescriptor("Export Image to", "Choose the destination file", extensions);
-            FileSaverDialog dialog = FileChooserFactory.getInstance().createSaveFileDialog(descriptor, (Project) null);
-
-            String fileName = "parseTree" + (isMacNativSaveDialog ? ".png" : "");
-            VirtualFileWrapper vf = dialog.save((VirtualFile) null, fileName);
-
-            if (vf == null) {
+            File file = chooseFile("Export Image to", "png", extensions);
+            if (file == null) {
                 return;
             }
 
-            File file = vf.getFile();
             String imageFormat = FileUtilRt.getExtension(file.getName());
             if (StringUtils.isBlank(imageFormat)) {
                 imageFormat = "png";
@@ -77,50 +84,108 @@ class ParseTreeContextualMenu {
         return item;
     }
 
-    private static void exportToImage(UberTreeViewer parseTreeViewer, File file, boolean useTransparentBackground, String imageFormat) {
-        int imageType = useTransparentBackground ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
-        BufferedImage bi = UIUtil.createImage(parseTreeViewer.getWidth(), parseTreeViewer.getHeight(), imageType);
-        Graphics graphics = bi.getGraphics();
+    private static JMenuItem createTextExportMenuItem(UberTreeViewer parseTreeViewer, String label, String extension) {
+        JMenuItem item = new JMenuItem(label);
+        item.setEnabled(parseTreeViewer.hasTree());
+
+        item.addActionListener(event -> {
+            File file = chooseFile("Export Parse Tree to", extension, extension);
+            Tree root = parseTreeViewer.getRoot();
+            if (file == null || root == null) {
+                return;
+            }
+
+            ParseTreeWriter.Format format = "json".equals(extension) ? ParseTreeWriter.Format.JSON : ParseTreeWriter.Format.LISP;
+            TreeTextProvider textProvider = parseTreeViewer.getTreeTextProvider();
+            export(file, () -> {
+                try (Writer writer = createWriter(file)) {
+                    new ParseTreeWriter(textProvider, writer).write(root, format);
+                }
+            });
+        });
+
+        return item;
+    }
+
+    private static File chooseFile(String title, String defaultExtension, String... extensions) {
+        boolean isMacNativSaveDialog = SystemInfo.isMac && Registry.is("ide.mac.native.save.dialog");
+        FileSaverDescriptor descriptor = new FileSaverDescriptor(title, "Choose the destination file", extensions);
+        FileSaverDialog dialog = FileChooserFactory.getInstance().createSaveFileDialog(descriptor, (Project) null);
 
-        if (!useTransparentBackground) {
-            graphics.setColor(JBColor.WHITE);
-            graphics.fillRect(0, 0, parseTreeViewer.getWidth(), parseTreeViewer.getHeight());
+        String fileName = "parseTree" + (isMacNativSaveDialog ? "." + defaultExtension : "");
+        VirtualFileWrapper vf = dialog.save((VirtualFile) null, fileName);
+        return vf != null ? vf.getFile() : null;
+    }
+
+    /**
+     * Renders and writes the image a strip at a time, see {@link TiledTreeImage}, so big trees don't need
+     * a full-size image in memory. Strips are painted in the background from a snapshot of the viewer, never
+     * by the viewer itself, which the EDT may be repainting meanwhile.
+     */
+    private static void exportToImage(UberTreeViewer parseTreeViewer, File file, boolean useTransparentBackground, String imageFormat) {
+        UberTreeViewer.Snapshot snapshot = parseTreeViewer.snapshot();
+        if (snapshot == null) {
+            return;
         }
+        Dimension size = parseTreeViewer.getPreferredSize();
+        TiledTreeImage image = new TiledTreeImage(size.width, size.height, useTransparentBackground, g -> {
+            ProgressManager.checkCanceled();
+            snapshot.paintImage(g);
+        });
 
-        parseTreeViewer.paint(graphics);
-
-        try {
-            if (!ImageIO.write(bi, imageFormat, file)) {
-                Notification notification = new Notification(
-                        "ANTLR 4 export",
-                        "Error while exporting parse tree to file " + file.getAbsolutePath(),
-                        "unknown format '" + imageFormat + "'?",
-                        NotificationType.WARNING
-                );
-                Notifications.Bus.notify(notification);
+        export(file, () -> {
+            if (!ImageIO.write(image, imageFormat, file)) {
+                throw new IOException("unknown format '" + imageFormat + "'?");
             }
-        } catch (IOException e) {
-            Logger.getInstance(ParseTreeContextualMenu.class)
-                    .error("Error while exporting parse tree to file " + file.getAbsolutePath(), e);
-        }
+        });
     }
 
     private static void exportToSvg(UberTreeViewer parseTreeViewer, File file, boolean useTransparentBackground) {
-        DOMImplementation domImpl = GenericDOMImplementation.getDOMImplementation();
-        Document document = domImpl.createDocument("http://www.w3.org/2000/svg", "svg", null);
-        SVGGraphics2D svgGenerator = new SVGGraphics2D(document);
-
-        if (!useTransparentBackground) {
-            svgGenerator.setColor(JBColor.WHITE);
-            svgGenerator.fillRect(0, 0, parseTreeViewer.getWidth(), parseTreeViewer.getHeight());
+        UberTreeViewer.Snapshot snapshot = parseTreeViewer.snapshot();
+        if (snapshot == null) {
+            return;
         }
-        parseTreeViewer.paint(svgGenerator);
+        export(file, () -> {
+            try (Writer writer = createWriter(file)) {
+                snapshot.writeSvg(writer, useTransparentBackground);
+            }
+        });
+    }
+
+    private interface Export {
+        void run() throws IOException;
+    }
 
-        try {
-            svgGenerator.stream(file.getAbsolutePath(), true);
-        } catch (SVGGraphics2DIOException e) {
+    /**
+     * Runs export with a cancelable progress dialog; the tree can't change while it's up. Removes what was
+     * written so far if the user cancels.
+     */
+    private static void export(File file, Export export) {
+        IOException[] error = new IOException[1];
+        boolean completed = ProgressManager.getInstance().runProcessWithProgressSynchronously(() -> {
+            try {
+                export.run();
+            } catch (IOException e) {
+                error[0] = e;
+            }
+        }, "Exporting Parse Tree", true, null);
+
+        if (!completed) {
+            FileUtilRt.delete(file);
+        } else if (error[0] != null) {
             Logger.getInstance(ParseTreeContextualMenu.class)
-                    .error("Error while exporting parse tree to SVG file " + file.getAbsolutePath(), e);
+                    .warn("Error while exporting parse tree to file " + file.getAbsolutePath(), error[0]);
+            Notification notification = new Notification(
+                    "ANTLR 4 export",
+                    "Error while exporting parse tree to file " + file.getAbsolutePath(),
+                    StringUtils.defaultString(error[0].getMessage()),
+                    NotificationType.WARNING
+            );
+            Notifications.Bus.notify(notification);
         }
     }
+
+    private static Writer createWriter(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+    }
 }
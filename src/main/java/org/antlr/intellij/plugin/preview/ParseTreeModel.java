@@ -0,0 +1,166 @@
+package org.antlr.intellij.plugin.preview;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import org.antlr.v4.runtime.tree.Tree;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.event.EventListenerList;
+import javax.swing.event.TreeModelListener;
+import javax.swing.tree.TreeModel;
+import javax.swing.tree.TreePath;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/** {@link TreeModel} that exposes an ANTLR {@link Tree} as is: the nodes of
+ *  the JTree are the parse tree nodes, so nothing is built up front and
+ *  JTree only visits the children of expanded nodes. The parse tree never
+ *  changes under a model; a new tree gets a new model.
+ *
+ *  Finding the node at a text offset goes through the terminals sorted by
+ *  offset, collected the first time it's needed.
+ */
+class ParseTreeModel implements TreeModel {
+	private final Tree root;
+	private final EventListenerList listeners = new EventListenerList();
+
+	/** Terminals in input order; null until the first offset lookup */
+	private List<TerminalNode> terminals;
+	private int[] terminalStarts;
+
+	ParseTreeModel(@Nullable Tree root) {
+		this.root = root;
+	}
+
+	@Override
+	public Object getRoot() {
+		return root;
+	}
+
+	@Override
+	public Object getChild(Object parent, int index) {
+		return ((Tree)parent).getChild(index);
+	}
+
+	@Override
+	public int getChildCount(Object parent) {
+		return ((Tree)parent).getChildCount();
+	}
+
+	@Override
+	public boolean isLeaf(Object node) {
+		return ((Tree)node).getChildCount()==0;
+	}
+
+	@Override
+	public void valueForPathChanged(TreePath path, Object newValue) {
+		// read-only
+	}
+
+	@Override
+	public int getIndexOfChild(Object parent, Object child) {
+		if ( parent==null || child==null ) return -1;
+		Tree p = (Tree)parent;
+		for (int i = 0; i<p.getChildCount(); i++) {
+			if ( p.getChild(i)==child ) return i;
+		}
+		return -1;
+	}
+
+	@Override
+	public void addTreeModelListener(TreeModelListener l) {
+		listeners.add(TreeModelListener.class, l);
+	}
+
+	@Override
+	public void removeTreeModelListener(TreeModelListener l) {
+		listeners.remove(TreeModelListener.class, l);
+	}
+
+	/** Path from the root to node */
+	TreePath getPathTo(Tree node) {
+		List<Object> path = new ArrayList<>();
+		for (Tree t = node; t!=null; t = t==root ? null : t.getParent()) {
+			path.add(t);
+		}
+		Collections.reverse(path);
+		return new TreePath(path.toArray());
+	}
+
+	/** The deepest node whose text covers offset: the terminal at offset or,
+	 *  between tokens, the innermost rule around it.
+	 */
+	@Nullable
+	Tree getNodeAtOffset(int offset) {
+		if ( root==null ) return null;
+		if ( terminals==null ) {
+			indexTerminals();
+		}
+
+		// last terminal starting at or before offset
+		int lo = 0;
+		int hi = terminalStarts.length-1;
+		int found = -1;
+		while ( lo<=hi ) {
+			int mid = (lo+hi) >>> 1;
+			if ( terminalStarts[mid]<=offset ) {
+				found = mid;
+				lo = mid+1;
+			}
+			else {
+				hi = mid-1;
+			}
+		}
+		if ( found<0 ) {
+			return root instanceof ParserRuleContext && inBounds((ParserRuleContext)root, offset) ? root : null;
+		}
+
+		TerminalNode terminal = terminals.get(found);
+		if ( terminal.getSymbol().getStopIndex()>=offset ) {
+			return terminal;
+		}
+		for (Tree t = terminal.getParent(); t!=null; t = t==root ? null : t.getParent()) {
+			if ( t instanceof ParserRuleContext && inBounds((ParserRuleContext)t, offset) ) {
+				return t;
+			}
+		}
+		return null;
+	}
+
+	private void indexTerminals() {
+		List<TerminalNode> terminals = new ArrayList<>();
+		Deque<Tree> work = new ArrayDeque<>();
+		work.push(root);
+		while ( !work.isEmpty() ) {
+			Tree t = work.pop();
+			if ( t instanceof TerminalNode ) {
+				Token symbol = ((TerminalNode)t).getSymbol();
+				if ( symbol.getStartIndex()>=0 && symbol.getStopIndex()>=symbol.getStartIndex() ) {
+					terminals.add((TerminalNode)t); // skips EOF and conjured-up error tokens
+				}
+			}
+			for (int i = t.getChildCount()-1; i>=0; i--) {
+				work.push(t.getChild(i));
+			}
+		}
+		int[] starts = new int[terminals.size()];
+		for (int i = 0; i<starts.length; i++) {
+			starts[i] = terminals.get(i).getSymbol().getStartIndex();
+		}
+		this.terminals = terminals;
+		this.terminalStarts = starts;
+	}
+
+	private static boolean inBounds(ParserRuleContext ctx, int offset) {
+		Token start = ctx.getStart();
+		Token stop = ctx.getStop();
+		if ( start!=null && stop!=null ) {
+			return start.getStartIndex()<=offset && stop.getStopIndex()>=offset;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,191 @@
+package org.antlr.intellij.plugin.preview;
+
+import com.intellij.openapi.progress.ProgressManager;
+import org.antlr.intellij.plugin.parsing.PreviewInterpreterRuleContext;
+import org.antlr.v4.gui.TreeTextProvider;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.misc.Utils;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import org.antlr.v4.runtime.tree.Tree;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/** Writes a parse tree as text straight to a writer, node by node, so the
+ *  output is never held in memory: LISP-style like
+ *  {@link org.antlr.v4.runtime.tree.Trees#toStringTree} or JSON with the
+ *  rule, alternative and token details of each node. Walks the tree with
+ *  an explicit stack; deep trees don't overflow the thread's stack.
+ */
+class ParseTreeWriter {
+	enum Format { LISP, JSON }
+
+	/** Marks where a rule node's children end on the work stack */
+	private static final Object END = new Object();
+
+	private final TreeTextProvider textProvider;
+	private final Writer out;
+	private int nodesWritten;
+
+	ParseTreeWriter(TreeTextProvider textProvider, Writer out) {
+		this.textProvider = textProvider;
+		this.out = out;
+	}
+
+	void write(Tree root, Format format) throws IOException {
+		if ( format==Format.JSON ) {
+			writeJson(root);
+		}
+		else {
+			writeLisp(root);
+		}
+	}
+
+	/** (rule child child ...) with rule nodes labeled as in the tree view and token text for leaves */
+	private void writeLisp(Tree root) throws IOException {
+		Deque<Object> work = new ArrayDeque<>();
+		work.push(root);
+		boolean first = true;
+		while ( !work.isEmpty() ) {
+			Object o = work.pop();
+			if ( o==END ) {
+				out.write(')');
+				continue;
+			}
+			Tree t = (Tree)o;
+			if ( !first ) out.write(' ');
+			first = false;
+			if ( t.getChildCount()==0 ) {
+				out.write(getLispText(t));
+			}
+			else {
+				out.write('(');
+				out.write(getLispText(t));
+				work.push(END);
+				pushChildren(work, t);
+			}
+			checkCanceled();
+		}
+		out.write('\n');
+	}
+
+	/** One object per node: rule nodes have label, rule, alt, start, stop (token
+	 *  indexes) and children; tokens have label, type, text, index, line,
+	 *  column, start and stop (char offsets) and error if it's an error node.
+	 */
+	private void writeJson(Tree root) throws IOException {
+		Deque<Object> work = new ArrayDeque<>();
+		work.push(root);
+		boolean needComma = false;
+		while ( !work.isEmpty() ) {
+			Object o = work.pop();
+			if ( o==END ) {
+				out.write("]}");
+				needComma = true;
+				continue;
+			}
+			Tree t = (Tree)o;
+			if ( needComma ) out.write(',');
+			out.write("{\"label\":");
+			writeJsonString(textProvider.getText(t));
+			if ( t instanceof TerminalNode ) {
+				writeTokenFields(((TerminalNode)t).getSymbol());
+				if ( t instanceof ErrorNode ) {
+					out.write(",\"error\":true");
+				}
+				out.write("}\n");
+				needComma = true;
+			}
+			else {
+				if ( t instanceof ParserRuleContext ) {
+					writeRuleFields((ParserRuleContext)t);
+				}
+				out.write(",\"children\":[");
+				needComma = false;
+				work.push(END);
+				pushChildren(work, t);
+			}
+			checkCanceled();
+		}
+		out.write('\n');
+	}
+
+	private void writeRuleFields(ParserRuleContext ctx) throws IOException {
+		out.write(",\"rule\":");
+		out.write(String.valueOf(ctx.getRuleIndex()));
+		if ( ctx instanceof PreviewInterpreterRuleContext ) {
+			out.write(",\"alt\":");
+			out.write(String.valueOf(((PreviewInterpreterRuleContext)ctx).getOuterAltNum()));
+		}
+		if ( ctx.getStart()!=null ) {
+			out.write(",\"start\":");
+			out.write(String.valueOf(ctx.getStart().getTokenIndex()));
+		}
+		if ( ctx.getStop()!=null ) {
+			out.write(",\"stop\":");
+			out.write(String.valueOf(ctx.getStop().getTokenIndex()));
+		}
+	}
+
+	private void writeTokenFields(Token token) throws IOException {
+		out.write(",\"type\":");
+		out.write(String.valueOf(token.getType()));
+		out.write(",\"text\":");
+		writeJsonString(token.getText());
+		out.write(",\"index\":" + token.getTokenIndex());
+		out.write(",\"line\":" + token.getLine());
+		out.write(",\"column\":" + token.getCharPositionInLine());
+		out.write(",\"start\":" + token.getStartIndex());
+		out.write(",\"stop\":" + token.getStopIndex());
+	}
+
+	private String getLispText(Tree t) {
+		String text;
+		if ( t instanceof TerminalNode ) {
+			Token symbol = ((TerminalNode)t).getSymbol();
+			text = symbol!=null ? symbol.getText() : null;
+		}
+		else {
+			text = textProvider.getText(t);
+		}
+		return Utils.escapeWhitespace(String.valueOf(text), false);
+	}
+
+	private void writeJsonString(String s) throws IOException {
+		if ( s==null ) {
+			out.write("null");
+			return;
+		}
+		out.write('"');
+		for (int i = 0; i<s.length(); i++) {
+			char c = s.charAt(i);
+			switch ( c ) {
+				case '"' : out.write("\\\""); break;
+				case '\\' : out.write("\\\\"); break;
+				case '\n' : out.write("\\n"); break;
+				case '\r' : out.write("\\r"); break;
+				case '\t' : out.write("\\t"); break;
+				default :
+					if ( c<0x20 ) out.write(String.format("\\u%04x", (int)c));
+					else out.write(c);
+			}
+		}
+		out.write('"');
+	}
+
+	private static void pushChildren(Deque<Object> work, Tree t) {
+		for (int i = t.getChildCount()-1; i>=0; i--) {
+			work.push(t.getChild(i));
+		}
+	}
+
+	private void checkCanceled() {
+		if ( (++nodesWritten & 1023)==0 ) {
+			ProgressManager.checkCanceled();
+		}
+	}
+}
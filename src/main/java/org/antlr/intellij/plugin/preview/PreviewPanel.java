@@ -16,7 +16,12 @@ import org.antlr.intellij.plugin.ANTLRv4PluginController;
 import org.antlr.intellij.plugin.parsing.ParsingResult;
 import org.antlr.intellij.plugin.parsing.ParsingUtils;
 import org.antlr.intellij.plugin.parsing.PreviewParser;
+import org.antlr.intellij.plugin.parsing.PreviewTimings;
+import org.antlr.intellij.plugin.profiler.CorpusProfile;
+import org.antlr.intellij.plugin.profiler.FootprintPanel;
+import org.antlr.intellij.plugin.profiler.ParserFootprint;
 import org.antlr.intellij.plugin.profiler.ProfilerPanel;
+import org.antlr.intellij.plugin.profiler.ScalingAnalysis;
 import org.antlr.v4.runtime.CommonToken;
 import org.antlr.v4.runtime.Token;
 import org.antlr.v4.runtime.misc.Pair;
@@ -61,6 +66,9 @@ public class PreviewPanel extends JPanel {
 
 	public ProfilerPanel profilerPanel;
 
+	private JTabbedPane tabbedPane;
+	private FootprintPanel footprintPanel;
+
 	/**
 	 * Indicates if the preview should be automatically refreshed after grammar changes.
 	 */
@@ -132,6 +140,10 @@ public class PreviewPanel extends JPanel {
 		profilerPanel = new ProfilerPanel(project, this);
 		tabbedPane.addTab("Profiler", profilerPanel.getComponent());
 
+		footprintPanel = new FootprintPanel();
+		tabbedPane.addTab("Footprint", footprintPanel);
+
+		this.tabbedPane = tabbedPane;
 		return tabbedPane;
 	}
 
@@ -142,6 +154,9 @@ public class PreviewPanel extends JPanel {
 				if (e.getButton() == MouseEvent.BUTTON3) {
 					ParseTreeContextualMenu.showPopupMenu(treeViewer, e);
 				}
+				else if ( e.getButton()==MouseEvent.BUTTON1 && e.getClickCount()==2 ) {
+					treeViewer.toggleCollapsed(treeViewer.getNodeAt(e.getPoint()));
+				}
 			}
 		});
 	}
@@ -218,7 +233,7 @@ public class PreviewPanel extends JPanel {
 		PreviewState previewState = ANTLRv4PluginController.getInstance(project).getPreviewState(grammarFile);
 		// if start rule no longer exists, reset display/state.
 		if ( previewState.g!=null &&
-			 previewState.g!=ParsingUtils.BAD_PARSER_GRAMMAR &&
+			 !ParsingUtils.isBadParserGrammar(previewState.g) &&
 			 previewState.startRuleName!=null )
 		{
 			Rule rule = previewState.g.getRule(previewState.startRuleName);
@@ -296,19 +311,27 @@ public class PreviewPanel extends JPanel {
 
 	private void updateTreeViewer(final PreviewState preview, final ParsingResult result) {
 		ApplicationManager.getApplication().invokeLater(() -> {
+			long start = System.nanoTime();
+			AltLabelTextProvider provider = null;
 			if (result.parser instanceof PreviewParser) {
-				AltLabelTextProvider provider = new AltLabelTextProvider(result.parser, preview.g);
-				treeViewer.setTreeTextProvider(provider);
-				treeViewer.setTree(result.tree);
+				provider = new AltLabelTextProvider(result.parser, preview.g);
 				hierarchyViewer.setTreeTextProvider(provider);
-				hierarchyViewer.setTree(result.tree);
 			}
 			else {
-				treeViewer.setRuleNames(Arrays.asList(preview.g.getRuleNames()));
-				treeViewer.setTree(result.tree);
 				hierarchyViewer.setRuleNames(Arrays.asList(preview.g.getRuleNames()));
-				hierarchyViewer.setTree(result.tree);
 			}
+			hierarchyViewer.setTree(result.tree);
+			if ( result.timings!=null ) {
+				result.timings.add(PreviewTimings.Stage.TREE_BUILDING, System.nanoTime()-start);
+			}
+			// the tree viewer records its own layout and paint times
+			if ( provider!=null ) {
+				treeViewer.setTreeTextProvider(provider);
+			}
+			else {
+				treeViewer.setRuleNames(Arrays.asList(preview.g.getRuleNames()));
+			}
+			treeViewer.setTree(result.tree, result.timings);
 		});
 	}
 
@@ -342,10 +365,13 @@ public class PreviewPanel extends JPanel {
 
 		Editor editor = inputPanel.getInputEditor();
 		if ( editor==null ) return;
+		PreviewTimings timings = new PreviewTimings();
+		long start = System.nanoTime();
 		final String inputText = editor.getDocument().getText();
+		timings.add(PreviewTimings.Stage.SNAPSHOT, System.nanoTime()-start);
 
 		// The controller will call us back when it's done parsing
-		controller.parseText(grammarFile, inputText);
+		controller.parseText(grammarFile, inputText, timings);
 	}
 
 	public InputPanel getInputPanel() {
@@ -368,16 +394,41 @@ public class PreviewPanel extends JPanel {
 		buttonBar.updateActionsImmediately();
 
 		if ( previewState.parsingResult!=null ) {
-			updateTreeViewer(previewState, previewState.parsingResult);
-			profilerPanel.setProfilerData(previewState, duration);
-			inputPanel.showParseErrors(previewState.parsingResult.syntaxErrorListener.getSyntaxErrors());
-		} else if ( previewState.startRuleName==null ) {
-			indicateNoStartRuleInParseTreePane();
+			ParsingResult result = previewState.parsingResult;
+			if ( result.timings==null ) {
+				result.timings = new PreviewTimings();
+			}
+			PreviewTimings timings = result.timings;
+			updateTreeViewer(previewState, result);
+			timings.time(PreviewTimings.Stage.PROFILING, () -> profilerPanel.setProfilerData(previewState, duration));
+			timings.time(PreviewTimings.Stage.ERROR_HIGHLIGHTING,
+						 () -> inputPanel.showParseErrors(result.syntaxErrorListener.getSyntaxErrors()));
+			// after showParseErrors, which clears highlighters
+			timings.time(PreviewTimings.Stage.PROFILING, () -> profilerPanel.updateHeatMap(previewState));
+			profilerPanel.showStageTimings(timings);
 		} else {
-			indicateInvalidGrammarInParseTreePane();
+			// no parse, no heat map; don't leave the last parse's over the new input
+			profilerPanel.updateHeatMap(previewState);
+			if ( previewState.startRuleName==null ) {
+				indicateNoStartRuleInParseTreePane();
+			} else {
+				indicateInvalidGrammarInParseTreePane();
+			}
 		}
 	}
 
+	/** Show a profile computed by ProfileCorpusAction and bring its tab forward */
+	public void showCorpusProfile(PreviewState previewState, CorpusProfile profile) {
+		profilerPanel.showCorpusProfile(previewState, profile);
+		tabbedPane.setSelectedComponent(profilerPanel.getComponent());
+	}
+
+	/** Show a footprint computed by ShowParserFootprintAction and bring its tab forward */
+	public void showFootprint(VirtualFile grammarFile, ParserFootprint footprint) {
+		footprintPanel.setFootprint(grammarFile.getPath(), footprint);
+		tabbedPane.setSelectedComponent(footprintPanel);
+	}
+
 	public void notifySlowParsing() {
 		cancelParserAction.setEnabled(true);
 		buttonBar.updateActionsImmediately();
@@ -5,6 +5,7 @@ import com.intellij.openapi.editor.EditorFactory;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
 import org.antlr.intellij.plugin.parsing.ParsingResult;
+import org.antlr.intellij.plugin.parsing.RetainedSize;
 import org.antlr.v4.tool.Grammar;
 import org.antlr.v4.tool.LexerGrammar;
 
@@ -58,6 +59,25 @@ public class PreviewState {
 		return g!=null ? g : lg;
 	}
 
+	/** Estimated bytes kept alive by the grammars and parse result; the
+	 *  input editor and manual input text aren't counted.
+	 */
+	public synchronized long getRetainedSize() {
+		ParsingResult result = parsingResult;
+		long size = RetainedSize.estimate(g)+RetainedSize.estimate(lg);
+		return result!=null ? size+result.getRetainedSize() : size;
+	}
+
+	/** Drop what can be recomputed, keeping start rule, input and editor.
+	 *  Switching back to this grammar reloads the grammars, as both are
+	 *  null, and re-parses the input.
+	 */
+	public synchronized void releaseParseResults() {
+		g = null;
+		lg = null;
+		parsingResult = null;
+	}
+
 	public synchronized void releaseEditor() {
 		// It would appear that the project closed event occurs before these
 		// close grammars sometimes. Very strange. check for null editor.
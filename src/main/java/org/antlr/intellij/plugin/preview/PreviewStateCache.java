@@ -0,0 +1,74 @@
+package org.antlr.intellij.plugin.preview;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.text.StringUtil;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.Function;
+
+/** The preview state of each grammar opened in a project, by grammar file
+ *  path, in least-recently-used order. Only the state of the grammar being
+ *  previewed needs its grammars and parse result; the others are kept for
+ *  when we switch back, as long as they fit in a memory budget. Past that,
+ *  {@link #trim} releases the least recently used ones down to start rule
+ *  and input, and they are reloaded and re-parsed on the next switch.
+ */
+public class PreviewStateCache {
+	public static final Logger LOG = Logger.getInstance("ANTLR PreviewStateCache");
+
+	/** Budget for the states of grammars not being previewed */
+	public static final long DEFAULT_BUDGET = Math.min(256L*1024*1024, Runtime.getRuntime().maxMemory()/8);
+
+	private final LinkedHashMap<String, PreviewState> states = new LinkedHashMap<>(16, 0.75f, true);
+	private final long budget;
+
+	public PreviewStateCache() {
+		this(DEFAULT_BUDGET);
+	}
+
+	public PreviewStateCache(long budget) {
+		this.budget = budget;
+	}
+
+	public synchronized PreviewState get(String grammarFileName) {
+		return states.get(grammarFileName);
+	}
+
+	public synchronized PreviewState computeIfAbsent(String grammarFileName, Function<String, PreviewState> create) {
+		return states.computeIfAbsent(grammarFileName, create);
+	}
+
+	public synchronized PreviewState remove(String grammarFileName) {
+		return states.remove(grammarFileName);
+	}
+
+	/** A copy, least recently used first */
+	public synchronized List<PreviewState> values() {
+		return new ArrayList<>(states.values());
+	}
+
+	/** Release the least recently used states other than active until the
+	 *  others fit in the budget. Sizes are estimates; see {@link PreviewState#getRetainedSize}.
+	 */
+	public void trim(PreviewState active) {
+		List<PreviewState> inactive = values();
+		inactive.remove(active);
+		long[] sizes = new long[inactive.size()];
+		long total = 0;
+		for (int i = 0; i<sizes.length; i++) {
+			sizes[i] = inactive.get(i).getRetainedSize();
+			total += sizes[i];
+		}
+		for (int i = 0; i<sizes.length && total>budget; i++) {
+			if ( sizes[i]==0 ) continue;
+			PreviewState s = inactive.get(i);
+			LOG.info("releasing preview state of "+s.grammarFile.getPath()+", ~"+
+					 StringUtil.formatFileSize(sizes[i])+"; inactive grammars ~"+
+					 StringUtil.formatFileSize(total)+" > budget "+StringUtil.formatFileSize(budget));
+			s.releaseParseResults();
+			total -= sizes[i];
+		}
+	}
+}
@@ -1,5 +1,9 @@
 package org.antlr.intellij.plugin.preview;
 
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.ui.popup.JBPopup;
 import com.intellij.openapi.ui.popup.JBPopupFactory;
 import com.intellij.openapi.ui.popup.PopupChooserBuilder;
@@ -10,6 +14,8 @@ import com.intellij.ui.components.JBList;
 import com.intellij.ui.components.JBPanel;
 import com.intellij.util.ui.UIUtil;
 import org.antlr.intellij.plugin.Utils;
+import org.antlr.intellij.plugin.parsing.DecisionParseTrees;
+import org.antlr.intellij.plugin.parsing.ParsingResult;
 import org.antlr.intellij.plugin.parsing.ParsingUtils;
 import org.antlr.intellij.plugin.parsing.PreviewInterpreterRuleContext;
 import org.antlr.v4.gui.TreeViewer;
@@ -20,7 +26,7 @@ import org.antlr.v4.runtime.misc.Interval;
 import org.antlr.v4.runtime.misc.ParseCancellationException;
 import org.antlr.v4.runtime.tree.TerminalNode;
 import org.antlr.v4.runtime.tree.Tree;
-import org.antlr.v4.tool.GrammarParserInterpreter;
+import org.jetbrains.annotations.NotNull;
 
 import javax.swing.*;
 import java.awt.*;
@@ -63,30 +69,50 @@ public class ShowAmbigTreesDialog extends JDialog {
 
 	public static void popupAmbigTreesDialog(PreviewState previewState, AmbiguityInfo ambigInfo) {
 		// pop up subtrees for ambig intrepretation
+		ParsingResult parsingResult = previewState.parsingResult;
+		List<ParserRuleContext> cached = DecisionParseTrees.getCached(ambigInfo);
+		if ( cached!=null ) {
+			showAmbigTreesDialog(previewState, parsingResult, ambigInfo, cached);
+			return;
+		}
+
+		int startRuleIndex = parsingResult.parser.getRuleIndex(previewState.startRuleName);
+		DecisionParseTrees decisionParseTrees = new DecisionParseTrees(previewState.g, parsingResult, startRuleIndex);
+		ProgressManager.getInstance().run(new Task.Backgroundable(previewState.project, "Computing ambiguous parse trees", true) {
+			@Override
+			public void run(@NotNull ProgressIndicator indicator) {
+				indicator.setIndeterminate(true);
+				List<ParserRuleContext> trees;
+				try {
+					trees = decisionParseTrees.getAllPossibleParseTrees(ambigInfo);
+				}
+				catch (ParseCancellationException pce) {
+					trees = null;
+				}
+				List<ParserRuleContext> ambiguousParseTrees = trees;
+				ApplicationManager.getApplication().invokeLater(() -> {
+					if ( previewState.parsingResult==parsingResult ) { // else input or grammar changed meanwhile
+						showAmbigTreesDialog(previewState, parsingResult, ambigInfo, ambiguousParseTrees);
+					}
+				});
+			}
+		});
+	}
+
+	private static void showAmbigTreesDialog(PreviewState previewState,
+											 ParsingResult parsingResult,
+											 AmbiguityInfo ambigInfo,
+											 List<ParserRuleContext> ambiguousParseTrees) {
 		ShowAmbigTreesDialog dialog = new ShowAmbigTreesDialog();
-		Parser parser = previewState.parsingResult.parser;
-		int startRuleIndex = parser.getRuleIndex(previewState.startRuleName);
-		List<ParserRuleContext> ambiguousParseTrees = null;
-		try {
-			ambiguousParseTrees =
-				GrammarParserInterpreter.getAllPossibleParseTrees(previewState.g,
-				                                                  parser,
-				                                                  parser.getTokenStream(),
-				                                                  ambigInfo.decision,
-				                                                  ambigInfo.ambigAlts,
-				                                                  ambigInfo.startIndex,
-				                                                  ambigInfo.stopIndex,
-				                                                  startRuleIndex);
-		} catch (ParseCancellationException pce) {
+		if ( ambiguousParseTrees==null ) {
 			// should be no errors for ambiguities, unless original
 			// input itself has errors. Just display error in this case.
 			JBPanel errPanel = new JBPanel(new BorderLayout());
 			errPanel.add(new JBLabel("Cannot display ambiguous trees while there are syntax errors in your input."));
 			dialog.treeScrollPane.setViewportView(errPanel);
 		}
-
-		if ( ambiguousParseTrees!=null ) {
-			TokenStream tokens = previewState.parsingResult.parser.getInputStream();
+		else {
+			TokenStream tokens = parsingResult.parser.getInputStream();
 			String phrase = tokens.getText(Interval.of(ambigInfo.startIndex, ambigInfo.stopIndex));
 			if ( phrase.length()>MAX_PHRASE_WIDTH ) {
 				phrase = phrase.substring(0, MAX_PHRASE_WIDTH)+"...";
@@ -115,28 +141,48 @@ public class ShowAmbigTreesDialog extends JDialog {
 
 	public static void popupLookaheadTreesDialog(PreviewState previewState, LookaheadEventInfo lookaheadInfo) {
 		// pop up subtrees for lookahead
+		ParsingResult parsingResult = previewState.parsingResult;
+		if ( parsingResult.parser.getNumberOfSyntaxErrors()>0 ) {
+			showLookaheadTreesDialog(previewState, parsingResult, lookaheadInfo, null);
+			return;
+		}
+		List<ParserRuleContext> cached = DecisionParseTrees.getCached(lookaheadInfo);
+		if ( cached!=null ) {
+			showLookaheadTreesDialog(previewState, parsingResult, lookaheadInfo, cached);
+			return;
+		}
+
+		int startRuleIndex = parsingResult.parser.getRuleIndex(previewState.startRuleName);
+		DecisionParseTrees decisionParseTrees = new DecisionParseTrees(previewState.g, parsingResult, startRuleIndex);
+		ProgressManager.getInstance().run(new Task.Backgroundable(previewState.project, "Computing lookahead parse trees", true) {
+			@Override
+			public void run(@NotNull ProgressIndicator indicator) {
+				indicator.setIndeterminate(true);
+				List<ParserRuleContext> lookaheadParseTrees = decisionParseTrees.getLookaheadParseTrees(lookaheadInfo);
+				ApplicationManager.getApplication().invokeLater(() -> {
+					if ( previewState.parsingResult==parsingResult ) { // else input or grammar changed meanwhile
+						showLookaheadTreesDialog(previewState, parsingResult, lookaheadInfo, lookaheadParseTrees);
+					}
+				});
+			}
+		});
+	}
+
+	private static void showLookaheadTreesDialog(PreviewState previewState,
+												 ParsingResult parsingResult,
+												 LookaheadEventInfo lookaheadInfo,
+												 List<ParserRuleContext> lookaheadParseTrees) {
 		ShowAmbigTreesDialog dialog = new ShowAmbigTreesDialog();
-		ParserInterpreter parser = (ParserInterpreter) previewState.parsingResult.parser;
-		int startRuleIndex = parser.getRuleIndex(previewState.startRuleName);
-		List<ParserRuleContext> lookaheadParseTrees =
-			GrammarParserInterpreter.getLookaheadParseTrees(previewState.g,
-			                                                parser,
-			                                                parser.getTokenStream(),
-			                                                startRuleIndex,
-			                                                lookaheadInfo.decision,
-			                                                lookaheadInfo.startIndex,
-			                                                lookaheadInfo.stopIndex);
-		if ( parser.getNumberOfSyntaxErrors()>0 ) {
+		if ( lookaheadParseTrees==null ) {
 			// should be no errors for ambiguities, unless original
 			// input itself has errors. Just display error in this case.
 			JBPanel errPanel = new JBPanel(new BorderLayout());
 			errPanel.add(new JBLabel("Cannot display lookahead trees while there are syntax errors in your input."));
 			dialog.treeScrollPane.setViewportView(errPanel);
-			lookaheadParseTrees = null;
 		}
-		if ( lookaheadParseTrees!=null ) {
+		else {
 			Interval range = Interval.of(lookaheadInfo.startIndex, lookaheadInfo.stopIndex);
-			String phrase = parser.getTokenStream().getText(range);
+			String phrase = parsingResult.parser.getTokenStream().getText(range);
 			if ( phrase.length()>MAX_PHRASE_WIDTH ) {
 				phrase = phrase.substring(0, MAX_PHRASE_WIDTH)+"...";
 			}
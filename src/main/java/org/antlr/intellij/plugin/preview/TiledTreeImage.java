@@ -0,0 +1,191 @@
+package org.antlr.intellij.plugin.preview;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Vector;
+import java.util.function.Consumer;
+
+/** An image of a painting that's only rendered a strip of rows at a time,
+ *  when an image writer asks for those rows, so exporting a huge parse tree
+ *  needs memory for one strip instead of the whole picture. The PNG writer
+ *  reads the image row by row; strips are rendered in order and the last
+ *  one is kept.
+ */
+class TiledTreeImage implements RenderedImage {
+	/** Upper bound on the pixels of a strip, i.e., 32MB of ARGB */
+	private static final int MAX_STRIP_PIXELS = 8*1024*1024;
+
+	private final int width;
+	private final int height;
+	private final int stripHeight;
+	private final boolean transparentBackground;
+	private final Consumer<Graphics2D> painter;
+	private final ColorModel colorModel;
+	private final SampleModel sampleModel;
+
+	private int cachedStrip = -1;
+	private Raster cachedRaster;
+
+	/** painter paints the full image; it's called once per strip with a
+	 *  graphics clipped and translated to that strip.
+	 */
+	TiledTreeImage(int width, int height, boolean transparentBackground, Consumer<Graphics2D> painter) {
+		this.width = Math.max(1, width);
+		this.height = Math.max(1, height);
+		this.stripHeight = Math.max(1, Math.min(this.height, MAX_STRIP_PIXELS/this.width));
+		this.transparentBackground = transparentBackground;
+		this.painter = painter;
+		BufferedImage prototype = new BufferedImage(1, 1, getImageType());
+		this.colorModel = prototype.getColorModel();
+		this.sampleModel = colorModel.createCompatibleSampleModel(this.width, stripHeight);
+	}
+
+	private int getImageType() {
+		return transparentBackground ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+	}
+
+	@Override
+	public Raster getTile(int tileX, int tileY) {
+		if ( tileY==cachedStrip ) {
+			return cachedRaster;
+		}
+		int y = tileY*stripHeight;
+		int h = Math.min(stripHeight, height-y);
+		BufferedImage strip = new BufferedImage(width, h, getImageType());
+		Graphics2D g = strip.createGraphics();
+		try {
+			if ( !transparentBackground ) {
+				g.setColor(Color.WHITE);
+				g.fillRect(0, 0, width, h);
+			}
+			g.translate(0, -y);
+			g.clipRect(0, y, width, h);
+			painter.accept(g);
+		}
+		finally {
+			g.dispose();
+		}
+		cachedStrip = tileY;
+		cachedRaster = strip.getRaster().createTranslatedChild(0, y);
+		return cachedRaster;
+	}
+
+	@Override
+	public Raster getData(Rectangle rect) {
+		WritableRaster raster = colorModel.createCompatibleWritableRaster(rect.width, rect.height)
+										  .createWritableTranslatedChild(rect.x, rect.y);
+		return copyData(raster);
+	}
+
+	@Override
+	public Raster getData() {
+		return getData(new Rectangle(0, 0, width, height));
+	}
+
+	@Override
+	public WritableRaster copyData(WritableRaster raster) {
+		if ( raster==null ) {
+			raster = colorModel.createCompatibleWritableRaster(width, height);
+		}
+		Rectangle wanted = raster.getBounds().intersection(new Rectangle(0, 0, width, height));
+		if ( wanted.isEmpty() ) return raster;
+		int first = wanted.y/stripHeight;
+		int last = (wanted.y+wanted.height-1)/stripHeight;
+		for (int s = first; s<=last; s++) {
+			Raster tile = getTile(0, s);
+			Rectangle r = tile.getBounds().intersection(wanted);
+			raster.setRect(tile.createChild(r.x, r.y, r.width, r.height, r.x, r.y, null));
+		}
+		return raster;
+	}
+
+	@Override
+	public Vector<RenderedImage> getSources() {
+		return null;
+	}
+
+	@Override
+	public Object getProperty(String name) {
+		return Image.UndefinedProperty;
+	}
+
+	@Override
+	public String[] getPropertyNames() {
+		return null;
+	}
+
+	@Override
+	public ColorModel getColorModel() {
+		return colorModel;
+	}
+
+	@Override
+	public SampleModel getSampleModel() {
+		return sampleModel;
+	}
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public int getHeight() {
+		return height;
+	}
+
+	@Override
+	public int getMinX() {
+		return 0;
+	}
+
+	@Override
+	public int getMinY() {
+		return 0;
+	}
+
+	@Override
+	public int getNumXTiles() {
+		return 1;
+	}
+
+	@Override
+	public int getNumYTiles() {
+		return (height+stripHeight-1)/stripHeight;
+	}
+
+	@Override
+	public int getMinTileX() {
+		return 0;
+	}
+
+	@Override
+	public int getMinTileY() {
+		return 0;
+	}
+
+	@Override
+	public int getTileWidth() {
+		return width;
+	}
+
+	@Override
+	public int getTileHeight() {
+		return stripHeight;
+	}
+
+	@Override
+	public int getTileGridXOffset() {
+		return 0;
+	}
+
+	@Override
+	public int getTileGridYOffset() {
+		return 0;
+	}
+}
@@ -1,91 +1,639 @@
 package org.antlr.intellij.plugin.preview;
 
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.ui.DarculaColors;
 import com.intellij.ui.Gray;
 import com.intellij.ui.JBColor;
+import org.abego.treelayout.NodeExtentProvider;
+import org.abego.treelayout.TreeLayout;
+import org.abego.treelayout.util.DefaultConfiguration;
 import org.antlr.intellij.plugin.parsing.PreviewInterpreterRuleContext;
+import org.antlr.intellij.plugin.parsing.PreviewTimings;
+import org.antlr.v4.gui.TreeLayoutAdaptor;
+import org.antlr.v4.gui.TreeTextProvider;
 import org.antlr.v4.gui.TreeViewer;
 import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.misc.Utils;
 import org.antlr.v4.runtime.tree.ErrorNode;
 import org.antlr.v4.runtime.tree.Tree;
 
 import java.awt.*;
 import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
+/** Parse tree viewer that copes with big trees: node text and its size are
+ *  computed once per node, the layout of large trees is computed off the EDT,
+ *  and painting only touches the nodes and edges intersecting the clip,
+ *  found through a {@link NodeBoundsIndex}. Subtrees can be collapsed, which
+ *  lays them out as a single node.
+ */
 public class UberTreeViewer extends TreeViewer {
+	/** Trees with more nodes than this are laid out in the background */
+	private static final int BACKGROUND_LAYOUT_THRESHOLD = 5000;
+
 	private boolean highlightUnreachedNodes;
 
+	private Tree root;
+	private final Set<Tree> collapsed = Collections.newSetFromMap(new IdentityHashMap<>());
+	private Map<Tree, NodeText> nodeTexts = new IdentityHashMap<>();
+	private NodeBoundsIndex<Tree> boxIndex;
+	private NodeBoundsIndex<Tree> edgeIndex;
+	/** Bumped whenever a layout in progress becomes stale */
+	private int layoutGeneration;
+	private boolean layoutPending;
+	/** Of the update that set the tree, until its first layout and paint are recorded */
+	private PreviewTimings timings;
+
+	/** Display text of a node, already split and escaped, and its width in the tree font */
+	private static class NodeText {
+		final String[] lines;
+		final int width;
+
+		NodeText(String[] lines, int width) {
+			this.lines = lines;
+			this.width = width;
+		}
+	}
+
+	private static class Layout {
+		final TreeLayout<Tree> treeLayout;
+		final NodeBoundsIndex<Tree> boxIndex;
+		final NodeBoundsIndex<Tree> edgeIndex;
+		final Map<Tree, NodeText> nodeTexts;
+		/** ns it took */
+		final long time;
+
+		Layout(TreeLayout<Tree> treeLayout, NodeBoundsIndex<Tree> boxIndex,
+			   NodeBoundsIndex<Tree> edgeIndex, Map<Tree, NodeText> nodeTexts, long time)
+		{
+			this.treeLayout = treeLayout;
+			this.boxIndex = boxIndex;
+			this.edgeIndex = edgeIndex;
+			this.nodeTexts = nodeTexts;
+			this.time = time;
+		}
+	}
+
+	/** Lays out collapsed nodes as leaves */
+	private static class CollapsingTreeLayoutAdaptor extends TreeLayoutAdaptor {
+		private final Set<Tree> collapsed;
+
+		CollapsingTreeLayoutAdaptor(Tree root, Set<Tree> collapsed) {
+			super(root);
+			this.collapsed = collapsed;
+		}
+
+		@Override
+		public boolean isLeaf(Tree node) {
+			return super.isLeaf(node) || collapsed.contains(node);
+		}
+	}
+
 	public UberTreeViewer(List<String> ruleNames, Tree tree, boolean highlightUnreachedNodes) {
-		super(ruleNames, tree);
+		super(ruleNames, null); // our fields aren't initialized during super()
 		this.highlightUnreachedNodes = highlightUnreachedNodes;
+		if ( tree!=null ) {
+			setTree(tree);
+		}
 	}
 
 	@Override
-	protected void paintBox(Graphics g, Tree tree) {
-		customPaintBox(g, tree);
+	public void setTree(Tree root) {
+		setTree(root, null);
+	}
+
+	/** Show root, recording the time of its layout and first paint in timings if not null */
+	public void setTree(Tree root, PreviewTimings timings) {
+		this.timings = timings;
+		setTextColor(JBColor.BLACK);
+		this.root = root;
+		collapsed.clear();
+		nodeTexts = new IdentityHashMap<>();
+		relayout(null);
+	}
+
+	@Override
+	public void setTreeTextProvider(TreeTextProvider treeTextProvider) {
+		super.setTreeTextProvider(treeTextProvider);
+		nodeTexts = new IdentityHashMap<>();
+		layoutGeneration++; // sizes computed with the old provider are useless
+	}
+
+	@Override
+	public void setFont(Font font) {
+		super.setFont(font);
+		nodeTexts = new IdentityHashMap<>();
+		if ( root!=null ) {
+			relayout(null);
+		}
+	}
+
+	@Override
+	public void setScale(double scale) {
+		if ( treeLayout==null ) {
+			// nothing to size yet; super would dereference the missing layout
+			this.scale = scale<=0 ? 1 : scale;
+			return;
+		}
+		super.setScale(scale);
+	}
+
+	public boolean hasTree() {
+		return treeLayout!=null;
+	}
 
-		Rectangle2D.Double box = getBoundsOfNode(tree);
-		if ( tree instanceof PreviewInterpreterRuleContext ) {
-			PreviewInterpreterRuleContext ctx = (PreviewInterpreterRuleContext)tree;
-			if ( highlightUnreachedNodes && !ctx.reached ) {
-				g.setColor(JBColor.orange);
-				g.drawRoundRect((int) box.x, (int) box.y, (int) box.width - 1,
-								(int) box.height - 1, arcSize, arcSize);
+	public boolean isCollapsed(Tree node) {
+		return collapsed.contains(node);
+	}
+
+	/** Show node's subtree as a single node or expand it again */
+	public void toggleCollapsed(Tree node) {
+		if ( node==null || node.getChildCount()==0 ) return;
+		if ( !collapsed.remove(node) ) {
+			collapsed.add(node);
+		}
+		relayout(node);
+	}
+
+	public void expandAll() {
+		if ( collapsed.isEmpty() ) return;
+		collapsed.clear();
+		relayout(null);
+	}
+
+	/** The node drawn at p, in component (scaled) coordinates */
+	public Tree getNodeAt(Point p) {
+		if ( boxIndex==null ) return null;
+		return boxIndex.findAt(p.x/scale, p.y/scale);
+	}
+
+	private void relayout(final Tree nodeToReveal) {
+		final int generation = ++layoutGeneration;
+		if ( root==null ) {
+			install(null, null);
+			return;
+		}
+
+		final Tree root = this.root;
+		final Set<Tree> collapsed = Collections.newSetFromMap(new IdentityHashMap<>());
+		collapsed.addAll(this.collapsed);
+		// the background job gets its own copy; the EDT keeps painting from ours meanwhile
+		final Map<Tree, NodeText> texts = new IdentityHashMap<>(nodeTexts);
+		final TreeTextProvider textProvider = treeTextProvider;
+
+		if ( !isLargerThan(root, BACKGROUND_LAYOUT_THRESHOLD) ) {
+			install(computeLayout(root, collapsed, texts, textProvider), nodeToReveal);
+			return;
+		}
+
+		layoutPending = true;
+		if ( nodeToReveal==null ) {
+			treeLayout = null; // a different tree; don't show the old one meanwhile
+			boxIndex = null;
+			edgeIndex = null;
+		}
+		repaint();
+		ApplicationManager.getApplication().executeOnPooledThread(() -> {
+			final Layout layout = computeLayout(root, collapsed, texts, textProvider);
+			ApplicationManager.getApplication().invokeLater(() -> {
+				if ( generation==layoutGeneration ) {
+					install(layout, nodeToReveal);
+				}
+			});
+		});
+	}
+
+	private Layout computeLayout(Tree root, Set<Tree> collapsed, Map<Tree, NodeText> texts,
+								 TreeTextProvider textProvider)
+	{
+		long start = System.nanoTime();
+		final FontMetrics m = getFontMetrics(font);
+		NodeExtentProvider<Tree> extents = new NodeExtentProvider<Tree>() {
+			@Override
+			public double getWidth(Tree tree) {
+				return getNodeText(tree, texts, textProvider, m).width + nodeWidthPadding*2;
+			}
+
+			@Override
+			public double getHeight(Tree tree) {
+				int h = m.getHeight() + nodeHeightPadding*2;
+				return h * getNodeText(tree, texts, textProvider, m).lines.length;
+			}
+		};
+		TreeLayout<Tree> layout =
+			new TreeLayout<>(new CollapsingTreeLayoutAdaptor(root, collapsed),
+							 extents,
+							 new DefaultConfiguration<>(gapBetweenLevels, gapBetweenNodes),
+							 true);
+
+		Map<Tree, Rectangle2D.Double> nodeBounds = layout.getNodeBounds();
+		List<Tree> nodes = new ArrayList<>(nodeBounds.size());
+		List<Rectangle2D.Double> boxes = new ArrayList<>(nodeBounds.size());
+		List<Tree> children = new ArrayList<>(nodeBounds.size());
+		List<Rectangle2D.Double> edges = new ArrayList<>(nodeBounds.size());
+		for (Map.Entry<Tree, Rectangle2D.Double> e : nodeBounds.entrySet()) {
+			nodes.add(e.getKey());
+			boxes.add(e.getValue());
+			Rectangle2D.Double parentBox = e.getKey()==root ? null : nodeBounds.get(e.getKey().getParent());
+			if ( parentBox!=null ) {
+				// edge from the bottom of the parent to the top of this child
+				Rectangle2D.Double edge = new Rectangle2D.Double();
+				edge.setFrameFromDiagonal(parentBox.getCenterX(), parentBox.getMaxY(),
+										  e.getValue().getCenterX(), e.getValue().getMinY());
+				children.add(e.getKey());
+				edges.add(edge);
 			}
 		}
+		return new Layout(layout, new NodeBoundsIndex<>(nodes, boxes), new NodeBoundsIndex<>(children, edges), texts,
+						  System.nanoTime()-start);
 	}
 
-	// Customized version of super.paintBox() that supports Darcula colors
-	private void customPaintBox(Graphics g, Tree tree) {
-		Rectangle2D.Double box = getBoundsOfNode(tree);
-		// draw the box in the background
-		boolean ruleFailedAndMatchedNothing = false;
-		if ( tree instanceof ParserRuleContext ) {
-			ParserRuleContext ctx = (ParserRuleContext) tree;
-			ruleFailedAndMatchedNothing = ctx.exception != null &&
-					ctx.stop != null && ctx.stop.getTokenIndex() < ctx.start.getTokenIndex();
+	private void install(Layout layout, Tree nodeToReveal) {
+		layoutPending = false;
+		if ( layout==null ) {
+			treeLayout = null;
+			boxIndex = null;
+			edgeIndex = null;
+			repaint();
+			return;
 		}
-		if ( isHighlighted(tree) || boxColor!=null ||
-				tree instanceof ErrorNode ||
-				ruleFailedAndMatchedNothing)
-		{
-			if ( isHighlighted(tree) ) g.setColor(highlightedBoxColor);
-			else if ( tree instanceof ErrorNode || ruleFailedAndMatchedNothing ) g.setColor(DarculaColors.RED);
-			else g.setColor(boxColor);
-			g.fillRoundRect((int) box.x, (int) box.y, (int) box.width,
-					(int) box.height, arcSize, arcSize);
+		if ( timings!=null && !timings.isMeasured(PreviewTimings.Stage.TREE_LAYOUT) ) {
+			timings.add(PreviewTimings.Stage.TREE_LAYOUT, layout.time);
 		}
-		if ( borderColor!=null ) {
-			g.setColor(borderColor);
-			g.drawRoundRect((int) box.x, (int) box.y, (int) box.width,
-					(int) box.height, arcSize, arcSize);
+		treeLayout = layout.treeLayout;
+		boxIndex = layout.boxIndex;
+		edgeIndex = layout.edgeIndex;
+		nodeTexts = layout.nodeTexts;
+
+		Dimension size = treeLayout.getBounds().getBounds().getSize();
+		setPreferredSize(new Dimension((int)(size.width*scale), (int)(size.height*scale)));
+		invalidate();
+		if ( getParent()!=null ) {
+			getParent().validate();
+		}
+		if ( nodeToReveal!=null ) {
+			Rectangle2D.Double box = getBoundsOfNode(nodeToReveal);
+			if ( box!=null ) {
+				scrollRectToVisible(new Rectangle((int)(box.x*scale), (int)(box.y*scale),
+												  (int)(box.width*scale), (int)(box.height*scale)));
+			}
 		}
+		repaint();
+	}
 
-		// draw the text on top of the box (possibly multiple lines)
-		if ( tree instanceof ErrorNode || ruleFailedAndMatchedNothing ) {
-			g.setColor(Gray._64);
-		} else {
-			g.setColor(textColor);
+	private static boolean isLargerThan(Tree root, int max) {
+		Deque<Tree> work = new ArrayDeque<>();
+		work.push(root);
+		int n = 0;
+		while ( !work.isEmpty() ) {
+			Tree t = work.pop();
+			if ( ++n>max ) return true;
+			for (int i = 0; i<t.getChildCount(); i++) {
+				work.push(t.getChild(i));
+			}
 		}
-		String s = getText(tree);
-		String[] lines = s.split("\n");
-		FontMetrics m = getFontMetrics(font);
-		int x = (int) box.x + arcSize / 2 + nodeWidthPadding;
-		int y = (int) box.y + m.getAscent() + m.getLeading() + 1 + nodeHeightPadding;
-		for (int i = 0; i < lines.length; i++) {
-			text(g, lines[i], x, y);
-			y += m.getHeight();
+		return false;
+	}
+
+	private static NodeText getNodeText(Tree tree, Map<Tree, NodeText> texts, TreeTextProvider textProvider, FontMetrics m) {
+		NodeText text = texts.get(tree);
+		if ( text==null ) {
+			String s = Utils.escapeWhitespace(textProvider.getText(tree), true);
+			String[] lines = s.split("\n");
+			for (int i = 0; i<lines.length; i++) {
+				lines[i] = Utils.escapeWhitespace(lines[i], true);
+			}
+			text = new NodeText(lines, m.stringWidth(s));
+			texts.put(tree, text);
 		}
+		return text;
 	}
 
+	// ---------------- PAINT -----------------------------------------------
+
 	@Override
-	public void setTree(Tree root) {
-		setTextColor(JBColor.BLACK);
-		super.setTree(root);
+	public void paint(Graphics g) {
+		paintComponent(g); // not TreeViewer.paint(), which paints the whole tree again on top
 	}
 
-	public boolean hasTree() {
-		return treeLayout!=null;
+	/** Paints what's on screen. The first paint after a layout is timed as
+	 *  the {@link PreviewTimings.Stage#PAINTING} stage of its parse; exports
+	 *  render a {@link Snapshot} instead and never come through here.
+	 */
+	@Override
+	protected void paintComponent(Graphics g) {
+		ApplicationManager.getApplication().assertIsDispatchThread();
+		long start = System.nanoTime();
+		paintTree(g);
+		if ( timings!=null && treeLayout!=null ) {
+			timings.add(PreviewTimings.Stage.PAINTING, System.nanoTime()-start);
+			timings = null;
+		}
+	}
+
+	private void paintTree(Graphics g) {
+		Graphics2D g2 = (Graphics2D)getComponentGraphics(g); // applies our scale
+		if ( treeLayout==null ) {
+			if ( layoutPending ) {
+				g2.setFont(font);
+				g2.setColor(JBColor.GRAY);
+				g2.drawString("Laying out parse tree...", 10, 20);
+			}
+			return;
+		}
+		new Snapshot(this, false).paint(g2);
+	}
+
+	@Override
+	protected void paintBox(Graphics g, Tree tree) {
+		if ( treeLayout==null ) return;
+		new Snapshot(this, false).paintBox(g, tree);
+	}
+
+	/** What painting and SVG export read of the viewer, taken on the EDT.
+	 *  The viewer paints through one that shares its collections; an export
+	 *  renders a copy on a background thread, filling in node texts of its
+	 *  own, while the viewer goes on repainting from the originals.
+	 */
+	static class Snapshot {
+		private final Tree root;
+		private final TreeLayout<Tree> treeLayout;
+		private final NodeBoundsIndex<Tree> boxIndex;
+		private final NodeBoundsIndex<Tree> edgeIndex;
+		private final Map<Tree, NodeText> nodeTexts;
+		private final Set<Tree> collapsed;
+		private final Set<Tree> highlighted = Collections.newSetFromMap(new IdentityHashMap<>());
+		private final TreeTextProvider textProvider;
+		private final Font font;
+		private final FontMetrics m;
+		private final double scale;
+		private final boolean highlightUnreachedNodes;
+		private final Color textColor;
+		private final Color boxColor;
+		private final Color highlightedBoxColor;
+		private final Color borderColor;
+		private final int arcSize;
+		private final int nodeWidthPadding;
+		private final int nodeHeightPadding;
+
+		/** copy: whether to copy what the viewer keeps changing, to use it off the EDT */
+		private Snapshot(UberTreeViewer viewer, boolean copy) {
+			root = viewer.root;
+			treeLayout = viewer.treeLayout; // layouts and indexes are replaced, never changed
+			boxIndex = viewer.boxIndex;
+			edgeIndex = viewer.edgeIndex;
+			if ( copy ) {
+				nodeTexts = new IdentityHashMap<>(viewer.nodeTexts);
+				collapsed = Collections.newSetFromMap(new IdentityHashMap<>());
+				collapsed.addAll(viewer.collapsed);
+			}
+			else {
+				nodeTexts = viewer.nodeTexts;
+				collapsed = viewer.collapsed;
+			}
+			if ( viewer.highlightedNodes!=null ) {
+				highlighted.addAll(viewer.highlightedNodes);
+			}
+			textProvider = viewer.treeTextProvider;
+			font = viewer.font;
+			m = viewer.getFontMetrics(viewer.font);
+			scale = viewer.scale;
+			highlightUnreachedNodes = viewer.highlightUnreachedNodes;
+			textColor = viewer.textColor;
+			boxColor = viewer.boxColor;
+			highlightedBoxColor = viewer.highlightedBoxColor;
+			borderColor = viewer.borderColor;
+			arcSize = viewer.arcSize;
+			nodeWidthPadding = viewer.nodeWidthPadding;
+			nodeHeightPadding = viewer.nodeHeightPadding;
+		}
+
+		/** Paint the tree at the viewer's scale, as it shows it, onto an
+		 *  image (or a strip of one, see {@link TiledTreeImage})
+		 */
+		void paintImage(Graphics2D g) {
+			g.scale(scale, scale);
+			g.setFont(font);
+			paint(g);
+		}
+
+		/** Paint what intersects the clip, everything if there is none, onto g already scaled */
+		private void paint(Graphics2D g2) {
+			g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+			g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+
+			Rectangle2D area = g2.getClipBounds();
+			if ( area==null ) {
+				area = treeLayout.getBounds();
+			}
+
+			g2.setStroke(new BasicStroke(1.0f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+			for (Tree child : edgeIndex.query(area)) {
+				Rectangle2D.Double parentBox = getBoundsOfNode(child.getParent());
+				Rectangle2D.Double childBox = getBoundsOfNode(child);
+				g2.drawLine((int)parentBox.getCenterX(), (int)parentBox.getMaxY(),
+							(int)childBox.getCenterX(), (int)childBox.getMinY());
+			}
+
+			for (Tree tree : boxIndex.query(area)) {
+				paintBox(g2, tree);
+			}
+		}
+
+		private void paintBox(Graphics g, Tree tree) {
+			customPaintBox(g, tree);
+
+			Rectangle2D.Double box = getBoundsOfNode(tree);
+			if ( tree instanceof PreviewInterpreterRuleContext ) {
+				PreviewInterpreterRuleContext ctx = (PreviewInterpreterRuleContext)tree;
+				if ( highlightUnreachedNodes && !ctx.reached ) {
+					g.setColor(JBColor.orange);
+					g.drawRoundRect((int) box.x, (int) box.y, (int) box.width - 1,
+									(int) box.height - 1, arcSize, arcSize);
+				}
+			}
+			if ( collapsed.contains(tree) ) {
+				// small triangle below the box stands for the hidden subtree
+				int cx = (int) box.getCenterX();
+				int top = (int) box.getMaxY() + 2;
+				g.setColor(textColor);
+				g.fillPolygon(new int[] {cx-4, cx+4, cx}, new int[] {top, top, top+5}, 3);
+			}
+		}
+
+		// Customized version of super.paintBox() that supports Darcula colors
+		private void customPaintBox(Graphics g, Tree tree) {
+			Rectangle2D.Double box = getBoundsOfNode(tree);
+			// draw the box in the background
+			Color fill = getBoxFillColor(tree);
+			if ( fill!=null ) {
+				g.setColor(fill);
+				g.fillRoundRect((int) box.x, (int) box.y, (int) box.width,
+						(int) box.height, arcSize, arcSize);
+			}
+			if ( borderColor!=null ) {
+				g.setColor(borderColor);
+				g.drawRoundRect((int) box.x, (int) box.y, (int) box.width,
+						(int) box.height, arcSize, arcSize);
+			}
+
+			// draw the text on top of the box (possibly multiple lines)
+			g.setColor(getNodeTextColor(tree));
+			String[] lines = getNodeText(tree, nodeTexts, textProvider, m).lines;
+			int x = (int) box.x + arcSize / 2 + nodeWidthPadding;
+			int y = (int) box.y + m.getAscent() + m.getLeading() + 1 + nodeHeightPadding;
+			for (String line : lines) {
+				g.drawString(line, x, y); // already escaped like text() would
+				y += m.getHeight();
+			}
+		}
+
+		private Rectangle2D.Double getBoundsOfNode(Tree tree) {
+			return treeLayout.getNodeBounds().get(tree);
+		}
+
+		private Color getBoxFillColor(Tree tree) {
+			if ( highlighted.contains(tree) ) return highlightedBoxColor;
+			if ( isFailedNode(tree) ) return DarculaColors.RED;
+			return boxColor;
+		}
+
+		private Color getNodeTextColor(Tree tree) {
+			return isFailedNode(tree) ? Gray._64 : textColor;
+		}
+
+		/** Write the laid out tree as SVG, as shown (collapsed subtrees
+		 *  included), element by element instead of building a DOM first.
+		 */
+		void writeSvg(Writer out, boolean transparentBackground) throws IOException {
+			Rectangle2D bounds = treeLayout.getBounds();
+			out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+			out.write(String.format(Locale.ROOT,
+									"<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"%d\" height=\"%d\" viewBox=\"%s %s %s %s\">\n",
+									(int)Math.ceil(bounds.getWidth()*scale), (int)Math.ceil(bounds.getHeight()*scale),
+									num(bounds.getX()), num(bounds.getY()), num(bounds.getWidth()), num(bounds.getHeight())));
+			if ( !transparentBackground ) {
+				out.write(String.format(Locale.ROOT, "<rect x=\"%s\" y=\"%s\" width=\"%s\" height=\"%s\" fill=\"%s\"/>\n",
+										num(bounds.getX()), num(bounds.getY()), num(bounds.getWidth()), num(bounds.getHeight()),
+										svgColor(JBColor.WHITE)));
+			}
+
+			Map<Tree, Rectangle2D.Double> nodeBounds = treeLayout.getNodeBounds();
+			out.write("<g stroke=\"black\" stroke-width=\"1\" stroke-linecap=\"round\">\n");
+			int n = 0;
+			for (Map.Entry<Tree, Rectangle2D.Double> e : nodeBounds.entrySet()) {
+				Tree node = e.getKey();
+				Rectangle2D.Double parentBox = node==root ? null : nodeBounds.get(node.getParent());
+				if ( parentBox==null ) continue;
+				Rectangle2D.Double childBox = e.getValue();
+				out.write(String.format(Locale.ROOT, "<line x1=\"%d\" y1=\"%d\" x2=\"%d\" y2=\"%d\"/>\n",
+										(int)parentBox.getCenterX(), (int)parentBox.getMaxY(),
+										(int)childBox.getCenterX(), (int)childBox.getMinY()));
+				if ( (++n & 1023)==0 ) ProgressManager.checkCanceled();
+			}
+			out.write("</g>\n");
+
+			out.write(String.format(Locale.ROOT, "<g font-family=\"%s\" font-size=\"%d\">\n",
+									escapeXml(font.getFamily()), font.getSize()));
+			for (Map.Entry<Tree, Rectangle2D.Double> e : nodeBounds.entrySet()) {
+				writeSvgBox(out, e.getKey(), e.getValue());
+				if ( (++n & 1023)==0 ) ProgressManager.checkCanceled();
+			}
+			out.write("</g>\n</svg>\n");
+		}
+
+		private void writeSvgBox(Writer out, Tree tree, Rectangle2D.Double box) throws IOException {
+			String rect = String.format(Locale.ROOT, "<rect x=\"%d\" y=\"%d\" width=\"%d\" height=\"%d\" rx=\"%d\"",
+										(int)box.x, (int)box.y, (int)box.width, (int)box.height, arcSize/2);
+			Color fill = getBoxFillColor(tree);
+			if ( fill!=null ) {
+				out.write(rect+" fill=\""+svgColor(fill)+"\"/>\n");
+			}
+			Color border = borderColor;
+			if ( highlightUnreachedNodes && tree instanceof PreviewInterpreterRuleContext &&
+				 !((PreviewInterpreterRuleContext)tree).reached ) {
+				border = JBColor.orange;
+			}
+			if ( border!=null ) {
+				out.write(rect+" fill=\"none\" stroke=\""+svgColor(border)+"\"/>\n");
+			}
+
+			String[] lines = getNodeText(tree, nodeTexts, textProvider, m).lines;
+			int x = (int) box.x + arcSize / 2 + nodeWidthPadding;
+			int y = (int) box.y + m.getAscent() + m.getLeading() + 1 + nodeHeightPadding;
+			String fillText = svgColor(getNodeTextColor(tree));
+			for (String line : lines) {
+				out.write("<text x=\""+x+"\" y=\""+y+"\" fill=\""+fillText+"\" xml:space=\"preserve\">");
+				out.write(escapeXml(line));
+				out.write("</text>\n");
+				y += m.getHeight();
+			}
+
+			if ( collapsed.contains(tree) ) {
+				int cx = (int) box.getCenterX();
+				int top = (int) box.getMaxY() + 2;
+				out.write(String.format(Locale.ROOT, "<polygon points=\"%d,%d %d,%d %d,%d\" fill=\"%s\"/>\n",
+										cx-4, top, cx+4, top, cx, top+5, svgColor(textColor)));
+			}
+		}
+	}
+
+	/** An error node or a rule that failed and matched nothing */
+	private static boolean isFailedNode(Tree tree) {
+		if ( tree instanceof ErrorNode ) return true;
+		if ( tree instanceof ParserRuleContext ) {
+			ParserRuleContext ctx = (ParserRuleContext) tree;
+			return ctx.exception != null &&
+					ctx.stop != null && ctx.stop.getTokenIndex() < ctx.start.getTokenIndex();
+		}
+		return false;
+	}
+
+	// ---------------- EXPORT ----------------------------------------------
+
+	/** The tree as laid out; null while there is no layout */
+	Tree getRoot() {
+		return treeLayout!=null ? root : null;
+	}
+
+	/** A copy of the tree as shown to export off the EDT; null while there is no layout. EDT only. */
+	Snapshot snapshot() {
+		return treeLayout!=null ? new Snapshot(this, true) : null;
+	}
+
+	private static String svgColor(Color c) {
+		return String.format(Locale.ROOT, "#%06x", c.getRGB() & 0xFFFFFF);
+	}
+
+	private static String num(double d) {
+		return String.format(Locale.ROOT, "%.1f", d);
+	}
+
+	private static String escapeXml(String s) {
+		StringBuilder buf = new StringBuilder(s.length());
+		for (int i = 0; i<s.length(); i++) {
+			char c = s.charAt(i);
+			switch ( c ) {
+				case '<' : buf.append("&lt;"); break;
+				case '>' : buf.append("&gt;"); break;
+				case '&' : buf.append("&amp;"); break;
+				case '"' : buf.append("&quot;"); break;
+				default :
+					if ( c<0x20 ) buf.append(' '); // not allowed in XML 1.0
+					else buf.append(c);
+			}
+		}
+		return buf.toString();
 	}
 }
@@ -0,0 +1,174 @@
+package org.antlr.intellij.plugin.profiler;
+
+import com.intellij.openapi.fileChooser.FileChooser;
+import com.intellij.openapi.fileChooser.FileChooserDescriptorFactory;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.ui.JBColor;
+import com.intellij.ui.components.JBLabel;
+import com.intellij.ui.components.JBScrollPane;
+import com.intellij.ui.table.JBTable;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import javax.swing.table.TableCellRenderer;
+import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.function.IntConsumer;
+
+/** Compares the last profiling run of a grammar, preview or corpus, with the
+ *  baseline pinned for the grammar and lists the decisions that regressed;
+ *  see {@link ProfileDiff}. Runs can be exported to JSON and exported runs
+ *  loaded as the baseline, e.g. one recorded before a grammar change.
+ */
+public class BaselinePanel extends JPanel {
+	private final JBLabel summaryLabel = new JBLabel();
+	private final JButton exportButton = new JButton("Export Profile...");
+	private final JButton pinButton = new JButton("Pin as Baseline");
+	private final JButton loadButton = new JButton("Load Baseline...");
+	private final JButton unpinButton = new JButton("Unpin");
+	private final JBTable diffTable;
+
+	private ProfileBaselineStore store;
+	private String grammarFileName;
+	private ProfileSnapshot baseline;
+	private ProfileSnapshot current;
+
+	public BaselinePanel(IntConsumer selectDecision) {
+		super(new BorderLayout());
+		JPanel toolbar = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		toolbar.add(exportButton);
+		toolbar.add(pinButton);
+		toolbar.add(loadButton);
+		toolbar.add(unpinButton);
+		JPanel north = new JPanel(new BorderLayout());
+		north.add(toolbar, BorderLayout.NORTH);
+		north.add(summaryLabel, BorderLayout.SOUTH);
+		add(north, BorderLayout.NORTH);
+
+		diffTable = new JBTable() {
+			@Override
+			public Component prepareRenderer(TableCellRenderer renderer, int row, int column) {
+				Component c = super.prepareRenderer(renderer, row, column);
+				if ( !isRowSelected(row) && getModel() instanceof ProfileDiffTableDataModel ) {
+					ProfileDiff.Row r = ((ProfileDiffTableDataModel) getModel()).diff.rows.get(convertRowIndexToModel(row));
+					c.setForeground(r.isRegression() ? JBColor.RED : getForeground());
+				}
+				return c;
+			}
+		};
+		diffTable.setAutoCreateRowSorter(true);
+		diffTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		diffTable.getSelectionModel().addListSelectionListener(e -> {
+			int row = diffTable.getSelectedRow();
+			if ( e.getValueIsAdjusting() || row==-1 || !(diffTable.getModel() instanceof ProfileDiffTableDataModel) ) return;
+			ProfileDiff.Row r = ((ProfileDiffTableDataModel) diffTable.getModel()).diff.rows.get(diffTable.convertRowIndexToModel(row));
+			if ( r.current!=null ) {
+				selectDecision.accept(r.current.decision);
+			}
+		});
+		add(new JBScrollPane(diffTable), BorderLayout.CENTER);
+
+		exportButton.addActionListener(e -> export());
+		pinButton.addActionListener(e -> pin(current));
+		loadButton.addActionListener(e -> load());
+		unpinButton.addActionListener(e -> unpin());
+		update();
+	}
+
+	public void setBaselineStore(ProfileBaselineStore store) {
+		this.store = store;
+	}
+
+	/** Show the baseline of grammarFileName, no run yet */
+	public void setGrammar(String grammarFileName) {
+		this.grammarFileName = grammarFileName;
+		this.current = null;
+		this.baseline = store!=null && grammarFileName!=null ? store.load(grammarFileName) : null;
+		update();
+	}
+
+	/** Compare run with the baseline */
+	public void setCurrent(ProfileSnapshot run) {
+		this.current = run;
+		update();
+	}
+
+	public ProfileSnapshot getCurrent() {
+		return current;
+	}
+
+	private void export() {
+		if ( current==null ) return;
+		File file = ProfilerPanel.chooseFileToSave("Export Profile", current.grammarName+"-profile", "json");
+		if ( file==null ) return;
+		try {
+			ProfileBaselineStore.write(file, current);
+		}
+		catch (IOException e) {
+			ProfilerPanel.exportFailed("profile", file, e);
+		}
+	}
+
+	private void pin(ProfileSnapshot run) {
+		if ( run==null || store==null || grammarFileName==null ) return;
+		try {
+			store.pin(grammarFileName, run);
+			baseline = run;
+		}
+		catch (IOException e) {
+			ProfilerPanel.exportFailed("baseline profile", new File(grammarFileName), e);
+		}
+		update();
+	}
+
+	private void load() {
+		VirtualFile vfile = FileChooser.chooseFile(FileChooserDescriptorFactory.createSingleFileDescriptor("json"), this, null, null);
+		if ( vfile==null ) return;
+		try {
+			pin(ProfileBaselineStore.read(new File(vfile.getPath())));
+		}
+		catch (IOException e) {
+			summaryLabel.setText("Can't load "+vfile.getPresentableUrl()+": "+e.getMessage());
+		}
+	}
+
+	private void unpin() {
+		if ( store!=null && grammarFileName!=null ) {
+			store.unpin(grammarFileName);
+		}
+		baseline = null;
+		update();
+	}
+
+	private void update() {
+		exportButton.setEnabled(current!=null);
+		pinButton.setEnabled(current!=null && grammarFileName!=null);
+		loadButton.setEnabled(grammarFileName!=null);
+		unpinButton.setEnabled(baseline!=null);
+		if ( baseline==null || current==null ) {
+			diffTable.setModel(new DefaultTableModel());
+			if ( baseline==null ) {
+				summaryLabel.setText("No baseline pinned for this grammar. Pin a run to compare later runs with it.");
+			}
+			else {
+				summaryLabel.setText("Baseline: "+describe(baseline)+". Profile the grammar to compare.");
+			}
+			return;
+		}
+		ProfileDiff diff = new ProfileDiff(baseline, current);
+		diffTable.setModel(new ProfileDiffTableDataModel(diff));
+		summaryLabel.setText(String.format(
+			"<html>Baseline: %s<br>Current: %s<br><b>%d decisions regressed, %d now need full LL</b></html>",
+			describe(baseline), describe(current), diff.getNumberOfRegressions(), diff.getNumberOfFullLLRegressions()));
+	}
+
+	private static String describe(ProfileSnapshot s) {
+		String input = "corpus".equals(s.inputKind) ? s.inputFiles+" files" : "preview input";
+		return String.format("%s from %s on %s (%d tokens), %s",
+							 s.grammarName, s.startRule, input, s.inputTokens,
+							 DateFormat.getDateTimeInstance().format(new Date(s.timestamp)));
+	}
+}
@@ -0,0 +1,354 @@
+package org.antlr.intellij.plugin.profiler;
+
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.util.ProgressWrapper;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.antlr.intellij.plugin.parsing.CompactTokenStream;
+import org.antlr.intellij.plugin.parsing.PreviewParser;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.LexerInterpreter;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.atn.ATNDeserializer;
+import org.antlr.v4.runtime.atn.ATNSerializer;
+import org.antlr.v4.runtime.atn.DecisionInfo;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.tool.Grammar;
+import org.antlr.v4.tool.LexerGrammar;
+import org.antlr.v4.tool.Rule;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/** A grammar's profile over a corpus of input files rather than the one
+ *  preview input: decision stats summed over all files, and time, size and
+ *  syntax errors per file.
+ *
+ *  Files are parsed on a bounded pool, each worker reusing one lexer and one
+ *  {@link PreviewParser} over a single ATN deserialized for all of them, so
+ *  a worker's DFA warms up over its files as a generated parser's would.
+ *  Profiling events (ambiguities, ...) keep the token stream they happened
+ *  in alive, so we count them and drop them after each file.
+ */
+public class CorpusProfile {
+	public static class FileProfile {
+		public final File file;
+		public final long chars;
+		public final int tokens;
+		/** Lex and parse time in ns */
+		public final long time;
+		public final int syntaxErrors;
+		/** Why the file could not be parsed, else null */
+		public final String failure;
+
+		FileProfile(File file, long chars, int tokens, long time, int syntaxErrors, String failure) {
+			this.file = file;
+			this.chars = chars;
+			this.tokens = tokens;
+			this.time = time;
+			this.syntaxErrors = syntaxErrors;
+			this.failure = failure;
+		}
+	}
+
+	public final Grammar g;
+	public final String startRuleName;
+	public final int threads;
+	/** Summed over all files; the event lists are empty, see the counts below */
+	public final DecisionInfo[] decisions;
+	public final long[] ambiguities;
+	public final long[] contextSensitivities;
+	public final long[] predicateEvals;
+	public final long[] predictionErrors;
+	/** Slowest first */
+	public final List<FileProfile> files;
+	/** Elapsed time in ns, not the sum of file times */
+	public long wallTime;
+
+	private CorpusProfile(Grammar g, String startRuleName, int threads, List<FileProfile> files) {
+		this.g = g;
+		this.startRuleName = startRuleName;
+		this.threads = threads;
+		int n = g.atn.getNumberOfDecisions();
+		decisions = new DecisionInfo[n];
+		for (int d = 0; d<n; d++) {
+			decisions[d] = new DecisionInfo(d);
+		}
+		ambiguities = new long[n];
+		contextSensitivities = new long[n];
+		predicateEvals = new long[n];
+		predictionErrors = new long[n];
+		this.files = files;
+	}
+
+	/** Regular files below dir whose path relative to dir matches glob, e.g. "**.sql" */
+	public static List<File> findFiles(File dir, String glob) throws IOException {
+		Path root = dir.toPath();
+		PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:"+glob);
+		try (Stream<Path> paths = Files.walk(root)) {
+			return paths.filter(Files::isRegularFile)
+						.filter(p -> matcher.matches(root.relativize(p)))
+						.sorted()
+						.map(Path::toFile)
+						.collect(Collectors.toList());
+		}
+	}
+
+	/** Parse files from startRuleName with up to threads workers; reports
+	 *  progress to and can be canceled through indicator.
+	 */
+	public static CorpusProfile compute(Grammar g, LexerGrammar lg, String startRuleName,
+										List<File> files, int threads, ProgressIndicator indicator)
+	{
+		Rule startRule = g.getRule(startRuleName);
+		if ( startRule==null ) {
+			throw new IllegalArgumentException("no rule "+startRuleName+" in "+g.name);
+		}
+		long start = System.nanoTime();
+		threads = Math.max(1, Math.min(threads, files.size()));
+		ATN atn = new ATNDeserializer().deserialize(ATNSerializer.getSerializedAsChars(g.getATN()));
+		AtomicInteger nextFile = new AtomicInteger();
+		AtomicInteger filesDone = new AtomicInteger();
+
+		List<Worker> workers = new ArrayList<>();
+		ExecutorService pool = AppExecutorUtil.createBoundedApplicationPoolExecutor("ANTLR corpus profiler", threads);
+		List<Future<?>> futures = new ArrayList<>();
+		try {
+			for (int i = 0; i<threads; i++) {
+				Worker worker = new Worker(g, lg, atn, startRule.index);
+				workers.add(worker);
+				ProgressIndicator workerIndicator = ProgressWrapper.wrap(indicator);
+				futures.add(pool.submit(() -> ProgressManager.getInstance().runProcess(() -> {
+					int next;
+					while ( (next = nextFile.getAndIncrement())<files.size() ) {
+						ProgressManager.checkCanceled();
+						worker.profile(files.get(next));
+						int done = filesDone.incrementAndGet();
+						indicator.setFraction(done/(double) files.size());
+						indicator.setText2(done+" of "+files.size()+" files");
+					}
+				}, workerIndicator)));
+			}
+			for (Future<?> f : futures) {
+				f.get();
+			}
+		}
+		catch (InterruptedException e) {
+			throw new ProcessCanceledException(e);
+		}
+		catch (ExecutionException e) {
+			if ( e.getCause() instanceof RuntimeException ) throw (RuntimeException) e.getCause();
+			if ( e.getCause() instanceof Error ) throw (Error) e.getCause();
+			throw new RuntimeException(e.getCause());
+		}
+		finally {
+			pool.shutdownNow();
+		}
+
+		List<FileProfile> fileProfiles = new ArrayList<>();
+		for (Worker w : workers) {
+			fileProfiles.addAll(w.files);
+		}
+		fileProfiles.sort(Comparator.comparingLong((FileProfile f) -> f.time).reversed());
+		CorpusProfile profile = new CorpusProfile(g, startRuleName, threads, Collections.unmodifiableList(fileProfiles));
+		for (Worker w : workers) {
+			profile.merge(w);
+		}
+		profile.wallTime = System.nanoTime()-start;
+		return profile;
+	}
+
+	private void merge(Worker w) {
+		if ( w.parser==null ) return; // got no file
+		DecisionInfo[] from = w.parser.getParseInfo().getDecisionInfo();
+		for (int d = 0; d<decisions.length; d++) {
+			DecisionInfo to = decisions[d];
+			DecisionInfo f = from[d];
+			to.invocations += f.invocations;
+			to.timeInPrediction += f.timeInPrediction;
+			to.SLL_TotalLook += f.SLL_TotalLook;
+			to.SLL_MinLook = minLook(to.SLL_MinLook, f.SLL_MinLook);
+			to.SLL_MaxLook = Math.max(to.SLL_MaxLook, f.SLL_MaxLook);
+			to.LL_TotalLook += f.LL_TotalLook;
+			to.LL_MinLook = minLook(to.LL_MinLook, f.LL_MinLook);
+			to.LL_MaxLook = Math.max(to.LL_MaxLook, f.LL_MaxLook);
+			to.LL_Fallback += f.LL_Fallback;
+			to.SLL_ATNTransitions += f.SLL_ATNTransitions;
+			to.SLL_DFATransitions += f.SLL_DFATransitions;
+			to.LL_ATNTransitions += f.LL_ATNTransitions;
+			to.LL_DFATransitions += f.LL_DFATransitions;
+			ambiguities[d] += w.ambiguities[d];
+			contextSensitivities[d] += w.contextSensitivities[d];
+			predicateEvals[d] += w.predicateEvals[d];
+			predictionErrors[d] += w.predictionErrors[d];
+		}
+	}
+
+	/** 0 means no lookahead recorded */
+	private static long minLook(long a, long b) {
+		if ( a==0 ) return b;
+		if ( b==0 ) return a;
+		return Math.min(a, b);
+	}
+
+	public long getTotalTime() {
+		long total = 0;
+		for (FileProfile f : files) {
+			total += f.time;
+		}
+		return total;
+	}
+
+	public long getTotalTokens() {
+		long total = 0;
+		for (FileProfile f : files) {
+			total += f.tokens;
+		}
+		return total;
+	}
+
+	public long getTotalChars() {
+		long total = 0;
+		for (FileProfile f : files) {
+			total += f.chars;
+		}
+		return total;
+	}
+
+	public int getNumberOfFilesWithErrors() {
+		int n = 0;
+		for (FileProfile f : files) {
+			if ( f.syntaxErrors>0 || f.failure!=null ) n++;
+		}
+		return n;
+	}
+
+	public long getTotalSyntaxErrors() {
+		long total = 0;
+		for (FileProfile f : files) {
+			total += f.syntaxErrors;
+		}
+		return total;
+	}
+
+	/** Parses files one after the other with the same lexer and parser */
+	private static class Worker extends BaseErrorListener {
+		final Grammar g;
+		final LexerGrammar lg;
+		final ATN atn;
+		final int startRuleIndex;
+		final List<FileProfile> files = new ArrayList<>();
+		final long[] ambiguities;
+		final long[] contextSensitivities;
+		final long[] predicateEvals;
+		final long[] predictionErrors;
+
+		LexerInterpreter lexer;
+		PreviewParser parser;
+		int syntaxErrors;
+
+		Worker(Grammar g, LexerGrammar lg, ATN atn, int startRuleIndex) {
+			this.g = g;
+			this.lg = lg;
+			this.atn = atn;
+			this.startRuleIndex = startRuleIndex;
+			int n = atn.getNumberOfDecisions();
+			ambiguities = new long[n];
+			contextSensitivities = new long[n];
+			predicateEvals = new long[n];
+			predictionErrors = new long[n];
+		}
+
+		void profile(File file) {
+			CharStream input;
+			try {
+				input = CharStreams.fromPath(file.toPath());
+			}
+			catch (IOException e) {
+				files.add(new FileProfile(file, 0, 0, 0, 0, String.valueOf(e.getMessage())));
+				return;
+			}
+			syntaxErrors = 0;
+			long start = System.nanoTime();
+			String failure = null;
+			CompactTokenStream tokens = null;
+			try {
+				if ( lexer==null ) {
+					lexer = lg.createLexerInterpreter(input);
+					lexer.removeErrorListeners();
+					lexer.addErrorListener(this);
+				}
+				else {
+					lexer.setInputStream(input);
+				}
+				tokens = new CompactTokenStream(lexer);
+				if ( parser==null ) {
+					parser = new PreviewParser(g, atn, tokens);
+					parser.getInterpreter().setPredictionMode(PredictionMode.LL_EXACT_AMBIG_DETECTION);
+					parser.setProfile(true);
+					parser.removeErrorListeners();
+					parser.addErrorListener(this);
+				}
+				else {
+					parser.setInputStream(tokens);
+				}
+				parser.parse(startRuleIndex);
+			}
+			catch (ProcessCanceledException e) {
+				throw e;
+			}
+			catch (RuntimeException | StackOverflowError e) {
+				failure = e.toString();
+			}
+			long time = System.nanoTime()-start;
+			files.add(new FileProfile(file, input.size(), tokens!=null ? tokens.size() : 0, time, syntaxErrors, failure));
+			if ( parser!=null ) {
+				collectEvents();
+			}
+		}
+
+		/** Count this file's events, then let go of them and its tokens */
+		private void collectEvents() {
+			DecisionInfo[] decisions = parser.getParseInfo().getDecisionInfo();
+			for (int d = 0; d<decisions.length; d++) {
+				DecisionInfo info = decisions[d];
+				ambiguities[d] += info.ambiguities.size();
+				contextSensitivities[d] += info.contextSensitivities.size();
+				predicateEvals[d] += info.predicateEvals.size();
+				predictionErrors[d] += info.errors.size();
+				info.ambiguities.clear();
+				info.contextSensitivities.clear();
+				info.predicateEvals.clear();
+				info.errors.clear();
+				info.SLL_MaxLookEvent = null;
+				info.LL_MaxLookEvent = null;
+			}
+		}
+
+		@Override
+		public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
+								int line, int charPositionInLine, String msg, RecognitionException e)
+		{
+			syntaxErrors++;
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package org.antlr.intellij.plugin.profiler;
+
+import com.intellij.openapi.ui.Splitter;
+import com.intellij.ui.components.JBLabel;
+import com.intellij.ui.components.JBScrollPane;
+import com.intellij.ui.table.JBTable;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableModel;
+import javax.swing.table.TableRowSorter;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.File;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.Collections;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/** Shows the last {@link CorpusProfile} computed for a grammar: decision
+ *  stats over all files above, files slowest first below.
+ */
+public class CorpusProfilePanel extends JPanel {
+	private final JBLabel summaryLabel = new JBLabel("Run 'Profile Grammar on Corpus' on a grammar");
+	private final JBTable decisionTable = new JBTable();
+	private final JBTable fileTable = new JBTable();
+
+	public CorpusProfilePanel(IntConsumer selectDecision, Consumer<File> openFile) {
+		super(new BorderLayout());
+		add(summaryLabel, BorderLayout.NORTH);
+		Splitter splitter = new Splitter(true, 0.6f);
+		splitter.setFirstComponent(new JBScrollPane(decisionTable));
+		splitter.setSecondComponent(new JBScrollPane(fileTable));
+		add(splitter, BorderLayout.CENTER);
+
+		decisionTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		decisionTable.getSelectionModel().addListSelectionListener(e -> {
+			int row = decisionTable.getSelectedRow();
+			if ( e.getValueIsAdjusting() || row==-1 ) return;
+			if ( decisionTable.getModel() instanceof CorpusProfilerTableDataModel ) {
+				selectDecision.accept(decisionTable.convertRowIndexToModel(row));
+			}
+		});
+		fileTable.addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseClicked(MouseEvent e) {
+				int row = fileTable.getSelectedRow();
+				if ( e.getClickCount()!=2 || row==-1 ) return;
+				if ( fileTable.getModel() instanceof FileTableModel ) {
+					FileTableModel model = (FileTableModel) fileTable.getModel();
+					openFile.accept(model.profile.files.get(fileTable.convertRowIndexToModel(row)).file);
+				}
+			}
+		});
+	}
+
+	/** Show profile, null to clear */
+	public void setCorpusProfile(CorpusProfile profile) {
+		if ( profile==null ) {
+			summaryLabel.setText("Run 'Profile Grammar on Corpus' on a grammar");
+			decisionTable.setModel(new DefaultTableModel());
+			fileTable.setModel(new DefaultTableModel());
+			return;
+		}
+		NumberFormat formatter = new DecimalFormat("#.###");
+		summaryLabel.setText(String.format(
+			"%s from %s: %d files, %d char, %d tokens; %d files with errors (%d syntax errors); "+
+			"parse time %s ms on %d threads, %s ms elapsed",
+			profile.g.name, profile.startRuleName,
+			profile.files.size(), profile.getTotalChars(), profile.getTotalTokens(),
+			profile.getNumberOfFilesWithErrors(), profile.getTotalSyntaxErrors(),
+			formatter.format(profile.getTotalTime()/(1000.0*1000.0)), profile.threads,
+			formatter.format(profile.wallTime/(1000.0*1000.0))));
+
+		CorpusProfilerTableDataModel decisions = new CorpusProfilerTableDataModel(profile);
+		decisionTable.setModel(decisions);
+		TableRowSorter<AbstractTableModel> sorter = new TableRowSorter<AbstractTableModel>(decisions);
+		sorter.setSortKeys(Collections.singletonList(
+			new RowSorter.SortKey(CorpusProfilerTableDataModel.TIME_COLUMN, SortOrder.DESCENDING)));
+		decisionTable.setRowSorter(sorter);
+
+		FileTableModel files = new FileTableModel(profile);
+		fileTable.setModel(files);
+		fileTable.setRowSorter(new TableRowSorter<AbstractTableModel>(files));
+		fileTable.getColumnModel().getColumn(0).setPreferredWidth(400);
+	}
+
+	/** Files of a corpus profile, slowest first */
+	static class FileTableModel extends AbstractTableModel {
+		private static final String[] columnNames = {"File", "Time", "Chars", "Tokens", "Syntax errors", "Failure"};
+		private static final Class<?>[] columnClasses = {String.class, Double.class, Long.class, Integer.class, Integer.class, String.class};
+
+		final CorpusProfile profile;
+
+		FileTableModel(CorpusProfile profile) {
+			this.profile = profile;
+		}
+
+		@Override
+		public String getColumnName(int column) {
+			return columnNames[column];
+		}
+
+		@Override
+		public Class<?> getColumnClass(int columnIndex) {
+			return columnClasses[columnIndex];
+		}
+
+		@Override
+		public int getColumnCount() {
+			return columnNames.length;
+		}
+
+		@Override
+		public int getRowCount() {
+			return profile.files.size();
+		}
+
+		@Override
+		public Object getValueAt(int row, int col) {
+			CorpusProfile.FileProfile f = profile.files.get(row);
+			switch (col) {
+				case 0 :
+					return f.file.getPath();
+				case 1 :
+					return Math.round(f.time/1000.0)/1000.0;
+				case 2 :
+					return f.chars;
+				case 3 :
+					return f.tokens;
+				case 4 :
+					return f.syntaxErrors;
+				case 5 :
+					return f.failure!=null ? f.failure : "";
+			}
+			return "";
+		}
+	}
+}
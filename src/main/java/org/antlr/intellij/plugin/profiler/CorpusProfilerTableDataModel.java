@@ -0,0 +1,91 @@
+package org.antlr.intellij.plugin.profiler;
+
+import org.antlr.v4.runtime.atn.DecisionInfo;
+
+/** Decision stats summed over a corpus, one row per decision */
+public class CorpusProfilerTableDataModel extends ProfilerTableDataModel {
+	public static final int TIME_COLUMN = 3;
+
+	public static final String[] columnNames = {
+		"Decision", "Rule", "Invocations", "Time", "Total k", "Max k",
+		"Ambiguities", "Context sensitivities", "Predicate evals", "Full LL", "DFA cache miss"
+	};
+
+	public static final String[] columnToolTips = {
+		"Decision number",
+		"Rule containing the decision",
+		"# decision invocations over all files",
+		"Rough estimate of time (ms) spent in prediction over all files",
+		"Total lookahead symbols examined",
+		"Max lookahead symbols examined in any file",
+		"# of ambiguous input phrases",
+		"# of decision events that required full-context (LL) to resolve",
+		"# of semantic predicate evaluations",
+		"# of times SLL prediction failed over to full-context (LL)",
+		"# of non-DFA transitions during prediction (cache miss)"
+	};
+
+	private static final Class<?>[] columnClasses = {
+		Integer.class, String.class, Long.class, Double.class, Long.class, Long.class,
+		Long.class, Long.class, Long.class, Long.class, Long.class
+	};
+
+	public final CorpusProfile profile;
+
+	public CorpusProfilerTableDataModel(CorpusProfile profile) {
+		this.profile = profile;
+	}
+
+	@Override
+	public String[] getColumnNames() {
+		return columnNames;
+	}
+
+	@Override
+	public String[] getColumnToolTips() {
+		return columnToolTips;
+	}
+
+	@Override
+	public Class<?> getColumnClass(int columnIndex) {
+		return columnClasses[columnIndex];
+	}
+
+	@Override
+	public int getRowCount() {
+		return profile.decisions.length;
+	}
+
+	@Override
+	public Object getValueAt(int row, int col) {
+		int decision = row;
+		DecisionInfo decisionInfo = profile.decisions[decision];
+		switch (col) {
+			case 0:
+				return decision;
+			case 1:
+				int ruleIndex = profile.g.atn.getDecisionState(decision).ruleIndex;
+				return profile.g.getRule(ruleIndex).name;
+			case 2:
+				return decisionInfo.invocations;
+			case 3:
+				// microsecond precision
+				return Math.round(decisionInfo.timeInPrediction/1000.0)/1000.0;
+			case 4:
+				return decisionInfo.SLL_TotalLook+decisionInfo.LL_TotalLook;
+			case 5:
+				return Math.max(decisionInfo.SLL_MaxLook, decisionInfo.LL_MaxLook);
+			case 6:
+				return profile.ambiguities[decision];
+			case 7:
+				return profile.contextSensitivities[decision];
+			case 8:
+				return profile.predicateEvals[decision];
+			case 9:
+				return decisionInfo.LL_Fallback;
+			case 10:
+				return decisionInfo.SLL_ATNTransitions+decisionInfo.LL_ATNTransitions;
+		}
+		return "n/a";
+	}
+}
@@ -0,0 +1,224 @@
+package org.antlr.intellij.plugin.profiler;
+
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.event.VisibleAreaEvent;
+import com.intellij.openapi.editor.event.VisibleAreaListener;
+import com.intellij.openapi.editor.markup.EffectType;
+import com.intellij.openapi.editor.markup.HighlighterLayer;
+import com.intellij.openapi.editor.markup.HighlighterTargetArea;
+import com.intellij.openapi.editor.markup.MarkupModel;
+import com.intellij.openapi.editor.markup.RangeHighlighter;
+import com.intellij.openapi.editor.markup.TextAttributes;
+import com.intellij.openapi.util.Key;
+import com.intellij.ui.JBColor;
+import org.antlr.intellij.plugin.preview.HighlighterRegistry;
+import org.antlr.v4.runtime.atn.AmbiguityInfo;
+import org.antlr.v4.runtime.atn.ContextSensitivityInfo;
+import org.antlr.v4.runtime.atn.DecisionEventInfo;
+import org.antlr.v4.runtime.atn.PredicateEvalInfo;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Input phrases of the decision selected in the profiler. A hot decision
+ *  can have tens of thousands of events, so rather than a highlighter per
+ *  event we keep the events in an interval tree and only highlight the ones
+ *  in (or near) the visible part of the input editor, redoing that as the
+ *  editor scrolls. The error stripe gets one mark per stretch of the
+ *  document that has events, not one per event.
+ *
+ *  One instance per input editor, kept as its user data until
+ *  {@link #release(Editor)}; EDT only.
+ */
+public class DecisionEventHighlights implements VisibleAreaListener {
+	private static final Key<DecisionEventHighlights> HIGHLIGHTS_KEY = Key.create("ANTLR_DECISION_EVENT_HIGHLIGHTS");
+
+	/** Number of stretches the document is cut into for error stripe marks */
+	private static final int STRIPE_BUCKETS = 256;
+
+	public static class Event {
+		final int startOffset;
+		final int endOffset; // exclusive
+		final DecisionEventInfo info;
+		final Color color;
+		final EffectType effectType;
+
+		public Event(int startOffset, int endOffset, DecisionEventInfo info, Color color, EffectType effectType) {
+			this.startOffset = startOffset;
+			this.endOffset = endOffset;
+			this.info = info;
+			this.color = color;
+			this.effectType = effectType;
+		}
+	}
+
+	private final Editor editor;
+	/** sorted by start offset; an implicit balanced tree, each range rooted at its middle */
+	private Event[] events = new Event[0];
+	/** maxEnd[i]: largest end offset in the subtree rooted at events[i] */
+	private int[] maxEnd = new int[0];
+	private final Map<Event, RangeHighlighter> shown = new HashMap<>();
+	private int clearCount;
+
+	private DecisionEventHighlights(Editor editor) {
+		this.editor = editor;
+		editor.getScrollingModel().addVisibleAreaListener(this);
+	}
+
+	public static DecisionEventHighlights getInstance(Editor editor) {
+		DecisionEventHighlights highlights = editor.getUserData(HIGHLIGHTS_KEY);
+		if ( highlights==null ) {
+			highlights = new DecisionEventHighlights(editor);
+			editor.putUserData(HIGHLIGHTS_KEY, highlights);
+		}
+		return highlights;
+	}
+
+	/** Stop following editor's scrolling; call when the editor is released */
+	public static void release(Editor editor) {
+		DecisionEventHighlights highlights = editor.getUserData(HIGHLIGHTS_KEY);
+		if ( highlights!=null ) {
+			editor.getScrollingModel().removeVisibleAreaListener(highlights);
+			editor.putUserData(HIGHLIGHTS_KEY, null);
+		}
+	}
+
+	/** Replace the events shown; call after clearing the previous decision's highlighters */
+	public void setEvents(List<Event> events) {
+		HighlighterRegistry registry = HighlighterRegistry.getInstance(editor);
+		for (RangeHighlighter r : shown.values()) {
+			registry.remove(HighlighterRegistry.Category.DECISION_EVENTS, r);
+		}
+		shown.clear();
+
+		this.events = events.toArray(new Event[0]);
+		Arrays.sort(this.events, Comparator.comparingInt(e -> e.startOffset));
+		maxEnd = new int[this.events.length];
+		computeMaxEnd(0, this.events.length);
+
+		addErrorStripeMarks();
+		showVisibleEvents();
+		clearCount = registry.getClearCount(HighlighterRegistry.Category.DECISION_EVENTS);
+	}
+
+	@Override
+	public void visibleAreaChanged(VisibleAreaEvent e) {
+		if ( events.length==0 ) return;
+		HighlighterRegistry registry = HighlighterRegistry.getInstance(editor);
+		if ( registry.getClearCount(HighlighterRegistry.Category.DECISION_EVENTS)!=clearCount ) {
+			// someone cleared decision highlighting (e.g., a click in the input); stop
+			events = new Event[0];
+			maxEnd = new int[0];
+			shown.clear();
+			return;
+		}
+		showVisibleEvents();
+	}
+
+	private void showVisibleEvents() {
+		if ( events.length==0 ) return;
+		Rectangle area = editor.getScrollingModel().getVisibleArea();
+		// a screen of slack above and below so small scrolls don't churn
+		int from = offsetAt(area.y - area.height);
+		int to = offsetAt(area.y + 2*area.height);
+
+		Map<Event, RangeHighlighter> stillShown = new HashMap<>();
+		HighlighterRegistry registry = HighlighterRegistry.getInstance(editor);
+		MarkupModel markupModel = editor.getMarkupModel();
+		List<Event> visible = new ArrayList<>();
+		findOverlapping(0, events.length, from, to, visible);
+		for (Event e : visible) {
+			RangeHighlighter r = shown.remove(e);
+			if ( r==null ) {
+				TextAttributes textAttributes =
+					new TextAttributes(JBColor.BLACK, JBColor.WHITE, e.color, e.effectType, Font.PLAIN);
+				r = markupModel.addRangeHighlighter(e.startOffset, e.endOffset,
+													HighlighterLayer.ADDITIONAL_SYNTAX, textAttributes,
+													HighlighterTargetArea.EXACT_RANGE);
+				r.putUserData(ProfilerPanel.DECISION_EVENT_INFO_KEY, e.info);
+				registry.add(HighlighterRegistry.Category.DECISION_EVENTS, r);
+			}
+			stillShown.put(e, r);
+		}
+		for (RangeHighlighter r : shown.values()) {
+			registry.remove(HighlighterRegistry.Category.DECISION_EVENTS, r);
+		}
+		shown.clear();
+		shown.putAll(stillShown);
+	}
+
+	/** One error stripe mark per bucket of the document with events, in the
+	 *  color of the most severe event in it.
+	 */
+	private void addErrorStripeMarks() {
+		if ( events.length==0 ) return;
+		int docLength = Math.max(1, editor.getDocument().getTextLength());
+		int[] start = new int[STRIPE_BUCKETS];
+		int[] end = new int[STRIPE_BUCKETS];
+		int[] count = new int[STRIPE_BUCKETS];
+		Event[] worst = new Event[STRIPE_BUCKETS];
+		for (Event e : events) {
+			int b = (int)((long)e.startOffset * STRIPE_BUCKETS / docLength);
+			b = Math.max(0, Math.min(STRIPE_BUCKETS-1, b));
+			if ( count[b]==0 ) {
+				start[b] = e.startOffset;
+				end[b] = e.endOffset;
+			}
+			end[b] = Math.max(end[b], e.endOffset);
+			count[b]++;
+			if ( worst[b]==null || severity(e.info)>severity(worst[b].info) ) {
+				worst[b] = e;
+			}
+		}
+
+		HighlighterRegistry registry = HighlighterRegistry.getInstance(editor);
+		MarkupModel markupModel = editor.getMarkupModel();
+		for (int b = 0; b<STRIPE_BUCKETS; b++) {
+			if ( count[b]==0 ) continue;
+			// no text attributes; only a mark in the stripe
+			RangeHighlighter r = markupModel.addRangeHighlighter(start[b], Math.min(end[b], docLength),
+																 HighlighterLayer.ADDITIONAL_SYNTAX, null,
+																 HighlighterTargetArea.EXACT_RANGE);
+			r.setErrorStripeMarkColor(worst[b].color);
+			r.setErrorStripeTooltip(count[b]==1 ? "1 decision event" : count[b]+" decision events");
+			registry.add(HighlighterRegistry.Category.DECISION_EVENTS, r);
+		}
+	}
+
+	private static int severity(DecisionEventInfo info) {
+		if ( info instanceof AmbiguityInfo ) return 3;
+		if ( info instanceof ContextSensitivityInfo ) return 2;
+		if ( info instanceof PredicateEvalInfo ) return 1;
+		return 0; // lookahead
+	}
+
+	private int offsetAt(int y) {
+		Point p = new Point(0, Math.max(0, y));
+		return editor.logicalPositionToOffset(editor.xyToLogicalPosition(p));
+	}
+
+	/** Fill in maxEnd for events[lo..hi); return the largest end offset in there */
+	private int computeMaxEnd(int lo, int hi) {
+		if ( lo>=hi ) return -1;
+		int mid = (lo+hi) >>> 1;
+		int max = Math.max(events[mid].endOffset, Math.max(computeMaxEnd(lo, mid), computeMaxEnd(mid+1, hi)));
+		maxEnd[mid] = max;
+		return max;
+	}
+
+	/** Add the events of events[lo..hi) that overlap [from, to] to result, by start offset */
+	private void findOverlapping(int lo, int hi, int from, int to, List<Event> result) {
+		if ( lo>=hi ) return;
+		int mid = (lo+hi) >>> 1;
+		if ( maxEnd[mid]<from ) return; // everything in here ends before from
+		findOverlapping(lo, mid, from, to, result);
+		if ( events[mid].startOffset>to ) return; // so does everything after mid
+		if ( events[mid].endOffset>=from ) result.add(events[mid]);
+		findOverlapping(mid+1, hi, from, to, result);
+	}
+}
@@ -9,12 +9,15 @@ import java.util.LinkedHashMap;
 
 public class ExpertProfilerTableDataModel extends ProfilerTableDataModel {
     public ParseInfo parseInfo;
+	/** Null if prediction memory wasn't tracked */
+	public PredictionMemoryInfo memoryInfo;
     public LinkedHashMap<String, Integer> nameToColumnMap = new LinkedHashMap<String, Integer>();
     public static final String[] columnNames = {
         "Decision", "Invocations", "Time", "# DFA states", "LL failover", "Total k",
 		"Min SLL k", "Min LL k",
 		"Max SLL k", "Max LL k",
-        "DFA k", "SLL-ATN k", "LL-ATN k", "Full context", "Ambiguities", "Predicates"
+        "DFA k", "SLL-ATN k", "LL-ATN k", "Full context", "Ambiguities", "Predicates",
+		"DFA edges", "DFA configs", "Peak config set", "ATN configs"
     };
 
     public static final String[] columnToolTips = {
@@ -33,14 +36,19 @@ public class ExpertProfilerTableDataModel extends ProfilerTableDataModel {
 		"# of full-context LL ATN (non-DFA) transitions during prediction (cache miss)",
 		"# of context-sensitive phrases found (not certain to be all)",
 		"# of ambiguous input phrases",
-		"# of predicate evaluations"
+		"# of predicate evaluations",
+		"# DFA edges (transitions) created",
+		"# ATN configs kept by the decision's DFA states",
+		"Size of the biggest ATN config set built during prediction",
+		"# ATN configs in all config sets built during prediction"
     };
 
 	// microsecond decimal precision
 	private NumberFormat milliUpToMicroFormatter = new DecimalFormat("#.###");
 
-    public ExpertProfilerTableDataModel(ParseInfo parseInfo) {
+    public ExpertProfilerTableDataModel(ParseInfo parseInfo, PredictionMemoryInfo memoryInfo) {
         this.parseInfo = parseInfo;
+		this.memoryInfo = memoryInfo;
         for (int i = 0; i < columnNames.length; i++) {
             nameToColumnMap.put(columnNames[i], i);
         }
@@ -97,6 +105,14 @@ public class ExpertProfilerTableDataModel extends ProfilerTableDataModel {
 				return decisionInfo.ambiguities.size();
 			case 15:
 				return decisionInfo.predicateEvals.size();
+			case 16:
+				return memoryInfo!=null ? memoryInfo.dfaEdges[decision] : null;
+			case 17:
+				return memoryInfo!=null ? memoryInfo.dfaConfigs[decision] : null;
+			case 18:
+				return memoryInfo!=null ? memoryInfo.peakConfigSetSize[decision] : null;
+			case 19:
+				return memoryInfo!=null ? memoryInfo.configsComputed[decision] : null;
 		}
 		return "n/a";
 	}
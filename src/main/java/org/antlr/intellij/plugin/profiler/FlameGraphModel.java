@@ -0,0 +1,171 @@
+package org.antlr.intellij.plugin.profiler;
+
+import org.antlr.intellij.plugin.parsing.RuleProfile;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/** The rule invocation stacks of a profiled parse, weighted by tokens or
+ *  time, laid out for a flame graph: a frame per distinct stack, as wide as
+ *  the weight of that stack and all stacks above it, with children ordered
+ *  by rule name. Frames are the nodes of the {@link RuleProfile} call tree;
+ *  frame 0 is the root, "all".
+ */
+public class FlameGraphModel {
+	public enum Weight {
+		TOKENS("Tokens consumed"),
+		TIME("Time"),
+		PREDICTION_TIME("Prediction time");
+
+		public final String displayName;
+
+		Weight(String displayName) {
+			this.displayName = displayName;
+		}
+
+		@Override
+		public String toString() {
+			return displayName;
+		}
+	}
+
+	public static final String ROOT_NAME = "all";
+
+	public final Weight weight;
+	private final String[] ruleNames;
+	private final int[] rule;
+	private final int[] parent;
+	private final int[] depth;
+	private final long[] ownWeight;
+	private final long[] totalWeight;
+	private final int[][] children;
+	private int maxDepth;
+
+	public FlameGraphModel(RuleProfile profile, String[] ruleNames, Weight weight) {
+		this.weight = weight;
+		this.ruleNames = ruleNames;
+		int n = profile.getNumberOfStacks();
+		rule = new int[n];
+		parent = new int[n];
+		depth = new int[n];
+		ownWeight = new long[n];
+		totalWeight = new long[n];
+		int[] numberOfChildren = new int[n];
+		for (int i = 0; i<n; i++) {
+			rule[i] = profile.getStackRule(i);
+			parent[i] = profile.getStackParent(i);
+			switch (weight) {
+				case TOKENS :
+					ownWeight[i] = profile.getStackOwnTokens(i);
+					break;
+				case TIME :
+					ownWeight[i] = profile.getStackOwnTime(i);
+					break;
+				case PREDICTION_TIME :
+					ownWeight[i] = profile.getStackPredictionTime(i);
+					break;
+			}
+			totalWeight[i] = ownWeight[i];
+			if ( parent[i]>=0 ) {
+				depth[i] = depth[parent[i]]+1;
+				maxDepth = Math.max(maxDepth, depth[i]);
+				numberOfChildren[parent[i]]++;
+			}
+		}
+		// parents come before their children
+		for (int i = n-1; i>0; i--) {
+			totalWeight[parent[i]] += totalWeight[i];
+		}
+		children = new int[n][];
+		for (int i = 0; i<n; i++) {
+			children[i] = new int[numberOfChildren[i]];
+			numberOfChildren[i] = 0;
+		}
+		for (int i = 1; i<n; i++) {
+			children[parent[i]][numberOfChildren[parent[i]]++] = i;
+		}
+		Comparator<Integer> byName = Comparator.comparing(this::getName);
+		for (int i = 0; i<n; i++) {
+			if ( children[i].length>1 ) {
+				Integer[] sorted = Arrays.stream(children[i]).boxed().sorted(byName).toArray(Integer[]::new);
+				for (int j = 0; j<sorted.length; j++) {
+					children[i][j] = sorted[j];
+				}
+			}
+		}
+	}
+
+	public int getNumberOfFrames() {
+		return rule.length;
+	}
+
+	public String getName(int frame) {
+		return rule[frame]<0 ? ROOT_NAME : ruleNames[rule[frame]];
+	}
+
+	public int getParent(int frame) {
+		return parent[frame];
+	}
+
+	public int getDepth(int frame) {
+		return depth[frame];
+	}
+
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	public int[] getChildren(int frame) {
+		return children[frame];
+	}
+
+	/** Weight of the stack itself, not counting stacks above it */
+	public long getOwnWeight(int frame) {
+		return ownWeight[frame];
+	}
+
+	public long getTotalWeight(int frame) {
+		return totalWeight[frame];
+	}
+
+	/** Write one "rule;rule;...;rule weight" line per stack with any weight
+	 *  of its own, the collapsed stack format of flamegraph.pl, speedscope
+	 *  and similar tools. Times are in ns.
+	 */
+	public void writeCollapsedStacks(Writer out) throws IOException {
+		// iterative, as stacks of nested (e.g., parenthesized) expressions can be very deep
+		int n = getNumberOfFrames();
+		int[] stack = new int[maxDepth+1];
+		int[] next = new int[maxDepth+1]; // next child to visit
+		int[] pathLength = new int[maxDepth+1];
+		StringBuilder path = new StringBuilder();
+		if ( n==0 || children[0].length==0 ) return;
+		int sp = 0;
+		stack[0] = 0;
+		next[0] = 0;
+		pathLength[0] = 0;
+		while ( sp>=0 ) {
+			int frame = stack[sp];
+			if ( next[sp]==children[frame].length ) {
+				sp--;
+				continue;
+			}
+			int child = children[frame][next[sp]++];
+			path.setLength(pathLength[sp]);
+			if ( sp>0 ) path.append(';');
+			path.append(getName(child));
+			if ( ownWeight[child]>0 ) {
+				out.write(path.toString());
+				out.write(' ');
+				out.write(String.valueOf(ownWeight[child]));
+				out.write('\n');
+			}
+			sp++;
+			stack[sp] = child;
+			next[sp] = 0;
+			pathLength[sp] = path.length();
+		}
+	}
+}
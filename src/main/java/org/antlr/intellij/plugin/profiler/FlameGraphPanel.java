@@ -0,0 +1,270 @@
+package org.antlr.intellij.plugin.profiler;
+
+import com.intellij.ui.JBColor;
+import com.intellij.ui.components.JBLabel;
+import com.intellij.ui.components.JBScrollPane;
+import org.antlr.intellij.plugin.parsing.RuleProfile;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+
+/** Rule invocation stacks of the last profiled parse as a flame graph, the
+ *  start rule at the bottom and each rule above the rule that invoked it.
+ *  Click a frame to zoom in on it, click below it to zoom back out.
+ *
+ *  A left-recursive rule loops within a single invocation, so a chain like
+ *  a+b+c is one wide e frame; towers of e frames come from the recursion
+ *  that remains, like parenthesized subexpressions and right operands.
+ */
+public class FlameGraphPanel extends JPanel {
+	private static final int FRAME_HEIGHT = 18;
+
+	private final JComboBox<FlameGraphModel.Weight> weightComboBox = new JComboBox<>(FlameGraphModel.Weight.values());
+	private final JButton exportButton = new JButton("Export Collapsed Stacks...");
+	private final FlameGraph graph = new FlameGraph();
+
+	private RuleProfile profile;
+	private String[] ruleNames;
+
+	public FlameGraphPanel() {
+		super(new BorderLayout());
+		JPanel toolbar = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		toolbar.add(new JBLabel("Weight:"));
+		toolbar.add(weightComboBox);
+		JButton resetZoomButton = new JButton("Reset Zoom");
+		toolbar.add(resetZoomButton);
+		toolbar.add(exportButton);
+		add(toolbar, BorderLayout.NORTH);
+		add(new JBScrollPane(graph), BorderLayout.CENTER);
+
+		weightComboBox.addActionListener(e -> updateModel());
+		resetZoomButton.addActionListener(e -> graph.setZoom(0));
+		exportButton.addActionListener(e -> exportCollapsedStacks());
+		exportButton.setEnabled(false);
+	}
+
+	/** Show stacks of profile, null to clear */
+	public void setProfile(RuleProfile profile, String[] ruleNames) {
+		this.profile = profile;
+		this.ruleNames = ruleNames;
+		updateModel();
+	}
+
+	private void updateModel() {
+		FlameGraphModel model = null;
+		if ( profile!=null ) {
+			model = new FlameGraphModel(profile, ruleNames, (FlameGraphModel.Weight) weightComboBox.getSelectedItem());
+		}
+		graph.setModel(model);
+		exportButton.setEnabled(model!=null);
+	}
+
+	private void exportCollapsedStacks() {
+		FlameGraphModel model = graph.model;
+		if ( model==null ) return;
+		File file = ProfilerPanel.chooseFileToSave("Export Collapsed Stacks", "stacks", "txt");
+		if ( file==null ) return;
+		try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+			model.writeCollapsedStacks(writer);
+		}
+		catch (IOException e) {
+			ProfilerPanel.exportFailed("collapsed stacks", file, e);
+		}
+	}
+
+	static class FlameGraph extends JComponent implements Scrollable {
+		private static final Color ROOT_COLOR = new JBColor(new Color(0xB0B0B0), new Color(0x707070));
+
+		FlameGraphModel model;
+		/** The frame shown full width */
+		private int zoom;
+
+		private final NumberFormat msFormatter = new DecimalFormat("#.###");
+
+		FlameGraph() {
+			setToolTipText(""); // enable tooltips; text comes from getToolTipText(MouseEvent)
+			addMouseListener(new MouseAdapter() {
+				@Override
+				public void mouseClicked(MouseEvent e) {
+					if ( model==null ) return;
+					int frame = frameAt(e.getX(), e.getY());
+					if ( frame>=0 ) setZoom(frame);
+				}
+			});
+		}
+
+		void setModel(FlameGraphModel model) {
+			this.model = model;
+			this.zoom = 0;
+			revalidate();
+			repaint();
+		}
+
+		void setZoom(int frame) {
+			zoom = frame;
+			repaint();
+		}
+
+		@Override
+		public Dimension getPreferredSize() {
+			int levels = model!=null ? model.getMaxDepth()+1 : 0;
+			return new Dimension(400, levels*FRAME_HEIGHT);
+		}
+
+		private int y(int depth) {
+			return getHeight()-(depth+1)*FRAME_HEIGHT;
+		}
+
+		@Override
+		protected void paintComponent(Graphics g) {
+			super.paintComponent(g);
+			if ( model==null || model.getTotalWeight(zoom)==0 ) return;
+			Rectangle clip = g.getClipBounds();
+			double scale = getWidth()/(double) model.getTotalWeight(zoom);
+
+			// frames below the zoomed one span the whole width
+			for (int f = model.getParent(zoom); f>=0; f = model.getParent(f)) {
+				paintFrame(g, f, 0, getWidth(), true);
+			}
+
+			// zoomed frame and the ones above, iteratively as stacks can be deep
+			int[] stack = new int[model.getNumberOfFrames()];
+			double[] xs = new double[model.getNumberOfFrames()];
+			int sp = 0;
+			stack[0] = zoom;
+			xs[0] = 0;
+			while ( sp>=0 ) {
+				int frame = stack[sp];
+				double x = xs[sp];
+				sp--;
+				double w = model.getTotalWeight(frame)*scale;
+				if ( w<1 ) continue; // as are all frames above it
+				int y = y(model.getDepth(frame));
+				if ( y+FRAME_HEIGHT<clip.y ) continue; // above the visible area, and so are the frames above it
+				if ( x<clip.x+clip.width && x+w>clip.x && y<clip.y+clip.height ) {
+					paintFrame(g, frame, (int) x, (int) Math.max(1, w), false);
+				}
+				double childX = x;
+				for (int child : model.getChildren(frame)) {
+					stack[++sp] = child;
+					xs[sp] = childX;
+					childX += model.getTotalWeight(child)*scale;
+				}
+			}
+		}
+
+		private void paintFrame(Graphics g, int frame, int x, int w, boolean dimmed) {
+			int y = y(model.getDepth(frame));
+			Color color = frame==0 ? ROOT_COLOR : frameColor(model.getName(frame));
+			g.setColor(dimmed ? color.darker() : color);
+			g.fillRect(x, y, w-1, FRAME_HEIGHT-1);
+			if ( w<20 ) return;
+			g.setColor(Color.BLACK);
+			FontMetrics fm = g.getFontMetrics();
+			String label = model.getName(frame);
+			int available = w-6;
+			if ( fm.stringWidth(label)>available ) {
+				while ( label.length()>1 && fm.stringWidth(label+"..")>available ) {
+					label = label.substring(0, label.length()-1);
+				}
+				label += "..";
+			}
+			g.drawString(label, x+3, y+(FRAME_HEIGHT+fm.getAscent()-fm.getDescent())/2);
+		}
+
+		/** Warm colors as flame graphs do, the same one for each rule every time */
+		private static Color frameColor(String name) {
+			int h = name.hashCode();
+			return new Color(205+(h&0x1F)+((h>>5)&0x0F), 80+((h>>9)&0x7F), (h>>16)&0x37);
+		}
+
+		/** Frame at x,y or -1 */
+		int frameAt(int x, int y) {
+			if ( model==null || model.getTotalWeight(zoom)==0 ) return -1;
+			int depth = (getHeight()-y)/FRAME_HEIGHT;
+			if ( depth<=model.getDepth(zoom) ) {
+				int f = zoom;
+				while ( f>=0 && model.getDepth(f)>depth ) {
+					f = model.getParent(f);
+				}
+				return f;
+			}
+			double scale = getWidth()/(double) model.getTotalWeight(zoom);
+			if ( x>=model.getTotalWeight(zoom)*scale ) return -1;
+			int frame = zoom;
+			double frameX = 0;
+			while ( model.getDepth(frame)<depth ) {
+				int found = -1;
+				double childX = frameX;
+				for (int child : model.getChildren(frame)) {
+					double w = model.getTotalWeight(child)*scale;
+					if ( x>=childX && x<childX+w ) {
+						found = child;
+						break;
+					}
+					childX += w;
+				}
+				if ( found<0 ) return -1;
+				frame = found;
+				frameX = childX;
+			}
+			return frame;
+		}
+
+		@Override
+		public String getToolTipText(MouseEvent e) {
+			int frame = frameAt(e.getX(), e.getY());
+			if ( frame<0 ) return null;
+			long total = model.getTotalWeight(frame);
+			long own = model.getOwnWeight(frame);
+			long all = model.getTotalWeight(0);
+			return String.format("<html><b>%s</b><br>%s (%3.2f%%), own %s</html>",
+								 model.getName(frame),
+								 format(total), all>0 ? total*100.0/all : 0.0, format(own));
+		}
+
+		private String format(long weight) {
+			if ( model.weight==FlameGraphModel.Weight.TOKENS ) {
+				return weight+" tokens";
+			}
+			return msFormatter.format(weight/(1000.0*1000.0))+" ms";
+		}
+
+		@Override
+		public Dimension getPreferredScrollableViewportSize() {
+			return getPreferredSize();
+		}
+
+		@Override
+		public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+			return FRAME_HEIGHT;
+		}
+
+		@Override
+		public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+			return orientation==SwingConstants.VERTICAL ? visibleRect.height : visibleRect.width;
+		}
+
+		@Override
+		public boolean getScrollableTracksViewportWidth() {
+			return true;
+		}
+
+		@Override
+		public boolean getScrollableTracksViewportHeight() {
+			// stay at the bottom of a tall viewport, like the flame graph's base
+			return getParent() instanceof JViewport && getParent().getHeight()>getPreferredSize().height;
+		}
+	}
+}
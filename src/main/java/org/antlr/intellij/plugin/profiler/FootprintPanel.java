@@ -0,0 +1,93 @@
+package org.antlr.intellij.plugin.profiler;
+
+import com.intellij.ui.components.JBLabel;
+import com.intellij.ui.components.JBScrollPane;
+import com.intellij.ui.table.JBTable;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Shows the last {@link ParserFootprint} computed for a grammar next to the
+ *  one before it so that grammar edits that inflate recognizer size or
+ *  startup time stand out.
+ */
+public class FootprintPanel extends JPanel {
+	private final JBLabel titleLabel = new JBLabel("Run 'Show Generated Parser Footprint' on a grammar");
+	private final FootprintTableModel model = new FootprintTableModel();
+
+	/** Previous footprint per grammar file path */
+	private final Map<String, ParserFootprint> lastFootprints = new HashMap<>();
+
+	public FootprintPanel() {
+		super(new BorderLayout());
+		add(titleLabel, BorderLayout.NORTH);
+		JBTable table = new JBTable(model);
+		table.getColumnModel().getColumn(0).setPreferredWidth(250);
+		add(new JBScrollPane(table), BorderLayout.CENTER);
+	}
+
+	public void setFootprint(String grammarPath, ParserFootprint footprint) {
+		ParserFootprint previous = lastFootprints.put(grammarPath, footprint);
+		titleLabel.setText("Generated recognizer footprint for "+footprint.grammarName);
+		model.setFootprint(footprint, previous);
+	}
+
+	static String format(long value, String unit) {
+		if ( unit.equals("ns") ) {
+			NumberFormat formatter = new DecimalFormat("#.###");
+			return formatter.format(value/1000000.0)+" ms";
+		}
+		return unit.isEmpty() ? String.valueOf(value) : value+" "+unit;
+	}
+
+	static class FootprintTableModel extends AbstractTableModel {
+		private static final String[] columnNames = {"Metric", "Value", "Previous", "Change"};
+
+		private ParserFootprint footprint;
+		private ParserFootprint previous;
+
+		void setFootprint(ParserFootprint footprint, ParserFootprint previous) {
+			this.footprint = footprint;
+			this.previous = previous;
+			fireTableDataChanged();
+		}
+
+		@Override
+		public String getColumnName(int column) {
+			return columnNames[column];
+		}
+
+		@Override
+		public int getColumnCount() {
+			return columnNames.length;
+		}
+
+		@Override
+		public int getRowCount() {
+			return footprint!=null ? footprint.metrics.size() : 0;
+		}
+
+		@Override
+		public Object getValueAt(int row, int col) {
+			ParserFootprint.Metric m = footprint.metrics.get(row);
+			ParserFootprint.Metric old = previous!=null ? previous.getMetric(m.name) : null;
+			switch (col) {
+				case 0 :
+					return m.name;
+				case 1 :
+					return format(m.value, m.unit);
+				case 2 :
+					return old!=null ? format(old.value, old.unit) : "";
+				case 3 :
+					if ( old==null || old.value==0 ) return "";
+					return String.format("%+3.1f%%", (m.value-old.value)*100.0/old.value);
+			}
+			return "";
+		}
+	}
+}
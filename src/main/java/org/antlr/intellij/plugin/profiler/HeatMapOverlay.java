@@ -0,0 +1,204 @@
+package org.antlr.intellij.plugin.profiler;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.LogicalPosition;
+import com.intellij.openapi.editor.markup.CustomHighlighterRenderer;
+import com.intellij.openapi.editor.markup.HighlighterLayer;
+import com.intellij.openapi.editor.markup.HighlighterTargetArea;
+import com.intellij.openapi.editor.markup.LineMarkerRenderer;
+import com.intellij.openapi.editor.markup.RangeHighlighter;
+import com.intellij.openapi.util.Key;
+import org.antlr.intellij.plugin.parsing.CompactTokenStore;
+import org.antlr.intellij.plugin.parsing.CompactTokenStream;
+import org.antlr.intellij.plugin.parsing.PredictionHeatMap;
+import org.antlr.intellij.plugin.preview.HighlighterRegistry;
+import org.antlr.v4.runtime.TokenStream;
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.*;
+
+/** The {@link PredictionHeatMap} of the last parse over the preview input:
+ *  a tint behind each token where predictions started, hotter the costlier,
+ *  and per line in the gutter. A single highlighter spans the document and
+ *  paints only the visible tokens, found by binary search on token offsets,
+ *  so the overlay costs the same on a 10k-line input as on a short one.
+ *
+ *  One instance per input editor, kept as its user data; EDT only.
+ */
+public class HeatMapOverlay implements CustomHighlighterRenderer, LineMarkerRenderer {
+	private static final Key<HeatMapOverlay> OVERLAY_KEY = Key.create("ANTLR_HEAT_MAP_OVERLAY");
+
+	public enum Mode {
+		OFF("Off", null),
+		LOOKAHEAD("Lookahead depth", PredictionHeatMap.Metric.LOOKAHEAD),
+		FULL_LL("Full-LL fallbacks", PredictionHeatMap.Metric.FULL_LL),
+		TIME("Prediction time", PredictionHeatMap.Metric.TIME);
+
+		private final String label;
+		final PredictionHeatMap.Metric metric;
+
+		Mode(String label, PredictionHeatMap.Metric metric) {
+			this.label = label;
+			this.metric = metric;
+		}
+
+		@Override
+		public String toString() {
+			return label;
+		}
+	}
+
+	private static final Color COOL = new Color(255, 220, 0);
+	private static final Color HOT = new Color(220, 0, 0);
+
+	private final Editor editor;
+	private RangeHighlighter highlighter;
+
+	private PredictionHeatMap heatMap;
+	private PredictionHeatMap.Metric metric;
+	private TokenStream tokens;
+	/** The tokens' compact store if they have one; saves a token object per lookup */
+	private CompactTokenStore store;
+	private double logMax;
+
+	private HeatMapOverlay(Editor editor) {
+		this.editor = editor;
+	}
+
+	public static HeatMapOverlay getInstance(Editor editor) {
+		HeatMapOverlay overlay = editor.getUserData(OVERLAY_KEY);
+		if ( overlay==null ) {
+			overlay = new HeatMapOverlay(editor);
+			editor.putUserData(OVERLAY_KEY, overlay);
+		}
+		return overlay;
+	}
+
+	/** Show heatMap of a parse of tokens the way mode says; hide if there is nothing to show */
+	public void show(PredictionHeatMap heatMap, TokenStream tokens, Mode mode) {
+		hide();
+		if ( heatMap==null || tokens==null || mode==null || mode.metric==null ) return;
+		int max = weight(mode.metric, heatMap.getMax(mode.metric));
+		if ( max==0 ) return;
+		this.heatMap = heatMap;
+		this.metric = mode.metric;
+		this.tokens = tokens;
+		this.store = tokens instanceof CompactTokenStream ? ((CompactTokenStream) tokens).getStore() : null;
+		this.logMax = Math.log1p(max);
+
+		highlighter = editor.getMarkupModel().addRangeHighlighter(0, editor.getDocument().getTextLength(),
+																	 HighlighterLayer.ADDITIONAL_SYNTAX, null,
+																	 HighlighterTargetArea.LINES_IN_RANGE);
+		highlighter.setGreedyToRight(true);
+		highlighter.setCustomRenderer(this);
+		highlighter.setLineMarkerRenderer(this);
+		HighlighterRegistry.getInstance(editor).add(HighlighterRegistry.Category.HEAT_MAP, highlighter);
+	}
+
+	public void hide() {
+		if ( highlighter!=null ) {
+			HighlighterRegistry.getInstance(editor).remove(HighlighterRegistry.Category.HEAT_MAP, highlighter);
+			highlighter = null;
+		}
+		heatMap = null;
+		tokens = null;
+		store = null;
+	}
+
+	/** Token backgrounds */
+	@Override
+	public void paint(@NotNull Editor editor, @NotNull RangeHighlighter highlighter, @NotNull Graphics g) {
+		if ( heatMap==null ) return;
+		Rectangle clip = g.getClipBounds();
+		if ( clip==null ) clip = editor.getScrollingModel().getVisibleArea();
+		int docLength = editor.getDocument().getTextLength();
+		int lineHeight = editor.getLineHeight();
+		int from = offsetAt(clip.y);
+		int to = offsetAt(clip.y+clip.height+lineHeight);
+		int n = Math.min(heatMap.size(), tokens.size());
+		for (int i = firstTokenEndingAtOrAfter(from, n); i<n; i++) {
+			int start = startIndex(i);
+			if ( start>to || start>=docLength ) break;
+			float heat = heat(i);
+			if ( heat==0 ) continue;
+			int stop = Math.min(stopIndex(i)+1, docLength);
+			Point p1 = editor.offsetToXY(start);
+			Point p2 = editor.offsetToXY(stop);
+			int width = p2.y==p1.y ? p2.x-p1.x : clip.x+clip.width-p1.x; // first line of a multi-line token
+			g.setColor(color(heat, 40+(int) (heat*110)));
+			g.fillRect(p1.x, p1.y, Math.max(2, width), lineHeight);
+		}
+	}
+
+	/** Hottest token of each line, in the gutter */
+	@Override
+	public void paint(Editor editor, Graphics g, Rectangle r) {
+		if ( heatMap==null ) return;
+		Rectangle clip = g.getClipBounds();
+		int top = clip!=null ? Math.max(r.y, clip.y) : r.y;
+		int bottom = clip!=null ? Math.min(r.y+r.height, clip.y+clip.height) : r.y+r.height;
+		if ( top>=bottom ) return;
+		Document doc = editor.getDocument();
+		int lineHeight = editor.getLineHeight();
+		int firstLine = editor.xyToLogicalPosition(new Point(0, top)).line;
+		int lastLine = Math.min(editor.xyToLogicalPosition(new Point(0, bottom)).line, doc.getLineCount()-1);
+		int n = Math.min(heatMap.size(), tokens.size());
+		for (int line = firstLine; line<=lastLine; line++) {
+			int lineStart = doc.getLineStartOffset(line);
+			int lineEnd = doc.getLineEndOffset(line);
+			float heat = 0;
+			for (int i = firstTokenEndingAtOrAfter(lineStart, n); i<n && startIndex(i)<=lineEnd; i++) {
+				if ( startIndex(i)>=lineStart ) heat = Math.max(heat, heat(i));
+			}
+			if ( heat==0 ) continue;
+			int y = editor.logicalPositionToXY(new LogicalPosition(line, 0)).y;
+			g.setColor(color(heat, 255));
+			g.fillRect(r.x, y, r.width, lineHeight);
+		}
+	}
+
+	/** 0..1 on a log scale, as a few very costly predictions would wash out the rest */
+	private float heat(int tokenIndex) {
+		int w = weight(metric, heatMap.get(metric, tokenIndex));
+		return w>0 ? (float) (Math.log1p(w)/logMax) : 0;
+	}
+
+	/** One token of lookahead is what every decision costs; don't show it */
+	private static int weight(PredictionHeatMap.Metric metric, int value) {
+		return metric==PredictionHeatMap.Metric.LOOKAHEAD ? Math.max(0, value-1) : value;
+	}
+
+	private static Color color(float heat, int alpha) {
+		return new Color(COOL.getRed()+(int) ((HOT.getRed()-COOL.getRed())*heat),
+						 COOL.getGreen()+(int) ((HOT.getGreen()-COOL.getGreen())*heat),
+						 COOL.getBlue()+(int) ((HOT.getBlue()-COOL.getBlue())*heat),
+						 alpha);
+	}
+
+	private int startIndex(int i) {
+		return store!=null ? store.getStartIndex(i) : tokens.get(i).getStartIndex();
+	}
+
+	private int stopIndex(int i) {
+		return store!=null ? store.getStopIndex(i) : tokens.get(i).getStopIndex();
+	}
+
+	/** Index of the first of the first n tokens that doesn't end before offset */
+	private int firstTokenEndingAtOrAfter(int offset, int n) {
+		int lo = 0;
+		int hi = n;
+		while ( lo<hi ) {
+			int mid = (lo+hi) >>> 1;
+			if ( startIndex(mid)<offset ) lo = mid+1;
+			else hi = mid;
+		}
+		// the token before may reach into offset
+		return lo>0 && stopIndex(lo-1)>=offset ? lo-1 : lo;
+	}
+
+	private int offsetAt(int y) {
+		Point p = new Point(0, Math.max(0, y));
+		return editor.logicalPositionToOffset(editor.xyToLogicalPosition(p));
+	}
+}
@@ -0,0 +1,141 @@
+package org.antlr.intellij.plugin.profiler;
+
+import com.intellij.openapi.ui.Splitter;
+import com.intellij.ui.components.JBLabel;
+import com.intellij.ui.components.JBScrollPane;
+import com.intellij.ui.table.JBTable;
+import org.antlr.intellij.plugin.parsing.LexerProfile;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableModel;
+import javax.swing.table.TableRowSorter;
+import java.awt.*;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.Collections;
+import java.util.function.Consumer;
+
+/** Shows the {@link LexerProfile} of the last preview parse: lexer rules
+ *  slowest first above, modes below.
+ */
+public class LexerProfilePanel extends JPanel {
+	private final JBLabel summaryLabel = new JBLabel();
+	private final JBTable ruleTable = new JBTable();
+	private final JBTable modeTable = new JBTable();
+
+	public LexerProfilePanel(Consumer<String> selectRule) {
+		super(new BorderLayout());
+		add(summaryLabel, BorderLayout.NORTH);
+		Splitter splitter = new Splitter(true, 0.7f);
+		splitter.setFirstComponent(new JBScrollPane(ruleTable));
+		splitter.setSecondComponent(new JBScrollPane(modeTable));
+		add(splitter, BorderLayout.CENTER);
+
+		ruleTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		ruleTable.getSelectionModel().addListSelectionListener(e -> {
+			int row = ruleTable.getSelectedRow();
+			if ( e.getValueIsAdjusting() || row==-1 ) return;
+			if ( ruleTable.getModel() instanceof LexerProfilerTableDataModel ) {
+				LexerProfilerTableDataModel model = (LexerProfilerTableDataModel) ruleTable.getModel();
+				selectRule.accept(model.ruleNames[ruleTable.convertRowIndexToModel(row)]);
+			}
+		});
+		setProfile(null, null, null, 0);
+	}
+
+	/** Show profile of a parse that took parseTime ns, lexing included; null to clear */
+	public void setProfile(LexerProfile profile, String[] ruleNames, String[] modeNames, long parseTime) {
+		if ( profile==null ) {
+			summaryLabel.setText("No lexer profile");
+			ruleTable.setModel(new DefaultTableModel());
+			modeTable.setModel(new DefaultTableModel());
+			return;
+		}
+		NumberFormat formatter = new DecimalFormat("#.###");
+		long lexTime = profile.getTotalTime();
+		int dfaStates = 0;
+		for (int m = 0; m<profile.getNumberOfModes(); m++) {
+			dfaStates += profile.getDFAStates(m);
+		}
+		summaryLabel.setText(String.format(
+			"Lexing: %s ms = %3.2f%% of parse time, %d matches, %d DFA states",
+			formatter.format(lexTime/(1000.0*1000.0)), parseTime>0 ? lexTime*100.0/parseTime : 0.0,
+			profile.getTotalMatches(), dfaStates));
+
+		LexerProfilerTableDataModel rules = new LexerProfilerTableDataModel(ruleNames, profile);
+		ruleTable.setModel(rules);
+		TableRowSorter<AbstractTableModel> sorter = new TableRowSorter<AbstractTableModel>(rules);
+		sorter.setSortKeys(Collections.singletonList(
+			new RowSorter.SortKey(LexerProfilerTableDataModel.TIME_COLUMN, SortOrder.DESCENDING)));
+		ruleTable.setRowSorter(sorter);
+
+		ModeTableModel modes = new ModeTableModel(profile, modeNames);
+		modeTable.setModel(modes);
+		modeTable.setRowSorter(new TableRowSorter<AbstractTableModel>(modes));
+	}
+
+	/** One row per lexer mode */
+	static class ModeTableModel extends AbstractTableModel {
+		private static final String[] columnNames = {
+			"Mode", "Tokens", "Time", "Chars", "DFA hits", "ATN steps", "DFA hit %", "DFA states", "Errors"
+		};
+		private static final Class<?>[] columnClasses = {
+			String.class, Long.class, Double.class, Long.class, Long.class, Long.class, Double.class, Integer.class, Long.class
+		};
+
+		final LexerProfile profile;
+		final String[] modeNames;
+
+		ModeTableModel(LexerProfile profile, String[] modeNames) {
+			this.profile = profile;
+			this.modeNames = modeNames;
+		}
+
+		@Override
+		public String getColumnName(int column) {
+			return columnNames[column];
+		}
+
+		@Override
+		public Class<?> getColumnClass(int columnIndex) {
+			return columnClasses[columnIndex];
+		}
+
+		@Override
+		public int getColumnCount() {
+			return columnNames.length;
+		}
+
+		@Override
+		public int getRowCount() {
+			return profile.getNumberOfModes();
+		}
+
+		@Override
+		public Object getValueAt(int row, int col) {
+			int mode = row;
+			switch (col) {
+				case 0 :
+					return mode<modeNames.length ? modeNames[mode] : String.valueOf(mode);
+				case 1 :
+					return profile.getModeMatches(mode);
+				case 2 :
+					return Math.round(profile.getModeTime(mode)/1000.0)/1000.0;
+				case 3 :
+					return profile.getModeChars(mode);
+				case 4 :
+					return profile.getModeDFAHits(mode);
+				case 5 :
+					return profile.getModeATNSteps(mode);
+				case 6 :
+					return LexerProfilerTableDataModel.hitRate(profile.getModeDFAHits(mode), profile.getModeATNSteps(mode));
+				case 7 :
+					return profile.getDFAStates(mode);
+				case 8 :
+					return profile.getModeErrors(mode);
+			}
+			return "";
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package org.antlr.intellij.plugin.profiler;
+
+import org.antlr.intellij.plugin.parsing.LexerProfile;
+
+/** One row per lexer rule, in rule index order */
+public class LexerProfilerTableDataModel extends ProfilerTableDataModel {
+	public static final int TIME_COLUMN = 2;
+
+	public static final String[] columnNames = {
+		"Rule", "Tokens", "Time", "Time %", "Chars", "DFA hits", "ATN steps", "DFA hit %"
+	};
+
+	public static final String[] columnToolTips = {
+		"Lexer rule",
+		"# matches won by the rule, skipped tokens and 'more' pieces included",
+		"Time (ms) matching the rule's tokens, lookahead past their end included",
+		"Time as a percentage of the time in all lexer rules",
+		"Characters matched by the rule",
+		"# lookahead characters answered by the lexer DFA",
+		"# lookahead characters that needed ATN simulation, adding to the DFA",
+		"DFA hits as a percentage of all lookahead characters"
+	};
+
+	private static final Class<?>[] columnClasses = {
+		String.class, Long.class, Double.class, Double.class, Long.class, Long.class, Long.class, Double.class
+	};
+
+	public final String[] ruleNames;
+	public final LexerProfile profile;
+	private final long totalTime;
+
+	public LexerProfilerTableDataModel(String[] ruleNames, LexerProfile profile) {
+		this.ruleNames = ruleNames;
+		this.profile = profile;
+		this.totalTime = profile.getTotalTime();
+	}
+
+	@Override
+	public String[] getColumnNames() {
+		return columnNames;
+	}
+
+	@Override
+	public String[] getColumnToolTips() {
+		return columnToolTips;
+	}
+
+	@Override
+	public Class<?> getColumnClass(int columnIndex) {
+		return columnClasses[columnIndex];
+	}
+
+	@Override
+	public int getRowCount() {
+		return profile.getNumberOfRules();
+	}
+
+	@Override
+	public Object getValueAt(int row, int col) {
+		int ruleIndex = row;
+		switch (col) {
+			case 0:
+				return ruleNames[ruleIndex];
+			case 1:
+				return profile.getMatches(ruleIndex);
+			case 2:
+				return Math.round(profile.getTime(ruleIndex)/1000.0)/1000.0;
+			case 3:
+				return totalTime>0 ? Math.round(profile.getTime(ruleIndex)*10000.0/totalTime)/100.0 : 0.0;
+			case 4:
+				return profile.getChars(ruleIndex);
+			case 5:
+				return profile.getDFAHits(ruleIndex);
+			case 6:
+				return profile.getATNSteps(ruleIndex);
+			case 7:
+				return hitRate(profile.getDFAHits(ruleIndex), profile.getATNSteps(ruleIndex));
+		}
+		return "n/a";
+	}
+
+	static double hitRate(long hits, long steps) {
+		long all = hits+steps;
+		return all>0 ? Math.round(hits*10000.0/all)/100.0 : 0.0;
+	}
+}
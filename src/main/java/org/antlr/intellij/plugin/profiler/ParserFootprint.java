@@ -0,0 +1,177 @@
+package org.antlr.intellij.plugin.profiler;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.LexerInterpreter;
+import org.antlr.v4.runtime.ParserInterpreter;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.atn.ATNDeserializer;
+import org.antlr.v4.runtime.atn.ATNSerializer;
+import org.antlr.v4.tool.Grammar;
+import org.antlr.v4.tool.LexerGrammar;
+import org.antlr.v4.tool.Rule;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/** Static size and startup cost of the recognizers generated for a grammar.
+ *  Generated recognizers embed the serialized ATN and deserialize it when the
+ *  class is loaded, then pay again on the first parse while the DFA cache is
+ *  still empty. We measure both in-process from the same serialized form the
+ *  code generator emits so the numbers track what a service sees at startup.
+ */
+public class ParserFootprint {
+	/** How many extra deserializations to run after the cold one; we report the fastest. */
+	public static final int DESERIALIZATION_REPEATS = 5;
+
+	public static class Metric {
+		public final String name;
+		public final long value;
+		public final String unit;
+
+		public Metric(String name, long value, String unit) {
+			this.name = name;
+			this.value = value;
+			this.unit = unit;
+		}
+	}
+
+	public final String grammarName;
+	public final List<Metric> metrics = new ArrayList<>();
+
+	public ParserFootprint(String grammarName) {
+		this.grammarName = grammarName;
+	}
+
+	public void add(String name, long value, String unit) {
+		metrics.add(new Metric(name, value, unit));
+	}
+
+	public Metric getMetric(String name) {
+		for (Metric m : metrics) {
+			if ( m.name.equals(name) ) return m;
+		}
+		return null;
+	}
+
+	/** Compute the footprint of the lexer and (if any) parser of a grammar.
+	 *  If inputText and startRuleName are non-null, also time a cold and a
+	 *  warm parse of that input. Generated file sizes come from files in
+	 *  outputDir whose name starts with a recognizer name; outputDir can be null.
+	 */
+	public static ParserFootprint compute(Grammar g, LexerGrammar lg,
+										  String inputText, String startRuleName,
+										  File outputDir)
+	{
+		Grammar mainGrammar = g!=null ? g : lg;
+		ParserFootprint footprint = new ParserFootprint(mainGrammar.name);
+		if ( lg!=null ) {
+			addATNMetrics(footprint, "Lexer", lg, lg.getATN());
+		}
+		if ( g!=null ) {
+			addATNMetrics(footprint, "Parser", g, g.getATN());
+		}
+
+		if ( outputDir!=null ) {
+			// a parser grammar named Foo would otherwise pick up FooLexer's files twice
+			Set<File> generated = new LinkedHashSet<>();
+			if ( lg!=null ) generated.addAll(getGeneratedFiles(outputDir, lg.getRecognizerName()));
+			if ( g!=null ) generated.addAll(getGeneratedFiles(outputDir, g.getRecognizerName()));
+			long total = 0;
+			for (File f : generated) {
+				footprint.add("File "+f.getName(), f.length(), "bytes");
+				total += f.length();
+			}
+			footprint.add("Generated files", generated.size(), "");
+			footprint.add("Generated files total", total, "bytes");
+		}
+
+		if ( inputText!=null && lg!=null ) {
+			addWarmupMetrics(footprint, g, lg, inputText, startRuleName);
+		}
+		return footprint;
+	}
+
+	private static void addATNMetrics(ParserFootprint footprint, String kind, Grammar g, ATN atn) {
+		char[] serialized = ATNSerializer.getSerializedAsChars(atn);
+		footprint.add(kind+" serialized ATN", serialized.length, "chars");
+		footprint.add(kind+" ATN states", atn.states.size(), "");
+		footprint.add(kind+" decisions", atn.getNumberOfDecisions(), "");
+		int numRules = 0;
+		for (Rule r : g.rules.values()) {
+			if ( !r.isFragment() ) numRules++;
+		}
+		footprint.add(kind+" rules", numRules, "");
+
+		long start = System.nanoTime();
+		new ATNDeserializer().deserialize(serialized);
+		footprint.add(kind+" ATN deserialization (cold)", System.nanoTime()-start, "ns");
+
+		long fastest = Long.MAX_VALUE;
+		for (int i = 0; i<DESERIALIZATION_REPEATS; i++) {
+			start = System.nanoTime();
+			new ATNDeserializer().deserialize(serialized);
+			fastest = Math.min(fastest, System.nanoTime()-start);
+		}
+		footprint.add(kind+" ATN deserialization (warm)", fastest, "ns");
+	}
+
+	/** Parse the input twice with the same interpreters: the first run
+	 *  starts from an empty DFA cache as a freshly loaded recognizer would,
+	 *  the second reuses the DFA built up during the first. Tokens are lexed
+	 *  before either parse, so the two differ only by the DFA warm-up.
+	 */
+	private static void addWarmupMetrics(ParserFootprint footprint,
+										 Grammar g, LexerGrammar lg,
+										 String inputText, String startRuleName)
+	{
+		LexerInterpreter lexEngine = lg.createLexerInterpreter(CharStreams.fromString(inputText));
+		lexEngine.removeErrorListeners();
+		long start = System.nanoTime();
+		List<? extends Token> tokens = lexEngine.getAllTokens();
+		footprint.add("First lex", System.nanoTime()-start, "ns");
+
+		lexEngine.setInputStream(CharStreams.fromString(inputText));
+		start = System.nanoTime();
+		lexEngine.getAllTokens();
+		footprint.add("Warm lex", System.nanoTime()-start, "ns");
+		footprint.add("Input tokens", tokens.size(), "");
+
+		if ( g==null || startRuleName==null ) return;
+		Rule startRule = g.getRule(startRuleName);
+		if ( startRule==null ) return;
+
+		lexEngine.setInputStream(CharStreams.fromString(inputText));
+		CommonTokenStream tokenStream = new CommonTokenStream(lexEngine);
+		tokenStream.fill(); // lex up front so both parses time parsing only, lexing is timed above
+		ParserInterpreter parser = g.createParserInterpreter(tokenStream);
+		parser.removeErrorListeners();
+		start = System.nanoTime();
+		parser.parse(startRule.index);
+		footprint.add("First parse", System.nanoTime()-start, "ns");
+
+		parser.reset(); // rewinds the token stream but keeps the DFA
+		start = System.nanoTime();
+		parser.parse(startRule.index);
+		footprint.add("Warm parse", System.nanoTime()-start, "ns");
+	}
+
+	/** Files generated for a recognizer are named after it: FooParser.java,
+	 *  FooParser.interp, FooParserListener.java, FooParser.tokens, ...
+	 */
+	public static List<File> getGeneratedFiles(File outputDir, String recognizerName) {
+		File[] files = outputDir.listFiles((dir, name) -> name.startsWith(recognizerName));
+		if ( files==null ) return Collections.emptyList();
+		List<File> result = new ArrayList<>();
+		for (File f : files) {
+			if ( f.isFile() ) result.add(f);
+		}
+		Collections.sort(result);
+		return result;
+	}
+}
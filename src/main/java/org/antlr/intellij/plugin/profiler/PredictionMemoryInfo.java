@@ -0,0 +1,95 @@
+package org.antlr.intellij.plugin.profiler;
+
+import org.antlr.intellij.plugin.parsing.MemoryProfilingATNSimulator;
+import org.antlr.v4.runtime.Parser;
+import org.antlr.v4.runtime.atn.ParserATNSimulator;
+import org.antlr.v4.runtime.dfa.DFA;
+import org.antlr.v4.runtime.dfa.DFAState;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** What prediction left in memory after a parse, per decision: the DFA
+ *  states and edges it created and the configs those states keep, plus the
+ *  configuration sets built on the way (see {@link MemoryProfilingATNSimulator}).
+ *  Counted once after the parse, as walking the DFAs isn't free. Each DFA's
+ *  states are copied under the lock {@link ParserATNSimulator} adds states
+ *  with, so this is safe while someone else still predicts with the DFAs.
+ */
+public class PredictionMemoryInfo {
+	public final int[] dfaStates;
+	public final long[] dfaEdges;
+	public final long[] dfaConfigs;
+	public final int[] peakConfigSetSize;
+	public final long[] configsComputed;
+	/** Prediction contexts in the simulator's shared cache */
+	public final int contextCacheSize;
+
+	private PredictionMemoryInfo(MemoryProfilingATNSimulator interp) {
+		int n = interp.decisionToDFA.length;
+		dfaStates = new int[n];
+		dfaEdges = new long[n];
+		dfaConfigs = new long[n];
+		peakConfigSetSize = new int[n];
+		configsComputed = new long[n];
+		for (int d = 0; d<n; d++) {
+			DFA dfa = interp.decisionToDFA[d];
+			List<DFAState> states;
+			synchronized (dfa.states) {
+				states = new ArrayList<>(dfa.states.keySet());
+			}
+			dfaStates[d] = states.size();
+			for (DFAState s : states) {
+				if ( s.edges!=null ) {
+					for (DFAState target : s.edges) {
+						if ( target!=null ) dfaEdges[d]++;
+					}
+				}
+				if ( s.configs!=null ) {
+					dfaConfigs[d] += s.configs.size();
+				}
+			}
+			peakConfigSetSize[d] = interp.getPeakConfigSetSize(d);
+			configsComputed[d] = interp.getConfigsComputed(d);
+		}
+		contextCacheSize = interp.getSharedContextCache()!=null ? interp.getSharedContextCache().size() : 0;
+	}
+
+	/** Null unless parser predicted with a {@link MemoryProfilingATNSimulator} */
+	@Nullable
+	public static PredictionMemoryInfo of(Parser parser) {
+		ParserATNSimulator interp = parser.getInterpreter();
+		return interp instanceof MemoryProfilingATNSimulator ? new PredictionMemoryInfo((MemoryProfilingATNSimulator) interp) : null;
+	}
+
+	public long getTotalDFAStates() {
+		long n = 0;
+		for (int s : dfaStates) n += s;
+		return n;
+	}
+
+	public long getTotalDFAEdges() {
+		return sum(dfaEdges);
+	}
+
+	public long getTotalDFAConfigs() {
+		return sum(dfaConfigs);
+	}
+
+	public long getTotalConfigsComputed() {
+		return sum(configsComputed);
+	}
+
+	public int getPeakConfigSetSize() {
+		int max = 0;
+		for (int s : peakConfigSetSize) max = Math.max(max, s);
+		return max;
+	}
+
+	private static long sum(long[] a) {
+		long n = 0;
+		for (long v : a) n += v;
+		return n;
+	}
+}
@@ -0,0 +1,80 @@
+package org.antlr.intellij.plugin.profiler;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import org.antlr.intellij.plugin.Utils;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/** The baseline profile pinned for each grammar of a project, one JSON file
+ *  per grammar file path under the IDE's system directory, so baselines
+ *  survive restarts without landing in the project.
+ */
+public class ProfileBaselineStore {
+	public static final Logger LOG = Logger.getInstance("ANTLR ProfileBaselineStore");
+
+	private final File dir;
+
+	public ProfileBaselineStore(Project project) {
+		this(new File(PathManager.getSystemPath(), "antlr4-profiles"+File.separator+project.getLocationHash()));
+	}
+
+	public ProfileBaselineStore(File dir) {
+		this.dir = dir;
+	}
+
+	@Nullable
+	public ProfileSnapshot load(String grammarFileName) {
+		File f = getFile(grammarFileName);
+		if ( !f.isFile() ) return null;
+		try {
+			return read(f);
+		}
+		catch (IOException ioe) {
+			LOG.warn("can't read baseline profile "+f, ioe);
+			return null;
+		}
+	}
+
+	public void pin(String grammarFileName, ProfileSnapshot baseline) throws IOException {
+		Files.createDirectories(dir.toPath());
+		File f = getFile(grammarFileName);
+		// a crash must never leave half a baseline
+		Utils.writeAtomically(f, tmp -> write(tmp, baseline));
+	}
+
+	public void unpin(String grammarFileName) {
+		FileUtil.delete(getFile(grammarFileName));
+	}
+
+	public static ProfileSnapshot read(File f) throws IOException {
+		try (Reader in = new BufferedReader(new InputStreamReader(new FileInputStream(f), StandardCharsets.UTF_8))) {
+			return ProfileSnapshot.read(in);
+		}
+	}
+
+	public static void write(File f, ProfileSnapshot snapshot) throws IOException {
+		try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f), StandardCharsets.UTF_8))) {
+			snapshot.write(out);
+		}
+	}
+
+	private File getFile(String grammarFileName) {
+		return new File(dir, FileUtil.sanitizeFileName(new File(grammarFileName).getName())+"-"+
+							 Integer.toHexString(grammarFileName.hashCode())+".json");
+	}
+}
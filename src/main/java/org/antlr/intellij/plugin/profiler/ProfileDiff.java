@@ -0,0 +1,111 @@
+package org.antlr.intellij.plugin.profiler;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/** Compare the decisions of a profiling run with those of a baseline run,
+ *  matched by {@link ProfileSnapshot.Decision#key}. Inputs of the two runs
+ *  may differ, so lookahead and time are compared per invocation. A decision
+ *  regresses when it
+ *
+ *  - falls back to full-context (LL) prediction where it never did before,
+ *  - now has ambiguities,
+ *  - examines {@link #LOOKAHEAD_THRESHOLD} more lookahead per invocation, or
+ *  - takes {@link #TIME_THRESHOLD} longer per invocation (time is noisy,
+ *    hence the bigger margin).
+ */
+public class ProfileDiff {
+	public static final double LOOKAHEAD_THRESHOLD = 0.20;
+	public static final double TIME_THRESHOLD = 0.50;
+	/** Ignore time changes below this many ns per invocation */
+	public static final double MIN_TIME_CHANGE = 1000;
+
+	public static class Row {
+		public final String key;
+		/** Null for a decision that's new */
+		public final ProfileSnapshot.Decision baseline;
+		/** Null for a decision that's gone */
+		public final ProfileSnapshot.Decision current;
+		public final List<String> regressions = new ArrayList<>();
+
+		Row(String key, ProfileSnapshot.Decision baseline, ProfileSnapshot.Decision current) {
+			this.key = key;
+			this.baseline = baseline;
+			this.current = current;
+		}
+
+		public boolean isRegression() {
+			return !regressions.isEmpty();
+		}
+
+		public boolean isFullLLRegression() {
+			return baseline!=null && current!=null && baseline.LL_Fallback==0 && current.LL_Fallback>0;
+		}
+	}
+
+	public final ProfileSnapshot baseline;
+	public final ProfileSnapshot current;
+	/** Regressions first, then by key */
+	public final List<Row> rows = new ArrayList<>();
+
+	public ProfileDiff(ProfileSnapshot baseline, ProfileSnapshot current) {
+		this.baseline = baseline;
+		this.current = current;
+		Set<String> keys = new LinkedHashSet<>();
+		for (ProfileSnapshot.Decision d : current.decisions) keys.add(d.key);
+		for (ProfileSnapshot.Decision d : baseline.decisions) keys.add(d.key);
+		for (String key : keys) {
+			Row row = new Row(key, baseline.getDecision(key), current.getDecision(key));
+			compare(row);
+			rows.add(row);
+		}
+		rows.sort(Comparator.comparing((Row r) -> !r.isRegression()).thenComparing(r -> r.key));
+	}
+
+	public int getNumberOfRegressions() {
+		int n = 0;
+		for (Row row : rows) {
+			if ( row.isRegression() ) n++;
+		}
+		return n;
+	}
+
+	public int getNumberOfFullLLRegressions() {
+		int n = 0;
+		for (Row row : rows) {
+			if ( row.isFullLLRegression() ) n++;
+		}
+		return n;
+	}
+
+	private static void compare(Row row) {
+		ProfileSnapshot.Decision b = row.baseline;
+		ProfileSnapshot.Decision c = row.current;
+		if ( b==null || c==null || c.invocations==0 ) return;
+		if ( row.isFullLLRegression() ) {
+			row.regressions.add("now needs full LL");
+		}
+		if ( b.ambiguities==0 && c.ambiguities>0 ) {
+			row.regressions.add("now ambiguous");
+		}
+		double bk = b.getLookaheadPerInvocation();
+		double ck = c.getLookaheadPerInvocation();
+		if ( b.invocations>0 && ck>bk*(1+LOOKAHEAD_THRESHOLD) ) {
+			row.regressions.add(String.format("lookahead %+.0f%%", percentChange(bk, ck)));
+		}
+		double bt = b.getTimePerInvocation();
+		double ct = c.getTimePerInvocation();
+		if ( b.invocations>0 && ct>bt*(1+TIME_THRESHOLD) && ct-bt>=MIN_TIME_CHANGE ) {
+			row.regressions.add(String.format("time %+.0f%%", percentChange(bt, ct)));
+		}
+	}
+
+	/** Infinity when from is 0 */
+	public static double percentChange(double from, double to) {
+		if ( from==0 ) return to==0 ? 0 : Double.POSITIVE_INFINITY;
+		return (to-from)*100.0/from;
+	}
+}
@@ -0,0 +1,86 @@
+package org.antlr.intellij.plugin.profiler;
+
+/** Rows of a {@link ProfileDiff}, regressions first */
+public class ProfileDiffTableDataModel extends ProfilerTableDataModel {
+	public static final String[] columnNames = {
+		"Decision", "Key", "Baseline k", "k", "Baseline full LL", "Full LL",
+		"Baseline time", "Time", "Regression"
+	};
+
+	public static final String[] columnToolTips = {
+		"Decision number in the current grammar",
+		"Rule and position of the decision in the rule, used to match decisions across grammar changes",
+		"Lookahead symbols examined per invocation in the baseline",
+		"Lookahead symbols examined per invocation now",
+		"# times SLL prediction failed over to full-context (LL) in the baseline",
+		"# times SLL prediction failed over to full-context (LL) now",
+		"Prediction time (µs) per invocation in the baseline",
+		"Prediction time (µs) per invocation now",
+		"Why the decision counts as a regression"
+	};
+
+	private static final Class<?>[] columnClasses = {
+		Integer.class, String.class, Double.class, Double.class, Long.class, Long.class,
+		Double.class, Double.class, String.class
+	};
+
+	public final ProfileDiff diff;
+
+	public ProfileDiffTableDataModel(ProfileDiff diff) {
+		this.diff = diff;
+	}
+
+	@Override
+	public String[] getColumnNames() {
+		return columnNames;
+	}
+
+	@Override
+	public String[] getColumnToolTips() {
+		return columnToolTips;
+	}
+
+	@Override
+	public Class<?> getColumnClass(int columnIndex) {
+		return columnClasses[columnIndex];
+	}
+
+	@Override
+	public int getRowCount() {
+		return diff.rows.size();
+	}
+
+	@Override
+	public Object getValueAt(int row, int col) {
+		ProfileDiff.Row r = diff.rows.get(row);
+		ProfileSnapshot.Decision b = r.baseline;
+		ProfileSnapshot.Decision c = r.current;
+		switch (col) {
+			case 0:
+				return c!=null ? c.decision : null;
+			case 1:
+				return r.key;
+			case 2:
+				return b!=null ? round(b.getLookaheadPerInvocation()) : null;
+			case 3:
+				return c!=null ? round(c.getLookaheadPerInvocation()) : null;
+			case 4:
+				return b!=null ? b.LL_Fallback : null;
+			case 5:
+				return c!=null ? c.LL_Fallback : null;
+			case 6:
+				return b!=null ? round(b.getTimePerInvocation()/1000.0) : null;
+			case 7:
+				return c!=null ? round(c.getTimePerInvocation()/1000.0) : null;
+			case 8:
+				if ( b==null ) return "new";
+				if ( c==null ) return "removed";
+				return String.join(", ", r.regressions);
+		}
+		return "n/a";
+	}
+
+	private static double round(double v) {
+		return Math.round(v*1000)/1000.0;
+	}
+}
@@ -0,0 +1,310 @@
+package org.antlr.intellij.plugin.profiler;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import org.antlr.v4.Tool;
+import org.antlr.v4.runtime.Parser;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.atn.DecisionInfo;
+import org.antlr.v4.runtime.atn.DecisionState;
+import org.antlr.v4.tool.Grammar;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/** The decision stats of one profiling run, preview or corpus, with what
+ *  was parsed, so that runs can be saved as JSON and compared after the
+ *  grammar changes; see {@link ProfileDiff}.
+ *
+ *  Decision numbers shift when rules are added or edited, so decisions are
+ *  also identified by {@link Decision#key}, the rule name and the position
+ *  of the decision within the rule.
+ */
+public class ProfileSnapshot {
+	/** Bump when fields are removed or change meaning; readers skip unknown fields */
+	public static final int FORMAT_VERSION = 1;
+
+	public static class Decision {
+		/** rule/n for the n-th decision in rule, counting from 0 */
+		public String key;
+		public int decision;
+		public String rule;
+		public long invocations;
+		/** ns */
+		public long timeInPrediction;
+		public long SLL_TotalLook;
+		public long SLL_MaxLook;
+		public long LL_TotalLook;
+		public long LL_MaxLook;
+		public long LL_Fallback;
+		public long SLL_ATNTransitions;
+		public long SLL_DFATransitions;
+		public long LL_ATNTransitions;
+		public long LL_DFATransitions;
+		public long ambiguities;
+		public long contextSensitivities;
+		public long predicateEvals;
+		public long errors;
+
+		/** SLL and LL lookahead symbols examined per invocation */
+		public double getLookaheadPerInvocation() {
+			return invocations>0 ? (SLL_TotalLook+LL_TotalLook)/(double) invocations : 0;
+		}
+
+		/** ns per invocation */
+		public double getTimePerInvocation() {
+			return invocations>0 ? timeInPrediction/(double) invocations : 0;
+		}
+	}
+
+	public int formatVersion = FORMAT_VERSION;
+	public String antlrVersion = Tool.VERSION;
+	/** ms since the epoch */
+	public long timestamp = System.currentTimeMillis();
+	public String grammarName;
+	public String grammarFile;
+	public String startRule;
+	/** "preview" or "corpus" */
+	public String inputKind;
+	public int inputFiles;
+	public long inputChars;
+	public long inputTokens;
+	public long syntaxErrors;
+	/** ns, summed over files for a corpus */
+	public long parseTime;
+	public final List<Decision> decisions = new ArrayList<>();
+
+	/** The grammar the decision numbers refer to; not saved */
+	public Grammar g;
+
+	public static ProfileSnapshot fromPreview(Grammar g, String startRule, Parser parser, long parseTime) {
+		ProfileSnapshot s = new ProfileSnapshot(g, startRule);
+		s.inputKind = "preview";
+		s.inputFiles = 1;
+		TokenStream tokens = parser.getInputStream();
+		s.inputTokens = tokens.size();
+		s.inputChars = tokens.getTokenSource().getInputStream()!=null ? tokens.getTokenSource().getInputStream().size() : 0;
+		s.syntaxErrors = parser.getNumberOfSyntaxErrors();
+		s.parseTime = parseTime;
+		DecisionInfo[] infos = parser.getParseInfo().getDecisionInfo();
+		String[] keys = getDecisionKeys(g);
+		for (int d = 0; d<infos.length; d++) {
+			DecisionInfo info = infos[d];
+			s.addDecision(keys[d], info, info.ambiguities.size(), info.contextSensitivities.size(),
+						  info.predicateEvals.size(), info.errors.size());
+		}
+		return s;
+	}
+
+	public static ProfileSnapshot fromCorpus(CorpusProfile profile) {
+		ProfileSnapshot s = new ProfileSnapshot(profile.g, profile.startRuleName);
+		s.inputKind = "corpus";
+		s.inputFiles = profile.files.size();
+		s.inputTokens = profile.getTotalTokens();
+		s.inputChars = profile.getTotalChars();
+		s.syntaxErrors = profile.getTotalSyntaxErrors();
+		s.parseTime = profile.getTotalTime();
+		String[] keys = getDecisionKeys(profile.g);
+		for (int d = 0; d<profile.decisions.length; d++) {
+			s.addDecision(keys[d], profile.decisions[d], profile.ambiguities[d], profile.contextSensitivities[d],
+						  profile.predicateEvals[d], profile.predictionErrors[d]);
+		}
+		return s;
+	}
+
+	private ProfileSnapshot() {
+	}
+
+	private ProfileSnapshot(Grammar g, String startRule) {
+		this.g = g;
+		this.grammarName = g.name;
+		this.grammarFile = g.fileName;
+		this.startRule = startRule;
+	}
+
+	/** See {@link Decision#key} */
+	public static String[] getDecisionKeys(Grammar g) {
+		int n = g.atn.getNumberOfDecisions();
+		String[] keys = new String[n];
+		int[] decisionsInRule = new int[g.rules.size()];
+		for (int d = 0; d<n; d++) {
+			DecisionState state = g.atn.getDecisionState(d);
+			keys[d] = g.getRule(state.ruleIndex).name+"/"+decisionsInRule[state.ruleIndex]++;
+		}
+		return keys;
+	}
+
+	private void addDecision(String key, DecisionInfo info, long ambiguities, long contextSensitivities,
+							 long predicateEvals, long errors)
+	{
+		Decision d = new Decision();
+		d.key = key;
+		d.decision = info.decision;
+		d.rule = g.getRule(g.atn.getDecisionState(info.decision).ruleIndex).name;
+		d.invocations = info.invocations;
+		d.timeInPrediction = info.timeInPrediction;
+		d.SLL_TotalLook = info.SLL_TotalLook;
+		d.SLL_MaxLook = info.SLL_MaxLook;
+		d.LL_TotalLook = info.LL_TotalLook;
+		d.LL_MaxLook = info.LL_MaxLook;
+		d.LL_Fallback = info.LL_Fallback;
+		d.SLL_ATNTransitions = info.SLL_ATNTransitions;
+		d.SLL_DFATransitions = info.SLL_DFATransitions;
+		d.LL_ATNTransitions = info.LL_ATNTransitions;
+		d.LL_DFATransitions = info.LL_DFATransitions;
+		d.ambiguities = ambiguities;
+		d.contextSensitivities = contextSensitivities;
+		d.predicateEvals = predicateEvals;
+		d.errors = errors;
+		decisions.add(d);
+	}
+
+	public Decision getDecision(String key) {
+		for (Decision d : decisions) {
+			if ( d.key.equals(key) ) return d;
+		}
+		return null;
+	}
+
+	public void write(Writer out) throws IOException {
+		JsonWriter w = new JsonWriter(out);
+		w.setIndent("  ");
+		w.beginObject();
+		w.name("formatVersion").value(formatVersion);
+		w.name("antlrVersion").value(antlrVersion);
+		w.name("timestamp").value(timestamp);
+		w.name("grammarName").value(grammarName);
+		w.name("grammarFile").value(grammarFile);
+		w.name("startRule").value(startRule);
+		w.name("input").beginObject();
+		w.name("kind").value(inputKind);
+		w.name("files").value(inputFiles);
+		w.name("chars").value(inputChars);
+		w.name("tokens").value(inputTokens);
+		w.name("syntaxErrors").value(syntaxErrors);
+		w.name("parseTime").value(parseTime);
+		w.endObject();
+		w.name("decisions").beginArray();
+		for (Decision d : decisions) {
+			w.beginObject();
+			w.name("key").value(d.key);
+			w.name("decision").value(d.decision);
+			w.name("rule").value(d.rule);
+			w.name("invocations").value(d.invocations);
+			w.name("timeInPrediction").value(d.timeInPrediction);
+			w.name("SLL_TotalLook").value(d.SLL_TotalLook);
+			w.name("SLL_MaxLook").value(d.SLL_MaxLook);
+			w.name("LL_TotalLook").value(d.LL_TotalLook);
+			w.name("LL_MaxLook").value(d.LL_MaxLook);
+			w.name("LL_Fallback").value(d.LL_Fallback);
+			w.name("SLL_ATNTransitions").value(d.SLL_ATNTransitions);
+			w.name("SLL_DFATransitions").value(d.SLL_DFATransitions);
+			w.name("LL_ATNTransitions").value(d.LL_ATNTransitions);
+			w.name("LL_DFATransitions").value(d.LL_DFATransitions);
+			w.name("ambiguities").value(d.ambiguities);
+			w.name("contextSensitivities").value(d.contextSensitivities);
+			w.name("predicateEvals").value(d.predicateEvals);
+			w.name("errors").value(d.errors);
+			w.endObject();
+		}
+		w.endArray();
+		w.endObject();
+		w.flush();
+	}
+
+	public static ProfileSnapshot read(Reader in) throws IOException {
+		JsonReader r = new JsonReader(in);
+		ProfileSnapshot s = new ProfileSnapshot();
+		s.formatVersion = -1;
+		r.beginObject();
+		while ( r.hasNext() ) {
+			String name = r.nextName();
+			switch ( name ) {
+				case "formatVersion" : s.formatVersion = r.nextInt(); break;
+				case "antlrVersion" : s.antlrVersion = nextString(r); break;
+				case "timestamp" : s.timestamp = r.nextLong(); break;
+				case "grammarName" : s.grammarName = nextString(r); break;
+				case "grammarFile" : s.grammarFile = nextString(r); break;
+				case "startRule" : s.startRule = nextString(r); break;
+				case "input" : readInput(r, s); break;
+				case "decisions" :
+					r.beginArray();
+					while ( r.hasNext() ) {
+						s.decisions.add(readDecision(r));
+					}
+					r.endArray();
+					break;
+				default : r.skipValue();
+			}
+			if ( name.equals("formatVersion") && s.formatVersion>FORMAT_VERSION ) {
+				throw new IOException("profile format version "+s.formatVersion+" is newer than this plugin's ("+FORMAT_VERSION+")");
+			}
+		}
+		r.endObject();
+		if ( s.formatVersion<0 ) {
+			throw new IOException("not an ANTLR profile: no formatVersion");
+		}
+		return s;
+	}
+
+	private static void readInput(JsonReader r, ProfileSnapshot s) throws IOException {
+		r.beginObject();
+		while ( r.hasNext() ) {
+			switch ( r.nextName() ) {
+				case "kind" : s.inputKind = nextString(r); break;
+				case "files" : s.inputFiles = r.nextInt(); break;
+				case "chars" : s.inputChars = r.nextLong(); break;
+				case "tokens" : s.inputTokens = r.nextLong(); break;
+				case "syntaxErrors" : s.syntaxErrors = r.nextLong(); break;
+				case "parseTime" : s.parseTime = r.nextLong(); break;
+				default : r.skipValue();
+			}
+		}
+		r.endObject();
+	}
+
+	private static Decision readDecision(JsonReader r) throws IOException {
+		Decision d = new Decision();
+		r.beginObject();
+		while ( r.hasNext() ) {
+			switch ( r.nextName() ) {
+				case "key" : d.key = nextString(r); break;
+				case "decision" : d.decision = r.nextInt(); break;
+				case "rule" : d.rule = nextString(r); break;
+				case "invocations" : d.invocations = r.nextLong(); break;
+				case "timeInPrediction" : d.timeInPrediction = r.nextLong(); break;
+				case "SLL_TotalLook" : d.SLL_TotalLook = r.nextLong(); break;
+				case "SLL_MaxLook" : d.SLL_MaxLook = r.nextLong(); break;
+				case "LL_TotalLook" : d.LL_TotalLook = r.nextLong(); break;
+				case "LL_MaxLook" : d.LL_MaxLook = r.nextLong(); break;
+				case "LL_Fallback" : d.LL_Fallback = r.nextLong(); break;
+				case "SLL_ATNTransitions" : d.SLL_ATNTransitions = r.nextLong(); break;
+				case "SLL_DFATransitions" : d.SLL_DFATransitions = r.nextLong(); break;
+				case "LL_ATNTransitions" : d.LL_ATNTransitions = r.nextLong(); break;
+				case "LL_DFATransitions" : d.LL_DFATransitions = r.nextLong(); break;
+				case "ambiguities" : d.ambiguities = r.nextLong(); break;
+				case "contextSensitivities" : d.contextSensitivities = r.nextLong(); break;
+				case "predicateEvals" : d.predicateEvals = r.nextLong(); break;
+				case "errors" : d.errors = r.nextLong(); break;
+				default : r.skipValue();
+			}
+		}
+		r.endObject();
+		if ( d.key==null ) {
+			throw new IOException("decision "+d.decision+" has no key");
+		}
+		return d;
+	}
+
+	private static String nextString(JsonReader r) throws IOException {
+		if ( r.peek()==JsonToken.NULL ) {
+			r.nextNull();
+			return null;
+		}
+		return r.nextString();
+	}
+}
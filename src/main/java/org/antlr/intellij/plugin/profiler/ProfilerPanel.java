@@ -1,29 +1,51 @@
 package org.antlr.intellij.plugin.profiler;
 
+import com.intellij.notification.Notification;
+import com.intellij.notification.NotificationType;
+import com.intellij.notification.Notifications;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.CaretModel;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.editor.ScrollType;
 import com.intellij.openapi.editor.ScrollingModel;
 import com.intellij.openapi.editor.event.EditorMouseEvent;
 import com.intellij.openapi.editor.markup.*;
+import com.intellij.openapi.fileChooser.FileChooserFactory;
+import com.intellij.openapi.fileChooser.FileSaverDescriptor;
+import com.intellij.openapi.fileChooser.FileSaverDialog;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.fileEditor.OpenFileDescriptor;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.SystemInfo;
+import com.intellij.openapi.util.registry.Registry;
+import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileWrapper;
 import com.intellij.ui.JBColor;
 import com.intellij.ui.components.JBCheckBox;
 import com.intellij.ui.components.JBLabel;
 import com.intellij.ui.table.JBTable;
 import org.antlr.intellij.plugin.ANTLRv4PluginController;
+import org.antlr.intellij.plugin.parsing.PredictionHeatMap;
+import org.antlr.intellij.plugin.parsing.PreviewParser;
+import org.antlr.intellij.plugin.parsing.PreviewTimings;
+import org.antlr.intellij.plugin.parsing.ProfilingLexerATNSimulator;
+import org.antlr.intellij.plugin.parsing.RuleProfile;
+import org.antlr.intellij.plugin.preview.HighlighterRegistry;
 import org.antlr.intellij.plugin.preview.InputPanel;
 import org.antlr.intellij.plugin.preview.PreviewPanel;
 import org.antlr.intellij.plugin.preview.PreviewState;
 import org.antlr.runtime.CommonToken;
+import org.antlr.v4.runtime.Lexer;
 import org.antlr.v4.runtime.Parser;
 import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
 import org.antlr.v4.runtime.TokenStream;
 import org.antlr.v4.runtime.atn.*;
 import org.antlr.v4.runtime.misc.Interval;
 import org.antlr.v4.tool.Grammar;
+import org.antlr.v4.tool.ast.GrammarAST;
 import org.antlr.v4.tool.Rule;
 
 import javax.swing.*;
@@ -34,8 +56,13 @@ import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
+import java.io.File;
+import java.io.IOException;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class ProfilerPanel {
 	public static final Color AMBIGUITY_COLOR = new Color(138, 0, 0);
@@ -56,14 +83,34 @@ public class ProfilerPanel {
 	protected JLabel predictionTimeField;
 	protected JLabel lookaheadBurdenField;
 	protected JLabel cacheMissRateField;
+	protected JLabel dfaSizeField;
+	protected JLabel predictionMemoryField;
+	protected JLabel updateLatencyField;
+	protected StageTimingsChart stageTimingsChart;
 	protected JLabel inputSizeField;
 	protected JLabel numTokensField;
 	protected JCheckBox expertCheckBox;
+	protected JComboBox<HeatMapOverlay.Mode> heatMapComboBox;
 	protected JLabel ambiguityColorLabel;
 	protected JLabel contextSensitivityColorLabel;
 	protected JLabel predEvaluationColorLabel;
+	protected JTabbedPane tablesPane;
 	protected JBTable profilerDataTable;
+	protected JBTable ruleProfilerTable;
+	protected LexerProfilePanel lexerProfilePanel;
+	protected FlameGraphPanel flameGraphPanel;
+	protected CorpusProfilePanel corpusProfilePanel;
+	protected CorpusProfile corpusProfile;
+	/** State of the grammar whose corpus profile is shown */
+	protected PreviewState corpusPreviewState;
+	protected ScalingPanel scalingPanel;
+	protected ScalingAnalysis scalingAnalysis;
+	/** State of the grammar whose scaling analysis is shown */
+	protected PreviewState scalingPreviewState;
+	protected BaselinePanel baselinePanel;
 	protected JLabel deepestLookaheadLabel;
+	/** Of the last preview parse */
+	protected PredictionMemoryInfo predictionMemory;
 
 	public void grammarFileSaved(PreviewState previewState, VirtualFile grammarFile) {
 		// leave model and such alone.
@@ -71,14 +118,48 @@ public class ProfilerPanel {
 
 	public void switchToGrammar(PreviewState previewState, VirtualFile grammarFile) {
 		this.previewState = previewState;
+		predictionMemory = null;
+		stageTimingsChart.clear(); // updates of another grammar don't compare
+		updateLatencyField.setText("");
 		DefaultTableModel model = new DefaultTableModel();
 		profilerDataTable.setModel(model);
 		profilerDataTable.setRowSorter(new TableRowSorter<AbstractTableModel>(model));
+		ruleProfilerTable.setModel(new DefaultTableModel());
+		lexerProfilePanel.setProfile(null, null, null, 0);
+		flameGraphPanel.setProfile(null, null);
+		if ( corpusPreviewState!=previewState ) {
+			corpusPreviewState = null;
+			corpusProfile = null;
+			corpusProfilePanel.setCorpusProfile(null);
+		}
+		if ( scalingPreviewState!=previewState ) {
+			scalingPreviewState = null;
+			scalingAnalysis = null;
+			scalingPanel.setAnalysis(null);
+		}
+		baselinePanel.setGrammar(grammarFile.getPath());
+	}
+
+	/** Show a profile computed by ProfileCorpusAction and bring its tab forward */
+	public void showCorpusProfile(PreviewState previewState, CorpusProfile profile) {
+		corpusPreviewState = previewState;
+		corpusProfile = profile;
+		corpusProfilePanel.setCorpusProfile(profile);
+		baselinePanel.setCurrent(ProfileSnapshot.fromCorpus(profile));
+		tablesPane.setSelectedComponent(corpusProfilePanel);
+	}
+
+	/** Show an analysis computed by AnalyzeScalingAction and bring its tab forward */
+	public void showScalingAnalysis(PreviewState previewState, ScalingAnalysis analysis) {
+		scalingPreviewState = previewState;
+		scalingAnalysis = analysis;
+		scalingPanel.setAnalysis(analysis);
+		tablesPane.setSelectedComponent(scalingPanel);
 	}
 
 	public void mouseEnteredGrammarEditorEvent(VirtualFile vfile, EditorMouseEvent e) {
 		// clear grammar highlighters related to decision info
-		InputPanel.removeHighlighters(e.getEditor(), ProfilerPanel.DECISION_INFO_KEY);
+		HighlighterRegistry.getInstance(e.getEditor()).clear(HighlighterRegistry.Category.DECISION_INFO);
 	}
 
 	public JPanel getComponent() {
@@ -92,20 +173,29 @@ public class ProfilerPanel {
 	public ProfilerPanel(Project project, PreviewPanel previewPanel) {
 		this.project = project;
 		this.previewPanel = previewPanel;
+		baselinePanel.setBaselineStore(new ProfileBaselineStore(project));
 	}
 
 	public void setProfilerData(PreviewState previewState, long parseTime_ns) {
 		this.previewState = previewState;
 		Parser parser = previewState.parsingResult.parser;
 		ParseInfo parseInfo = parser.getParseInfo();
+		predictionMemory = PredictionMemoryInfo.of(parser);
 		updateTableModelPerExpertCheckBox(parseInfo);
+		updateRuleTableModel(previewState);
+		updateLexerProfile(parser, parseTime_ns);
+		baselinePanel.setCurrent(ProfileSnapshot.fromPreview(previewState.g, previewState.startRuleName, parser, parseTime_ns));
 		double parseTimeMS = parseTime_ns/(1000.0*1000.0);
 		// microsecond decimal precision
 		NumberFormat formatter = new DecimalFormat("#.###");
 		parseTimeField.setText(formatter.format(parseTimeMS));
 		double predTimeMS = parseInfo.getTotalTimeInPrediction()/(1000.0*1000.0);
+		// a share of the parser's own time; lexing and the rest of the update are stages of their own
+		PreviewTimings timings = previewState.parsingResult.timings;
+		double parserTimeMS = timings!=null && timings.isMeasured(PreviewTimings.Stage.PARSING) ?
+			timings.get(PreviewTimings.Stage.PARSING)/(1000.0*1000.0) : parseTimeMS;
 		predictionTimeField.setText(
-			String.format("%s = %3.2f%%", formatter.format(predTimeMS), 100*(predTimeMS)/parseTimeMS)
+			String.format("%s = %3.2f%%", formatter.format(predTimeMS), 100*(predTimeMS)/parserTimeMS)
 		                           );
 		TokenStream tokens = parser.getInputStream();
 		int numTokens = tokens.size();
@@ -135,12 +225,50 @@ public class ProfilerPanel {
 		cacheMissRateField.setText(
 			String.format("%d/%d = %3.2f%%", (long) atnLook, (long) look, atnLook*100.0/look)
 		                          );
+		if ( predictionMemory!=null ) {
+			dfaSizeField.setText(String.format("%d states, %d edges, %d configs",
+											   predictionMemory.getTotalDFAStates(),
+											   predictionMemory.getTotalDFAEdges(),
+											   predictionMemory.getTotalDFAConfigs()));
+			predictionMemoryField.setText(String.format("%d cached contexts, peak set %d, %d configs",
+														predictionMemory.contextCacheSize,
+														predictionMemory.getPeakConfigSetSize(),
+														predictionMemory.getTotalConfigsComputed()));
+		}
+		else {
+			dfaSizeField.setText("n/a");
+			predictionMemoryField.setText("n/a");
+		}
+	}
+
+	/** Add the stages of the last preview update to the chart; they keep
+	 *  coming in as the parse tree is laid out and painted.
+	 */
+	public void showStageTimings(PreviewTimings timings) {
+		stageTimingsChart.add(timings);
+		timings.setListener(() -> {
+			if ( stageTimingsChart.getLast()==timings ) {
+				updateStageTimings(timings);
+			}
+		});
+		updateStageTimings(timings);
+	}
+
+	private void updateStageTimings(PreviewTimings timings) {
+		StringBuilder buf = new StringBuilder(StageTimingsChart.ms(timings.getTotal())+" ms");
+		String sep = ": ";
+		for (PreviewTimings.Stage stage : StageTimingsChart.slowestStages(timings, 2)) {
+			buf.append(sep).append(stage.label.toLowerCase()).append(' ').append(StageTimingsChart.ms(timings.get(stage)));
+			sep = ", ";
+		}
+		updateLatencyField.setText(buf.toString());
+		stageTimingsChart.repaint();
 	}
 
 	public void updateTableModelPerExpertCheckBox(ParseInfo parseInfo) {
 		AbstractTableModel model;
 		if ( expertCheckBox.isSelected() ) {
-			model = new ExpertProfilerTableDataModel(parseInfo);
+			model = new ExpertProfilerTableDataModel(parseInfo, predictionMemory);
 		}
 		else {
 			model = new SimpleProfilerTableDataModel(parseInfo);
@@ -149,7 +277,98 @@ public class ProfilerPanel {
 		profilerDataTable.setRowSorter(new TableRowSorter<AbstractTableModel>(model));
 	}
 
+	/** Fill the Rules table and flame graph from the rule profile of the last parse */
+	public void updateRuleTableModel(PreviewState previewState) {
+		Parser parser = previewState.parsingResult.parser;
+		RuleProfile profile = parser instanceof PreviewParser ? ((PreviewParser) parser).getRuleProfile() : null;
+		if ( profile==null ) {
+			ruleProfilerTable.setModel(new DefaultTableModel());
+			flameGraphPanel.setProfile(null, null);
+			return;
+		}
+		flameGraphPanel.setProfile(profile, parser.getRuleNames());
+		RuleProfilerTableDataModel model = new RuleProfilerTableDataModel(previewState.g, profile);
+		ruleProfilerTable.setModel(model);
+		TableRowSorter<AbstractTableModel> sorter = new TableRowSorter<AbstractTableModel>(model);
+		// hottest rules first
+		sorter.setSortKeys(Collections.singletonList(
+			new RowSorter.SortKey(RuleProfilerTableDataModel.OWN_TIME_COLUMN, SortOrder.DESCENDING)));
+		ruleProfilerTable.setRowSorter(sorter);
+	}
+
+	/** Show the heat map of the last parse over the preview input, or hide it */
+	public void updateHeatMap(PreviewState previewState) {
+		Editor inputEditor = previewState.getInputEditor();
+		if ( inputEditor==null ) return;
+		Parser parser = previewState.parsingResult!=null ? previewState.parsingResult.parser : null;
+		PredictionHeatMap heatMap = parser instanceof PreviewParser ? ((PreviewParser) parser).getHeatMap() : null;
+		HeatMapOverlay.getInstance(inputEditor).show(heatMap, parser!=null ? parser.getInputStream() : null,
+													 (HeatMapOverlay.Mode) heatMapComboBox.getSelectedItem());
+	}
+
+	/** Fill the Lexer tab from the lexer of the last parse, if it was profiled */
+	public void updateLexerProfile(Parser parser, long parseTime_ns) {
+		TokenSource source = parser.getInputStream().getTokenSource();
+		if ( source instanceof Lexer && ((Lexer) source).getInterpreter() instanceof ProfilingLexerATNSimulator ) {
+			Lexer lexer = (Lexer) source;
+			ProfilingLexerATNSimulator interp = (ProfilingLexerATNSimulator) lexer.getInterpreter();
+			lexerProfilePanel.setProfile(interp.getProfile(), lexer.getRuleNames(), lexer.getModeNames(), parseTime_ns);
+		}
+		else {
+			lexerProfilePanel.setProfile(null, null, null, 0);
+		}
+	}
+
+	/** Ask where to save a file with extension; null if the user cancels */
+	static File chooseFileToSave(String title, String defaultName, String extension) {
+		boolean isMacNativSaveDialog = SystemInfo.isMac && Registry.is("ide.mac.native.save.dialog");
+		FileSaverDescriptor descriptor = new FileSaverDescriptor(title, "Choose the destination file", extension);
+		FileSaverDialog dialog = FileChooserFactory.getInstance().createSaveFileDialog(descriptor, (Project) null);
+		VirtualFileWrapper vf = dialog.save((VirtualFile) null, defaultName+(isMacNativSaveDialog ? "."+extension : ""));
+		return vf!=null ? vf.getFile() : null;
+	}
+
+	static void exportFailed(String what, File file, IOException e) {
+		Logger.getInstance(ProfilerPanel.class).warn("Error while exporting "+what+" to file "+file.getAbsolutePath(), e);
+		Notifications.Bus.notify(new Notification("ANTLR 4 export",
+												  "Error while exporting "+what+" to file "+file.getAbsolutePath(),
+												  String.valueOf(e.getMessage()),
+												  NotificationType.WARNING));
+	}
+
+	/** Lexer rules may be in a grammar file of their own, so open the lexer grammar's file */
+	public void selectLexerRuleInGrammar(PreviewState previewState, String ruleName) {
+		if ( previewState.lg==null ) return;
+		Rule rule = previewState.lg.getRule(ruleName);
+		if ( rule==null || rule.ast==null ) return;
+		CommonToken ruleNameToken = (CommonToken) ((GrammarAST) rule.ast.getChild(0)).getToken();
+		if ( ruleNameToken.getInputStream()==null ) return; // made up by ANTLR, e.g. T__0 for a literal
+		VirtualFile vfile = LocalFileSystem.getInstance().findFileByPath(previewState.lg.fileName);
+		if ( vfile==null ) return;
+		new OpenFileDescriptor(project, vfile, ruleNameToken.getStartIndex()).navigate(true);
+	}
+
+	public void selectRuleInGrammar(PreviewState previewState, int ruleIndex) {
+		final ANTLRv4PluginController controller = ANTLRv4PluginController.getInstance(previewState.project);
+		if ( controller==null || previewState.g==null ) return;
+		final Editor grammarEditor = controller.getEditor(previewState.grammarFile);
+		if ( grammarEditor==null ) return;
+
+		Rule rule = previewState.g.getRule(ruleIndex);
+		if ( rule==null || rule.ast==null ) return;
+		CommonToken ruleNameToken = (CommonToken) ((GrammarAST) rule.ast.getChild(0)).getToken();
+		CaretModel caretModel = grammarEditor.getCaretModel();
+		caretModel.moveToOffset(ruleNameToken.getStartIndex());
+		grammarEditor.getScrollingModel().scrollToCaret(ScrollType.MAKE_VISIBLE);
+	}
+
 	public void selectDecisionInGrammar(PreviewState previewState, int decision) {
+		if ( previewState.parsingResult==null ) return;
+		DecisionInfo decisionInfo = previewState.parsingResult.parser.getParseInfo().getDecisionInfo()[decision];
+		selectDecisionInGrammar(previewState, decision, decisionInfo);
+	}
+
+	public void selectDecisionInGrammar(PreviewState previewState, int decision, DecisionInfo decisionInfo) {
 		final ANTLRv4PluginController controller = ANTLRv4PluginController.getInstance(previewState.project);
 		if ( controller==null ) return;
 		final Editor grammarEditor = controller.getEditor(previewState.grammarFile);
@@ -162,7 +381,7 @@ public class ProfilerPanel {
 			return;
 		}
 
-		InputPanel.removeHighlighters(grammarEditor, ProfilerPanel.DECISION_INFO_KEY);
+		HighlighterRegistry.getInstance(grammarEditor).clear(HighlighterRegistry.Category.DECISION_INFO);
 
 		org.antlr.runtime.TokenStream tokens = previewState.g.tokenStream;
 		if ( region.a>=tokens.size() || region.b>=tokens.size() ) {
@@ -172,7 +391,6 @@ public class ProfilerPanel {
 		CommonToken startToken = (CommonToken) tokens.get(region.a);
 		CommonToken stopToken = (CommonToken) tokens.get(region.b);
 		JBColor effectColor = JBColor.darkGray;
-		DecisionInfo decisionInfo = previewState.parsingResult.parser.getParseInfo().getDecisionInfo()[decision];
 		if ( decisionInfo.predicateEvals.size()>0 ) {
 			effectColor = new JBColor(PREDEVAL_COLOR, AMBIGUITY_COLOR);
 		}
@@ -195,6 +413,7 @@ public class ProfilerPanel {
 			HighlighterTargetArea.EXACT_RANGE
 		                                                                         );
 		rangeHighlighter.putUserData(DECISION_INFO_KEY, decisionInfo);
+		HighlighterRegistry.getInstance(markupModel).add(HighlighterRegistry.Category.DECISION_INFO, rangeHighlighter);
 
 //		System.out.println("dec " + decision + " from " + startToken + " to " + stopToken);
 
@@ -212,12 +431,12 @@ public class ProfilerPanel {
 		Editor inputEditor = previewState.getInputEditor();
 		ScrollingModel scrollingModel = inputEditor.getScrollingModel();
 		CaretModel caretModel = inputEditor.getCaretModel();
-		MarkupModel markupModel = inputEditor.getMarkupModel();
 
 		InputPanel.clearDecisionEventHighlighters(inputEditor);
 
 		ParseInfo parseInfo = previewState.parsingResult.parser.getParseInfo();
 		DecisionInfo decisionInfo = parseInfo.getDecisionInfo()[decision];
+		List<DecisionEventHighlights.Event> events = new ArrayList<>();
 
 		Token firstToken = null;
 		// deepest lookahead
@@ -228,53 +447,47 @@ public class ProfilerPanel {
 			if ( decisionInfo.LL_MaxLook>decisionInfo.SLL_MaxLook ) {
 				maxLookEvent = decisionInfo.LL_MaxLookEvent;
 			}
-			firstToken = addDecisionEventHighlighter(previewState, markupModel,
-			                                         maxLookEvent,
-			                                         DEEPESTLOOK_COLOR,
-			                                         EffectType.BOLD_DOTTED_LINE);
+			firstToken = addDecisionEvent(previewState, events,
+			                              maxLookEvent,
+			                              DEEPESTLOOK_COLOR,
+			                              EffectType.BOLD_DOTTED_LINE);
 		}
 
 		// pred evals
 		for (PredicateEvalInfo predEvalInfo : decisionInfo.predicateEvals) {
-			Token t = addDecisionEventHighlighter(previewState, markupModel, predEvalInfo, PREDEVAL_COLOR, EffectType.ROUNDED_BOX);
+			Token t = addDecisionEvent(previewState, events, predEvalInfo, PREDEVAL_COLOR, EffectType.ROUNDED_BOX);
 			if ( firstToken==null ) firstToken = t;
 		}
 
 		// context-sensitivities
 		for (ContextSensitivityInfo ctxSensitivityInfo : decisionInfo.contextSensitivities) {
-			Token t = addDecisionEventHighlighter(previewState, markupModel, ctxSensitivityInfo, FULLCTX_COLOR, EffectType.ROUNDED_BOX);
+			Token t = addDecisionEvent(previewState, events, ctxSensitivityInfo, FULLCTX_COLOR, EffectType.ROUNDED_BOX);
 			if ( firstToken==null ) firstToken = t;
 		}
 
 		// ambiguities (might overlay context-sensitivities)
 		for (AmbiguityInfo ambiguityInfo : decisionInfo.ambiguities) {
-			Token t = addDecisionEventHighlighter(previewState, markupModel, ambiguityInfo, AMBIGUITY_COLOR, EffectType.ROUNDED_BOX);
+			Token t = addDecisionEvent(previewState, events, ambiguityInfo, AMBIGUITY_COLOR, EffectType.ROUNDED_BOX);
 			if ( firstToken==null ) firstToken = t;
 		}
 
+		// highlighters only get created for what's on screen
+		DecisionEventHighlights.getInstance(inputEditor).setEvents(events);
+
 		if ( firstToken!=null ) {
 			caretModel.moveToOffset(firstToken.getStartIndex());
 			scrollingModel.scrollToCaret(ScrollType.MAKE_VISIBLE);
 		}
 	}
 
-	public Token addDecisionEventHighlighter(PreviewState previewState, MarkupModel markupModel,
-	                                         DecisionEventInfo info, Color errorStripeColor,
-	                                         EffectType effectType) {
+	public Token addDecisionEvent(PreviewState previewState, List<DecisionEventHighlights.Event> events,
+	                              DecisionEventInfo info, Color errorStripeColor,
+	                              EffectType effectType) {
 		TokenStream tokens = previewState.parsingResult.parser.getInputStream();
 		Token startToken = tokens.get(info.startIndex);
 		Token stopToken = tokens.get(info.stopIndex);
-		TextAttributes textAttributes =
-			new TextAttributes(JBColor.BLACK, JBColor.WHITE, errorStripeColor,
-			                   effectType, Font.PLAIN);
-		textAttributes.setErrorStripeColor(errorStripeColor);
-		final RangeHighlighter rangeHighlighter =
-			markupModel.addRangeHighlighter(
-				startToken.getStartIndex(), stopToken.getStopIndex()+1,
-				HighlighterLayer.ADDITIONAL_SYNTAX, textAttributes,
-				HighlighterTargetArea.EXACT_RANGE);
-		rangeHighlighter.putUserData(DECISION_EVENT_INFO_KEY, info);
-		rangeHighlighter.setErrorStripeMarkColor(errorStripeColor);
+		events.add(new DecisionEventHighlights.Event(startToken.getStartIndex(), stopToken.getStopIndex()+1,
+		                                             info, errorStripeColor, effectType));
 		return startToken;
 	}
 
@@ -335,9 +548,16 @@ public class ProfilerPanel {
 					return;
 				}
 				ParseInfo parseInfo = previewState.parsingResult.parser.getParseInfo();
+				predictionMemory = PredictionMemoryInfo.of(previewState.parsingResult.parser);
 				updateTableModelPerExpertCheckBox(parseInfo);
 			}
 		});
+		heatMapComboBox = new JComboBox<>(HeatMapOverlay.Mode.values());
+		heatMapComboBox.addActionListener(e -> {
+			if ( previewState!=null ) {
+				updateHeatMap(previewState);
+			}
+		});
 		profilerDataTable = new JBTable() {
 			@Override
 			protected JTableHeader createDefaultTableHeader() {
@@ -389,6 +609,81 @@ public class ProfilerPanel {
 			}
 		                                       );
 		selectionModel.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		lexerProfilePanel = new LexerProfilePanel(
+			ruleName -> {
+				if ( project!=null && previewState!=null ) {
+					selectLexerRuleInGrammar(previewState, ruleName);
+				}
+			});
+		flameGraphPanel = new FlameGraphPanel();
+		corpusProfilePanel = new CorpusProfilePanel(
+			decision -> {
+				// decision numbers are only good for the grammar as it was profiled
+				if ( corpusProfile!=null && corpusPreviewState.g==corpusProfile.g ) {
+					selectDecisionInGrammar(corpusPreviewState, decision, corpusProfile.decisions[decision]);
+				}
+			},
+			file -> {
+				VirtualFile vfile = LocalFileSystem.getInstance().findFileByIoFile(file);
+				if ( vfile!=null ) {
+					FileEditorManager.getInstance(project).openFile(vfile, true);
+				}
+			});
+		stageTimingsChart = new StageTimingsChart();
+		scalingPanel = new ScalingPanel(
+			decision -> {
+				ScalingAnalysis.Sample largest = scalingAnalysis!=null ? scalingAnalysis.getLargestSample() : null;
+				if ( largest!=null && scalingPreviewState.g==scalingAnalysis.g ) {
+					selectDecisionInGrammar(scalingPreviewState, decision, largest.decisions[decision]);
+				}
+			});
+		baselinePanel = new BaselinePanel(
+			decision -> {
+				// only jump if the grammar hasn't changed since the run compared
+				ProfileSnapshot current = baselinePanel.getCurrent();
+				if ( current==null ) return;
+				if ( "corpus".equals(current.inputKind) ) {
+					if ( corpusProfile!=null && corpusPreviewState.g==current.g ) {
+						selectDecisionInGrammar(corpusPreviewState, decision, corpusProfile.decisions[decision]);
+					}
+				}
+				else if ( previewState!=null && previewState.g==current.g ) {
+					selectDecisionInGrammar(previewState, decision);
+				}
+			});
+		ruleProfilerTable = new JBTable() {
+			@Override
+			protected JTableHeader createDefaultTableHeader() {
+				return new JTableHeader(columnModel) {
+					public String getToolTipText(MouseEvent e) {
+						int index = columnModel.getColumnIndexAtX(e.getPoint().x);
+						int realIndex = columnModel.getColumn(index).getModelIndex();
+						TableModel model = getModel();
+						if ( model instanceof ProfilerTableDataModel ) {
+							return ((ProfilerTableDataModel) model).getColumnToolTips()[realIndex];
+						}
+						return model.getColumnName(realIndex);
+					}
+				};
+			}
+		};
+		ListSelectionModel ruleSelectionModel = ruleProfilerTable.getSelectionModel();
+		ruleSelectionModel.addListSelectionListener(
+			new ListSelectionListener() {
+				@Override
+				public void valueChanged(ListSelectionEvent e) {
+					if ( e.getValueIsAdjusting() || project==null || previewState==null ) {
+						return;
+					}
+					int selectedRow = ruleProfilerTable.getSelectedRow();
+					if ( selectedRow==-1 || !(ruleProfilerTable.getModel() instanceof RuleProfilerTableDataModel) ) {
+						return;
+					}
+					selectRuleInGrammar(previewState, ruleProfilerTable.convertRowIndexToModel(selectedRow));
+				}
+			}
+		                                           );
+		ruleSelectionModel.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
 		ambiguityColorLabel = new JBLabel("Ambiguity");
 		ambiguityColorLabel.setForeground(AMBIGUITY_COLOR);
 		contextSensitivityColorLabel = new JBLabel("Context sensitivity");
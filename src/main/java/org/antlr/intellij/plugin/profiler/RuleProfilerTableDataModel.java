@@ -0,0 +1,84 @@
+package org.antlr.intellij.plugin.profiler;
+
+import org.antlr.intellij.plugin.parsing.RuleProfile;
+import org.antlr.v4.tool.Grammar;
+
+/** One row per parser rule, in rule index order */
+public class RuleProfilerTableDataModel extends ProfilerTableDataModel {
+	public static final int OWN_TIME_COLUMN = 3;
+
+	public static final String[] columnNames = {
+		"Rule", "Invocations", "Time", "Own time", "Own time %", "Tokens", "Own tokens"
+	};
+
+	public static final String[] columnToolTips = {
+		"Parser rule",
+		"# rule invocations",
+		"Time (ms) in the rule and the rules it invokes; nested invocations of a recursive rule count once",
+		"Time (ms) in the rule itself, prediction included, not in the rules it invokes",
+		"Own time as a percentage of the time in all rules",
+		"Tokens consumed by the rule and the rules it invokes",
+		"Tokens consumed by the rule itself"
+	};
+
+	private static final Class<?>[] columnClasses = {
+		String.class, Long.class, Double.class, Double.class, Double.class, Long.class, Long.class
+	};
+
+	public final Grammar g;
+	public final RuleProfile profile;
+	private final long totalTime;
+
+	public RuleProfilerTableDataModel(Grammar g, RuleProfile profile) {
+		this.g = g;
+		this.profile = profile;
+		this.totalTime = profile.getTotalTime();
+	}
+
+	@Override
+	public String[] getColumnNames() {
+		return columnNames;
+	}
+
+	@Override
+	public String[] getColumnToolTips() {
+		return columnToolTips;
+	}
+
+	@Override
+	public Class<?> getColumnClass(int columnIndex) {
+		return columnClasses[columnIndex];
+	}
+
+	@Override
+	public int getRowCount() {
+		return profile.getNumberOfRules();
+	}
+
+	@Override
+	public Object getValueAt(int row, int col) {
+		int ruleIndex = row;
+		switch (col) {
+			case 0:
+				return g.getRule(ruleIndex).name;
+			case 1:
+				return profile.getInvocations(ruleIndex);
+			case 2:
+				return toMillis(profile.getTime(ruleIndex));
+			case 3:
+				return toMillis(profile.getOwnTime(ruleIndex));
+			case 4:
+				return totalTime>0 ? Math.round(profile.getOwnTime(ruleIndex)*1000.0/totalTime)/10.0 : 0.0;
+			case 5:
+				return profile.getTokens(ruleIndex);
+			case 6:
+				return profile.getOwnTokens(ruleIndex);
+		}
+		return "n/a";
+	}
+
+	// microsecond precision
+	private static double toMillis(long ns) {
+		return Math.round(ns/1000.0)/1000.0;
+	}
+}
@@ -0,0 +1,446 @@
+package org.antlr.intellij.plugin.profiler;
+
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import org.antlr.intellij.plugin.parsing.CompactTokenStream;
+import org.antlr.intellij.plugin.parsing.PreviewParser;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.LexerInterpreter;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.atn.ATNDeserializer;
+import org.antlr.v4.runtime.atn.ATNSerializer;
+import org.antlr.v4.runtime.atn.DecisionInfo;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.tool.Grammar;
+import org.antlr.v4.tool.LexerGrammar;
+import org.antlr.v4.tool.Rule;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** How a grammar's parse cost grows with the size of its input: the input
+ *  is parsed at several sizes, either replicated 1x, 2x, 4x... or cut into
+ *  prefixes 1/2^k of it at line breaks, and a power law n^b is fit to how
+ *  time, lookahead and allocation grow with tokens. A grammar that scales should
+ *  come out near b=1; decisions whose lookahead per prediction grows with
+ *  the input are what makes it not.
+ *
+ *  Each size is parsed by a fresh {@link PreviewParser}, so each starts from
+ *  an empty DFA as the preview does and counts aren't skewed by what smaller
+ *  sizes taught the DFA; time is the best of a few runs after a warm-up
+ *  parse of the largest size. Allocation is that of the parsing thread, where the JVM can tell.
+ *
+ *  No size exceeds {@link #MAX_CHARS}: replication stops doubling before
+ *  that, falling back to prefixes if that leaves too few sizes to fit, and
+ *  prefixes are taken of the input's first MAX_CHARS.
+ */
+public class ScalingAnalysis {
+	public enum Method {
+		REPLICATE("Replicate input"),
+		PREFIX("Prefixes of input");
+
+		private final String label;
+
+		Method(String label) {
+			this.label = label;
+		}
+
+		@Override
+		public String toString() {
+			return label;
+		}
+	}
+
+	/** Exponent above which growth counts as super-linear */
+	public static final double LINEAR_EXPONENT = 1.15;
+	/** A decision grows if lookahead per prediction grows at least like n^this... */
+	public static final double GROWING_LOOKAHEAD_EXPONENT = 0.25;
+	/** ...or its deepest lookahead like n^this */
+	public static final double GROWING_MAX_LOOKAHEAD_EXPONENT = 0.5;
+
+	static final int TIMED_RUNS = 5;
+	/** Largest input parsed, in chars; each size is parsed 1+TIMED_RUNS times */
+	public static final int MAX_CHARS = 1 << 20;
+	/** Fewest sizes to fit growth to, see {@link #fitGrowthExponent} */
+	static final int MIN_SIZES = 3;
+
+	/** One parse of the input at one size */
+	public static class Sample {
+		/** Copies of the input (REPLICATE) or the fraction of it parsed (PREFIX) */
+		public final double scale;
+		public final int chars;
+		public int tokens;
+		/** Best lex and parse time of TIMED_RUNS in ns */
+		public long time = Long.MAX_VALUE;
+		/** Tokens looked at by all predictions, SLL and LL */
+		public long lookahead;
+		/** Lookahead steps that had to simulate the ATN rather than follow the DFA */
+		public long atnTransitions;
+		public long llFallbacks;
+		public long dfaStates;
+		public long dfaConfigs;
+		/** Bytes allocated by the parse, -1 if unknown */
+		public long allocated = -1;
+		public int syntaxErrors;
+		/** Why the input could not be parsed at this size, else null */
+		public String failure;
+		/** Per decision, events dropped */
+		public DecisionInfo[] decisions;
+
+		Sample(double scale, int chars) {
+			this.scale = scale;
+			this.chars = chars;
+		}
+	}
+
+	/** A decision whose lookahead grows with input size */
+	public static class DecisionTrend {
+		public final int decision;
+		/** Fit of lookahead per prediction against tokens */
+		public final double lookaheadExponent;
+		/** Fit of deepest lookahead against tokens */
+		public final double maxLookaheadExponent;
+		/** Lookahead per prediction at the smallest and largest size */
+		public final double firstLookahead, lastLookahead;
+		public final long firstMaxLookahead, lastMaxLookahead;
+
+		DecisionTrend(int decision, double lookaheadExponent, double maxLookaheadExponent,
+					  double firstLookahead, double lastLookahead, long firstMaxLookahead, long lastMaxLookahead)
+		{
+			this.decision = decision;
+			this.lookaheadExponent = lookaheadExponent;
+			this.maxLookaheadExponent = maxLookaheadExponent;
+			this.firstLookahead = firstLookahead;
+			this.lastLookahead = lastLookahead;
+			this.firstMaxLookahead = firstMaxLookahead;
+			this.lastMaxLookahead = lastMaxLookahead;
+		}
+	}
+
+	public final Grammar g;
+	public final String startRuleName;
+	/** The method used, PREFIX if REPLICATE would have exceeded MAX_CHARS */
+	public final Method method;
+	/** Whether MAX_CHARS limited the sizes parsed */
+	public final boolean capped;
+	/** Smallest first */
+	public final List<Sample> samples;
+	/** Power law exponents against tokens; NaN if there's too little to fit */
+	public final double timeExponent;
+	public final double lookaheadExponent;
+	public final double allocationExponent;
+	/** Growing decisions, fastest growing first */
+	public final List<DecisionTrend> growingDecisions;
+
+	private ScalingAnalysis(Grammar g, String startRuleName, Method method, boolean capped, List<Sample> samples) {
+		this.g = g;
+		this.startRuleName = startRuleName;
+		this.method = method;
+		this.capped = capped;
+		this.samples = Collections.unmodifiableList(samples);
+		List<Sample> parsed = new ArrayList<>();
+		for (Sample s : samples) {
+			if ( s.failure==null ) parsed.add(s);
+		}
+		int n = parsed.size();
+		double[] tokens = new double[n];
+		double[] time = new double[n];
+		double[] lookahead = new double[n];
+		double[] allocated = new double[n];
+		for (int i = 0; i<n; i++) {
+			Sample s = parsed.get(i);
+			tokens[i] = s.tokens;
+			time[i] = s.time;
+			lookahead[i] = s.lookahead;
+			allocated[i] = s.allocated;
+		}
+		timeExponent = fitGrowthExponent(tokens, time);
+		lookaheadExponent = fitGrowthExponent(tokens, lookahead);
+		allocationExponent = fitGrowthExponent(tokens, allocated);
+		growingDecisions = Collections.unmodifiableList(findGrowingDecisions(g.atn.getNumberOfDecisions(), parsed, tokens));
+	}
+
+	/** Parse text from startRuleName at sizes sizes the way method says; reports
+	 *  progress to and can be canceled through indicator.
+	 */
+	public static ScalingAnalysis compute(Grammar g, LexerGrammar lg, String startRuleName,
+										  String text, Method method, int sizes, ProgressIndicator indicator)
+	{
+		Rule startRule = g.getRule(startRuleName);
+		if ( startRule==null ) {
+			throw new IllegalArgumentException("no rule "+startRuleName+" in "+g.name);
+		}
+		ATN atn = new ATNDeserializer().deserialize(ATNSerializer.getSerializedAsChars(g.getATN()));
+		List<String> inputs = scaledInputs(text, method, sizes, MAX_CHARS);
+		boolean capped = inputs.size()<sizes || text.length()>MAX_CHARS;
+		if ( method==Method.REPLICATE && inputs.size()<Math.min(sizes, MIN_SIZES) ) {
+			method = Method.PREFIX;
+			inputs = scaledInputs(text, method, sizes, MAX_CHARS);
+		}
+		if ( inputs.isEmpty() ) {
+			throw new IllegalArgumentException("no input to scale");
+		}
+		List<Sample> samples = new ArrayList<>();
+		// let the JIT compile the parse path first; the largest input does that best
+		new Run(g, lg, atn, startRule.index).parse(inputs.get(inputs.size()-1), false);
+		for (int i = 0; i<inputs.size(); i++) {
+			if ( indicator!=null ) {
+				indicator.checkCanceled();
+				indicator.setFraction(i/(double) inputs.size());
+				indicator.setText2("size "+(i+1)+" of "+inputs.size()+": "+inputs.get(i).length()+" chars");
+			}
+			String input = inputs.get(i);
+			double scale = method==Method.REPLICATE ? 1 << i : input.length()/(double) text.length();
+			samples.add(measure(g, lg, atn, startRule.index, scale, input));
+		}
+		return new ScalingAnalysis(g, startRuleName, method, capped, samples);
+	}
+
+	static List<String> scaledInputs(String text, Method method, int sizes) {
+		return scaledInputs(text, method, sizes, Integer.MAX_VALUE);
+	}
+
+	/** The inputs to parse, smallest first, none longer than maxChars: text
+	 *  replicated 2^i times while that fits, or the first 1/2^i of (the first
+	 *  maxChars of) text, cut after a line break where there is one.
+	 */
+	static List<String> scaledInputs(String text, Method method, int sizes, int maxChars) {
+		List<String> inputs = new ArrayList<>();
+		if ( method==Method.REPLICATE ) {
+			if ( text.length()>maxChars ) return inputs;
+			// separate copies so the last token of one doesn't run into the first of the next
+			String separator = text.endsWith("\n") ? "" : "\n";
+			StringBuilder buf = new StringBuilder(text);
+			int copies = 1;
+			inputs.add(text);
+			for (int i = 1; i<sizes; i++) {
+				long length = (long) (text.length()+separator.length())*(1 << i)-separator.length();
+				if ( length>maxChars ) break;
+				for (; copies<1 << i; copies++) {
+					buf.append(separator).append(text);
+				}
+				inputs.add(buf.toString());
+			}
+		}
+		else {
+			if ( text.length()>maxChars ) {
+				text = text.substring(0, cutAtLineBreak(text, maxChars));
+			}
+			for (int i = sizes-1; i>=0; i--) {
+				int cut = cutAtLineBreak(text, (int) (text.length()/(double) (1 << i)));
+				String prefix = text.substring(0, Math.max(0, cut));
+				if ( !prefix.isEmpty() && (inputs.isEmpty() || !prefix.equals(inputs.get(inputs.size()-1))) ) {
+					inputs.add(prefix);
+				}
+			}
+		}
+		return inputs;
+	}
+
+	/** cut moved back to just after the line break before it, if there is one */
+	private static int cutAtLineBreak(String text, int cut) {
+		if ( cut<text.length() ) {
+			int lineBreak = text.lastIndexOf('\n', cut-1);
+			if ( lineBreak>0 ) cut = lineBreak+1;
+		}
+		return cut;
+	}
+
+	private static Sample measure(Grammar g, LexerGrammar lg, ATN atn, int startRuleIndex, double scale, String input) {
+		Sample sample = new Sample(scale, input.length());
+		for (int run = 0; run<TIMED_RUNS; run++) {
+			Run r = new Run(g, lg, atn, startRuleIndex);
+			boolean counted = run==0;
+			r.parse(input, counted);
+			if ( r.failure!=null ) {
+				sample.failure = r.failure;
+				break;
+			}
+			sample.time = Math.min(sample.time, r.time);
+			if ( counted ) r.count(sample);
+		}
+		if ( sample.failure!=null ) sample.time = 0;
+		return sample;
+	}
+
+	/** One parse with its own lexer and parser */
+	private static class Run extends BaseErrorListener {
+		final LexerInterpreter lexer;
+		final PreviewParser parser;
+		final int startRuleIndex;
+		CompactTokenStream tokens;
+		int syntaxErrors;
+		long time;
+		long allocated = -1;
+		String failure;
+
+		Run(Grammar g, LexerGrammar lg, ATN atn, int startRuleIndex) {
+			lexer = lg.createLexerInterpreter(CharStreams.fromString(""));
+			lexer.removeErrorListeners();
+			lexer.addErrorListener(this);
+			tokens = new CompactTokenStream(lexer);
+			parser = new PreviewParser(g, atn, tokens);
+			parser.getInterpreter().setPredictionMode(PredictionMode.LL_EXACT_AMBIG_DETECTION);
+			parser.setProfile(true);
+			parser.removeErrorListeners();
+			parser.addErrorListener(this);
+			this.startRuleIndex = startRuleIndex;
+		}
+
+		void parse(String input, boolean countAllocation) {
+			lexer.setInputStream(CharStreams.fromString(input));
+			tokens = new CompactTokenStream(lexer);
+			parser.setInputStream(tokens);
+			long allocatedBefore = countAllocation ? allocatedBytes() : -1;
+			long start = System.nanoTime();
+			try {
+				parser.parse(startRuleIndex);
+			}
+			catch (ProcessCanceledException e) {
+				throw e;
+			}
+			catch (RuntimeException | StackOverflowError e) {
+				failure = e.toString();
+			}
+			time = System.nanoTime()-start;
+			if ( allocatedBefore>=0 ) {
+				long after = allocatedBytes();
+				allocated = after>=0 ? after-allocatedBefore : -1;
+			}
+		}
+
+		void count(Sample sample) {
+			sample.tokens = tokens.size();
+			sample.syntaxErrors = syntaxErrors;
+			sample.allocated = allocated;
+			DecisionInfo[] decisions = parser.getParseInfo().getDecisionInfo();
+			for (DecisionInfo info : decisions) {
+				sample.lookahead += info.SLL_TotalLook+info.LL_TotalLook;
+				sample.atnTransitions += info.SLL_ATNTransitions+info.LL_ATNTransitions;
+				sample.llFallbacks += info.LL_Fallback;
+				// the events keep this run's tokens alive
+				info.ambiguities.clear();
+				info.contextSensitivities.clear();
+				info.predicateEvals.clear();
+				info.errors.clear();
+				info.SLL_MaxLookEvent = null;
+				info.LL_MaxLookEvent = null;
+			}
+			sample.decisions = decisions;
+			PredictionMemoryInfo memory = PredictionMemoryInfo.of(parser);
+			if ( memory!=null ) {
+				sample.dfaStates = memory.getTotalDFAStates();
+				sample.dfaConfigs = memory.getTotalDFAConfigs();
+			}
+		}
+
+		@Override
+		public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
+								int line, int charPositionInLine, String msg, RecognitionException e)
+		{
+			syntaxErrors++;
+		}
+	}
+
+	/** Bytes allocated by this thread so far, -1 if the JVM can't tell */
+	private static long allocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if ( bean instanceof com.sun.management.ThreadMXBean ) {
+			com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+			if ( sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled() ) {
+				return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+
+	private static List<DecisionTrend> findGrowingDecisions(int numberOfDecisions, List<Sample> parsed, double[] tokens) {
+		List<DecisionTrend> trends = new ArrayList<>();
+		int n = parsed.size();
+		for (int d = 0; d<numberOfDecisions; d++) {
+			double[] perPrediction = new double[n];
+			double[] maxLook = new double[n];
+			for (int i = 0; i<n; i++) {
+				DecisionInfo info = parsed.get(i).decisions[d];
+				perPrediction[i] = info.invocations>0 ? (info.SLL_TotalLook+info.LL_TotalLook)/(double) info.invocations : 0;
+				maxLook[i] = Math.max(info.SLL_MaxLook, info.LL_MaxLook);
+			}
+			double lookExponent = fitExponent(tokens, perPrediction);
+			double maxExponent = fitExponent(tokens, maxLook);
+			boolean growing = lookExponent>=GROWING_LOOKAHEAD_EXPONENT || maxExponent>=GROWING_MAX_LOOKAHEAD_EXPONENT;
+			if ( growing ) {
+				trends.add(new DecisionTrend(d, lookExponent, maxExponent,
+											 perPrediction[0], perPrediction[n-1],
+											 (long) maxLook[0], (long) maxLook[n-1]));
+			}
+		}
+		trends.sort((a, b) -> Double.compare(growth(b), growth(a)));
+		return trends;
+	}
+
+	private static double growth(DecisionTrend t) {
+		return Math.max(nanToZero(t.lookaheadExponent), nanToZero(t.maxLookaheadExponent));
+	}
+
+	private static double nanToZero(double v) {
+		return Double.isNaN(v) ? 0 : v;
+	}
+
+	/** b of y = a*x^b fit by least squares on log-log over the points where
+	 *  both are positive; NaN with fewer than two such points of distinct x.
+	 */
+	static double fitExponent(double[] x, double[] y) {
+		int n = 0;
+		double sx = 0, sy = 0, sxx = 0, sxy = 0;
+		for (int i = 0; i<x.length; i++) {
+			if ( x[i]<=0 || y[i]<=0 ) continue;
+			double lx = Math.log(x[i]);
+			double ly = Math.log(y[i]);
+			n++;
+			sx += lx;
+			sy += ly;
+			sxx += lx*lx;
+			sxy += lx*ly;
+		}
+		double denominator = n*sxx-sx*sx;
+		if ( n<2 || denominator<=1e-12 ) return Double.NaN;
+		return (n*sxy-sx*sy)/denominator;
+	}
+
+	/** Like {@link #fitExponent} but of the growth over the smallest size,
+	 *  y-y[0] against x-x[0], which leaves out what a parse costs whatever
+	 *  its size (setting up, warming the DFA...): that would flatten the
+	 *  curve and hide super-linear growth at small sizes. Needs 3 sizes.
+	 */
+	static double fitGrowthExponent(double[] x, double[] y) {
+		if ( x.length<3 ) return fitExponent(x, y);
+		double[] dx = new double[x.length-1];
+		double[] dy = new double[y.length-1];
+		for (int i = 1; i<x.length; i++) {
+			dx[i-1] = x[i]-x[0];
+			dy[i-1] = y[i]-y[0];
+		}
+		return fitExponent(dx, dy);
+	}
+
+	/** "linear", "sub-linear" or "super-linear (n^1.8)"; "?" if it couldn't be fit */
+	public static String describeGrowth(double exponent) {
+		if ( Double.isNaN(exponent) ) return "?";
+		if ( exponent>LINEAR_EXPONENT ) return String.format("super-linear (n^%.2f)", exponent);
+		if ( exponent<0.85 ) return String.format("sub-linear (n^%.2f)", exponent);
+		return String.format("linear (n^%.2f)", exponent);
+	}
+
+	public Sample getLargestSample() {
+		for (int i = samples.size()-1; i>=0; i--) {
+			if ( samples.get(i).failure==null ) return samples.get(i);
+		}
+		return null;
+	}
+}
@@ -0,0 +1,215 @@
+package org.antlr.intellij.plugin.profiler;
+
+import com.intellij.openapi.ui.Splitter;
+import com.intellij.ui.components.JBLabel;
+import com.intellij.ui.components.JBScrollPane;
+import com.intellij.ui.table.JBTable;
+import org.antlr.v4.runtime.atn.DecisionState;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableModel;
+import javax.swing.table.TableRowSorter;
+import java.awt.*;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.function.IntConsumer;
+
+/** Shows the last {@link ScalingAnalysis} of a grammar: the fitted growth
+ *  above, one row per input size in the middle, decisions whose lookahead
+ *  grows with the input below.
+ */
+public class ScalingPanel extends JPanel {
+	private static final String NO_ANALYSIS = "Run 'Analyze Grammar Scaling' on a grammar";
+
+	private final JBLabel summaryLabel = new JBLabel(NO_ANALYSIS);
+	private final JBTable sampleTable = new JBTable();
+	private final JBTable decisionTable = new JBTable();
+
+	public ScalingPanel(IntConsumer selectDecision) {
+		super(new BorderLayout());
+		add(summaryLabel, BorderLayout.NORTH);
+		Splitter splitter = new Splitter(true, 0.4f);
+		splitter.setFirstComponent(new JBScrollPane(sampleTable));
+		splitter.setSecondComponent(new JBScrollPane(decisionTable));
+		add(splitter, BorderLayout.CENTER);
+
+		decisionTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		decisionTable.getSelectionModel().addListSelectionListener(e -> {
+			int row = decisionTable.getSelectedRow();
+			if ( e.getValueIsAdjusting() || row==-1 ) return;
+			if ( decisionTable.getModel() instanceof DecisionTableModel ) {
+				DecisionTableModel model = (DecisionTableModel) decisionTable.getModel();
+				selectDecision.accept(model.analysis.growingDecisions.get(decisionTable.convertRowIndexToModel(row)).decision);
+			}
+		});
+	}
+
+	/** Show analysis, null to clear */
+	public void setAnalysis(ScalingAnalysis analysis) {
+		if ( analysis==null ) {
+			summaryLabel.setText(NO_ANALYSIS);
+			sampleTable.setModel(new DefaultTableModel());
+			decisionTable.setModel(new DefaultTableModel());
+			return;
+		}
+		int failed = 0;
+		for (ScalingAnalysis.Sample s : analysis.samples) {
+			if ( s.failure!=null ) failed++;
+		}
+		summaryLabel.setText(String.format(
+			"<html>%s from %s, %s: time grows %s, lookahead %s, allocation %s; "+
+			"%d decisions with growing lookahead%s%s</html>",
+			analysis.g.name, analysis.startRuleName, analysis.method.toString().toLowerCase(),
+			ScalingAnalysis.describeGrowth(analysis.timeExponent),
+			ScalingAnalysis.describeGrowth(analysis.lookaheadExponent),
+			ScalingAnalysis.describeGrowth(analysis.allocationExponent),
+			analysis.growingDecisions.size(),
+			failed>0 ? "; "+failed+" sizes failed to parse" : "",
+			analysis.capped ? "; sizes capped at "+ScalingAnalysis.MAX_CHARS+" chars" : ""));
+
+		SampleTableModel samples = new SampleTableModel(analysis);
+		sampleTable.setModel(samples);
+		sampleTable.setRowSorter(new TableRowSorter<AbstractTableModel>(samples));
+
+		DecisionTableModel decisions = new DecisionTableModel(analysis);
+		decisionTable.setModel(decisions);
+		decisionTable.setRowSorter(new TableRowSorter<AbstractTableModel>(decisions));
+	}
+
+	/** One row per input size, smallest first */
+	static class SampleTableModel extends AbstractTableModel {
+		private static final String[] columnNames = {
+			"Scale", "Chars", "Tokens", "Time", "Time/token", "Lookahead", "ATN transitions",
+			"Full LL", "DFA states", "Allocated KB", "Syntax errors", "Failure"
+		};
+		private static final Class<?>[] columnClasses = {
+			String.class, Integer.class, Integer.class, Double.class, Double.class, Long.class, Long.class,
+			Long.class, Long.class, Long.class, Integer.class, String.class
+		};
+
+		final ScalingAnalysis analysis;
+
+		SampleTableModel(ScalingAnalysis analysis) {
+			this.analysis = analysis;
+		}
+
+		@Override
+		public String getColumnName(int column) {
+			return columnNames[column];
+		}
+
+		@Override
+		public Class<?> getColumnClass(int columnIndex) {
+			return columnClasses[columnIndex];
+		}
+
+		@Override
+		public int getColumnCount() {
+			return columnNames.length;
+		}
+
+		@Override
+		public int getRowCount() {
+			return analysis.samples.size();
+		}
+
+		@Override
+		public Object getValueAt(int row, int col) {
+			ScalingAnalysis.Sample s = analysis.samples.get(row);
+			switch (col) {
+				case 0 :
+					NumberFormat formatter = new DecimalFormat("#.###");
+					return analysis.method==ScalingAnalysis.Method.REPLICATE ?
+						formatter.format(s.scale)+"x" : formatter.format(s.scale*100)+"%";
+				case 1 :
+					return s.chars;
+				case 2 :
+					return s.tokens;
+				case 3 :
+					return Math.round(s.time/1000.0)/1000.0;
+				case 4 : // us
+					return s.tokens>0 ? Math.round(s.time/(double) s.tokens)/1000.0 : 0.0;
+				case 5 :
+					return s.lookahead;
+				case 6 :
+					return s.atnTransitions;
+				case 7 :
+					return s.llFallbacks;
+				case 8 :
+					return s.dfaStates;
+				case 9 :
+					return s.allocated>=0 ? s.allocated/1024 : null;
+				case 10 :
+					return s.syntaxErrors;
+				case 11 :
+					return s.failure;
+			}
+			return "";
+		}
+	}
+
+	/** Decisions whose lookahead grows with the input, fastest growing first */
+	static class DecisionTableModel extends AbstractTableModel {
+		private static final String[] columnNames = {
+			"Rule", "Decision", "Lookahead growth", "Max lookahead growth",
+			"Lookahead/prediction", "Max lookahead"
+		};
+		private static final Class<?>[] columnClasses = {
+			String.class, Integer.class, Double.class, Double.class, String.class, String.class
+		};
+
+		final ScalingAnalysis analysis;
+
+		DecisionTableModel(ScalingAnalysis analysis) {
+			this.analysis = analysis;
+		}
+
+		@Override
+		public String getColumnName(int column) {
+			return columnNames[column];
+		}
+
+		@Override
+		public Class<?> getColumnClass(int columnIndex) {
+			return columnClasses[columnIndex];
+		}
+
+		@Override
+		public int getColumnCount() {
+			return columnNames.length;
+		}
+
+		@Override
+		public int getRowCount() {
+			return analysis.growingDecisions.size();
+		}
+
+		@Override
+		public Object getValueAt(int row, int col) {
+			ScalingAnalysis.DecisionTrend t = analysis.growingDecisions.get(row);
+			NumberFormat formatter = new DecimalFormat("#.##");
+			switch (col) {
+				case 0 :
+					DecisionState state = analysis.g.atn.getDecisionState(t.decision);
+					return analysis.g.getRule(state.ruleIndex).name;
+				case 1 :
+					return t.decision;
+				case 2 :
+					return exponent(t.lookaheadExponent);
+				case 3 :
+					return exponent(t.maxLookaheadExponent);
+				case 4 :
+					return formatter.format(t.firstLookahead)+" -> "+formatter.format(t.lastLookahead);
+				case 5 :
+					return t.firstMaxLookahead+" -> "+t.lastMaxLookahead;
+			}
+			return "";
+		}
+
+		/** The b of n^b rounded, null if it couldn't be fit */
+		private static Double exponent(double b) {
+			return Double.isNaN(b) ? null : Math.round(b*100)/100.0;
+		}
+	}
+}
@@ -0,0 +1,180 @@
+package org.antlr.intellij.plugin.profiler;
+
+import com.intellij.ui.JBColor;
+import com.intellij.util.ui.JBUI;
+import com.intellij.util.ui.UIUtil;
+import org.antlr.intellij.plugin.parsing.PreviewTimings;
+import org.antlr.intellij.plugin.parsing.PreviewTimings.Stage;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseEvent;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/** The {@link PreviewTimings} of the last preview updates as stacked bars,
+ *  oldest left, under a legend with the last update's time per stage and
+ *  the average over the history. Later stages (layout, painting) fill in
+ *  as they happen. EDT only.
+ */
+public class StageTimingsChart extends JComponent {
+	public static final int HISTORY_SIZE = 60;
+
+	private static final int LEGEND_ROW_HEIGHT = 16;
+	private static final int CHART_HEIGHT = 80;
+	private static final int BAR_WIDTH = 4;
+
+	private static final Color[] STAGE_COLORS = {
+		new JBColor(new Color(0x9E9E9E), new Color(0x8A8A8A)), // snapshot
+		new JBColor(new Color(0x80CBC4), new Color(0x4DB6AC)), // char stream
+		new JBColor(new Color(0x4FC3F7), new Color(0x0288D1)), // lexing
+		new JBColor(new Color(0x1565C0), new Color(0x5C8FD6)), // parsing
+		new JBColor(new Color(0xAED581), new Color(0x7CB342)), // tree building
+		new JBColor(new Color(0xE57373), new Color(0xC62828)), // error highlighting
+		new JBColor(new Color(0xBA68C8), new Color(0x8E24AA)), // profiling
+		new JBColor(new Color(0xFFB74D), new Color(0xEF6C00)), // tree layout
+		new JBColor(new Color(0xFFF176), new Color(0xF9A825)), // painting
+	};
+
+	private final Deque<PreviewTimings> history = new ArrayDeque<>();
+
+	public StageTimingsChart() {
+		setToolTipText(""); // enable tooltips; text comes from getToolTipText(MouseEvent)
+		setPreferredSize(new Dimension(JBUI.scale(260), legendHeight()+JBUI.scale(CHART_HEIGHT)));
+	}
+
+	/** Add the timings of an update, dropping the oldest if the history is full */
+	public void add(PreviewTimings timings) {
+		history.addLast(timings);
+		while ( history.size()>HISTORY_SIZE ) {
+			history.removeFirst();
+		}
+		repaint();
+	}
+
+	public void clear() {
+		history.clear();
+		repaint();
+	}
+
+	public PreviewTimings getLast() {
+		return history.peekLast();
+	}
+
+	/** Average time of stage over the updates that measured it, -1 if none did */
+	public long getAverage(Stage stage) {
+		long sum = 0;
+		int n = 0;
+		for (PreviewTimings t : history) {
+			if ( t.isMeasured(stage) ) {
+				sum += t.get(stage);
+				n++;
+			}
+		}
+		return n>0 ? sum/n : -1;
+	}
+
+	private int legendHeight() {
+		return JBUI.scale(LEGEND_ROW_HEIGHT)*(Stage.values().length+1);
+	}
+
+	@Override
+	protected void paintComponent(Graphics g) {
+		super.paintComponent(g);
+		Graphics2D g2 = (Graphics2D) g;
+		UIUtil.applyRenderingHints(g2);
+		g2.setFont(UIUtil.getLabelFont(UIUtil.FontSize.SMALL));
+		FontMetrics m = g2.getFontMetrics();
+		int row = JBUI.scale(LEGEND_ROW_HEIGHT);
+		int swatch = m.getAscent()-2;
+		int valueColumn = getWidth()-JBUI.scale(110);
+		int averageColumn = getWidth()-JBUI.scale(55);
+		PreviewTimings last = getLast();
+
+		g2.setColor(UIUtil.getLabelDisabledForeground());
+		g2.drawString("Stage", 0, m.getAscent());
+		g2.drawString("Last ms", valueColumn, m.getAscent());
+		g2.drawString("Avg ms", averageColumn, m.getAscent());
+		Stage[] stages = Stage.values();
+		for (int i = 0; i<stages.length; i++) {
+			int y = row*(i+1);
+			g2.setColor(STAGE_COLORS[i]);
+			g2.fillRect(0, y+(row-swatch)/2, swatch, swatch);
+			g2.setColor(UIUtil.getLabelForeground());
+			g2.drawString(stages[i].label, swatch+4, y+m.getAscent());
+			g2.drawString(last!=null ? ms(last.get(stages[i])) : "", valueColumn, y+m.getAscent());
+			g2.drawString(ms(getAverage(stages[i])), averageColumn, y+m.getAscent());
+		}
+
+		int top = legendHeight();
+		int height = getHeight()-top-1;
+		long max = 0;
+		for (PreviewTimings t : history) {
+			max = Math.max(max, t.getTotal());
+		}
+		g2.setColor(UIUtil.getBoundsColor());
+		g2.drawLine(0, top+height, getWidth(), top+height);
+		if ( max==0 || height<=0 ) return;
+		int barWidth = JBUI.scale(BAR_WIDTH);
+		int x = getWidth()-barWidth*history.size();
+		for (PreviewTimings t : history) {
+			int bottom = top+height;
+			long cumulative = 0;
+			for (int i = 0; i<stages.length; i++) {
+				if ( !t.isMeasured(stages[i]) ) continue;
+				cumulative += t.get(stages[i]);
+				int y = top+height-(int) (cumulative*height/max);
+				if ( y<bottom ) {
+					g2.setColor(STAGE_COLORS[i]);
+					g2.fillRect(x, y, barWidth-1, bottom-y);
+					bottom = y;
+				}
+			}
+			x += barWidth;
+		}
+		g2.setColor(UIUtil.getLabelDisabledForeground());
+		g2.drawString(ms(max)+" ms", 0, top+m.getAscent());
+	}
+
+	@Override
+	public String getToolTipText(MouseEvent e) {
+		if ( e.getY()<legendHeight() ) {
+			int i = e.getY()/JBUI.scale(LEGEND_ROW_HEIGHT)-1;
+			return i>=0 && i<Stage.values().length ? Stage.values()[i].description : null;
+		}
+		int barWidth = JBUI.scale(BAR_WIDTH);
+		int index = history.size()-1-(getWidth()-1-e.getX())/barWidth;
+		if ( index<0 || index>=history.size() ) return null;
+		PreviewTimings t = new ArrayList<>(history).get(index);
+		StringBuilder buf = new StringBuilder("<html>");
+		buf.append(history.size()-index==1 ? "Last update" : (history.size()-1-index)+" updates ago");
+		buf.append(": ").append(ms(t.getTotal())).append(" ms");
+		for (Stage stage : Stage.values()) {
+			if ( t.isMeasured(stage) ) {
+				buf.append("<br>").append(stage.label).append(": ").append(ms(t.get(stage))).append(" ms");
+			}
+		}
+		return buf.append("</html>").toString();
+	}
+
+	/** ns as ms with microsecond precision; "-" if not measured */
+	static String ms(long ns) {
+		if ( ns<0 ) return "-";
+		NumberFormat formatter = new DecimalFormat("#.###");
+		return formatter.format(ns/(1000.0*1000.0));
+	}
+
+	/** The last update's measured stages, slowest first, for a one-line summary */
+	public static List<Stage> slowestStages(PreviewTimings timings, int n) {
+		List<Stage> stages = new ArrayList<>();
+		for (Stage stage : Stage.values()) {
+			if ( timings.isMeasured(stage) ) stages.add(stage);
+		}
+		stages.sort((a, b) -> Long.compare(timings.get(b), timings.get(a)));
+		return stages.subList(0, Math.min(n, stages.size()));
+	}
+}
@@ -9,6 +9,8 @@ import com.intellij.psi.util.PsiTreeUtil;
 import com.intellij.util.IncorrectOperationException;
 import org.antlr.intellij.plugin.ANTLRv4FileRoot;
 import org.antlr.intellij.plugin.ANTLRv4TokenTypes;
+import org.antlr.intellij.plugin.metrics.Metrics;
+import org.antlr.intellij.plugin.metrics.Timer;
 import org.antlr.intellij.plugin.parser.ANTLRv4Lexer;
 import org.antlr.intellij.plugin.resolve.ImportResolver;
 import org.antlr.intellij.plugin.resolve.TokenVocabResolver;
@@ -21,6 +23,8 @@ import java.util.Collection;
  * A reference to a grammar element (parser rule, lexer rule or lexical mode).
  */
 public class GrammarElementRef extends PsiReferenceBase<GrammarElementRefNode> {
+	private static final Timer RESOLVE_TIMER =
+		Metrics.timer("psi.resolve", "Resolving a rule or token reference in a grammar");
 
 	private String ruleName;
 
@@ -77,6 +81,17 @@ public class GrammarElementRef extends PsiReferenceBase<GrammarElementRefNode> {
 	@Nullable
 	@Override
 	public PsiElement resolve() {
+		long start = System.nanoTime();
+		try {
+			return doResolve();
+		}
+		finally {
+			RESOLVE_TIMER.record(System.nanoTime()-start);
+		}
+	}
+
+	@Nullable
+	private PsiElement doResolve() {
 		PsiFile tokenVocabFile = TokenVocabResolver.resolveTokenVocabFile(getElement());
 
 		if (tokenVocabFile != null) {
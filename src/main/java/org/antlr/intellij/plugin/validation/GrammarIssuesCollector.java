@@ -4,6 +4,11 @@ import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiFile;
+import org.antlr.intellij.plugin.metrics.Metrics;
+import org.antlr.intellij.plugin.metrics.Timer;
+import org.antlr.intellij.plugin.parsing.AnalysisCachingTool;
+import org.antlr.intellij.plugin.parsing.GrammarAnalysisCache;
+import org.antlr.intellij.plugin.parsing.ImportedGrammarCache;
 import org.antlr.intellij.plugin.parsing.RunANTLROnGrammarFile;
 import org.antlr.runtime.ANTLRReaderStream;
 import org.antlr.runtime.Token;
@@ -28,7 +33,20 @@ public class GrammarIssuesCollector {
 
     public static final Logger LOG = Logger.getInstance(GrammarIssuesCollector.class.getName());
 
+    private static final Timer COLLECT_ISSUES_TIMER =
+            Metrics.timer("grammar.issues", "Running the ANTLR tool on a grammar to annotate its errors and warnings");
+
     public static List<GrammarIssue> collectGrammarIssues(PsiFile file) {
+        long start = System.nanoTime();
+        try {
+            return doCollectGrammarIssues(file);
+        }
+        finally {
+            COLLECT_ISSUES_TIMER.record(System.nanoTime()-start);
+        }
+    }
+
+    private static List<GrammarIssue> doCollectGrammarIssues(PsiFile file) {
         String grammarFileName = file.getVirtualFile().getPath();
         LOG.info("doAnnotate "+grammarFileName);
         String fileContents = file.getText();
@@ -49,7 +67,9 @@ public class GrammarIssuesCollector {
             }
         }
 
-        final Tool antlr = new Tool(args.toArray(new String[args.size()]));
+        GrammarAnalysisCache cache = GrammarAnalysisCache.getInstance(file.getProject());
+        final Tool antlr = new AnalysisCachingTool(cache, ImportedGrammarCache.getInstance(),
+                                                   args.toArray(new String[args.size()]));
         if ( !args.contains("-lib") ) {
             // getContainingDirectory() must be identified as a read operation on file system
             ApplicationManager.getApplication().runReadAction(new Runnable() {
@@ -4,6 +4,9 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 public class ANTLRv4GrammarPropertiesTest {
 
     private static final String QUAL_FILE_NAME = "file";
@@ -62,4 +65,30 @@ public class ANTLRv4GrammarPropertiesTest {
         Assert.assertEquals(DEFAULT_VALUE, propertyValueForFile);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void shouldParseAdditionalTargetsWithAndWithoutOutputDir() {
+        // given:
+        ANTLRv4GrammarProperties fileProps = new ANTLRv4GrammarProperties();
+        fileProps.additionalTargets = " Python3=gen/python , Go,, Cpp= ";
+
+        // when:
+        Map<String, String> targets = fileProps.getAdditionalTargetOutputDirs();
+
+        // then:
+        Map<String, String> expected = new LinkedHashMap<>();
+        expected.put("Python3", "gen/python");
+        expected.put("Go", "");
+        expected.put("Cpp", "");
+        Assert.assertEquals(expected, targets);
+    }
+
+    @Test
+    public void shouldHaveNoAdditionalTargetsByDefault() {
+        // when:
+        Map<String, String> targets = propertiesStore.getGrammarProperties(QUAL_FILE_NAME).getAdditionalTargetOutputDirs();
+
+        // then:
+        Assert.assertTrue(targets.isEmpty());
+    }
+
+}
@@ -15,6 +15,7 @@ public class ConfigANTLRPerGrammarTest {
     private static final String DEFAULT_LIBRARY = "DefaultLibrary";
     private static final String DEFAULT_PACKAGE = "DefaultPackage";
     private static final String DEFAULT_LANGUAGE = "DefaultLanguage";
+    private static final String DEFAULT_ADDITIONAL_TARGETS = "Python3";
 
     private ANTLRv4GrammarProperties originalProperties;
     private ConfigANTLRPerGrammar form;
@@ -32,6 +33,7 @@ public class ConfigANTLRPerGrammarTest {
         doReturn(DEFAULT_LIBRARY).when(form).getLibDirText();
         doReturn(DEFAULT_PACKAGE).when(form).getPackageFieldText();
         doReturn(DEFAULT_LANGUAGE).when(form).getLanguageText();
+        doReturn(DEFAULT_ADDITIONAL_TARGETS).when(form).getAdditionalTargetsText();
         return form;
     }
 
@@ -43,6 +45,7 @@ public class ConfigANTLRPerGrammarTest {
         properties.libDir = DEFAULT_LIBRARY;
         properties.pkg = DEFAULT_PACKAGE;
         properties.language = DEFAULT_LANGUAGE;
+        properties.additionalTargets = DEFAULT_ADDITIONAL_TARGETS;
 
         return properties;
     }
@@ -91,4 +94,13 @@ public class ConfigANTLRPerGrammarTest {
         // then:
         Assert.assertTrue(form.isModified(originalProperties));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldDetectModifiedAdditionalTargets() {
+        // given:
+        when(form.getAdditionalTargetsText()).thenReturn("Python3, Go");
+
+        // then:
+        Assert.assertTrue(form.isModified(originalProperties));
+    }
+}
@@ -0,0 +1,59 @@
+package org.antlr.intellij.plugin.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TimerTest {
+
+	@Test
+	public void shouldPutEveryValueInTheBucketItIsBoundedBy() {
+		long[] values = {0, 1, 7, 8, 9, 15, 16, 17, 1000, 123456789, Long.MAX_VALUE/2, Long.MAX_VALUE};
+		for (long value : values) {
+			int bucket = Timer.bucket(value);
+			Assert.assertTrue(bucket>=0 && bucket<Timer.BUCKETS);
+			Assert.assertTrue(value<=Timer.bucketUpperBound(bucket));
+			if ( bucket>0 ) {
+				Assert.assertTrue(value>Timer.bucketUpperBound(bucket-1));
+			}
+		}
+	}
+
+	@Test
+	public void shouldReportPercentilesWithinAnEighth() {
+		// given:
+		Timer timer = new Timer("test", "");
+
+		// when:
+		for (int i = 1; i<=1000; i++) {
+			timer.record(i*1000L);
+		}
+
+		// then:
+		Assert.assertEquals(1000, timer.getCount());
+		Assert.assertEquals(1000000L, timer.getMax());
+		assertWithinAnEighth(500000, timer.getPercentile(0.5));
+		assertWithinAnEighth(900000, timer.getPercentile(0.9));
+		assertWithinAnEighth(990000, timer.getPercentile(0.99));
+		Assert.assertEquals(1000000L, timer.getPercentile(1));
+	}
+
+	@Test
+	public void shouldForgetEverythingOnReset() {
+		// given:
+		Timer timer = new Timer("test", "");
+		timer.record(42);
+
+		// when:
+		timer.reset();
+
+		// then:
+		Assert.assertEquals(0, timer.getCount());
+		Assert.assertEquals(0, timer.getTotal());
+		Assert.assertEquals(0, timer.getPercentile(0.5));
+	}
+
+	private static void assertWithinAnEighth(long expected, long actual) {
+		Assert.assertTrue(actual+" is not within 1/8 of "+expected,
+						  actual>=expected && actual<=expected+expected/8);
+	}
+}
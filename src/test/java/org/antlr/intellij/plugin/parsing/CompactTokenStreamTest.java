@@ -0,0 +1,80 @@
+package org.antlr.intellij.plugin.parsing;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.LexerInterpreter;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import org.antlr.v4.runtime.tree.Trees;
+import org.antlr.v4.tool.Grammar;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class CompactTokenStreamTest {
+
+	private static final String GRAMMAR =
+		"grammar T;\n" +
+		"s : (e | .)+? EOF ;\n" +
+		"e : ID '=' (INT | e) ';' | '(' e ')' ;\n" +
+		"ID : [a-z]+ ;\n" +
+		"INT : [0-9]+ ;\n" +
+		"COMMENT : '#' ~[\\n]* -> channel(HIDDEN) ;\n" +
+		"WS : [ \\n]+ -> skip ;\n" +
+		"PERCENT : '%' -> more ;\n" +
+		"BANG : '!' ;\n";
+
+	@Test
+	public void shouldLexAndParseLikeCommonTokenStream() throws Exception {
+		// given:
+		Grammar g = new Grammar(GRAMMAR);
+		String input = "x=1; #c\n y = ; 7 ( z=%%!; ) %! q=2 #t";
+
+		// when:
+		List<String> expected = parse(g, input, false);
+		List<String> actual = parse(g, input, true);
+
+		// then:
+		Assert.assertEquals(expected, actual);
+	}
+
+	@Test
+	public void shouldFindParseTreeNodesOfTokens() throws Exception {
+		// given:
+		Grammar g = new Grammar(GRAMMAR);
+		CommonTokenStream tokens = new CompactTokenStream(g.implicitLexer.createLexerInterpreter(CharStreams.fromString("x=1; y=(z=2;);")));
+		ParserRuleContext tree = new PreviewParser(g, tokens).parse(g.getRule("s").index);
+
+		// when:
+		Token y = tokens.get(4);
+		ParseTree node = ParsingUtils.getParseTreeNodeWithToken(tree, y);
+
+		// then:
+		Assert.assertNotNull(node);
+		Assert.assertEquals("y", node.getText());
+		Assert.assertEquals(y, ((TerminalNode)node).getSymbol());
+		Assert.assertEquals(ParsingUtils.getTokenUnderCursor(tokens, 5), y);
+	}
+
+	private static List<String> parse(Grammar g, String input, boolean compact) {
+		LexerInterpreter lexer = g.implicitLexer.createLexerInterpreter(CharStreams.fromString(input));
+		lexer.removeErrorListeners();
+		CommonTokenStream tokens = compact ? new CompactTokenStream(lexer) : new CommonTokenStream(lexer);
+		PreviewParser parser = new PreviewParser(g, tokens);
+		parser.removeErrorListeners();
+		ParserRuleContext tree = parser.parse(g.getRule("s").index);
+
+		List<String> result = new ArrayList<>();
+		result.add(Trees.toStringTree(tree, parser));
+		for (Token t : tokens.getTokens()) {
+			result.add(t+" "+parser.getMatchingState(t));
+		}
+		result.add(tokens.getText());
+		result.add(String.valueOf(tokens.getNumberOfOnChannelTokens()));
+		return result;
+	}
+}
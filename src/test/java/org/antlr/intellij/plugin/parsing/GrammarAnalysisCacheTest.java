@@ -0,0 +1,91 @@
+package org.antlr.intellij.plugin.parsing;
+
+import org.antlr.v4.runtime.atn.ATNSerializer;
+import org.antlr.v4.tool.Grammar;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+public class GrammarAnalysisCacheTest {
+
+	private static final String GRAMMAR =
+		"grammar Expr;\n" +
+		"s : e+ EOF ;\n" +
+		"e : e '*' e | e '+' e | INT | '(' e ')' ;\n" +
+		"INT : [0-9]+ ;\n" +
+		"WS : [ \\n]+ -> skip ;\n";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private GrammarAnalysisCache cache;
+	private File grammarFile;
+
+	@Before
+	public void setUp() throws IOException {
+		cache = new GrammarAnalysisCache(folder.newFolder("cache"));
+		grammarFile = folder.newFile("Expr.g4");
+	}
+
+	@Test
+	public void shouldReuseATNOfUnchangedGrammar() throws IOException {
+		// given:
+		write(grammarFile, GRAMMAR);
+		Grammar analyzed = new AnalysisCachingTool(cache).loadGrammar(grammarFile.getPath());
+
+		// when:
+		Grammar cached = new AnalysisCachingTool(cache).loadGrammar(grammarFile.getPath());
+
+		// then:
+		Assert.assertEquals(2, cache.getHitCount()); // parser and implicit lexer
+		Assert.assertArrayEquals(ATNSerializer.getSerializedAsChars(analyzed.atn),
+								 ATNSerializer.getSerializedAsChars(cached.atn));
+		Assert.assertArrayEquals(ATNSerializer.getSerializedAsChars(analyzed.implicitLexer.atn),
+								 ATNSerializer.getSerializedAsChars(cached.implicitLexer.atn));
+		int decisionState = cached.atn.getDecisionState(1).stateNumber;
+		Assert.assertEquals(analyzed.getStateToGrammarRegion(decisionState),
+							cached.getStateToGrammarRegion(decisionState));
+	}
+
+	@Test
+	public void shouldReanalyzeChangedGrammar() throws IOException {
+		// given:
+		write(grammarFile, GRAMMAR);
+		new AnalysisCachingTool(cache).loadGrammar(grammarFile.getPath());
+
+		// when:
+		write(grammarFile, GRAMMAR.replace("| INT", "| INT | '-' e"));
+		Grammar g = new AnalysisCachingTool(cache).loadGrammar(grammarFile.getPath());
+
+		// then:
+		Assert.assertEquals(0, cache.getHitCount());
+		Assert.assertEquals(4, cache.getMissCount());
+		Assert.assertNotNull(g.atn);
+	}
+
+	@Test
+	public void shouldNotCacheGrammarWithAnalysisErrors() throws IOException {
+		// given:
+		write(grammarFile, "grammar Expr;\ns : e EOF ;\ne : ('a'?)* ;\n");
+		new AnalysisCachingTool(cache).loadGrammar(grammarFile.getPath());
+
+		// when:
+		new AnalysisCachingTool(cache).loadGrammar(grammarFile.getPath());
+
+		// then: the implicit lexer is fine, the parser's closure on an optional block is not
+		Assert.assertEquals(1, cache.getHitCount());
+	}
+
+	private static void write(File f, String text) throws IOException {
+		try (Writer w = new FileWriter(f)) {
+			w.write(text);
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package org.antlr.intellij.plugin.parsing;
+
+import org.antlr.v4.tool.Grammar;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+public class ImportedGrammarCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ImportedGrammarCache importCache;
+	private File mainFile;
+	private File importedFile;
+
+	@Before
+	public void setUp() throws IOException {
+		importCache = new ImportedGrammarCache();
+		mainFile = folder.newFile("Main.g4");
+		importedFile = folder.newFile("Common.g4");
+		write(mainFile, "grammar Main;\nimport Common;\ns : ID+ EOF ;\n");
+		write(importedFile, "grammar Common;\nID : [a-z]+ ;\nWS : ' '+ -> skip ;\n");
+	}
+
+	@Test
+	public void shouldParseImportedGrammarOnce() {
+		// given:
+		load();
+
+		// when:
+		Grammar g = load();
+
+		// then:
+		Assert.assertEquals(1, importCache.getMissCount());
+		Assert.assertEquals(1, importCache.getHitCount());
+		Assert.assertNotNull(g.getRule("s"));
+		Assert.assertNotNull(g.implicitLexer.getRule("ID"));
+	}
+
+	@Test
+	public void shouldReparseChangedImportedGrammar() throws IOException {
+		// given:
+		load();
+
+		// when:
+		write(importedFile, "grammar Common;\nID : [a-zA-Z]+ ;\nINT : [0-9]+ ;\nWS : ' '+ -> skip ;\n");
+		importedFile.setLastModified(importedFile.lastModified()+2000);
+		Grammar g = load();
+
+		// then:
+		Assert.assertEquals(2, importCache.getMissCount());
+		Assert.assertNotNull(g.implicitLexer.getRule("INT"));
+	}
+
+	@Test
+	public void shouldNotCacheImportedGrammarWithSyntaxErrors() throws IOException {
+		// given:
+		write(importedFile, "grammar Common;\nID : [a-z]+ \n");
+		load();
+
+		// when:
+		load();
+
+		// then:
+		Assert.assertEquals(0, importCache.getHitCount());
+		Assert.assertEquals(2, importCache.getMissCount());
+	}
+
+	private Grammar load() {
+		AnalysisCachingTool tool = new AnalysisCachingTool(null, importCache, null);
+		return tool.loadGrammar(mainFile.getPath());
+	}
+
+	private static void write(File f, String text) throws IOException {
+		try (Writer w = new FileWriter(f)) {
+			w.write(text);
+		}
+	}
+}
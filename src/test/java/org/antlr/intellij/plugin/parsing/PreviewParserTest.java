@@ -0,0 +1,114 @@
+package org.antlr.intellij.plugin.parsing;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.atn.ATNState;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.tool.Grammar;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PreviewParserTest {
+
+	private static final String GRAMMAR =
+		"grammar T;\n" +
+		"s : a+ EOF ;\n" +
+		"a : ID '=' INT ';' ;\n" +
+		"ID : [a-z]+ ;\n" +
+		"INT : [0-9]+ ;\n" +
+		"COMMENT : '#' ~[\\n]* -> channel(HIDDEN) ;\n" +
+		"WS : [ \\n]+ -> skip ;\n";
+
+	@Test
+	public void shouldMapMatchedTokensToTheirATNStates() throws Exception {
+		// given:
+		Grammar g = new Grammar(GRAMMAR);
+		CommonTokenStream tokens = tokens(g, "x=1; #c\ny=2;");
+		PreviewParser parser = parser(g, tokens);
+
+		// when:
+		parser.parse(g.getRule("s").index);
+
+		// then:
+		Token x = tokens.get(0);
+		Token y = tokens.get(5);
+		Assert.assertEquals("y", y.getText());
+		Assert.assertNotEquals(ATNState.INVALID_STATE_NUMBER, parser.getMatchingState(x));
+		Assert.assertEquals(parser.getMatchingState(x), parser.getMatchingState(y));
+		Assert.assertNotEquals(parser.getMatchingState(x), parser.getMatchingState(tokens.get(1)));
+	}
+
+	@Test
+	public void shouldNotMapHiddenTokens() throws Exception {
+		// given:
+		Grammar g = new Grammar(GRAMMAR);
+		CommonTokenStream tokens = tokens(g, "x=1; #c\ny=2;");
+		PreviewParser parser = parser(g, tokens);
+
+		// when:
+		parser.parse(g.getRule("s").index);
+
+		// then:
+		Token comment = tokens.get(4);
+		Assert.assertEquals(Token.HIDDEN_CHANNEL, comment.getChannel());
+		Assert.assertEquals(ATNState.INVALID_STATE_NUMBER, parser.getMatchingState(comment));
+	}
+
+	@Test
+	public void shouldNotMapTokensConjuredUpByErrorRecovery() throws Exception {
+		// given:
+		Grammar g = new Grammar(GRAMMAR);
+		CommonTokenStream tokens = tokens(g, "x=1 y=2;");
+		PreviewParser parser = parser(g, tokens);
+
+		// when:
+		ParseTree tree = parser.parse(g.getRule("s").index);
+
+		// then:
+		ErrorNode missing = findErrorNode(tree);
+		Assert.assertNotNull(missing);
+		Assert.assertEquals(-1, missing.getSymbol().getTokenIndex());
+		Assert.assertEquals(ATNState.INVALID_STATE_NUMBER, parser.getMatchingState(missing.getSymbol()));
+		Assert.assertNotEquals(ATNState.INVALID_STATE_NUMBER, parser.getMatchingState(tokens.get(3)));
+	}
+
+	@Test
+	public void shouldForgetMatchingStatesOnReset() throws Exception {
+		// given:
+		Grammar g = new Grammar(GRAMMAR);
+		CommonTokenStream tokens = tokens(g, "x=1; y=2;");
+		PreviewParser parser = parser(g, tokens);
+		parser.parse(g.getRule("s").index);
+
+		// when:
+		parser.reset();
+
+		// then:
+		for (Token t : tokens.getTokens()) {
+			Assert.assertEquals(ATNState.INVALID_STATE_NUMBER, parser.getMatchingState(t));
+		}
+	}
+
+	private static CommonTokenStream tokens(Grammar g, String input) {
+		CommonTokenStream tokens = new CommonTokenStream(g.implicitLexer.createLexerInterpreter(CharStreams.fromString(input)));
+		tokens.fill();
+		return tokens;
+	}
+
+	private static PreviewParser parser(Grammar g, CommonTokenStream tokens) {
+		PreviewParser parser = new PreviewParser(g, tokens);
+		parser.removeErrorListeners();
+		return parser;
+	}
+
+	private static ErrorNode findErrorNode(ParseTree tree) {
+		if ( tree instanceof ErrorNode ) return (ErrorNode)tree;
+		for (int i = 0; i<tree.getChildCount(); i++) {
+			ErrorNode e = findErrorNode(tree.getChild(i));
+			if ( e!=null ) return e;
+		}
+		return null;
+	}
+}
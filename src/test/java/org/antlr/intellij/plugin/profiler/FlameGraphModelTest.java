@@ -0,0 +1,69 @@
+package org.antlr.intellij.plugin.profiler;
+
+import org.antlr.intellij.plugin.parsing.CompactTokenStream;
+import org.antlr.intellij.plugin.parsing.PreviewParser;
+import org.antlr.intellij.plugin.parsing.RuleProfile;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.tool.Grammar;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+public class FlameGraphModelTest {
+
+	private static final String GRAMMAR =
+		"grammar T;\n" +
+		"s : st* EOF ;\n" +
+		"st : ID '=' e ';' | '{' st* '}' ;\n" +
+		"e : e '*' e | e '+' e | '(' e ')' | INT | ID ;\n" +
+		"ID : [a-z]+ ;\n" +
+		"INT : [0-9]+ ;\n" +
+		"WS : [ \\n]+ -> skip ;\n";
+
+	@Test
+	public void shouldWriteCollapsedStacksWeightedByTokens() throws Exception {
+		// given:
+		RuleProfile profile = profile("x = 1+(2); { y = 3; } z = 4;");
+
+		// when:
+		FlameGraphModel model = new FlameGraphModel(profile, new Grammar(GRAMMAR).getRuleNames(), FlameGraphModel.Weight.TOKENS);
+		StringWriter out = new StringWriter();
+		model.writeCollapsedStacks(out);
+
+		// then:
+		Assert.assertEquals(
+			"s 1\n" +
+			"s;st 8\n" +
+			"s;st;e 3\n" +
+			"s;st;e;e 2\n" +
+			"s;st;e;e;e 1\n" +
+			"s;st;st 3\n" +
+			"s;st;st;e 1\n",
+			out.toString());
+		Assert.assertEquals(19, model.getTotalWeight(0)); // all tokens, EOF included
+		Assert.assertEquals(5, model.getMaxDepth());
+	}
+
+	@Test
+	public void shouldSumOwnTimesToTotalTime() throws Exception {
+		// given:
+		RuleProfile profile = profile("x = 1+2*(3+y); { z = 4; }");
+
+		// when:
+		FlameGraphModel model = new FlameGraphModel(profile, new Grammar(GRAMMAR).getRuleNames(), FlameGraphModel.Weight.TIME);
+
+		// then:
+		Assert.assertEquals(profile.getTotalTime(), model.getTotalWeight(0));
+		Assert.assertEquals(profile.getTime(0), model.getTotalWeight(model.getChildren(0)[0]));
+	}
+
+	private static RuleProfile profile(String input) throws Exception {
+		Grammar g = new Grammar(GRAMMAR);
+		CompactTokenStream tokens = new CompactTokenStream(g.implicitLexer.createLexerInterpreter(CharStreams.fromString(input)));
+		PreviewParser parser = new PreviewParser(g, tokens);
+		parser.setProfile(true);
+		parser.parse(g.getRule("s").index);
+		return parser.getRuleProfile();
+	}
+}
@@ -0,0 +1,56 @@
+package org.antlr.intellij.plugin.profiler;
+
+import org.antlr.v4.Tool;
+import org.antlr.v4.tool.Grammar;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+public class ParserFootprintTest {
+
+	@Rule
+	public TemporaryFolder outputDir = new TemporaryFolder();
+
+	@Test
+	public void shouldReportATNSizesGeneratedFilesAndWarmupTimes() throws IOException {
+		// given:
+		File grammarFile = outputDir.newFile("Expr.g4");
+		write(grammarFile, "grammar Expr;\n" +
+				"s : e+ EOF ;\n" +
+				"e : e '*' e | e '+' e | INT | '(' e ')' ;\n" +
+				"INT : [0-9]+ ;\n" +
+				"WS : [ \\n]+ -> skip ;\n");
+		Grammar g = new Tool().loadGrammar(grammarFile.getPath());
+		write(outputDir.newFile("ExprParser.java"), "class ExprParser {}");
+		write(outputDir.newFile("ExprLexer.java"), "class ExprLexer {}");
+		outputDir.newFile("Other.java");
+
+		// when:
+		ParserFootprint footprint =
+			ParserFootprint.compute(g, g.implicitLexer, "1+2*(3+4) 5", "s", outputDir.getRoot());
+
+		// then:
+		Assert.assertEquals("Expr", footprint.grammarName);
+		Assert.assertEquals(2, footprint.getMetric("Parser rules").value);
+		Assert.assertEquals(4, footprint.getMetric("Parser decisions").value);
+		Assert.assertTrue(footprint.getMetric("Parser serialized ATN").value>0);
+		Assert.assertTrue(footprint.getMetric("Lexer serialized ATN").value>0);
+		Assert.assertEquals(2, footprint.getMetric("Generated files").value);
+		Assert.assertEquals(37, footprint.getMetric("Generated files total").value);
+		Assert.assertEquals(10, footprint.getMetric("Input tokens").value);
+		Assert.assertNotNull(footprint.getMetric("First parse"));
+		Assert.assertNotNull(footprint.getMetric("Warm parse"));
+	}
+
+	private static void write(File f, String text) throws IOException {
+		try (Writer w = new FileWriter(f)) {
+			w.write(text);
+		}
+	}
+}
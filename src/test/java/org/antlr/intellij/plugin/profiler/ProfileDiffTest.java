@@ -0,0 +1,88 @@
+package org.antlr.intellij.plugin.profiler;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.LexerInterpreter;
+import org.antlr.v4.runtime.ParserInterpreter;
+import org.antlr.v4.tool.Grammar;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+public class ProfileDiffTest {
+
+	private static final String LEXER_RULES =
+		"ID : [a-z]+ ;\n" +
+		"INT : [0-9]+ ;\n" +
+		"WS : [ ]+ -> skip ;\n";
+
+	/** Each of a and b has its own optional prefix rule */
+	private static final String SLL_GRAMMAR =
+		"grammar T;\n" +
+		"s : '$' a | '@' b ;\n" +
+		"a : e ID ;\n" +
+		"b : f INT ID ;\n" +
+		"e : INT | ;\n" +
+		"f : INT | ;\n" +
+		LEXER_RULES;
+
+	/** a and b share e, whose decision now depends on the caller */
+	private static final String FULL_LL_GRAMMAR =
+		"grammar T;\n" +
+		"s : '$' a | '@' b ;\n" +
+		"a : e ID ;\n" +
+		"b : e INT ID ;\n" +
+		"e : INT | ;\n" +
+		LEXER_RULES;
+
+	@Test
+	public void shouldSurviveJsonRoundTrip() throws Exception {
+		// given:
+		ProfileSnapshot snapshot = profile(SLL_GRAMMAR, "$ 34 abc");
+
+		// when:
+		StringWriter out = new StringWriter();
+		snapshot.write(out);
+		ProfileSnapshot read = ProfileSnapshot.read(new StringReader(out.toString()));
+
+		// then:
+		Assert.assertEquals(ProfileSnapshot.FORMAT_VERSION, read.formatVersion);
+		Assert.assertEquals(snapshot.grammarFile, read.grammarFile);
+		Assert.assertEquals("s", read.startRule);
+		Assert.assertEquals(snapshot.inputTokens, read.inputTokens);
+		Assert.assertEquals(snapshot.decisions.size(), read.decisions.size());
+		ProfileSnapshot.Decision e = read.getDecision("e/0");
+		Assert.assertNotNull(e);
+		Assert.assertEquals(snapshot.getDecision("e/0").SLL_TotalLook, e.SLL_TotalLook);
+		Assert.assertEquals(snapshot.getDecision("e/0").timeInPrediction, e.timeInPrediction);
+		Assert.assertEquals(0, new ProfileDiff(read, snapshot).getNumberOfRegressions());
+	}
+
+	@Test
+	public void shouldReportDecisionThatNowNeedsFullLL() throws Exception {
+		// given:
+		ProfileSnapshot baseline = profile(SLL_GRAMMAR, "$ 34 abc");
+		ProfileSnapshot current = profile(FULL_LL_GRAMMAR, "$ 34 abc");
+
+		// when:
+		ProfileDiff diff = new ProfileDiff(baseline, current);
+
+		// then:
+		Assert.assertEquals(1, diff.getNumberOfFullLLRegressions());
+		ProfileDiff.Row first = diff.rows.get(0);
+		Assert.assertEquals("e/0", first.key);
+		Assert.assertTrue(first.regressions.contains("now needs full LL"));
+		Assert.assertNull(diff.rows.stream().filter(r -> r.key.equals("f/0")).findFirst().get().current);
+	}
+
+	private static ProfileSnapshot profile(String grammar, String input) throws Exception {
+		Grammar g = new Grammar(grammar);
+		LexerInterpreter lexer = g.createLexerInterpreter(CharStreams.fromString(input));
+		ParserInterpreter parser = g.createParserInterpreter(new CommonTokenStream(lexer));
+		parser.setProfile(true);
+		parser.parse(g.getRule("s").index);
+		return ProfileSnapshot.fromPreview(g, "s", parser, 1000);
+	}
+}
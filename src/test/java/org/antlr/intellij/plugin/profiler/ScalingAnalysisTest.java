@@ -0,0 +1,94 @@
+package org.antlr.intellij.plugin.profiler;
+
+import org.antlr.v4.tool.Grammar;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public class ScalingAnalysisTest {
+
+	private static final String LEXER_RULES =
+		"ID : [a-z]+ ;\n" +
+		"WS : [ \\n]+ -> skip ;\n";
+
+	/** Each statement is decided on its own */
+	private static final String STATEMENTS_GRAMMAR =
+		"grammar T;\n" +
+		"s : stat* EOF ;\n" +
+		"stat : ID+ ';' | ID+ '.' ;\n" +
+		LEXER_RULES;
+
+	/** s can only choose an alt once it has seen the end of the input */
+	private static final String WHOLE_INPUT_GRAMMAR =
+		"grammar T;\n" +
+		"s : (ID | ';')* EOF | (ID | ';')* '.' EOF ;\n" +
+		LEXER_RULES;
+
+	@Test
+	public void shouldReplicateAndCutInputAtLineBreaks() {
+		// when:
+		List<String> replicated = ScalingAnalysis.scaledInputs("a b ;", ScalingAnalysis.Method.REPLICATE, 3);
+		List<String> prefixes = ScalingAnalysis.scaledInputs("a ;\nb ;\nc ;\nd ;\n", ScalingAnalysis.Method.PREFIX, 3);
+
+		// then:
+		Assert.assertEquals("a b ;", replicated.get(0));
+		Assert.assertEquals("a b ;\na b ;", replicated.get(1));
+		Assert.assertEquals("a b ;\na b ;\na b ;\na b ;", replicated.get(2));
+		Assert.assertEquals("a ;\n", prefixes.get(0));
+		Assert.assertEquals("a ;\nb ;\n", prefixes.get(1));
+		Assert.assertEquals("a ;\nb ;\nc ;\nd ;\n", prefixes.get(2));
+	}
+
+	@Test
+	public void shouldKeepInputsWithinMaxChars() {
+		// when:
+		List<String> replicated = ScalingAnalysis.scaledInputs("a b ;", ScalingAnalysis.Method.REPLICATE, 5, 12);
+		List<String> prefixes = ScalingAnalysis.scaledInputs("a ;\nb ;\nc ;\nd ;\n", ScalingAnalysis.Method.PREFIX, 2, 9);
+
+		// then:
+		Assert.assertEquals(2, replicated.size());
+		Assert.assertEquals("a b ;\na b ;", replicated.get(1));
+		Assert.assertEquals(2, prefixes.size());
+		Assert.assertEquals("a ;\n", prefixes.get(0));
+		Assert.assertEquals("a ;\nb ;\n", prefixes.get(1));
+	}
+
+	@Test
+	public void shouldFitPowerLawExponent() {
+		double[] x = {10, 20, 40, 80};
+
+		Assert.assertEquals(1.0, ScalingAnalysis.fitExponent(x, new double[]{30, 60, 120, 240}), 1e-9);
+		Assert.assertEquals(2.0, ScalingAnalysis.fitExponent(x, new double[]{100, 400, 1600, 6400}), 1e-9);
+		// a fixed cost of 1000 hides the linear growth from a plain fit but not from the growth fit
+		Assert.assertEquals(1.0, ScalingAnalysis.fitGrowthExponent(x, new double[]{1030, 1060, 1120, 1240}), 1e-9);
+		Assert.assertTrue(Double.isNaN(ScalingAnalysis.fitExponent(new double[]{10}, new double[]{5})));
+	}
+
+	@Test
+	public void shouldFlagOnlyDecisionWhoseLookaheadGrowsWithInput() throws Exception {
+		// given:
+		StringBuilder statements = new StringBuilder();
+		for (int i = 0; i<20; i++) {
+			statements.append("a b c ;\nd e .\n");
+		}
+
+		// when:
+		ScalingAnalysis flat = analyze(STATEMENTS_GRAMMAR, statements.toString());
+		ScalingAnalysis growing = analyze(WHOLE_INPUT_GRAMMAR, "a b c ;\nd e ;\n");
+
+		// then:
+		Assert.assertEquals(4, flat.samples.size());
+		Assert.assertTrue(flat.growingDecisions.isEmpty());
+		Assert.assertEquals(1.0, flat.lookaheadExponent, 0.05);
+		Assert.assertEquals(1, growing.growingDecisions.size());
+		ScalingAnalysis.DecisionTrend trend = growing.growingDecisions.get(0);
+		Assert.assertEquals(1.0, trend.maxLookaheadExponent, 0.1);
+		Assert.assertTrue(trend.lastMaxLookahead>4*trend.firstMaxLookahead);
+	}
+
+	private static ScalingAnalysis analyze(String grammar, String input) throws Exception {
+		Grammar g = new Grammar(grammar);
+		return ScalingAnalysis.compute(g, g.getImplicitLexer(), "s", input, ScalingAnalysis.Method.REPLICATE, 4, null);
+	}
+}